@@ -0,0 +1,22 @@
+package edu.ktu.funlang.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.*;
+
+/**
+ * Entry point of {@code benchmarks.jar}: the regular JMH command line, with the GC profiler
+ * always enabled so every result comes with its allocation rate ({@code gc.alloc.rate.norm}).
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() {}
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        Options opts = new OptionsBuilder()
+                .parent(cli)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opts).run();
+    }
+}
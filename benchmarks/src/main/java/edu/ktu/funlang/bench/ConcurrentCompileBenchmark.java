@@ -0,0 +1,56 @@
+package edu.ktu.funlang.bench;
+
+import edu.ktu.funlang.core.CompilationResult;
+import edu.ktu.funlang.core.Compiler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compilations per second through one shared {@link Compiler} instance, with every available
+ * core compiling at once (change the thread count with {@code -t N}). Each thread compiles its own
+ * program, so threads don't replay one another's inputs. They still share the parser's DFA cache.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class ConcurrentCompileBenchmark {
+    @State(Scope.Benchmark)
+    public static class Shared {
+        @Param({"100", "1000"})
+        public int statements;
+
+        final Compiler java = new Compiler();
+        final Compiler bytecode = new Compiler(Compiler.Backend.BYTECODE);
+        final AtomicLong seeds = new AtomicLong();
+    }
+
+    @State(Scope.Thread)
+    public static class Program {
+        String source;
+
+        @Setup(Level.Trial)
+        public void setUp(Shared shared) {
+            source = ProgramGenerator.generate(shared.statements, 10, 3, shared.seeds.incrementAndGet());
+        }
+    }
+
+    @Benchmark
+    public CompilationResult javaSource(Shared shared, Program program) {
+        return check(shared.java.compile(program.source));
+    }
+
+    @Benchmark
+    public CompilationResult bytecode(Shared shared, Program program) {
+        return check(shared.bytecode.compile(program.source));
+    }
+
+    private static CompilationResult check(CompilationResult result) {
+        if (!result.succeeded()) throw new IllegalStateException(result.errors().toString());
+        return result;
+    }
+}
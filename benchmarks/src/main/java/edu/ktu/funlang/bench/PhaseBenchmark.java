@@ -0,0 +1,83 @@
+package edu.ktu.funlang.bench;
+
+import edu.ktu.funlang.core.Compiler;
+import edu.ktu.funlang.syntax.FunLangParser;
+import edu.ktu.funlang.visitors.FunLangOptimizer;
+import edu.ktu.funlang.visitors.FunLangSemanticAnalyzer;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each compiler phase on its own, plus the whole pipeline, over generated programs.
+ * Every phase gets its inputs prepared once per trial so only the phase itself is timed.
+ * Scale with {@code -p statements=...}, {@code -p functions=...} and {@code -p depth=...}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhaseBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int statements;
+
+    @Param({"10"})
+    public int functions;
+
+    @Param({"3"})
+    public int depth;
+
+    private String source;
+    private CommonTokenStream tokens;
+    private FunLangParser.ProgramContext tree;
+    private FunLangSemanticAnalyzer analyzer;
+    private FunLangOptimizer optimizer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        source = ProgramGenerator.generate(statements, functions, depth);
+        tokens = Compiler.lex(source);
+        tree = Compiler.parse(tokens);
+        analyzer = Compiler.analyze(tree);
+        optimizer = Compiler.optimize(tree, analyzer);
+    }
+
+    @Benchmark
+    public CommonTokenStream lex() {
+        return Compiler.lex(source);
+    }
+
+    @Benchmark
+    public FunLangParser.ProgramContext parse() {
+        tokens.seek(0);
+        return Compiler.parse(tokens);
+    }
+
+    @Benchmark
+    public FunLangSemanticAnalyzer analyze() throws Exception {
+        return Compiler.analyze(tree);
+    }
+
+    @Benchmark
+    public FunLangOptimizer optimize() {
+        return Compiler.optimize(tree, analyzer);
+    }
+
+    @Benchmark
+    public String generate() {
+        return Compiler.generate(tree, tokens, analyzer, optimizer, Compiler.MAIN_CLASS);
+    }
+
+    @Benchmark
+    public byte[] generateBytecode() throws Exception {
+        return Compiler.generateBytecode(tree, analyzer, optimizer, Compiler.MAIN_CLASS);
+    }
+
+    @Benchmark
+    public String endToEnd() throws Exception {
+        return Compiler.translate(source);
+    }
+}
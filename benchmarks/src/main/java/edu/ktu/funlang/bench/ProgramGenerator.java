@@ -0,0 +1,114 @@
+package edu.ktu.funlang.bench;
+
+import java.util.*;
+
+/**
+ * Builds synthetic, semantically valid FunLang programs whose size can be scaled along three axes:
+ * number of top-level statements, number of functions and nesting depth of control flow.
+ * The output is deterministic for a given seed so runs are comparable.
+ */
+public final class ProgramGenerator {
+    private final Random rnd;
+    private final StringBuilder sb = new StringBuilder();
+    private int varCounter = 0;
+
+    private ProgramGenerator(long seed) { this.rnd = new Random(seed); }
+
+    public static String generate(int statements, int functions, int depth) {
+        return generate(statements, functions, depth, 42L);
+    }
+
+    public static String generate(int statements, int functions, int depth, long seed) {
+        return new ProgramGenerator(seed).program(statements, functions, depth);
+    }
+
+    private String program(int statements, int functions, int depth) {
+        for (int f = 0; f < functions; f++) function(f, depth);
+
+        List<String> vars = new ArrayList<>();
+        for (int i = 0; i < statements; i++) {
+            if (vars.size() < 2 || i % 4 == 0) {
+                String v = newVar();
+                line(0, "integer " + v + " = " + rnd.nextInt(100) + ";");
+                vars.add(v);
+            } else {
+                statement(0, depth, vars, functions, i);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void function(int index, int depth) {
+        line(0, "FUNCTION F" + index + "(integer a, decimal b) {");
+        List<String> vars = new ArrayList<>(List.of("a"));
+        String v = newVar();
+        line(1, "integer " + v + " = a * 2 + 1;");
+        vars.add(v);
+        // functions only call lower-numbered ones, so the call graph is acyclic
+        statement(1, depth, vars, index, index);
+        line(1, "RETURN " + expr(vars, index, 2) + " + a;");
+        line(0, "}");
+    }
+
+    private void statement(int indent, int depth, List<String> vars, int functions, int salt) {
+        String target = vars.get(rnd.nextInt(vars.size()));
+        switch ((salt + rnd.nextInt(5)) % 5) {
+            case 0 -> line(indent, target + " = " + expr(vars, functions, 3) + ";");
+            case 1 -> line(indent, "CONSOLE -> " + expr(vars, functions, 2) + ";");
+            case 2 -> {
+                line(indent, "IF " + expr(vars, functions, 1) + " < " + rnd.nextInt(50) + " THEN {");
+                nested(indent, depth, vars, functions, salt);
+                line(indent, "} ELSE {");
+                line(indent + 1, target + " = " + target + " - 1;");
+                line(indent, "}");
+            }
+            case 3 -> {
+                String i = newVar();
+                line(indent, "FOR " + i + " IN 1:" + (1 + rnd.nextInt(10)) + " DO {");
+                List<String> inner = new ArrayList<>(vars);
+                inner.add(i);
+                nested(indent, depth, inner, functions, salt);
+                line(indent, "}");
+            }
+            default -> {
+                line(indent, "WHILE " + target + " > 100 DO {");
+                line(indent + 1, target + " = " + target + " - " + (1 + rnd.nextInt(9)) + ";");
+                nested(indent, depth, vars, functions, salt);
+                line(indent, "}");
+            }
+        }
+    }
+
+    private void nested(int indent, int depth, List<String> vars, int functions, int salt) {
+        if (depth <= 1) {
+            line(indent + 1, "CONSOLE -> " + expr(vars, functions, 1) + ";");
+            return;
+        }
+        List<String> inner = new ArrayList<>(vars);
+        String v = newVar();
+        line(indent + 1, "integer " + v + " = " + expr(vars, functions, 1) + ";");
+        inner.add(v);
+        statement(indent + 1, depth - 1, inner, functions, salt + 1);
+    }
+
+    private String expr(List<String> vars, int functions, int size) {
+        StringBuilder e = new StringBuilder(operand(vars, functions));
+        String[] ops = {" + ", " - ", " * ", " / "};
+        for (int k = 0; k < size; k++) e.append(ops[rnd.nextInt(ops.length)]).append(operand(vars, functions));
+        return e.toString();
+    }
+
+    private String operand(List<String> vars, int functions) {
+        int pick = rnd.nextInt(10);
+        if (pick < 5) return vars.get(rnd.nextInt(vars.size()));
+        if (pick < 8 || functions == 0) return Integer.toString(1 + rnd.nextInt(99));
+        if (pick == 8) return "MIN(" + vars.get(rnd.nextInt(vars.size())) + ", " + rnd.nextInt(10) + ")";
+        return "F" + rnd.nextInt(functions) + "(" + vars.get(rnd.nextInt(vars.size())) + ", 1.5)";
+    }
+
+    private String newVar() { return "v" + (varCounter++); }
+
+    private void line(int indent, String text) {
+        sb.append("    ".repeat(indent)).append(text).append('\n');
+    }
+}
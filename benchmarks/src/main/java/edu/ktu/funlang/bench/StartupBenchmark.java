@@ -0,0 +1,67 @@
+package edu.ktu.funlang.bench;
+
+import edu.ktu.funlang.core.Compiler;
+import edu.ktu.funlang.core.InMemoryJavaCompiler;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Source text to a finished run of a short script, once per execution path: the interpreter,
+ * generated Java through javac, and the bytecode backend. By default every fork measures one cold
+ * run, which is what a one-off script on the command line pays; {@code -wi 20 -i 20} gives warm
+ * numbers instead. {@code rounds} is the script's loop length, to show where compiling starts
+ * to pay off. Program output goes to a discarding stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+    private static final String SCRIPT = String.join("\n",
+            "FUNCTION Score(integer n, decimal w) { RETURN n * w + 1; }",
+            "integer total = 0;",
+            "FOR i IN 1:%d DO { total = total + i / 3; }",
+            "CONSOLE -> \"total \" + total;",
+            "CONSOLE -> Score(total, 0.5);",
+            "");
+
+    @Param({"10", "100000"})
+    public int rounds;
+
+    private String source;
+    private PrintStream out;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = String.format(Locale.ROOT, SCRIPT, rounds);
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    @Benchmark
+    public void interpret() throws Exception {
+        Compiler.interpret(source, null);
+    }
+
+    @Benchmark
+    public void runJava() throws Throwable {
+        InMemoryJavaCompiler.run(Compiler.MAIN_CLASS,
+                InMemoryJavaCompiler.compile(Compiler.MAIN_CLASS, Compiler.translate(source)), new String[0]);
+    }
+
+    @Benchmark
+    public void runBytecode() throws Throwable {
+        InMemoryJavaCompiler.run(Compiler.MAIN_CLASS, Compiler.assemble(source, Compiler.MAIN_CLASS, null), new String[0]);
+    }
+}
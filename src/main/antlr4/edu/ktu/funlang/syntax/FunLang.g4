@@ -9,15 +9,24 @@ statement
     | ifStmt
     | whileStmt
     | forStmt
+    | fileLoop
     | funcDef
     | returnStmt
     | systemCall
+    | fileWrite
     | block
     ;
 
 // ---------------------- Declarations ----------------------
+// CONSOLE output is buffered until the program ends; CONSOLE FLUSH; pushes it out earlier
 systemCall
     : CONSOLE '->' expr ';'
+    | CONSOLE FLUSH ';'
+    ;
+
+// FILE path -> value; appends value as one line; the first write of a run replaces the file
+fileWrite
+    : FILEFN expr '->' expr ';'
     ;
 
 block
@@ -37,7 +46,7 @@ returnStmt
     ;
 
 exprStmt
-    : expr
+    : expr ';'
     ;
 
 
@@ -51,15 +60,23 @@ whileStmt
     : WHILE expr DO block
     ;
 
+// PARALLEL runs independent iterations on all cores; outer variables may only be reduced
+// (x = x + e, x = MIN(x, e), x = MAX(x, e))
 forStmt
-    : FOR ID IN expr ':' expr ( STEP expr )? DO block
+    : PARALLEL? FOR ID IN expr ':' expr ( STEP expr )? DO block
+    ;
+
+// streams the lines of a text file, without their line terminators
+fileLoop
+    : FOR ID IN FILEFN expr DO block
     ;
 
 
 // ---------------------- Functions ----------------------
 
+// MEMO forces a memo cache on a pure function, NOMEMO keeps one off a recursive function
 funcDef
-    : FUNCTION ID '(' paramList? ')' block
+    : memo=( MEMO | NOMEMO )? FUNCTION ID '(' paramList? ')' block
     ;
 
 paramList
@@ -85,9 +102,10 @@ expr
     : chainExpr
     ;
 
-// chaining operators: =>, <=, <=>
+// chaining operators: a => F(b) is F(a, b); F(b) <= a is F(a, b) when F takes one more argument
+// (otherwise <= compares); a <=> F(b) passes the variable a by reference
 chainExpr
-    : binaryExpr ( chainOp binaryExpr )*
+    : comparisonExpr ( chainOp comparisonExpr )*
     ;
 
 chainOp
@@ -96,12 +114,18 @@ chainOp
     | '<=>'
     ;
 
-// arithmetic & comparison
-binaryExpr
-    : binaryExpr ('+'|'-') binaryExpr
-    | binaryExpr ('*'|'/') binaryExpr
-    | binaryExpr ('<'|'>'|'=='|'!=' ) binaryExpr
-    | basicExpr
+// arithmetic & comparison, one rule per precedence level (loosest first);
+// all levels are left-associative and need no left-recursion rewriting
+comparisonExpr
+    : additiveExpr ( op+=('<'|'>'|'=='|'!=') additiveExpr )*
+    ;
+
+additiveExpr
+    : multiplicativeExpr ( op+=('+'|'-') multiplicativeExpr )*
+    ;
+
+multiplicativeExpr
+    : basicExpr ( op+=('*'|'/') basicExpr )*
     ;
 
 basicExpr
@@ -143,16 +167,20 @@ THEN     : 'THEN' ;
 ELSE     : 'ELSE' ;
 WHILE    : 'WHILE' ;
 FOR      : 'FOR' ;
+PARALLEL : 'PARALLEL' ;
 IN       : 'IN' ;
 STEP     : 'STEP' ;
 DO       : 'DO' ;
 RETURN   : 'RETURN' ;
 FUNCTION : 'FUNCTION' ;
+MEMO     : 'MEMO' ;
+NOMEMO   : 'NOMEMO' ;
 TRUE     : 'TRUE' ;
 FALSE    : 'FALSE' ;
 
 // I/O keywords
 CONSOLE  : 'CONSOLE' ;
+FLUSH    : 'FLUSH' ;
 FILEFN   : 'FILE' ;
 
 ID       : [a-z][a-zA-Z0-9_]* | [A-Z][a-zA-Z0-9_]* ;
@@ -0,0 +1,87 @@
+package edu.ktu.funlang.app;
+
+import edu.ktu.funlang.core.CompileServer;
+import edu.ktu.funlang.core.Compiler;
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * The command line, through a running {@code --server}: same arguments, output, files and exit
+ * codes as {@link CompilerMain}, without the compiler's start-up and warm-up. Only a plain compile
+ * ({@code [--backend=java|bytecode] <input> <output_dir>}) goes to the server. Any other mode or
+ * option, a server that doesn't answer, or one whose queue is full runs {@link CompilerMain} in
+ * this JVM instead. The port is {@code -Dfunlang.server.port}, else {@code FUNLANG_SERVER_PORT},
+ * else {@value CompileServer#DEFAULT_PORT}.
+ * <p>
+ * The compiler's classes are only loaded in that fallback.
+ */
+public class CompileClient {
+    private static final int CONNECT_TIMEOUT_MS = 250;
+
+    public static void main(String[] args) throws Throwable {
+        String backend = "java";
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            if (args[i].equals("--backend=java") || args[i].equals("--backend=bytecode")) backend = args[i].substring("--backend=".length());
+            else if (!args[i].startsWith("--threads=")) break;
+        }
+        if (i < args.length && args[i].startsWith("--") || args.length - i < 2 || !remote(args[i], args[i + 1], backend)) {
+            CompilerMain.main(args);
+        }
+    }
+
+    /** Compiles through the server; false if this JVM has to do it after all. */
+    private static boolean remote(String input, String outputDir, String backend) throws IOException {
+        byte[] source;
+        try {
+            source = Files.readAllBytes(Paths.get(input));
+        } catch (IOException e) {
+            return false;
+        }
+        String className = Compiler.MAIN_CLASS;
+        HttpURLConnection c;
+        try {
+            c = (HttpURLConnection) new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), port(), "/compile").openConnection();
+            c.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            c.setRequestMethod("POST");
+            c.setDoOutput(true);
+            c.setRequestProperty(CompileServer.CLASS_HEADER, className);
+            c.setRequestProperty(CompileServer.BACKEND_HEADER, backend);
+            c.setFixedLengthStreamingMode(source.length);
+            try (OutputStream out = c.getOutputStream()) {
+                out.write(source);
+            }
+            if (c.getResponseCode() != 200) return false;
+        } catch (IOException e) {
+            return false;
+        }
+
+        int exitCode;
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(c.getInputStream()))) {
+            exitCode = in.readInt();
+            System.err.write(in.readNBytes(in.readInt()));
+            System.err.flush();
+            for (int n = in.readInt(); n > 0; n--) {
+                String name = in.readUTF();
+                files.put(name, in.readNBytes(in.readInt()));
+            }
+        }
+        if (exitCode != 0) System.exit(exitCode);
+
+        Path outDir = Paths.get(outputDir);
+        Files.createDirectories(outDir);
+        for (var f : files.entrySet()) Files.write(outDir.resolve(f.getKey()), f.getValue());
+        boolean bytecode = backend.equals("bytecode");
+        System.out.println((bytecode ? "Wrote class file to: " : "Wrote Java source to: ")
+                + outDir.resolve(className + (bytecode ? ".class" : ".java")).toAbsolutePath());
+        return true;
+    }
+
+    private static int port() {
+        String port = System.getProperty("funlang.server.port", System.getenv("FUNLANG_SERVER_PORT"));
+        return port == null ? CompileServer.DEFAULT_PORT : Integer.parseInt(port);
+    }
+}
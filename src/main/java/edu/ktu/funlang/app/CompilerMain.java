@@ -1,18 +1,150 @@
 package edu.ktu.funlang.app;
 
+import edu.ktu.funlang.core.BatchCompiler;
+import edu.ktu.funlang.core.CompilationCache;
+import edu.ktu.funlang.core.CompilationException;
+import edu.ktu.funlang.core.CompilationMetrics;
+import edu.ktu.funlang.core.CompileServer;
 import edu.ktu.funlang.core.Compiler;
+import edu.ktu.funlang.core.LanguageServer;
+import edu.ktu.funlang.core.StreamingCompiler;
+import edu.ktu.funlang.core.WatchCompiler;
+import edu.ktu.funlang.runtime.ConsoleOutput;
 import java.nio.file.*;
+import java.util.*;
 
 public class CompilerMain {
-    public static void main(String[] args) throws Exception {
-        if (args.length < 2) {
-            System.err.println("Usage: java -jar FunLangCompiler.jar <input.fun> <output_dir>");
+    public static void main(String[] args) throws Throwable {
+        // leading --flags select the mode and options; everything after them is positional
+        String mode = "";
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path cacheDir = null;
+        long cacheBytes = CompilationCache.DEFAULT_MAX_BYTES;
+        String stats = null;
+        Compiler.Backend backend = Compiler.Backend.JAVA;
+        long budget = LanguageServer.DEFAULT_BUDGET_MILLIS;
+        boolean stream = false;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            String a = args[i];
+            if (a.startsWith("--threads=")) threads = Integer.parseInt(a.substring("--threads=".length()));
+            else if (a.equals("--cache")) cacheDir = CompilationCache.defaultDir();
+            else if (a.startsWith("--cache=")) cacheDir = Paths.get(a.substring("--cache=".length()));
+            else if (a.startsWith("--cache-size=")) cacheBytes = Long.parseLong(a.substring("--cache-size=".length())) << 20;
+            else if (a.equals("--stats=json") || a.equals("--stats=text")) stats = a.substring("--stats=".length());
+            else if (a.equals("--backend=java")) backend = Compiler.Backend.JAVA;
+            else if (a.equals("--backend=bytecode")) backend = Compiler.Backend.BYTECODE;
+            else if (a.equals("--line-flush")) ConsoleOutput.setLineFlush(true);
+            else if (a.equals("--stream")) stream = true;
+            else if (a.startsWith("--lsp-budget=")) budget = Long.parseLong(a.substring("--lsp-budget=".length()));
+            else if (a.equals("--run") || a.equals("--interpret") || a.equals("--batch") || a.equals("--watch")
+                    || a.equals("--server") || a.equals("--lsp")) mode = a;
+            else usage();
+        }
+        List<String> rest = Arrays.asList(args).subList(i, args.length);
+        CompilationCache cache = cacheDir == null ? null : new CompilationCache(cacheDir, cacheBytes);
+        CompilationMetrics metrics = stats == null ? null : new CompilationMetrics();
+
+        try {
+            if (mode.equals("--run") && rest.size() >= 1) {
+                try {
+                    Compiler.run(Paths.get(rest.get(0)), rest.subList(1, rest.size()).toArray(new String[0]),
+                            cache, metrics, backend);
+                } finally {
+                    printStats(stats, metrics);
+                }
+                return;
+            }
+            if (mode.equals("--interpret") && rest.size() >= 1) {
+                try {
+                    Compiler.interpret(Paths.get(rest.get(0)), metrics);
+                } finally {
+                    printStats(stats, metrics);
+                }
+                return;
+            }
+            if (mode.equals("--batch") && rest.size() >= 2) {
+                batch(Paths.get(rest.get(0)), rest.subList(1, rest.size()), threads, cache, stats, backend);
+                return;
+            }
+            if (mode.equals("--watch") && rest.size() >= 2) {
+                new WatchCompiler(Paths.get(rest.get(0)), rest.subList(1, rest.size()), System.out).watch();
+                return;
+            }
+            if (mode.equals("--server") && rest.size() <= 1) {
+                int port = rest.isEmpty() ? CompileServer.DEFAULT_PORT : Integer.parseInt(rest.get(0));
+                CompileServer server = new CompileServer(port, threads, CompileServer.DEFAULT_QUEUE);
+                server.start();
+                System.out.println("[server] listening on 127.0.0.1:" + server.port() + ", stats at /stats");
+                return;
+            }
+            if (mode.equals("--lsp") && rest.isEmpty()) {
+                System.exit(new LanguageServer(System.in, System.out, budget).run());
+            }
+            if (!mode.isEmpty() || rest.size() < 2) {
+                usage();
+            }
+            Path input = Paths.get(rest.get(0));
+            Path outDir = Paths.get(rest.get(1));
+            if (stream) {
+                if (backend != Compiler.Backend.JAVA || cache != null || metrics != null) usage();
+                System.out.println("Wrote Java source to: " + StreamingCompiler.compile(input, outDir, Compiler.MAIN_CLASS).toAbsolutePath());
+                return;
+            }
+            Path outFile = Compiler.compile(input, outDir, Compiler.MAIN_CLASS, cache, metrics, backend);
+            System.out.println((backend == Compiler.Backend.BYTECODE ? "Wrote class file to: " : "Wrote Java source to: ")
+                    + outFile.toAbsolutePath());
+            printStats(stats, metrics);
+        } catch (CompilationException e) {
+            System.err.println(e.getMessage());
+            e.getErrors().forEach(System.err::println);
+            System.exit(2);
+        }
+    }
+
+    private static void batch(Path outDir, List<String> specs, int threads, CompilationCache cache,
+                              String stats, Compiler.Backend backend) throws Exception {
+        List<Path> inputs = BatchCompiler.collectInputs(specs);
+        if (inputs.isEmpty()) {
+            System.err.println("No " + BatchCompiler.EXTENSION + " files matched " + specs);
             System.exit(1);
         }
-        Path input = Paths.get(args[0]);
-        Path outDir = Paths.get(args[1]);
-        Compiler.compile(input, outDir);
+        BatchCompiler.Report report = new BatchCompiler(outDir, threads, cache, stats != null, backend).compileAll(inputs);
+        BatchCompiler.printReport(report, System.out);
+        for (BatchCompiler.FileResult f : report.files()) {
+            if (f.metrics() == null) continue;
+            if ("json".equals(stats)) {
+                System.err.println("{\"file\":\"" + jsonEscape(f.input().toString()) + "\",\"stats\":" + f.metrics().toJson() + "}");
+            } else {
+                System.err.print(f.input() + ":" + System.lineSeparator() + f.metrics().toText());
+            }
+        }
+        if (report.hasErrors()) System.exit(2);
+    }
+
+    /** Stats go to stderr so they never mix with generated output or a --run program's stdout. */
+    private static void printStats(String stats, CompilationMetrics metrics) {
+        if (metrics == null) return;
+        if ("json".equals(stats)) System.err.println(metrics.toJson());
+        else System.err.print(metrics.toText());
     }
-}
 
+    private static String jsonEscape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
 
+    private static void usage() {
+        System.err.println("Usage: java -jar FunLangCompiler.jar [options] <input.fun> <output_dir>");
+        System.err.println("       java -jar FunLangCompiler.jar --run <input.fun> [program args...]");
+        System.err.println("       java -jar FunLangCompiler.jar --interpret <input.fun>");
+        System.err.println("       java -jar FunLangCompiler.jar --batch [--threads=N] <output_dir> <dir|glob|file>...");
+        System.err.println("       java -jar FunLangCompiler.jar --watch <output_dir> <dir|glob|file>...");
+        System.err.println("       java -jar FunLangCompiler.jar --server [--threads=N] [port]");
+        System.err.println("       java -jar FunLangCompiler.jar --lsp [--lsp-budget=MS]   (language server on stdin/stdout)");
+        System.err.println("       java -cp FunLangCompiler.jar edu.ktu.funlang.app.CompileClient [options] <input.fun> <output_dir>");
+        System.err.println("Options: --cache[=dir] --cache-size=MB --stats=json|text --backend=java|bytecode");
+        System.err.println("         --line-flush (with --run/--interpret: print CONSOLE lines as they come, not at exit)");
+        System.err.println("         --stream (plain Java compile of a very large file in constant memory, unoptimized)");
+        System.exit(1);
+    }
+}
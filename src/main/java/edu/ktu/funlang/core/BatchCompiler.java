@@ -0,0 +1,168 @@
+package edu.ktu.funlang.core;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+
+/**
+ * Compiles many FunLang sources in one JVM, spreading the files over a {@link ForkJoinPool}.
+ * <p>
+ * Every worker builds its own lexer and parser, but the generated recognizers keep their ATN,
+ * DFA and prediction-context caches in static fields, so all workers warm up and reuse the same
+ * caches. Each file is written to its own class, named after the source file.
+ */
+public class BatchCompiler {
+    public static final String EXTENSION = ".funlang";
+
+    /**
+     * One file's outcome. {@code warnings} are the messages compiling it printed, kept apart from
+     * the other files' because the workers run at the same time. Syntax errors count as errors.
+     */
+    public record FileResult(Path input, Path output, long nanos, List<String> errors, List<String> warnings,
+                             CompilationMetrics metrics) {
+        public boolean ok() { return errors.isEmpty(); }
+    }
+
+    public record Report(List<FileResult> files, long wallNanos, int threads) {
+        public boolean hasErrors() { return files.stream().anyMatch(f -> !f.ok()); }
+    }
+
+    private final Path outputDir;
+    private final int threads;
+    private final CompilationCache cache;
+    private final boolean collectMetrics;
+    private final Compiler.Backend backend;
+
+    public BatchCompiler(Path outputDir, int threads) {
+        this(outputDir, threads, null, false);
+    }
+
+    public BatchCompiler(Path outputDir, int threads, CompilationCache cache, boolean collectMetrics) {
+        this(outputDir, threads, cache, collectMetrics, Compiler.Backend.JAVA);
+    }
+
+    public BatchCompiler(Path outputDir, int threads, CompilationCache cache, boolean collectMetrics,
+                         Compiler.Backend backend) {
+        this.outputDir = outputDir;
+        this.threads = threads;
+        this.cache = cache;
+        this.collectMetrics = collectMetrics;
+        this.backend = backend;
+    }
+
+    /** Expands directories (recursively, {@code *.funlang} only), glob patterns and plain files. */
+    public static List<Path> collectInputs(List<String> specs) throws IOException {
+        Set<Path> inputs = new LinkedHashSet<>();
+        for (String spec : specs) {
+            if (spec.contains("*") || spec.contains("?") || spec.contains("{")) {
+                inputs.addAll(expandGlob(spec));
+                continue;
+            }
+            Path p = Paths.get(spec);
+            if (Files.isDirectory(p)) {
+                try (Stream<Path> walk = Files.walk(p)) {
+                    walk.filter(f -> Files.isRegularFile(f) && f.toString().endsWith(EXTENSION))
+                            .sorted()
+                            .forEach(inputs::add);
+                }
+            } else {
+                inputs.add(p);
+            }
+        }
+        return new ArrayList<>(inputs);
+    }
+
+    private static List<Path> expandGlob(String pattern) throws IOException {
+        // walk from the longest wildcard-free directory prefix
+        Path root = Paths.get("");
+        Path pat = Paths.get(pattern);
+        for (Path part : pat) {
+            String s = part.toString();
+            if (s.contains("*") || s.contains("?") || s.contains("{")) break;
+            root = root.resolve(part);
+        }
+        if (pat.isAbsolute()) root = pat.getRoot().resolve(root);
+        if (!Files.isDirectory(root)) return List.of();
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(Files::isRegularFile)
+                    .filter(matcher::matches)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    public Report compileAll(List<Path> inputs) throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        try {
+            List<ForkJoinTask<FileResult>> tasks = new ArrayList<>();
+            for (Path input : inputs) tasks.add(pool.submit(() -> compileOne(input)));
+
+            List<FileResult> results = new ArrayList<>();
+            for (ForkJoinTask<FileResult> t : tasks) results.add(t.join());
+            return new Report(results, System.nanoTime() - start, threads);
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private FileResult compileOne(Path input) {
+        long t0 = System.nanoTime();
+        CompilationMetrics metrics = collectMetrics ? new CompilationMetrics() : null;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        PrintStream err = new PrintStream(printed, true, StandardCharsets.UTF_8);
+        Path out = null;
+        List<String> errors;
+        try {
+            out = Compiler.compile(input, targetDir(outputDir, input), Compiler.classNameFor(input), cache, metrics,
+                    backend, err);
+            errors = List.of();
+        } catch (CompilationException e) {
+            errors = new ArrayList<>();
+            errors.add(e.getMessage());
+            errors.addAll(e.getErrors());
+        } catch (Exception e) {
+            errors = List.of(String.valueOf(e));
+        }
+        List<String> warnings = printed.toString(StandardCharsets.UTF_8).lines().toList();
+        return new FileResult(input, out, System.nanoTime() - t0, errors, warnings, metrics);
+    }
+
+    /** Keeps sources from different directories apart so equally named files don't collide. */
+    static Path targetDir(Path outputDir, Path input) {
+        Path dir = input.toAbsolutePath().normalize().getParent();
+        return dir == null ? outputDir : outputDir.resolve(relativeDir(dir));
+    }
+
+    private static Path relativeDir(Path abs) {
+        Path cwd = Paths.get("").toAbsolutePath();
+        return abs.startsWith(cwd) ? cwd.relativize(abs) : abs.getRoot().relativize(abs);
+    }
+
+    public static void printReport(Report report, PrintStream out) {
+        long sumNanos = 0;
+        for (FileResult f : report.files()) {
+            sumNanos += f.nanos();
+            if (f.ok()) {
+                out.printf(Locale.ROOT, "%9.2f ms  %s -> %s%n", ms(f.nanos()), f.input(), f.output());
+            } else {
+                out.printf(Locale.ROOT, "%9.2f ms  %s FAILED%n", ms(f.nanos()), f.input());
+                f.errors().forEach(e -> out.println("             " + e));
+            }
+            f.warnings().forEach(w -> out.println("             " + w));
+        }
+        long failed = report.files().stream().filter(f -> !f.ok()).count();
+        double wall = ms(report.wallNanos());
+        out.printf(Locale.ROOT, "%d files (%d failed) on %d threads: wall %.2f ms, summed %.2f ms, speedup %.2fx%n",
+                report.files().size(), failed, report.threads(), wall, ms(sumNanos),
+                wall > 0 ? ms(sumNanos) / wall : 0.0);
+    }
+
+    private static double ms(long nanos) { return nanos / 1_000_000.0; }
+}
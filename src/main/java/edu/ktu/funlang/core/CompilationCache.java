@@ -0,0 +1,224 @@
+package edu.ktu.funlang.core;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.*;
+
+/**
+ * Content-addressed on-disk cache for compiler outputs.
+ * <p>
+ * Entries are keyed by a SHA-256 of the compiler fingerprint, the class name and the source text,
+ * and hold the generated Java and, for {@code --run}, the compiled classes, one entry per backend
+ * since javac and the bytecode backend emit different class files. Writes go to a temp file
+ * that is atomically renamed into place, so several compiler processes can share one directory.
+ * A hit refreshes the entry's modification time; once the directory grows past its size bound
+ * the least recently used entries are deleted.
+ */
+public class CompilationCache {
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    private static final String JAVA_EXT = ".java";
+    private static final String JAVAC_CLASSES_EXT = ".javac.classes";
+    private static final String ASM_CLASSES_EXT = ".asm.classes";
+
+    private final Path dir;
+    private final long maxBytes;
+    private final String fingerprint;
+    private final AtomicLong approxSize;
+
+    public CompilationCache(Path dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.fingerprint = compilerFingerprint();
+        Files.createDirectories(dir);
+        this.approxSize = new AtomicLong(totalSize());
+    }
+
+    public static Path defaultDir() {
+        return Paths.get(System.getProperty("user.home"), ".cache", "funlang");
+    }
+
+    public String key(String source, String className) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(className.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(source.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Optional<String> getJava(String key) {
+        byte[] bytes = read(entry(key, JAVA_EXT));
+        return bytes == null ? Optional.empty() : Optional.of(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    public void putJava(String key, String javaSource) {
+        write(entry(key, JAVA_EXT), javaSource.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Stores a generated file as the Java entry by copying it, without reading it into memory. */
+    public void putJava(String key, Path javaFile) {
+        store(entry(key, JAVA_EXT), tmp -> Files.copy(javaFile, tmp, StandardCopyOption.REPLACE_EXISTING));
+    }
+
+    public Optional<Map<String, byte[]>> getClasses(String key, Compiler.Backend backend) {
+        byte[] bytes = read(entry(key, classesExt(backend)));
+        if (bytes == null) return Optional.empty();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String name = in.readUTF();
+                byte[] code = new byte[in.readInt()];
+                in.readFully(code);
+                classes.put(name, code);
+            }
+            return Optional.of(classes);
+        } catch (IOException e) {
+            return Optional.empty(); // truncated or foreign file: treat as a miss
+        }
+    }
+
+    public void putClasses(String key, Compiler.Backend backend, Map<String, byte[]> classes) {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buf)) {
+            out.writeInt(classes.size());
+            for (var e : classes.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeInt(e.getValue().length);
+                out.write(e.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        write(entry(key, classesExt(backend)), buf.toByteArray());
+    }
+
+    private static String classesExt(Compiler.Backend backend) {
+        return backend == Compiler.Backend.BYTECODE ? ASM_CLASSES_EXT : JAVAC_CLASSES_EXT;
+    }
+
+    private Path entry(String key, String ext) {
+        return dir.resolve(key.substring(0, 2)).resolve(key + ext);
+    }
+
+    private byte[] read(Path file) {
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return bytes;
+        } catch (IOException e) {
+            return null; // missing, or evicted by another process meanwhile
+        }
+    }
+
+    private void write(Path file, byte[] bytes) {
+        store(file, tmp -> Files.write(tmp, bytes));
+    }
+
+    private interface Contents {
+        void writeTo(Path tmp) throws IOException;
+    }
+
+    private void store(Path file, Contents contents) {
+        long size;
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                contents.writeTo(tmp);
+                size = Files.size(tmp);
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            return; // the cache is an optimization; a failed store must not fail the compile
+        }
+        if (approxSize.addAndGet(size) > maxBytes) evict();
+    }
+
+    /** Deletes least recently used entries until the cache is back under 90% of its bound. */
+    private synchronized void evict() {
+        record Entry(Path path, long size, long lastUsed) {}
+        List<Entry> entries = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.filter(p -> Files.isRegularFile(p) && !p.toString().endsWith(".tmp")).forEach(p -> {
+                try {
+                    entries.add(new Entry(p, Files.size(p), Files.getLastModifiedTime(p).toMillis()));
+                } catch (IOException ignored) {
+                    // deleted concurrently
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            return;
+        }
+
+        long total = entries.stream().mapToLong(Entry::size).sum();
+        long target = maxBytes / 10 * 9;
+        entries.sort(Comparator.comparingLong(Entry::lastUsed));
+        for (Entry e : entries) {
+            if (total <= target) break;
+            try {
+                Files.deleteIfExists(e.path());
+            } catch (IOException ignored) {
+                // another process may hold or have removed it
+            }
+            total -= e.size();
+        }
+        approxSize.set(total);
+    }
+
+    private long totalSize() throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+
+    /**
+     * Changes whenever the compiler's own classes or the JDK change, so stale outputs are never
+     * reused: a digest of the jar the compiler runs from, or of every file under its class
+     * directory (by relative path and contents) when it runs from a build tree.
+     */
+    static String compilerFingerprint() {
+        StringBuilder sb = new StringBuilder(Compiler.VERSION)
+                .append('/').append(System.getProperty("java.specification.version"));
+        try {
+            Path codeSource = Paths.get(Compiler.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            sb.append('/').append(digest(codeSource));
+        } catch (Exception ignored) {
+            // no code source (e.g. custom class loader): fall back to the version string
+        }
+        return sb.toString();
+    }
+
+    private static String digest(Path codeSource) throws IOException, NoSuchAlgorithmException {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        if (Files.isDirectory(codeSource)) {
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(codeSource)) {
+                files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+            for (Path f : files) {
+                md.update(codeSource.relativize(f).toString().getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+                md.update(Files.readAllBytes(f));
+            }
+        } else {
+            try (InputStream in = Files.newInputStream(codeSource)) {
+                byte[] buf = new byte[1 << 16];
+                for (int n; (n = in.read(buf)) > 0; ) md.update(buf, 0, n);
+            }
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+}
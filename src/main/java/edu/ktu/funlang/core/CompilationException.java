@@ -0,0 +1,20 @@
+package edu.ktu.funlang.core;
+
+import java.util.*;
+
+/**
+ * Thrown when a FunLang program (or the Java generated from it) fails to compile.
+ * Carries the individual error messages so callers can decide how to report them.
+ */
+public class CompilationException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> errors;
+
+    public CompilationException(String message, List<String> errors) {
+        super(message);
+        this.errors = List.copyOf(errors);
+    }
+
+    public List<String> getErrors() { return errors; }
+}
@@ -0,0 +1,113 @@
+package edu.ktu.funlang.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Per-compilation instrumentation: wall time and allocated bytes for every phase plus a few
+ * size counters. One instance belongs to one compilation on one thread.
+ * <p>
+ * Collecting the ANTLR DFA counters switches the parser to its profiling simulator, which
+ * inflates the parse phase a little; the other numbers are unaffected.
+ */
+public class CompilationMetrics {
+    public enum Phase { LEX, PARSE, ANALYZE, OPTIMIZE, GENERATE }
+
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private final long[] wallNanos = new long[Phase.values().length];
+    private final long[] allocatedBytes = new long[Phase.values().length];
+    private long phaseStartNanos;
+    private long phaseStartAlloc;
+
+    private long tokens;
+    private long parseTreeNodes;
+    private long symbols;
+    private long generatedChars;
+    private long generatedBytes;
+    private long dfaHits;
+    private long dfaMisses;
+    private boolean llFallback;
+
+    public void begin(Phase phase) {
+        phaseStartAlloc = allocated();
+        phaseStartNanos = System.nanoTime();
+    }
+
+    public void end(Phase phase) {
+        wallNanos[phase.ordinal()] += System.nanoTime() - phaseStartNanos;
+        allocatedBytes[phase.ordinal()] += allocated() - phaseStartAlloc;
+    }
+
+    public long wallNanos(Phase phase) { return wallNanos[phase.ordinal()]; }
+    public long allocatedBytes(Phase phase) { return allocatedBytes[phase.ordinal()]; }
+    public long totalWallNanos() { return Arrays.stream(wallNanos).sum(); }
+
+    public long tokens() { return tokens; }
+    public long parseTreeNodes() { return parseTreeNodes; }
+    public long symbols() { return symbols; }
+    public long generatedChars() { return generatedChars; }
+    public long generatedBytes() { return generatedBytes; }
+    public long dfaHits() { return dfaHits; }
+    public long dfaMisses() { return dfaMisses; }
+    public boolean llFallback() { return llFallback; }
+
+    void setTokens(long tokens) { this.tokens = tokens; }
+    void setParseTreeNodes(long nodes) { this.parseTreeNodes = nodes; }
+    void setSymbols(long symbols) { this.symbols = symbols; }
+    void setGeneratedChars(long chars) { this.generatedChars = chars; }
+    void setGeneratedBytes(long bytes) { this.generatedBytes = bytes; }
+    void addDfa(long hits, long misses) { dfaHits += hits; dfaMisses += misses; }
+    void setLlFallback(boolean fallback) { this.llFallback = fallback; }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\"phases\":{");
+        for (Phase p : Phase.values()) {
+            if (p.ordinal() > 0) sb.append(',');
+            sb.append('"').append(p.name().toLowerCase(Locale.ROOT)).append("\":{")
+                    .append("\"wallNanos\":").append(wallNanos(p))
+                    .append(",\"allocatedBytes\":").append(allocatedBytes(p)).append('}');
+        }
+        sb.append("},\"totalWallNanos\":").append(totalWallNanos())
+                .append(",\"tokens\":").append(tokens)
+                .append(",\"parseTreeNodes\":").append(parseTreeNodes)
+                .append(",\"symbols\":").append(symbols)
+                .append(",\"generatedChars\":").append(generatedChars)
+                .append(",\"generatedBytes\":").append(generatedBytes)
+                .append(",\"dfa\":{\"hits\":").append(dfaHits).append(",\"misses\":").append(dfaMisses).append('}')
+                .append(",\"llFallback\":").append(llFallback)
+                .append('}');
+        return sb.toString();
+    }
+
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase p : Phase.values()) {
+            sb.append(String.format(Locale.ROOT, "%-9s %10.3f ms %12d B%n",
+                    p.name().toLowerCase(Locale.ROOT), wallNanos(p) / 1_000_000.0, allocatedBytes(p)));
+        }
+        sb.append(String.format(Locale.ROOT, "%-9s %10.3f ms%n", "total", totalWallNanos() / 1_000_000.0));
+        sb.append(String.format(Locale.ROOT,
+                "tokens %d, parse tree nodes %d, symbols %d, generated %d chars / %d class bytes, DFA hits %d / misses %d%s%n",
+                tokens, parseTreeNodes, symbols, generatedChars, generatedBytes, dfaHits, dfaMisses,
+                llFallback ? ", fell back to LL" : ""));
+        return sb.toString();
+    }
+
+    private static long allocated() {
+        return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                    && bean.isThreadAllocatedMemorySupported()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+                return bean;
+            }
+        } catch (UnsupportedOperationException | LinkageError ignored) {
+            // not a HotSpot-style JVM: allocation numbers stay 0
+        }
+        return null;
+    }
+}
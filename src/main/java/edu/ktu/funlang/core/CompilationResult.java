@@ -0,0 +1,32 @@
+package edu.ktu.funlang.core;
+
+import edu.ktu.funlang.syntax.Diagnostic;
+import edu.ktu.funlang.syntax.Severity;
+import java.util.*;
+
+/**
+ * What {@link Compiler#compile(String, String)} produced: the Java source (Java backend) or the
+ * class files by class name (bytecode backend), and every error and warning found on the way.
+ * A program with errors has neither.
+ */
+public record CompilationResult(String className, String javaSource, Map<String, byte[]> classes,
+                                List<Diagnostic> diagnostics) {
+    public CompilationResult {
+        classes = classes == null ? Map.of() : Map.copyOf(classes);
+        diagnostics = List.copyOf(diagnostics);
+    }
+
+    static CompilationResult failed(String className, List<Diagnostic> diagnostics) {
+        return new CompilationResult(className, null, null, diagnostics);
+    }
+
+    public boolean succeeded() { return errors().isEmpty(); }
+
+    public List<Diagnostic> errors() { return only(Severity.ERROR); }
+
+    public List<Diagnostic> warnings() { return only(Severity.WARNING); }
+
+    private List<Diagnostic> only(Severity severity) {
+        return diagnostics.stream().filter(d -> d.severity() == severity).toList();
+    }
+}
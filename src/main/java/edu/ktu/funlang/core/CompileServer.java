@@ -0,0 +1,289 @@
+package edu.ktu.funlang.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A compiler that stays up between compilations, so a client pays neither JVM start-up nor
+ * ANTLR and JIT warm-up. It speaks HTTP on the loopback interface only:
+ * <ul>
+ *   <li>{@code POST /compile}: the body is the FunLang source, and the headers name the class
+ *   ({@value #CLASS_HEADER}) and the backend ({@value #BACKEND_HEADER}: java or bytecode). The
+ *   reply is what the command line would have done, in the format of {@link #encode}.</li>
+ *   <li>{@code GET /stats}: request counts, batch sizes, and latency and throughput percentiles
+ *   as JSON.</li>
+ * </ul>
+ * Each request waits on a thread of its own: a virtual thread where the JVM has them (21+),
+ * otherwise a pooled one. Requests go into a bounded queue. A dispatcher takes them off in
+ * batches, collecting whatever arrives within {@link #BATCH_WINDOW_NANOS} of the first. Identical
+ * requests in a batch compile once. The dispatcher hands work on only as workers become free, so
+ * under overload the queue fills and new requests get 503 with {@code Retry-After} instead of
+ * piling up.
+ */
+public class CompileServer {
+    public static final int DEFAULT_PORT = 7391;
+    public static final int DEFAULT_QUEUE = 256;
+    public static final String CLASS_HEADER = "X-FunLang-Class";
+    public static final String BACKEND_HEADER = "X-FunLang-Backend";
+    static final long BATCH_WINDOW_NANOS = 1_000_000;
+    static final int MAX_BATCH = 64;
+
+    /** What the command line would have done: its exit code, its stderr and the files it would write. */
+    public record Reply(int exitCode, byte[] stderr, Map<String, byte[]> files) {}
+
+    private record Job(String source, String className, Compiler.Backend backend, long accepted,
+                       CompletableFuture<Reply> reply) {}
+
+    private final HttpServer http;
+    private final BlockingQueue<Job> queue;
+    private final ExecutorService requests = requestThreads();
+    private final ExecutorService workers;
+    private final Semaphore idle;
+    private final Thread dispatcher = new Thread(this::dispatch, "funlang-server-dispatch");
+    private final Stats stats = new Stats();
+
+    /** Port 0 picks a free one; see {@link #port()}. */
+    public CompileServer(int port, int threads, int queueCapacity) throws IOException {
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.setExecutor(requests);
+        http.createContext("/compile", this::compileRequest);
+        http.createContext("/stats", this::statsRequest);
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        workers = Executors.newFixedThreadPool(threads);
+        idle = new Semaphore(threads);
+    }
+
+    /** Warms the compiler up, then starts taking requests. */
+    public void start() {
+        WatchCompiler.warmUp();
+        dispatcher.start();
+        http.start();
+    }
+
+    public void stop() {
+        http.stop(0);
+        dispatcher.interrupt();
+        workers.shutdownNow();
+        requests.shutdownNow();
+    }
+
+    public int port() { return http.getAddress().getPort(); }
+
+    private void compileRequest(HttpExchange ex) throws IOException {
+        try (ex) {
+            if (!ex.getRequestMethod().equals("POST")) {
+                send(ex, 405, "POST a FunLang source to /compile");
+                return;
+            }
+            String className = Objects.requireNonNullElse(ex.getRequestHeaders().getFirst(CLASS_HEADER), Compiler.MAIN_CLASS);
+            String backend = Objects.requireNonNullElse(ex.getRequestHeaders().getFirst(BACKEND_HEADER), "java");
+            if (!isClassName(className) || !backend.equals("java") && !backend.equals("bytecode")) {
+                send(ex, 400, "bad " + CLASS_HEADER + " or " + BACKEND_HEADER);
+                return;
+            }
+            String source = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            Job job = new Job(source, className, backend.equals("bytecode") ? Compiler.Backend.BYTECODE : Compiler.Backend.JAVA,
+                    System.nanoTime(), new CompletableFuture<>());
+            if (!queue.offer(job)) {
+                stats.rejected.incrementAndGet();
+                ex.getResponseHeaders().set("Retry-After", "1");
+                send(ex, 503, "compile queue is full");
+                return;
+            }
+            stats.accepted.incrementAndGet();
+            Reply reply = job.reply().join();
+            if (reply == null) {
+                send(ex, 500, "the compiler failed on this program");
+                return;
+            }
+            byte[] body = encode(reply);
+            ex.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            ex.sendResponseHeaders(200, body.length);
+            ex.getResponseBody().write(body);
+        }
+    }
+
+    private void statsRequest(HttpExchange ex) throws IOException {
+        try (ex) {
+            byte[] body = stats.toJson(queue.size()).getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "application/json");
+            ex.sendResponseHeaders(200, body.length);
+            ex.getResponseBody().write(body);
+        }
+    }
+
+    private void dispatch() {
+        try {
+            while (true) {
+                List<Job> batch = new ArrayList<>();
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + BATCH_WINDOW_NANOS;
+                for (long left; batch.size() < MAX_BATCH && (left = deadline - System.nanoTime()) > 0; ) {
+                    Job next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                Map<List<Object>, List<Job>> same = new LinkedHashMap<>();
+                for (Job j : batch) {
+                    same.computeIfAbsent(List.of(j.source(), j.className(), j.backend()), k -> new ArrayList<>()).add(j);
+                }
+                stats.batch(batch.size(), same.size());
+                for (List<Job> jobs : same.values()) {
+                    idle.acquire();
+                    workers.execute(() -> {
+                        Reply reply = null;
+                        try {
+                            reply = compile(jobs.get(0));
+                        } finally {
+                            // an Error (a program nested too deep for the stack) still answers every request
+                            for (Job j : jobs) {
+                                stats.completed(j.accepted(), reply != null && reply.exitCode() == 0);
+                                j.reply().complete(reply);
+                            }
+                            idle.release();
+                        }
+                    });
+                }
+            }
+        } catch (InterruptedException e) {
+            // stop()
+        }
+    }
+
+    /**
+     * Does what the command line does for {@code <input> <output_dir>}, except writing the files.
+     * Null if the compiler itself failed; the client then reruns it locally to show the same crash.
+     */
+    private static Reply compile(Job job) {
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        PrintStream err = new PrintStream(stderr, true, StandardCharsets.UTF_8);
+        try {
+            Map<String, byte[]> files = Compiler.outputs(job.source(), job.className(), job.backend(), err);
+            return new Reply(0, stderr.toByteArray(), files);
+        } catch (CompilationException e) {
+            err.println(e.getMessage());
+            e.getErrors().forEach(err::println);
+            return new Reply(2, stderr.toByteArray(), Map.of());
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The exit code, the stderr bytes, then each file's name and bytes; every length is an int
+     * ahead of its bytes. {@code CompileClient} reads it back.
+     */
+    static byte[] encode(Reply reply) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(reply.exitCode());
+        out.writeInt(reply.stderr().length);
+        out.write(reply.stderr());
+        out.writeInt(reply.files().size());
+        for (var f : reply.files().entrySet()) {
+            out.writeUTF(f.getKey());
+            out.writeInt(f.getValue().length);
+            out.write(f.getValue());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void send(HttpExchange ex, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        ex.sendResponseHeaders(status, body.length);
+        ex.getResponseBody().write(body);
+    }
+
+    private static boolean isClassName(String name) {
+        if (name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))) return false;
+        return name.chars().allMatch(Character::isJavaIdentifierPart);
+    }
+
+    private static ExecutorService requestThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Counters, plus the latency (from acceptance to reply) of the last {@link #SAMPLES} compilations
+     * and how many finished in each of the last {@link #SECONDS} seconds.
+     */
+    private static final class Stats {
+        static final int SAMPLES = 4096;
+        static final int SECONDS = 60;
+
+        final long started = System.nanoTime();
+        final AtomicLong accepted = new AtomicLong(), rejected = new AtomicLong();
+        private long completed, failed, batches, batched, compiled;
+        private final long[] latencies = new long[SAMPLES];
+        private final long[] perSecond = new long[SECONDS], second = new long[SECONDS];
+
+        synchronized void batch(int jobs, int distinct) {
+            batches++;
+            batched += jobs;
+            compiled += distinct;
+        }
+
+        synchronized void completed(long accepted, boolean ok) {
+            long now = System.nanoTime();
+            latencies[(int) (completed % SAMPLES)] = now - accepted;
+            completed++;
+            if (!ok) failed++;
+            long s = (now - started) / 1_000_000_000L;
+            int i = (int) (s % SECONDS);
+            if (second[i] != s) {
+                second[i] = s;
+                perSecond[i] = 0;
+            }
+            perSecond[i]++;
+        }
+
+        synchronized String toJson(int queued) {
+            long now = System.nanoTime();
+            long[] latency = Arrays.copyOf(latencies, (int) Math.min(completed, SAMPLES));
+            Arrays.sort(latency);
+            // whole seconds only; the current one is still counting
+            long current = (now - started) / 1_000_000_000L;
+            long[] throughput = new long[(int) Math.min(current, SECONDS)];
+            for (int k = 0; k < throughput.length; k++) {
+                long s = current - 1 - k;
+                int i = (int) (s % SECONDS);
+                throughput[k] = second[i] == s ? perSecond[i] : 0;
+            }
+            Arrays.sort(throughput);
+            return "{\"uptimeSeconds\":" + (now - started) / 1_000_000_000L
+                    + ",\"accepted\":" + accepted.get()
+                    + ",\"rejected\":" + rejected.get()
+                    + ",\"queued\":" + queued
+                    + ",\"completed\":" + completed
+                    + ",\"failed\":" + failed
+                    + ",\"batches\":" + batches
+                    + ",\"compilations\":" + compiled
+                    + ",\"meanBatch\":" + String.format(Locale.ROOT, "%.2f", batches == 0 ? 0.0 : (double) batched / batches)
+                    + ",\"latencyMillis\":{" + percentiles(latency, 1_000_000.0) + '}'
+                    + ",\"perSecond\":{" + percentiles(throughput, 1.0) + '}'
+                    + '}';
+        }
+
+        /** Nearest-rank percentiles of sorted values, divided by {@code unit}. */
+        private static String percentiles(long[] sorted, double unit) {
+            StringBuilder sb = new StringBuilder("\"samples\":").append(sorted.length);
+            for (int p : new int[]{50, 90, 99}) {
+                long v = sorted.length == 0 ? 0 : sorted[Math.max(0, (int) Math.ceil(p / 100.0 * sorted.length) - 1)];
+                sb.append(",\"p").append(p).append("\":").append(String.format(Locale.ROOT, "%.3f", v / unit));
+            }
+            long max = sorted.length == 0 ? 0 : sorted[sorted.length - 1];
+            return sb.append(",\"max\":").append(String.format(Locale.ROOT, "%.3f", max / unit)).toString();
+        }
+    }
+}
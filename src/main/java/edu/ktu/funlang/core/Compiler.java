@@ -1,42 +1,508 @@
 package edu.ktu.funlang.core;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.util.*;
 import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.DecisionInfo;
+import org.antlr.v4.runtime.atn.ParseInfo;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.*;
+import edu.ktu.funlang.runtime.ConsoleOutput;
+import edu.ktu.funlang.syntax.Diagnostic;
+import edu.ktu.funlang.syntax.DiagnosticReporter;
+import edu.ktu.funlang.syntax.Severity;
+import edu.ktu.funlang.syntax.SyntaxErrorCollector;
+import edu.ktu.funlang.visitors.FunLangInterpreter;
+import edu.ktu.funlang.visitors.FunLangOptimizer;
+import edu.ktu.funlang.visitors.FunLangToBytecodeVisitor;
 import edu.ktu.funlang.visitors.FunLangToJavaVisitor;
 import edu.ktu.funlang.visitors.FunLangSemanticAnalyzer;
 import edu.ktu.funlang.syntax.FunLangLexer;
 import edu.ktu.funlang.syntax.FunLangParser;
 
+/**
+ * The static methods compile files for the command line: they read and write the disk, print
+ * warnings and throw {@link CompilationException}. An instance is the embeddable compiler: see
+ * {@link #compile(String, String, CompilationMetrics)}.
+ */
 public class Compiler {
+    public static final String VERSION = "1.0";
+    public static final String MAIN_CLASS = "FunProgram";
+
+    /** What the compiler emits: Java source for javac, or class files written directly. */
+    public enum Backend { JAVA, BYTECODE }
+
+    private final Backend backend;
+
+    /** An embeddable compiler that generates Java source. */
+    public Compiler() { this(Backend.JAVA); }
+
+    public Compiler(Backend backend) { this.backend = backend; }
+
+    public CompilationResult compile(String source) { return compile(source, MAIN_CLASS, null); }
+
+    public CompilationResult compile(String source, String className) { return compile(source, className, null); }
+
+    /**
+     * Compiles a source text in memory. It touches no files, prints nothing, and a bad program
+     * doesn't throw: its errors and warnings come back as diagnostics in the result. Every call
+     * gets its own lexer, parser, analyzer and generator, so one instance can serve any number of
+     * threads at once. The only thing they share is the parser's DFA cache. ANTLR keeps it static
+     * and synchronized, so each compilation makes prediction cheaper for the ones after it.
+     * {@code metrics} (may be null) belongs to this call alone.
+     */
+    public CompilationResult compile(String source, String className, CompilationMetrics metrics) {
+        DiagnosticReporter syntax = new DiagnosticReporter();
+        Analyzed a = frontEnd(source, metrics, new SyntaxErrorCollector(syntax));
+        if (a.analyzer() == null) return CompilationResult.failed(className, syntax.all());
+        List<Diagnostic> diagnostics = new ArrayList<>(syntax.all());
+        diagnostics.addAll(a.analyzer().getDiagnostics());
+        if (a.optimizer() == null) return CompilationResult.failed(className, diagnostics);
+        if (backend == Backend.BYTECODE) {
+            try {
+                return new CompilationResult(className, null, assemble(a, className, metrics), diagnostics);
+            } catch (CompilationException e) {
+                for (String error : e.getErrors()) diagnostics.add(new Diagnostic(Severity.ERROR, error, 0, 0));
+                return CompilationResult.failed(className, diagnostics);
+            }
+        }
+        StringWriter out = new StringWriter();
+        generate(a, className, metrics, out);
+        return new CompilationResult(className, out.toString(), null, diagnostics);
+    }
+
     public static void compile(Path inputFile, Path outputDir) throws Exception {
+        Path outFile = compile(inputFile, outputDir, MAIN_CLASS);
+        System.out.println("Wrote Java source to: " + outFile.toAbsolutePath());
+    }
+
+    /** Compiles one file into {@code outputDir/<className>.java} and returns the written path. */
+    public static Path compile(Path inputFile, Path outputDir, String className) throws Exception {
+        return compile(inputFile, outputDir, className, null, null);
+    }
+
+    public static Path compile(Path inputFile, Path outputDir, String className,
+                               CompilationCache cache, CompilationMetrics metrics) throws Exception {
+        return compile(inputFile, outputDir, className, cache, metrics, Backend.JAVA);
+    }
+
+    /** With {@link Backend#BYTECODE} writes {@code outputDir/<className>.class} instead and returns that path. */
+    public static Path compile(Path inputFile, Path outputDir, String className, CompilationCache cache,
+                               CompilationMetrics metrics, Backend backend) throws Exception {
+        return compile(inputFile, outputDir, className, cache, metrics, backend, System.err, false);
+    }
+
+    /**
+     * Like {@link #compile(Path, Path, String, CompilationCache, CompilationMetrics, Backend)} for
+     * one file among many: warnings go to {@code err} rather than stderr, and syntax errors fail
+     * the file with a {@link CompilationException} instead of compiling what the parser recovered.
+     */
+    public static Path compile(Path inputFile, Path outputDir, String className, CompilationCache cache,
+                               CompilationMetrics metrics, Backend backend, PrintStream err) throws Exception {
+        return compile(inputFile, outputDir, className, cache, metrics, backend, err, true);
+    }
+
+    private static Path compile(Path inputFile, Path outputDir, String className, CompilationCache cache,
+                                CompilationMetrics metrics, Backend backend, PrintStream err,
+                                boolean strict) throws Exception {
+        if (backend == Backend.BYTECODE) {
+            Map<String, byte[]> classes = classes(Files.readString(inputFile), className, cache, metrics, backend, err, strict);
+            Files.createDirectories(outputDir);
+            for (var e : classes.entrySet()) Files.write(outputDir.resolve(e.getKey() + ".class"), e.getValue());
+            return outputDir.resolve(className + ".class");
+        }
         String source = Files.readString(inputFile);
+        String key = cache == null ? null : cache.key(source, className);
+        Optional<String> hit = cache == null ? Optional.empty() : cache.getJava(key);
+        Analyzed a = hit.isPresent() ? null : frontEnd(source, metrics, err, strict);
+
+        // ensure out dir
+        Files.createDirectories(outputDir);
+        Path outFile = outputDir.resolve(className + ".java");
+        if (hit.isPresent()) {
+            Files.writeString(outFile, hit.get());
+            return outFile;
+        }
+        // the generator streams into the file, so the program is never in memory as a whole
+        try (Writer out = new OutputStreamWriter(Files.newOutputStream(outFile), StandardCharsets.UTF_8)) {
+            generate(a, className, metrics, out);
+        }
+        if (cache != null) cache.putJava(key, outFile);
+        return outFile;
+    }
+
+    /**
+     * Compiles the program to bytecode in memory and runs it inside the current JVM,
+     * skipping the generated source file, the external javac and the second JVM start.
+     */
+    public static void run(Path inputFile, String[] programArgs) throws Throwable {
+        run(inputFile, programArgs, null, null);
+    }
+
+    /** Like {@link #run(Path, String[])}, reusing cached bytecode when the source hasn't changed. */
+    public static void run(Path inputFile, String[] programArgs, CompilationCache cache,
+                           CompilationMetrics metrics) throws Throwable {
+        run(inputFile, programArgs, cache, metrics, Backend.JAVA);
+    }
+
+    /** With {@link Backend#BYTECODE} there is no javac step at all. */
+    public static void run(Path inputFile, String[] programArgs, CompilationCache cache,
+                           CompilationMetrics metrics, Backend backend) throws Throwable {
+        Map<String, byte[]> classes = classes(Files.readString(inputFile), MAIN_CLASS, cache, metrics, backend,
+                System.err, false);
+        try {
+            InMemoryJavaCompiler.run(MAIN_CLASS, classes, programArgs);
+        } finally {
+            // a program that failed still shows what it printed, ahead of the error
+            ConsoleOutput.flush();
+        }
+    }
+
+    /**
+     * Runs the program through {@link FunLangInterpreter}: no code generation, no class loading,
+     * so a short script prints its first line within milliseconds of the front end finishing.
+     */
+    public static void interpret(Path inputFile, CompilationMetrics metrics) throws Exception {
+        interpret(Files.readString(inputFile), metrics);
+    }
+
+    public static void interpret(String source, CompilationMetrics metrics) throws CompilationException {
+        Runnable program = prepare(source, metrics);
+        try {
+            program.run();
+        } finally {
+            ConsoleOutput.flush();
+        }
+    }
+
+    /** Front end plus closure compilation (timed as the generate phase); the result runs the program. */
+    public static Runnable prepare(String source, CompilationMetrics metrics) throws CompilationException {
+        Analyzed a = frontEnd(source, metrics);
+        if (metrics != null) metrics.begin(CompilationMetrics.Phase.GENERATE);
+        Runnable program;
+        try {
+            program = new FunLangInterpreter(a.analyzer(), a.optimizer()).compile((FunLangParser.ProgramContext) a.tree());
+        } catch (IllegalStateException e) {
+            throw new CompilationException("Interpreter setup failed:", List.of(String.valueOf(e.getMessage())));
+        }
+        if (metrics != null) metrics.end(CompilationMetrics.Phase.GENERATE);
+        return program;
+    }
+
+    /**
+     * Class files for a program, from {@code cache} (may be null) if present. Each backend has
+     * its own cache entry: javac and the bytecode backend don't emit the same class files.
+     */
+    private static Map<String, byte[]> classes(String source, String className, CompilationCache cache,
+                                               CompilationMetrics metrics, Backend backend, PrintStream err,
+                                               boolean strict) throws CompilationException {
+        String key = cache == null ? null : cache.key(source, className);
+        Map<String, byte[]> classes = cache == null ? null : cache.getClasses(key, backend).orElse(null);
+        if (classes == null) {
+            classes = backend == Backend.BYTECODE
+                    ? assemble(frontEnd(source, metrics, err, strict), className, metrics)
+                    : InMemoryJavaCompiler.compile(className, translate(source, className, cache, metrics, err, strict));
+            if (cache != null) cache.putClasses(key, backend, classes);
+        }
+        return classes;
+    }
+
+    /** Looks the generated Java up in {@code cache} (may be null) before running the pipeline. */
+    public static String translate(String source, String className, CompilationCache cache,
+                                   CompilationMetrics metrics) throws CompilationException {
+        return translate(source, className, cache, metrics, System.err, false);
+    }
+
+    private static String translate(String source, String className, CompilationCache cache,
+                                    CompilationMetrics metrics, PrintStream err, boolean strict) throws CompilationException {
+        String key = cache == null ? null : cache.key(source, className);
+        Optional<String> hit = cache == null ? Optional.empty() : cache.getJava(key);
+        if (hit.isPresent()) return hit.get();
+        StringWriter out = new StringWriter();
+        generate(frontEnd(source, metrics, err, strict), className, metrics, out);
+        String javaOutput = out.toString();
+        if (cache != null) cache.putJava(key, javaOutput);
+        return javaOutput;
+    }
+
+    public static String translate(String source) throws CompilationException {
+        return translate(source, MAIN_CLASS);
+    }
+
+    /** Runs the front end and the Java generator over a FunLang source text. */
+    public static String translate(String source, String className) throws CompilationException {
+        return translate(source, className, (CompilationMetrics) null);
+    }
+
+    /** Like {@link #translate(String, String)}, recording per-phase numbers into {@code metrics} (may be null). */
+    public static String translate(String source, String className, CompilationMetrics metrics)
+            throws CompilationException {
+        StringWriter out = new StringWriter();
+        translate(source, className, metrics, out);
+        return out.toString();
+    }
+
+    /** Like {@link #translate(String, String, CompilationMetrics)}, streaming the Java into {@code out}. */
+    public static void translate(String source, String className, CompilationMetrics metrics, Writer out)
+            throws CompilationException {
+        generate(frontEnd(source, metrics), className, metrics, out);
+    }
+
+    private static void generate(Analyzed a, String className, CompilationMetrics metrics, Writer out) {
+        if (metrics != null) metrics.begin(CompilationMetrics.Phase.GENERATE);
+        long chars = generate(a.tree(), a.tokens(), a.analyzer(), a.optimizer(), className, out);
+        if (metrics != null) {
+            metrics.end(CompilationMetrics.Phase.GENERATE);
+            metrics.setGeneratedChars(chars);
+        }
+    }
+
+    /**
+     * What {@link #compile(Path, Path, String, CompilationCache, CompilationMetrics, Backend)} would
+     * write, by file name, without touching the disk: {@code <className>.java}, or a {@code .class}
+     * file per class. Everything it would print goes to {@code err}, so concurrent calls keep
+     * their messages apart.
+     */
+    public static Map<String, byte[]> outputs(String source, String className, Backend backend, PrintStream err)
+            throws CompilationException {
+        Analyzed a = frontEnd(source, null, err, false);
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        if (backend == Backend.BYTECODE) {
+            for (var e : assemble(a, className, null).entrySet()) files.put(e.getKey() + ".class", e.getValue());
+        } else {
+            StringWriter out = new StringWriter();
+            generate(a, className, null, out);
+            files.put(className + ".java", out.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return files;
+    }
+
+    /** Runs the front end and the bytecode backend: class files by class name, no Java source involved. */
+    public static Map<String, byte[]> assemble(String source, String className, CompilationMetrics metrics)
+            throws CompilationException {
+        return assemble(frontEnd(source, metrics), className, metrics);
+    }
+
+    private static Map<String, byte[]> assemble(Analyzed a, String className, CompilationMetrics metrics)
+            throws CompilationException {
+        if (metrics != null) metrics.begin(CompilationMetrics.Phase.GENERATE);
+        byte[] bytes = generateBytecode(a.tree(), a.analyzer(), a.optimizer(), className);
+        if (metrics != null) {
+            metrics.end(CompilationMetrics.Phase.GENERATE);
+            metrics.setGeneratedBytes(bytes.length);
+        }
+        return Map.of(className, bytes);
+    }
+
+    private record Analyzed(CommonTokenStream tokens, ParseTree tree, FunLangSemanticAnalyzer analyzer,
+                            FunLangOptimizer optimizer) {}
+
+    /**
+     * Lex, parse, analyze and optimize, timing each phase into {@code metrics} (may be null).
+     * Syntax errors are printed; semantic errors are thrown and warnings printed.
+     */
+    private static Analyzed frontEnd(String source, CompilationMetrics metrics) throws CompilationException {
+        return frontEnd(source, metrics, System.err, false);
+    }
+
+    /**
+     * Like {@link #frontEnd(String, CompilationMetrics)}, printing to {@code err} instead of stderr.
+     * If {@code strict}, syntax errors are thrown rather than printed, and nothing after the
+     * parser runs.
+     */
+    private static Analyzed frontEnd(String source, CompilationMetrics metrics, PrintStream err, boolean strict)
+            throws CompilationException {
+        ANTLRErrorListener syntaxErrors = strict ? new SyntaxErrorCollector()
+                : err == System.err ? ConsoleErrorListener.INSTANCE : new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+                                    int charPositionInLine, String msg, RecognitionException e) {
+                err.println("line " + line + ":" + charPositionInLine + " " + msg);
+            }
+        };
+        Analyzed a = frontEnd(source, metrics, syntaxErrors);
+        if (a.analyzer() == null) {
+            throw new CompilationException("Syntax errors found:", ((SyntaxErrorCollector) syntaxErrors).getErrors());
+        }
+        if (a.optimizer() == null) throw new CompilationException("Semantic errors found:", a.analyzer().getErrors());
+        for (String warning : a.analyzer().getWarnings()) err.println("warning: " + warning);
+        return a;
+    }
+
+    /**
+     * The front end without side effects. Syntax errors go to {@code syntaxErrors}; if that is a
+     * {@link SyntaxErrorCollector} that caught any, the analyzer never runs and comes back null.
+     * A program with semantic errors comes back without an optimizer.
+     */
+    private static Analyzed frontEnd(String source, CompilationMetrics metrics, ANTLRErrorListener syntaxErrors) {
+        if (metrics != null) metrics.begin(CompilationMetrics.Phase.LEX);
+        CommonTokenStream tokens = lex(source, syntaxErrors);
+        if (metrics != null) {
+            metrics.end(CompilationMetrics.Phase.LEX);
+            metrics.setTokens(tokens.size());
+            metrics.begin(CompilationMetrics.Phase.PARSE);
+        }
+        ParseTree tree = parse(tokens, metrics, syntaxErrors);
+        if (metrics != null) {
+            metrics.end(CompilationMetrics.Phase.PARSE);
+            metrics.setParseTreeNodes(countNodes(tree));
+        }
+        if (syntaxErrors instanceof SyntaxErrorCollector c && !c.getErrors().isEmpty()) {
+            return new Analyzed(tokens, tree, null, null);
+        }
+
+        if (metrics != null) metrics.begin(CompilationMetrics.Phase.ANALYZE);
+        FunLangSemanticAnalyzer analyzer = new FunLangSemanticAnalyzer();
+        analyzer.visit(tree);
+        if (metrics != null) {
+            metrics.end(CompilationMetrics.Phase.ANALYZE);
+            metrics.setSymbols(analyzer.getSymbolTable().definedCount());
+        }
+        if (analyzer.hasErrors()) return new Analyzed(tokens, tree, analyzer, null);
+
+        if (metrics != null) metrics.begin(CompilationMetrics.Phase.OPTIMIZE);
+        FunLangOptimizer optimizer = optimize(tree, analyzer);
+        if (metrics != null) metrics.end(CompilationMetrics.Phase.OPTIMIZE);
+        return new Analyzed(tokens, tree, analyzer, optimizer);
+    }
+
+    // ---------------------- Phases ----------------------
+
+    /** Tokenizes the whole source up front. */
+    public static CommonTokenStream lex(String source) {
+        return lex(source, ConsoleErrorListener.INSTANCE);
+    }
+
+    private static CommonTokenStream lex(String source, ANTLRErrorListener errors) {
         CharStream cs = CharStreams.fromString(source);
         FunLangLexer lexer = new FunLangLexer(cs);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(errors);
         CommonTokenStream tokens = new CommonTokenStream(lexer);
+        tokens.fill();
+        return tokens;
+    }
+
+    public static FunLangParser.ProgramContext parse(CommonTokenStream tokens) {
+        return parse(tokens, null);
+    }
+
+    /**
+     * Two-stage parse: SLL prediction with a bail-out strategy handles virtually every valid
+     * program; only if it fails (a real syntax error or an SLL conflict) is the input rewound
+     * and parsed again with full LL prediction and the usual error reporting and recovery.
+     * With {@code metrics} the parser runs under ANTLR's profiler to count DFA hits and misses.
+     */
+    public static FunLangParser.ProgramContext parse(CommonTokenStream tokens, CompilationMetrics metrics) {
+        return parse(tokens, metrics, ConsoleErrorListener.INSTANCE);
+    }
+
+    static FunLangParser.ProgramContext parse(CommonTokenStream tokens, CompilationMetrics metrics,
+                                              ANTLRErrorListener errors) {
         FunLangParser parser = new FunLangParser(tokens);
-        ParseTree tree = parser.program();
+        parser.setProfile(metrics != null);
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        try {
+            return parser.program();
+        } catch (ParseCancellationException e) {
+            tokens.seek(0);
+            parser.reset();
+            parser.addErrorListener(errors);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            if (metrics != null) metrics.setLlFallback(true);
+            return parser.program();
+        } finally {
+            if (metrics != null) recordDfaStats(parser, metrics);
+        }
+    }
 
-        // 1) Semantic pass (collect symbols + basic checks)
+    /** Semantic pass (collect symbols + basic checks). */
+    public static FunLangSemanticAnalyzer analyze(ParseTree tree) throws CompilationException {
         FunLangSemanticAnalyzer analyzer = new FunLangSemanticAnalyzer();
         analyzer.visit(tree);
         if (analyzer.hasErrors()) {
-            System.err.println("Semantic errors found:");
-            analyzer.getErrors().forEach(System.err::println);
-            System.exit(2);
+            throw new CompilationException("Semantic errors found:", analyzer.getErrors());
         }
+        for (String warning : analyzer.getWarnings()) System.err.println("warning: " + warning);
+        return analyzer;
+    }
 
-        // 2) Generation pass
-        FunLangToJavaVisitor visitor = new FunLangToJavaVisitor(tokens, analyzer.getSymbolTable());
-        String javaOutput = visitor.visit(tree);
+    /** Folding, propagation, dead-branch and unused-variable passes over a tree {@code analyzer} has analyzed. */
+    public static FunLangOptimizer optimize(ParseTree tree, FunLangSemanticAnalyzer analyzer) {
+        FunLangOptimizer optimizer = new FunLangOptimizer(analyzer);
+        optimizer.optimize((FunLangParser.ProgramContext) tree);
+        return optimizer;
+    }
 
-        // ensure out dir
-        Files.createDirectories(outputDir);
-        Path outFile = outputDir.resolve("FunProgram.java");
-        Files.writeString(outFile, javaOutput);
-        System.out.println("Wrote Java source to: " + outFile.toAbsolutePath());
+    /** Generation pass; {@code optimizer} may be null to emit the program as written. */
+    public static String generate(ParseTree tree, TokenStream tokens, FunLangSemanticAnalyzer analyzer,
+                                  FunLangOptimizer optimizer, String className) {
+        StringWriter out = new StringWriter();
+        generate(tree, tokens, analyzer, optimizer, className, out);
+        return out.toString();
     }
-}
 
+    /** Streams the generated Java into {@code out} (flushed, not closed) and returns its length in chars. */
+    public static long generate(ParseTree tree, TokenStream tokens, FunLangSemanticAnalyzer analyzer,
+                                FunLangOptimizer optimizer, String className, Writer out) {
+        FunLangToJavaVisitor visitor = new FunLangToJavaVisitor(tokens, analyzer, className, optimizer, out);
+        visitor.visit(tree);
+        return visitor.generatedChars();
+    }
+
+    /** Bytecode generation pass; internal limits of the backend surface as compilation errors. */
+    public static byte[] generateBytecode(ParseTree tree, FunLangSemanticAnalyzer analyzer,
+                                          FunLangOptimizer optimizer, String className) throws CompilationException {
+        try {
+            return new FunLangToBytecodeVisitor(analyzer, className, optimizer)
+                    .generate((FunLangParser.ProgramContext) tree);
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new CompilationException("Bytecode generation failed:", List.of(String.valueOf(e.getMessage())));
+        }
+    }
+
+    private static void recordDfaStats(FunLangParser parser, CompilationMetrics metrics) {
+        ParseInfo info = parser.getParseInfo();
+        if (info == null) return;
+        long hits = 0, misses = 0;
+        for (DecisionInfo d : info.getDecisionInfo()) {
+            hits += d.SLL_DFATransitions + d.LL_DFATransitions;
+            misses += d.SLL_ATNTransitions + d.LL_ATNTransitions;
+        }
+        metrics.addDfa(hits, misses);
+    }
 
+    private static long countNodes(ParseTree root) {
+        long n = 0;
+        Deque<ParseTree> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ParseTree t = stack.pop();
+            n++;
+            for (int i = 0; i < t.getChildCount(); i++) stack.push(t.getChild(i));
+        }
+        return n;
+    }
+
+    /** Derives a Java class name from a source file name, e.g. {@code print-with-comments.funlang -> PrintWithComments}. */
+    public static String classNameFor(Path inputFile) {
+        String base = inputFile.getFileName().toString();
+        int dot = base.lastIndexOf('.');
+        if (dot > 0) base = base.substring(0, dot);
+
+        StringBuilder sb = new StringBuilder();
+        for (String part : base.split("[^A-Za-z0-9_]+")) {
+            if (part.isEmpty()) continue;
+            sb.append(Character.toUpperCase(part.charAt(0))).append(part, 1, part.length());
+        }
+        if (sb.length() == 0) return MAIN_CLASS;
+        if (!Character.isJavaIdentifierStart(sb.charAt(0))) sb.insert(0, '_');
+        return sb.toString();
+    }
+}
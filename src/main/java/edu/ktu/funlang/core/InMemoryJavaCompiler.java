@@ -0,0 +1,100 @@
+package edu.ktu.funlang.core;
+
+import javax.tools.*;
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.URI;
+import java.util.*;
+
+/**
+ * Compiles generated Java source with the system {@link JavaCompiler} without touching the disk
+ * and loads the resulting classes into the current JVM.
+ */
+public final class InMemoryJavaCompiler {
+    private static final List<String> OPTIONS = List.of("-proc:none", "-g:none", "-nowarn");
+
+    private InMemoryJavaCompiler() {}
+
+    /** Compiles a single compilation unit and returns the bytecode of every class it declares. */
+    public static Map<String, byte[]> compile(String className, String source) throws CompilationException {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+            throw new IllegalStateException("No system Java compiler available; run on a JDK, not a JRE");
+        }
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        Map<String, ByteArrayOutputStream> outputs = new LinkedHashMap<>();
+        boolean ok;
+        try (StandardJavaFileManager std = javac.getStandardFileManager(diagnostics, null, null)) {
+            JavaFileManager fm = new ForwardingJavaFileManager<>(std) {
+                @Override
+                public JavaFileObject getJavaFileForOutput(Location location, String name,
+                                                           JavaFileObject.Kind kind, FileObject sibling) {
+                    return new SimpleJavaFileObject(uriFor(name, kind), kind) {
+                        @Override
+                        public OutputStream openOutputStream() {
+                            ByteArrayOutputStream out = new ByteArrayOutputStream();
+                            outputs.put(name, out);
+                            return out;
+                        }
+                    };
+                }
+            };
+
+            JavaFileObject unit = new SimpleJavaFileObject(uriFor(className, JavaFileObject.Kind.SOURCE),
+                    JavaFileObject.Kind.SOURCE) {
+                @Override
+                public CharSequence getCharContent(boolean ignoreEncodingErrors) { return source; }
+            };
+
+            ok = javac.getTask(null, fm, diagnostics, OPTIONS, null, List.of(unit)).call();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close the Java file manager", e);
+        }
+        if (!ok) {
+            List<String> errors = new ArrayList<>();
+            for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+                if (d.getKind() == Diagnostic.Kind.ERROR) {
+                    errors.add("line " + d.getLineNumber() + ": " + d.getMessage(Locale.ROOT));
+                }
+            }
+            throw new CompilationException("Generated Java failed to compile", errors);
+        }
+
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        outputs.forEach((name, out) -> classes.put(name, out.toByteArray()));
+        return classes;
+    }
+
+    /** Defines the given classes in a fresh class loader and invokes {@code className.main(args)}. */
+    public static void run(String className, Map<String, byte[]> classes, String[] args) throws Throwable {
+        ClassLoader loader = new BytesClassLoader(classes, InMemoryJavaCompiler.class.getClassLoader());
+        Method main = loader.loadClass(className).getMethod("main", String[].class);
+        try {
+            main.invoke(null, (Object) args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static URI uriFor(String className, JavaFileObject.Kind kind) {
+        return URI.create("mem:///" + className.replace('.', '/') + kind.extension);
+    }
+
+    /** Serves class definitions from an in-memory map before delegating to its parent. */
+    static final class BytesClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        BytesClassLoader(Map<String, byte[]> classes, ClassLoader parent) {
+            super(parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (bytes == null) throw new ClassNotFoundException(name);
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package edu.ktu.funlang.core;
+
+import edu.ktu.funlang.semantics.rules.FunctionSymbol;
+import edu.ktu.funlang.syntax.*;
+import edu.ktu.funlang.visitors.FunLangSemanticAnalyzer;
+import java.util.*;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.*;
+
+/**
+ * The front end for an editor. It keeps one document parsed and analyzed, and after an edit it
+ * redoes only what that edit can have changed.
+ * <p>
+ * The document is kept as its top-level statements, each with its span of text, its parse tree
+ * and its diagnostics. An edit reparses only the statements it touches, plus the gaps around
+ * them. That region is parsed as a program of its own, with the lexer started at the region's
+ * line and column. The statements after it keep their trees, moved to their new lines. Text that
+ * doesn't parse stays a broken gap between statements, and the next edit reparses it along with
+ * its own region. While there is such a gap, its syntax errors are the only diagnostics. An
+ * edit the rest of the document could read differently, such as an unclosed string or comment,
+ * reparses the whole document instead.
+ * <p>
+ * {@link #check()} re-analyzes the edited statements. Each is analyzed together with what it
+ * depends on: the functions it calls and the earlier top-level variables it names. Together
+ * these are analyzed as a program of their own, and every other statement keeps its
+ * diagnostics. An edit can change how a function looks from outside: its parameter or return
+ * types, its purity, or whether it writes its first parameter. It can also add or remove a
+ * top-level name. Either way, the statements that use the name are checked again too, and so
+ * on until nothing changes.
+ */
+public class IncrementalFrontEnd {
+    private static final class Unit {
+        final FunLangParser.StatementContext tree;
+        int start, end;
+        /** Every identifier in the statement. */
+        final Set<String> names = new HashSet<>();
+        /** Its FUNCTIONs, nested ones too: visiting one retypes the top-level function of that name. */
+        final List<FunLangParser.FuncDefContext> functions = new ArrayList<>();
+        /** What it declares: "type name" for a top-level variable, "FUNCTION name" for each FUNCTION. */
+        final List<String> declarations = new ArrayList<>();
+        List<Diagnostic> diagnostics = List.of();
+        /** Lines its tokens still have to move down by; see {@link #settle()}. */
+        int pendingLines;
+
+        Unit(FunLangParser.StatementContext tree, int start, int end) {
+            this.tree = tree;
+            this.start = start;
+            this.end = end;
+            collect(tree);
+            if (tree.varDecl() != null) declarations.add(tree.varDecl().type().getText() + " " + tree.varDecl().ID().getText());
+            for (var f : functions) declarations.add("FUNCTION " + f.ID().getText());
+        }
+
+        private void collect(ParseTree node) {
+            if (node instanceof TerminalNode t) {
+                if (t.getSymbol().getType() == FunLangLexer.ID) names.add(t.getText());
+                return;
+            }
+            if (node instanceof FunLangParser.FuncDefContext f) functions.add(f);
+            for (int i = 0; i < node.getChildCount(); i++) collect(node.getChild(i));
+        }
+
+        /** The line it starts on. */
+        int line() { return tree.getStart().getLine() + pendingLines; }
+
+        /** Moves its tokens down by the lines that are still pending. */
+        void settle() {
+            if (pendingLines != 0) move(0, pendingLines, 0);
+            pendingLines = 0;
+        }
+
+        /** Moves its tokens {@code lines} lines down; those on {@code line} also move by {@code columns}. */
+        void move(int line, int lines, int columns) {
+            Deque<ParseTree> stack = new ArrayDeque<>();
+            stack.push(tree);
+            while (!stack.isEmpty()) {
+                ParseTree n = stack.pop();
+                if (n instanceof TerminalNode t && t.getSymbol() instanceof CommonToken token) {
+                    if (token.getLine() == line) token.setCharPositionInLine(token.getCharPositionInLine() + columns);
+                    token.setLine(token.getLine() + lines);
+                }
+                for (int i = 0; i < n.getChildCount(); i++) stack.push(n.getChild(i));
+            }
+            if (line != 0) {
+                List<Diagnostic> moved = new ArrayList<>();
+                for (Diagnostic d : diagnostics) {
+                    moved.add(new Diagnostic(d.severity(), d.message(), d.line() + lines, d.line() == line ? d.col() + columns : d.col()));
+                }
+                diagnostics = moved;
+            }
+        }
+
+        void moveDiagnostics(int lines) {
+            if (diagnostics.isEmpty()) return;
+            List<Diagnostic> moved = new ArrayList<>();
+            for (Diagnostic d : diagnostics) moved.add(new Diagnostic(d.severity(), d.message(), d.line() + lines, d.col()));
+            diagnostics = moved;
+        }
+
+        boolean contains(Diagnostic d) {
+            Token first = tree.getStart(), last = tree.getStop();
+            if (d.line() < first.getLine() || d.line() == first.getLine() && d.col() < first.getCharPositionInLine()) return false;
+            return d.line() < last.getLine() || d.line() == last.getLine() && d.col() <= last.getCharPositionInLine();
+        }
+    }
+
+    private String text = "";
+    private final List<Unit> units = new ArrayList<>();
+    private List<Diagnostic> syntaxErrors = List.of();
+    /** How each function looks to its callers, as of the last check. */
+    private final Map<String, String> summaries = new HashMap<>();
+    private final Set<Unit> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+    /** How many more times each declaration is made than at the last check. */
+    private final Map<String, Integer> declarations = new HashMap<>();
+    /** Where the text that doesn't parse is: the gap before this statement, or -1. */
+    private int brokenAt = -1;
+    private int reparsed, checked, analyzed;
+
+    /** Replaces the whole document. */
+    public void open(String text) {
+        this.text = text;
+        reparseAll();
+    }
+
+    /** Replaces {@code length} chars at {@code offset} with {@code replacement}. */
+    public void edit(int offset, int length, String replacement) {
+        String old = text;
+        text = old.substring(0, offset) + replacement + old.substring(offset + length);
+        if (units.isEmpty()) {
+            reparseAll();
+            return;
+        }
+        int delta = replacement.length() - length;
+        // the statements touching the edit, the gaps on either side of them and any broken gap in between
+        int first = 0;
+        while (first < units.size() && units.get(first).end < offset) first++;
+        int last = first - 1;
+        while (last + 1 < units.size() && units.get(last + 1).start <= offset + length) last++;
+        if (brokenAt >= 0) {
+            first = Math.min(first, brokenAt);
+            last = Math.max(last, brokenAt - 1);
+        }
+        boolean lookahead = last + 1 < units.size();
+        int from = first == 0 ? 0 : units.get(first - 1).end;
+
+        // the parse runs on through the next statement, which has to come out as it was: a comment or
+        // string left open at the end of the region would otherwise swallow it unseen
+        int to = lookahead ? units.get(last + 1).end + delta : text.length();
+        String region = text.substring(from, to);
+        DiagnosticReporter errors = new DiagnosticReporter();
+        int[] at = position(text, from);
+        FunLangParser.ProgramContext parsed = parse(region, at[0], at[1], errors);
+        List<FunLangParser.StatementContext> statements = new ArrayList<>(parsed.statement());
+        if (lookahead && !errors.hasErrors()) {
+            var s = statements.isEmpty() ? null : statements.remove(statements.size() - 1);
+            if (s == null || from + offsetOf(region, s.getStart().getStartIndex()) != units.get(last + 1).start + delta
+                    || from + offsetOf(region, s.getStop().getStopIndex() + 1) != to) {
+                reparseAll();
+                return;
+            }
+        }
+        if (errors.hasErrors()) {
+            // Broken text only stays local when the rest of the document can't read it otherwise: no
+            // string or comment left open that a later quote or */ would close, and no ELSE that the
+            // IF before the region would take.
+            if (parsed.getStart().getType() == FunLangLexer.ELSE
+                    || errors.all().stream().anyMatch(d -> d.message().startsWith("token recognition error"))) {
+                reparseAll();
+                return;
+            }
+            if (lookahead) last++;
+            statements.clear();
+        }
+
+        List<Unit> replaced = new ArrayList<>(units.subList(first, last + 1));
+        List<Unit> fresh = new ArrayList<>();
+        for (var s : statements) {
+            int start = from + offsetOf(region, s.getStart().getStartIndex());
+            int end = from + offsetOf(region, s.getStop().getStopIndex() + 1);
+            // a statement wholly before the edit, unchanged, keeps its tree and diagnostics
+            Unit reused = null;
+            for (Unit r : replaced) {
+                if (r.start == start && r.end == end && end <= offset) reused = r;
+            }
+            fresh.add(reused != null ? reused : new Unit(s, start, end));
+        }
+        for (Unit r : replaced) {
+            if (fresh.contains(r)) continue;
+            dirty.remove(r);
+            for (String d : r.declarations) declarations.merge(d, -1, Integer::sum);
+        }
+        for (Unit f : fresh) {
+            if (replaced.contains(f)) continue;
+            dirty.add(f);
+            for (String d : f.declarations) declarations.merge(d, 1, Integer::sum);
+        }
+        reparsed = (int) fresh.stream().filter(dirty::contains).count();
+
+        // Everything after the region moves by delta chars, and its tokens and diagnostics by some
+        // lines. Those on the region's last line also move by some columns, so they move now; the
+        // rest only once they are analyzed again.
+        int anchor = last + 1 < units.size() ? units.get(last + 1).start : old.length();
+        int[] oldEnd = position(old, anchor), newEnd = position(text, anchor + delta);
+        int lines = newEnd[0] - oldEnd[0], columns = newEnd[1] - oldEnd[1];
+        for (int i = last + 1; i < units.size(); i++) {
+            Unit u = units.get(i);
+            u.start += delta;
+            u.end += delta;
+            if (u.line() == oldEnd[0]) {
+                u.settle();
+                u.move(oldEnd[0], lines, columns);
+            } else if (lines != 0) {
+                u.pendingLines += lines;
+                u.moveDiagnostics(lines);
+            }
+        }
+        units.subList(first, last + 1).clear();
+        units.addAll(first, fresh);
+        brokenAt = errors.hasErrors() ? first : -1;
+        syntaxErrors = errors.all();
+    }
+
+    /** The diagnostics as they stand: syntax errors, or the last check's findings for every statement not edited since. */
+    public List<Diagnostic> diagnostics() {
+        if (!syntaxErrors.isEmpty()) return syntaxErrors;
+        List<Diagnostic> all = new ArrayList<>();
+        for (Unit u : units) all.addAll(u.diagnostics);
+        return all;
+    }
+
+    /** Re-analyzes what the edits since the last check affected and returns all diagnostics. */
+    public List<Diagnostic> check() {
+        checked = analyzed = 0;
+        if (!syntaxErrors.isEmpty()) return syntaxErrors;
+        Set<String> functions = new HashSet<>();
+        for (Unit u : units) for (var f : u.functions) functions.add(f.ID().getText());
+        summaries.keySet().retainAll(functions);
+
+        Set<Unit> todo = Collections.newSetFromMap(new IdentityHashMap<>());
+        todo.addAll(dirty);
+        // a name declared more or fewer times than before can change every statement that uses it
+        Set<String> redeclared = new HashSet<>();
+        declarations.forEach((d, n) -> {
+            if (n != 0) redeclared.add(d.substring(d.indexOf(' ') + 1));
+        });
+        for (Unit u : units) if (!Collections.disjoint(u.names, redeclared)) todo.add(u);
+        Set<Unit> done = Collections.newSetFromMap(new IdentityHashMap<>());
+        while (!todo.isEmpty()) {
+            List<Unit> program = closure(todo);
+            FunLangSemanticAnalyzer analyzer = analyze(program);
+            for (Unit u : todo) u.diagnostics = new ArrayList<>();
+            for (Diagnostic d : analyzer.getDiagnostics()) {
+                for (Unit u : todo) {
+                    if (u.contains(d)) {
+                        u.diagnostics.add(d);
+                        break;
+                    }
+                }
+            }
+            Set<String> changed = new HashSet<>();
+            for (Unit u : program) {
+                for (var f : u.functions) {
+                    String name = f.ID().getText(), summary = summary(analyzer, f);
+                    if (summary != null && !summary.equals(summaries.put(name, summary))) changed.add(name);
+                }
+            }
+            done.addAll(todo);
+            checked += todo.size();
+            analyzed += program.size();
+            todo.clear();
+            for (Unit u : units) if (!done.contains(u) && !Collections.disjoint(u.names, changed)) todo.add(u);
+        }
+        dirty.clear();
+        declarations.clear();
+        return diagnostics();
+    }
+
+    public String text() { return text; }
+    /** Statements the last edit parsed anew. */
+    public int reparsedStatements() { return reparsed; }
+    /** Statements the last check re-analyzed for their own diagnostics. */
+    public int checkedStatements() { return checked; }
+    /** Statements the last check analyzed, counting the ones analyzed only as dependencies. */
+    public int analyzedStatements() { return analyzed; }
+    public int statements() { return units.size(); }
+
+    private void reparseAll() {
+        DiagnosticReporter errors = new DiagnosticReporter();
+        List<FunLangParser.StatementContext> statements = parse(text, 1, 0, errors).statement();
+        units.clear();
+        dirty.clear();
+        declarations.clear();
+        summaries.clear();
+        brokenAt = -1;
+        syntaxErrors = errors.all();
+        if (!syntaxErrors.isEmpty()) return;
+        for (var s : statements) {
+            Unit u = new Unit(s, offsetOf(text, s.getStart().getStartIndex()), offsetOf(text, s.getStop().getStopIndex() + 1));
+            units.add(u);
+            dirty.add(u);
+        }
+        reparsed = units.size();
+    }
+
+    /** The statements of {@code region}, lexed as if it began at {@code line}:{@code col}. */
+    private static FunLangParser.ProgramContext parse(String region, int line, int col, DiagnosticReporter errors) {
+        SyntaxErrorCollector collector = new SyntaxErrorCollector(errors);
+        FunLangLexer lexer = new FunLangLexer(CharStreams.fromString(region));
+        lexer.setLine(line);
+        lexer.setCharPositionInLine(col);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(collector);
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        tokens.fill();
+        return Compiler.parse(tokens, null, collector);
+    }
+
+    /** The analyzed units, plus the functions they call and the earlier top-level declarations they name, in document order. */
+    private List<Unit> closure(Set<Unit> roots) {
+        Map<String, List<Unit>> declarers = new HashMap<>();
+        for (Unit u : units) {
+            for (String d : u.declarations) declarers.computeIfAbsent(d.substring(d.indexOf(' ') + 1), k -> new ArrayList<>()).add(u);
+        }
+        Set<Unit> in = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Unit> work = new ArrayDeque<>(roots);
+        in.addAll(roots);
+        while (!work.isEmpty()) {
+            Unit u = work.pop();
+            for (String name : u.names) {
+                for (Unit d : declarers.getOrDefault(name, List.of())) {
+                    if ((!d.functions.isEmpty() || d.start < u.start) && in.add(d)) work.push(d);
+                }
+            }
+        }
+        List<Unit> program = new ArrayList<>();
+        for (Unit u : units) if (in.contains(u)) program.add(u);
+        return program;
+    }
+
+    /** Analyzes the statements as a program of their own; the trees stay where they are. */
+    private static FunLangSemanticAnalyzer analyze(List<Unit> program) {
+        FunLangParser.ProgramContext root = new FunLangParser.ProgramContext(null, 0);
+        for (Unit u : program) {
+            u.settle();
+            root.addChild(u.tree);
+        }
+        FunLangSemanticAnalyzer analyzer = new FunLangSemanticAnalyzer();
+        analyzer.visit(root);
+        return analyzer;
+    }
+
+    /** What callers of a function see of it. */
+    private static String summary(FunLangSemanticAnalyzer analyzer, FunLangParser.FuncDefContext definition) {
+        FunctionSymbol fs = analyzer.functionOf(definition);
+        if (fs == null) return null;
+        String function = fs.getName();
+        return fs.getParamTypes() + " -> " + fs.getReturnType()
+                + (analyzer.isPure(function) ? " pure" : "") + (analyzer.writesFirstParam(function) ? " writes" : "");
+    }
+
+    /** Line (from 1) and column (from 0) of a char offset. */
+    private static int[] position(String text, int offset) {
+        int line = 1, lineStart = 0;
+        for (int i = text.indexOf('\n'); i >= 0 && i < offset; i = text.indexOf('\n', i + 1)) {
+            line++;
+            lineStart = i + 1;
+        }
+        return new int[]{line, offset - lineStart};
+    }
+
+    /** The lexer counts code points; strings count chars, which differ past the Basic Multilingual Plane. */
+    private static int offsetOf(String text, int codePoints) {
+        return text.length() == text.codePointCount(0, text.length()) ? codePoints : text.offsetByCodePoints(0, codePoints);
+    }
+}
@@ -0,0 +1,164 @@
+package edu.ktu.funlang.core;
+
+import java.util.*;
+
+/**
+ * Just enough JSON for the language server: objects read as maps, arrays as lists, numbers as
+ * Long or Double. Writing takes the same types, plus any other Number and Boolean.
+ */
+final class Json {
+    private final String s;
+    private int i;
+
+    private Json(String s) { this.s = s; }
+
+    static Object parse(String json) {
+        Json p = new Json(json);
+        Object value = p.value();
+        p.space();
+        if (p.i != json.length()) throw p.error();
+        return value;
+    }
+
+    static String write(Object value) {
+        StringBuilder sb = new StringBuilder();
+        write(value, sb);
+        return sb.toString();
+    }
+
+    private static void write(Object value, StringBuilder sb) {
+        if (value == null) sb.append("null");
+        else if (value instanceof String str) quote(str, sb);
+        else if (value instanceof Number || value instanceof Boolean) sb.append(value);
+        else if (value instanceof Map<?, ?> map) {
+            sb.append('{');
+            for (var e : map.entrySet()) {
+                if (sb.charAt(sb.length() - 1) != '{') sb.append(',');
+                quote(e.getKey().toString(), sb);
+                sb.append(':');
+                write(e.getValue(), sb);
+            }
+            sb.append('}');
+        } else if (value instanceof Collection<?> list) {
+            sb.append('[');
+            for (Object o : list) {
+                if (sb.charAt(sb.length() - 1) != '[') sb.append(',');
+                write(o, sb);
+            }
+            sb.append(']');
+        } else throw new IllegalArgumentException("not JSON: " + value.getClass());
+    }
+
+    private static void quote(String str, StringBuilder sb) {
+        sb.append('"');
+        for (int k = 0; k < str.length(); k++) {
+            char c = str.charAt(k);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    private Object value() {
+        space();
+        if (i >= s.length()) throw error();
+        char c = s.charAt(i);
+        if (c == '{') return object();
+        if (c == '[') return array();
+        if (c == '"') return string();
+        if (s.startsWith("true", i)) { i += 4; return true; }
+        if (s.startsWith("false", i)) { i += 5; return false; }
+        if (s.startsWith("null", i)) { i += 4; return null; }
+        return number();
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        i++;
+        space();
+        if (peek() == '}') { i++; return map; }
+        while (true) {
+            space();
+            if (peek() != '"') throw error();
+            String key = string();
+            space();
+            if (peek() != ':') throw error();
+            i++;
+            map.put(key, value());
+            space();
+            char c = s.charAt(i++);
+            if (c == '}') return map;
+            if (c != ',') throw error();
+        }
+    }
+
+    private List<Object> array() {
+        List<Object> list = new ArrayList<>();
+        i++;
+        space();
+        if (peek() == ']') { i++; return list; }
+        while (true) {
+            list.add(value());
+            space();
+            char c = s.charAt(i++);
+            if (c == ']') return list;
+            if (c != ',') throw error();
+        }
+    }
+
+    private String string() {
+        StringBuilder sb = new StringBuilder();
+        i++;
+        while (true) {
+            char c = s.charAt(i++);
+            if (c == '"') return sb.toString();
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char e = s.charAt(i++);
+            switch (e) {
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'u' -> {
+                    sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                    i += 4;
+                }
+                default -> sb.append(e);
+            }
+        }
+    }
+
+    private Number number() {
+        int start = i;
+        while (i < s.length() && "+-0123456789.eE".indexOf(s.charAt(i)) >= 0) i++;
+        String n = s.substring(start, i);
+        if (n.isEmpty()) throw error();
+        return n.matches("-?\\d+") ? (Number) Long.parseLong(n) : (Number) Double.parseDouble(n);
+    }
+
+    private char peek() {
+        if (i >= s.length()) throw error();
+        return s.charAt(i);
+    }
+
+    private void space() {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+    }
+
+    private IllegalArgumentException error() {
+        return new IllegalArgumentException("bad JSON at " + i);
+    }
+}
@@ -0,0 +1,259 @@
+package edu.ktu.funlang.core;
+
+import edu.ktu.funlang.syntax.Diagnostic;
+import edu.ktu.funlang.syntax.Severity;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Diagnostics for editors over the Language Server Protocol: JSON-RPC with {@code Content-Length}
+ * framing on stdin and stdout. It takes incremental text changes and publishes each document's
+ * errors and warnings as they are typed.
+ * <p>
+ * Every open document has an {@link IncrementalFrontEnd}, and one analysis thread applies the
+ * edits of all documents in order. After an edit it checks the statements the edit affects. If
+ * a newer edit of the same document is already waiting, that check is skipped. Each edit has a
+ * latency budget. If the check hasn't finished by then, the server publishes what is already
+ * known: the diagnostics of the statements the edit didn't touch, or the syntax errors. The full
+ * result follows when the check is done.
+ */
+public class LanguageServer {
+    public static final long DEFAULT_BUDGET_MILLIS = 50;
+    private static final int METHOD_NOT_FOUND = -32601, PARSE_ERROR = -32700;
+
+    private static final class Document {
+        final String uri;
+        final IncrementalFrontEnd frontEnd = new IncrementalFrontEnd();
+        /** The newest version received; only the analysis thread reads the others. */
+        volatile int received;
+        int published = -1;
+        boolean publishedFinal;
+        /** The diagnostics as they stood right after the newest edit was applied, for the budget to publish. */
+        volatile Snapshot interim;
+
+        Document(String uri) { this.uri = uri; }
+    }
+
+    private record Snapshot(int version, String text, List<Diagnostic> diagnostics) {}
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final long budgetMillis;
+    private final Map<String, Document> documents = new ConcurrentHashMap<>();
+    private final ExecutorService analysis = Executors.newSingleThreadExecutor(daemon("funlang-lsp-analysis"));
+    private final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(daemon("funlang-lsp-budget"));
+    private boolean shutdown;
+
+    public LanguageServer(InputStream in, OutputStream out, long budgetMillis) {
+        this.in = new BufferedInputStream(in);
+        this.out = out;
+        this.budgetMillis = budgetMillis;
+    }
+
+    /** Serves until {@code exit} or the end of input; returns the exit code the protocol asks for. */
+    public int run() throws IOException {
+        try {
+            for (String message; (message = read()) != null; ) {
+                Map<String, Object> m;
+                try {
+                    m = cast(Json.parse(message));
+                } catch (RuntimeException e) {
+                    Map<String, Object> error = new LinkedHashMap<>();
+                    error.put("jsonrpc", "2.0");
+                    error.put("id", null);
+                    error.put("error", Map.of("code", PARSE_ERROR, "message", String.valueOf(e.getMessage())));
+                    send(error);
+                    continue;
+                }
+                if ("exit".equals(m.get("method"))) return shutdown ? 0 : 1;
+                handle(m);
+            }
+            return 1;
+        } finally {
+            analysis.shutdownNow();
+            deadlines.shutdownNow();
+        }
+    }
+
+    private void handle(Map<String, Object> m) throws IOException {
+        String method = (String) m.get("method");
+        Object id = m.get("id");
+        Map<String, Object> params = m.get("params") instanceof Map<?, ?> p ? cast(p) : Map.of();
+        switch (method == null ? "" : method) {
+            case "initialize" -> {
+                WatchCompiler.warmUp();
+                reply(id, Map.of("capabilities", Map.of("textDocumentSync", Map.of("openClose", true, "change", 2)),
+                        "serverInfo", Map.of("name", "funlang")));
+            }
+            case "shutdown" -> {
+                shutdown = true;
+                reply(id, null);
+            }
+            case "textDocument/didOpen" -> {
+                Map<String, Object> doc = cast(params.get("textDocument"));
+                Document d = new Document((String) doc.get("uri"));
+                documents.put(d.uri, d);
+                String text = (String) doc.get("text");
+                submit(d, number(doc.get("version")), () -> d.frontEnd.open(text));
+            }
+            case "textDocument/didChange" -> {
+                Map<String, Object> doc = cast(params.get("textDocument"));
+                Document d = documents.get((String) doc.get("uri"));
+                if (d == null) return;
+                List<Object> changes = cast(params.get("contentChanges"));
+                submit(d, number(doc.get("version")), () -> {
+                    for (Object c : changes) apply(d.frontEnd, cast(c));
+                });
+            }
+            case "textDocument/didClose" -> {
+                Map<String, Object> doc = cast(params.get("textDocument"));
+                Document d = documents.remove((String) doc.get("uri"));
+                if (d != null) {
+                    // after any analysis still queued for it
+                    analysis.execute(() -> publish(d, new Snapshot(Integer.MAX_VALUE, "", List.of()), true));
+                }
+            }
+            default -> {
+                if (id != null) send(Map.of("jsonrpc", "2.0", "id", id,
+                        "error", Map.of("code", METHOD_NOT_FOUND, "message", "unsupported: " + method)));
+            }
+        }
+    }
+
+    /** Queues an edit; the budget's clock starts now, when it was received. */
+    private void submit(Document d, int version, Runnable edit) {
+        d.received = version;
+        analysis.execute(() -> {
+            try {
+                analyze(d, version, edit);
+            } catch (RuntimeException | StackOverflowError e) {
+                System.err.println("[lsp] " + d.uri + " v" + version + ": " + e);
+            }
+        });
+        deadlines.schedule(() -> {
+            Snapshot s = d.interim;
+            if (s != null && s.version() == version) publish(d, s, false);
+        }, budgetMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void analyze(Document d, int version, Runnable edit) {
+        long started = System.nanoTime();
+        edit.run();
+        IncrementalFrontEnd f = d.frontEnd;
+        d.interim = new Snapshot(version, f.text(), f.diagnostics());
+        if (d.received != version || documents.get(d.uri) != d) return;
+        List<Diagnostic> diagnostics = f.check();
+        publish(d, new Snapshot(version, f.text(), diagnostics), true);
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        if (millis > budgetMillis) {
+            System.err.println("[lsp] " + d.uri + " v" + version + ": checked " + f.checkedStatements() + " of "
+                    + f.statements() + " statements in " + millis + " ms, over the " + budgetMillis + " ms budget");
+        }
+    }
+
+    /** Applies one LSP content change: a range and its replacement, or the whole text. */
+    private static void apply(IncrementalFrontEnd f, Map<String, Object> change) {
+        String text = (String) change.get("text");
+        if (!(change.get("range") instanceof Map<?, ?> range)) {
+            f.open(text);
+            return;
+        }
+        String doc = f.text();
+        int start = offset(doc, cast(range.get("start"))), end = offset(doc, cast(range.get("end")));
+        f.edit(start, end - start, text);
+    }
+
+    /** An LSP position (line and UTF-16 column, both from 0) as an offset in the text. */
+    private static int offset(String text, Map<String, Object> position) {
+        int line = number(position.get("line")), at = 0;
+        for (; line > 0; line--) {
+            int nl = text.indexOf('\n', at);
+            if (nl < 0) return text.length();
+            at = nl + 1;
+        }
+        int eol = text.indexOf('\n', at);
+        return Math.min(at + number(position.get("character")), eol < 0 ? text.length() : eol);
+    }
+
+    /** Publishes unless something as new is out already; an interim result never replaces the final one. */
+    private synchronized void publish(Document d, Snapshot s, boolean complete) {
+        if (s.version() < d.published || s.version() == d.published && (d.publishedFinal || !complete)) return;
+        d.published = s.version();
+        d.publishedFinal = complete;
+        List<Object> diagnostics = new ArrayList<>();
+        String[] lines = s.text().split("\n", -1);
+        for (Diagnostic diag : s.diagnostics()) {
+            int line = Math.max(diag.line() - 1, 0), col = diag.col();
+            String source = line < lines.length ? lines[line] : "";
+            int end = col;
+            while (end < source.length() && Character.isJavaIdentifierPart(source.charAt(end))) end++;
+            diagnostics.add(Map.of(
+                    "range", Map.of("start", Map.of("line", line, "character", col),
+                            "end", Map.of("line", line, "character", Math.max(end, col + 1))),
+                    "severity", diag.severity() == Severity.ERROR ? 1 : 2,
+                    "source", "funlang",
+                    "message", diag.message()));
+        }
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("uri", d.uri);
+        if (s.version() != Integer.MAX_VALUE) params.put("version", s.version());
+        params.put("diagnostics", diagnostics);
+        try {
+            send(Map.of("jsonrpc", "2.0", "method", "textDocument/publishDiagnostics", "params", params));
+        } catch (IOException e) {
+            // the client is gone; run() sees the end of input
+        }
+    }
+
+    private void reply(Object id, Object result) throws IOException {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("jsonrpc", "2.0");
+        m.put("id", id);
+        m.put("result", result);
+        send(m);
+    }
+
+    private void send(Map<String, Object> message) throws IOException {
+        byte[] body = Json.write(message).getBytes(StandardCharsets.UTF_8);
+        synchronized (out) {
+            out.write(("Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(body);
+            out.flush();
+        }
+    }
+
+    /** The next message's body, or null at the end of input. */
+    private String read() throws IOException {
+        int length = -1;
+        while (true) {
+            StringBuilder header = new StringBuilder();
+            int c;
+            while ((c = in.read()) != '\n') {
+                if (c < 0) return null;
+                if (c != '\r') header.append((char) c);
+            }
+            if (header.isEmpty()) break;
+            String h = header.toString();
+            if (h.regionMatches(true, 0, "Content-Length:", 0, 15)) length = Integer.parseInt(h.substring(15).trim());
+        }
+        if (length < 0) throw new IOException("message without Content-Length");
+        byte[] body = in.readNBytes(length);
+        if (body.length < length) return null;
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static int number(Object o) { return o == null ? 0 : ((Number) o).intValue(); }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object o) { return (T) o; }
+
+    private static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
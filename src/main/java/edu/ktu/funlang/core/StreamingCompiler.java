@@ -0,0 +1,179 @@
+package edu.ktu.funlang.core;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+import edu.ktu.funlang.syntax.FunLangLexer;
+import edu.ktu.funlang.syntax.FunLangParser;
+import edu.ktu.funlang.visitors.FunLangSemanticAnalyzer;
+import edu.ktu.funlang.visitors.FunLangToJavaVisitor;
+
+/**
+ * Compiles a source too large to hold as a whole: as a String, as tokens or as one parse tree.
+ * The file is read through unbuffered streams, one top-level statement at a time, and is never
+ * in memory beyond the statement being parsed. It is read twice:
+ * <ol>
+ *   <li>Syntax errors are collected, and only the FUNCTION definitions are kept. Calls may come
+ *   before the function, and what the analyzer infers about a function (return type, purity,
+ *   writes to its first parameter) needs all of them. This pass also notes the top-level
+ *   variables passed with {@code <=>}.</li>
+ *   <li>Each statement is analyzed, emitted into main and dropped, together with what the
+ *   analyzer learned about it. The kept FUNCTIONs take the place of their second parse.</li>
+ * </ol>
+ * What stays in memory is the FUNCTIONs, the top-level symbols and the largest single statement.
+ * <p>
+ * There is no optimizer: constant propagation and the removal of unused variables need every use
+ * of a variable in the program. The Java is the program as written.
+ * Only the Java backend streams: the bytecode backend builds its class in memory anyway.
+ */
+public class StreamingCompiler {
+    private StreamingCompiler() {}
+
+    /** Compiles {@code inputFile} into {@code outputDir/<className>.java}; returns the written path. */
+    public static Path compile(Path inputFile, Path outputDir, String className) throws IOException, CompilationException {
+        return compile(inputFile, outputDir, className, System.err);
+    }
+
+    /** Like {@link #compile(Path, Path, String)}, printing warnings to {@code err}. */
+    public static Path compile(Path inputFile, Path outputDir, String className, PrintStream err)
+            throws IOException, CompilationException {
+        // pass 1: syntax, FUNCTIONs and variables passed by reference
+        List<String> syntaxErrors = new ArrayList<>();
+        List<FunLangParser.StatementContext> functions = new ArrayList<>();
+        Map<String, Set<String>> byReference = new HashMap<>();
+        try (Statements in = new Statements(inputFile, syntaxErrors)) {
+            for (FunLangParser.StatementContext s; (s = in.next()) != null; ) {
+                if (s.funcDef() != null) functions.add(s);
+                else passedByReference(s, byReference);
+            }
+        }
+        if (!syntaxErrors.isEmpty()) throw new CompilationException("Syntax errors found:", syntaxErrors);
+
+        FunLangSemanticAnalyzer analyzer = new FunLangSemanticAnalyzer();
+        ParserRuleContext program = new FunLangParser.ProgramContext(null, 0);
+        analyzer.beginProgram(program, functions);
+        Set<String> cells = new HashSet<>();
+        for (var e : byReference.entrySet()) {
+            if (e.getValue().stream().anyMatch(analyzer::writesFirstParam)) cells.add(e.getKey());
+        }
+        analyzer.presetCells(cells);
+
+        // pass 2: analyze and emit statement by statement
+        Files.createDirectories(outputDir);
+        Path outFile = outputDir.resolve(className + ".java");
+        boolean failed;
+        try (Writer out = new OutputStreamWriter(Files.newOutputStream(outFile), StandardCharsets.UTF_8);
+             Statements in = new Statements(inputFile, new ArrayList<>())) {
+            FunLangToJavaVisitor generator = new FunLangToJavaVisitor(null, analyzer, className, null, out);
+            generator.beginProgram(program);
+            Iterator<FunLangParser.StatementContext> kept = functions.iterator();
+            for (FunLangParser.StatementContext s; (s = in.next()) != null; ) {
+                if (s.funcDef() != null) s = kept.next();
+                analyzer.visit(s);
+                // after the first error only the analysis goes on, to report the rest
+                if (analyzer.hasErrors()) continue;
+                generator.statement(s);
+                if (s.funcDef() == null) analyzer.forget(s);
+            }
+            analyzer.endProgram();
+            failed = analyzer.hasErrors();
+            if (!failed) generator.endProgram();
+        }
+        if (failed) {
+            Files.deleteIfExists(outFile);
+            throw new CompilationException("Semantic errors found:", analyzer.getErrors());
+        }
+        for (String warning : analyzer.getWarnings()) err.println("warning: " + warning);
+        return outFile;
+    }
+
+    /** Notes {@code x <=> F(...)} outside FUNCTIONs: the callees each top-level variable is passed to. */
+    private static void passedByReference(ParseTree tree, Map<String, Set<String>> byReference) {
+        Deque<ParseTree> stack = new ArrayDeque<>();
+        stack.push(tree);
+        while (!stack.isEmpty()) {
+            ParseTree n = stack.pop();
+            if (n instanceof FunLangParser.FuncDefContext) continue;
+            if (n instanceof FunLangParser.ChainExprContext c && !c.chainOp().isEmpty() && c.chainOp(0).getText().equals("<=>")) {
+                var variable = FunLangSemanticAnalyzer.bareVariable(c.comparisonExpr(0));
+                var callee = FunLangSemanticAnalyzer.bareCall(c.comparisonExpr(1));
+                if (variable != null && callee != null) {
+                    byReference.computeIfAbsent(variable.ID().getText(), k -> new HashSet<>()).add(callee.ID().getText());
+                }
+            }
+            for (int i = 0; i < n.getChildCount(); i++) stack.push(n.getChild(i));
+        }
+    }
+
+    /**
+     * The top-level statements of a file, parsed one at a time from unbuffered character and
+     * token streams. Tokens are copied out of the character stream, which keeps nothing behind
+     * the current token. Each statement is parsed with SLL prediction first, like
+     * {@link Compiler#parse}, and again with full LL and error recovery only if that fails.
+     */
+    private static final class Statements implements Closeable {
+        private final Reader reader;
+        private final UnbufferedTokenStream<Token> tokens;
+        private final FunLangParser parser;
+        private final ANTLRErrorListener errors;
+
+        Statements(Path file, List<String> syntaxErrors) throws IOException {
+            reader = Files.newBufferedReader(file);
+            errors = new BaseErrorListener() {
+                @Override
+                public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+                                        int charPositionInLine, String msg, RecognitionException e) {
+                    syntaxErrors.add("line " + line + ":" + charPositionInLine + " " + msg);
+                }
+            };
+            FunLangLexer lexer = new FunLangLexer(new UnbufferedCharStream(reader));
+            lexer.setTokenFactory(new CommonTokenFactory(true));
+            lexer.removeErrorListeners();
+            lexer.addErrorListener(errors);
+            tokens = new UnbufferedTokenStream<>(lexer);
+            parser = new FunLangParser(tokens);
+            parser.setBuildParseTree(true);
+        }
+
+        /** The next top-level statement, or null at the end of the file. */
+        FunLangParser.StatementContext next() {
+            if (tokens.LA(1) == Token.EOF) return null;
+            int mark = tokens.mark(), start = tokens.index();
+            try {
+                sll();
+                try {
+                    return parser.statement();
+                } catch (ParseCancellationException e) {
+                    tokens.seek(start);
+                    ll();
+                    FunLangParser.StatementContext s = parser.statement();
+                    // recovery that consumed nothing would stop here forever
+                    if (tokens.index() == start) parser.consume();
+                    return s;
+                }
+            } finally {
+                tokens.release(mark);
+            }
+        }
+
+        private void sll() {
+            parser.removeErrorListeners();
+            parser.setErrorHandler(new BailErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        }
+
+        private void ll() {
+            parser.addErrorListener(errors);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        }
+
+        @Override
+        public void close() throws IOException { reader.close(); }
+    }
+}
@@ -0,0 +1,139 @@
+package edu.ktu.funlang.core;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps the compiler running and recompiles sources as they change.
+ * <p>
+ * Events are debounced so an editor's burst of writes triggers one compile, only the files that
+ * changed are recompiled, and outputs are left untouched when the generated Java is identical.
+ * Because the JVM stays up, the lexer, parser and visitors are JIT-compiled after the first rounds.
+ */
+public class WatchCompiler {
+    private static final long DEBOUNCE_MS = 75;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final String WARMUP_SOURCE = String.join("\n",
+            "integer a = 10;",
+            "decimal b = 2.5;",
+            "text msg = \"warm\";",
+            "IF a < 1 THEN { CONSOLE -> msg; } ELSE IF a < 10 THEN { CONSOLE -> b; } ELSE { CONSOLE -> a*b/2; }",
+            "FOR i IN 1:3 DO { CONSOLE -> MIN(i, a); }",
+            "WHILE a > 0 DO { a = a - 1; }",
+            "FUNCTION Add(integer x, decimal y) { decimal z = x+y; RETURN SQRT(z); }",
+            "CONSOLE -> Add(a, b);");
+
+    private final Path outputDir;
+    private final List<String> specs;
+    private final PrintStream log;
+    private final Set<Path> inputs = new LinkedHashSet<>();
+    private final Map<Path, byte[]> lastOutput = new HashMap<>();
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+
+    public WatchCompiler(Path outputDir, List<String> specs, PrintStream log) {
+        this.outputDir = outputDir;
+        this.specs = specs;
+        this.log = log;
+    }
+
+    /** Compiles everything once, then blocks forever recompiling changed files. */
+    public void watch() throws IOException, InterruptedException {
+        try (WatchService ws = FileSystems.getDefault().newWatchService()) {
+            refreshInputs(ws);
+            for (Path p : inputs) recompile(p);
+            warmUp();
+            log.println("[watch] watching " + inputs.size() + " file(s), Ctrl+C to stop");
+
+            while (true) {
+                Set<Path> changed = new LinkedHashSet<>();
+                boolean created = collect(ws.take(), changed);
+
+                // debounce: keep draining until the directory has been quiet for a while
+                WatchKey next;
+                while ((next = ws.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    created |= collect(next, changed);
+                }
+
+                if (created) refreshInputs(ws);
+                for (Path p : changed) {
+                    if (inputs.contains(p) && Files.isRegularFile(p)) recompile(p);
+                }
+            }
+        }
+    }
+
+    /** Returns true if new entries appeared, which may add inputs or directories to watch. */
+    private boolean collect(WatchKey key, Set<Path> changed) {
+        Path dir = keys.get(key);
+        boolean created = false;
+        for (WatchEvent<?> ev : key.pollEvents()) {
+            if (ev.kind() == OVERFLOW) {
+                changed.addAll(inputs);
+                continue;
+            }
+            Path p = dir.resolve((Path) ev.context()).toAbsolutePath().normalize();
+            if (ev.kind() == ENTRY_CREATE) created = true;
+            if (ev.kind() == ENTRY_DELETE) inputs.remove(p);
+            else changed.add(p);
+        }
+        if (!key.reset()) keys.remove(key);
+        return created;
+    }
+
+    private void refreshInputs(WatchService ws) throws IOException {
+        for (Path p : BatchCompiler.collectInputs(specs)) {
+            Path abs = p.toAbsolutePath().normalize();
+            if (inputs.add(abs)) register(ws, abs.getParent());
+        }
+        // watch directory specs too, so files created there later are picked up
+        for (String spec : specs) {
+            Path p = Paths.get(spec);
+            if (Files.isDirectory(p)) register(ws, p.toAbsolutePath().normalize());
+        }
+    }
+
+    private void register(WatchService ws, Path dir) throws IOException {
+        if (dir == null || keys.containsValue(dir)) return;
+        keys.put(dir.register(ws, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+    }
+
+    private void recompile(Path input) {
+        long t0 = System.nanoTime();
+        String className = Compiler.classNameFor(input);
+        Path outFile = BatchCompiler.targetDir(outputDir, input).resolve(className + ".java");
+        try {
+            byte[] generated = Compiler.translate(Files.readString(input), className)
+                    .getBytes(StandardCharsets.UTF_8);
+            byte[] previous = lastOutput.get(outFile);
+            if (previous == null && Files.isRegularFile(outFile)) previous = Files.readAllBytes(outFile);
+
+            boolean same = Arrays.equals(previous, generated);
+            if (!same) {
+                Files.createDirectories(outFile.getParent());
+                Files.write(outFile, generated);
+            }
+            lastOutput.put(outFile, generated);
+            log.printf(Locale.ROOT, "[watch] %s %s in %.2f ms%n", input.getFileName(),
+                    same ? "unchanged" : "-> " + outFile, (System.nanoTime() - t0) / 1_000_000.0);
+        } catch (CompilationException e) {
+            log.println("[watch] " + input.getFileName() + ": " + e.getMessage());
+            e.getErrors().forEach(err -> log.println("    " + err));
+        } catch (IOException e) {
+            log.println("[watch] " + input.getFileName() + ": " + e);
+        }
+    }
+
+    /** Runs the pipeline on a built-in program so the first edit already hits JIT-compiled code. */
+    static void warmUp() {
+        try {
+            for (int round = 0; round < WARMUP_ROUNDS; round++) Compiler.translate(WARMUP_SOURCE);
+        } catch (CompilationException e) {
+            throw new IllegalStateException("warm-up program no longer compiles", e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package edu.ktu.funlang.runtime;
+
+import java.util.*;
+
+/**
+ * Growable list of booleans packed 64 to a {@code long}; the runtime form of FunLang
+ * {@code list(boolean)}. Bits at and beyond {@code size} are always zero, which lets
+ * {@link #addAll(BooleanList)} and {@link #count()} work a word at a time.
+ */
+public final class BooleanList {
+    private long[] words;
+    private int size;
+
+    public BooleanList() { this(ListSupport.DEFAULT_CAPACITY); }
+
+    public BooleanList(int capacity) { words = new long[wordsFor(capacity)]; }
+
+    public static BooleanList of(boolean... values) {
+        BooleanList list = new BooleanList(values.length);
+        for (boolean v : values) list.add(v);
+        return list;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    public boolean get(int index) {
+        Objects.checkIndex(index, size);
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public void set(int index, boolean value) {
+        Objects.checkIndex(index, size);
+        if (value) words[index >>> 6] |= 1L << index;
+        else words[index >>> 6] &= ~(1L << index);
+    }
+
+    public void add(boolean value) {
+        ensureCapacity(size + 1);
+        if (value) words[size >>> 6] |= 1L << size;
+        size++;
+    }
+
+    public void addAll(BooleanList other) {
+        int n = other.size;
+        ensureCapacity(size + n);
+        int base = size >>> 6, shift = size & 63, count = wordsFor(n);
+        // appending a list to itself would otherwise read words it has just written
+        long[] src = other == this ? Arrays.copyOf(words, count) : other.words;
+        if (shift == 0) {
+            System.arraycopy(src, 0, words, base, count);
+        } else {
+            for (int k = 0; k < count; k++) {
+                long w = src[k];
+                words[base + k] |= w << shift;
+                if (base + k + 1 < words.length) words[base + k + 1] |= w >>> (64 - shift);
+            }
+        }
+        size += n;
+    }
+
+    /** Number of {@code true} elements. */
+    public int count() {
+        int c = 0;
+        for (int k = 0, n = wordsFor(size); k < n; k++) c += Long.bitCount(words[k]);
+        return c;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (wordsFor(capacity) > words.length) {
+            words = Arrays.copyOf(words, wordsFor(ListSupport.grow(words.length << 6, capacity)));
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0, wordsFor(size), 0L);
+        size = 0;
+    }
+
+    public boolean[] toArray() {
+        boolean[] out = new boolean[size];
+        for (int i = 0; i < size; i++) out[i] = (words[i >>> 6] & (1L << i)) != 0;
+        return out;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BooleanList other) || other.size != size) return false;
+        return Arrays.equals(words, 0, wordsFor(size), other.words, 0, wordsFor(size));
+    }
+
+    @Override
+    public int hashCode() {
+        int h = size;
+        for (int k = 0, n = wordsFor(size); k < n; k++) h = 31 * h + Long.hashCode(words[k]);
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append((words[i >>> 6] & (1L << i)) != 0);
+        }
+        return sb.append(']').toString();
+    }
+
+    private static int wordsFor(int bits) { return (bits + 63) >>> 6; }
+}
@@ -0,0 +1,154 @@
+package edu.ktu.funlang.runtime;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Standard output for {@code CONSOLE -> value}. Lines collect in one large buffer, with no lock
+ * and no flush per line, and reach {@link System#out} in big writes: when the buffer fills, on
+ * {@code CONSOLE FLUSH;}, when the program ends, and from a shutdown hook if it ends any other
+ * way. Integers, booleans and whole decimals go into the buffer as bytes without building a
+ * String first. Programs print from one thread only ({@code PARALLEL FOR} bodies can't print),
+ * which is what lets the buffer go unsynchronized.
+ * <p>
+ * Interactive programs can get a flush after every line back with
+ * {@code -Dfunlang.console.lineFlush=true}, or {@code --line-flush} when run through the compiler.
+ */
+public final class ConsoleOutput {
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    /** What {@link System#out} encodes text with. */
+    private static final Charset CHARSET = stdoutCharset();
+
+    private static final byte[] buffer = new byte[BUFFER_SIZE];
+    private static int count;
+    private static boolean lineFlush = Boolean.getBoolean("funlang.console.lineFlush");
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(ConsoleOutput::flush, "funlang-console-flush"));
+    }
+
+    private ConsoleOutput() {}
+
+    /** Flushes after every line from now on (or stops doing so). */
+    public static void setLineFlush(boolean on) {
+        flush();
+        lineFlush = on;
+    }
+
+    public static void println(int value) {
+        room(11 + NEWLINE.length);
+        digits(value);
+        endLine();
+    }
+
+    /** Prints what {@link Double#toString(double)} would. */
+    public static void println(double value) {
+        // whole numbers below 10^7 print as digits and ".0"; -0.0 and everything else take the long way
+        if (value == (long) value && Math.abs(value) < 1e7 && Double.doubleToRawLongBits(value) != Long.MIN_VALUE) {
+            room(10 + NEWLINE.length);
+            digits((long) value);
+            buffer[count++] = '.';
+            buffer[count++] = '0';
+            endLine();
+        } else {
+            println(Double.toString(value));
+        }
+    }
+
+    public static void println(boolean value) {
+        byte[] text = value ? TRUE : FALSE;
+        room(text.length + NEWLINE.length);
+        System.arraycopy(text, 0, buffer, count, text.length);
+        count += text.length;
+        endLine();
+    }
+
+    public static void println(String text) {
+        if (text == null) text = "null";
+        int length = text.length();
+        if (length + NEWLINE.length <= BUFFER_SIZE) {
+            room(length + NEWLINE.length);
+            int at = count;
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                if (c >= 0x80) {
+                    at = -1;
+                    break;
+                }
+                buffer[at++] = (byte) c;
+            }
+            if (at >= 0) {
+                count = at;
+                endLine();
+                return;
+            }
+        }
+        byte[] bytes = text.getBytes(CHARSET);
+        if (bytes.length + NEWLINE.length > BUFFER_SIZE) {
+            drain();
+            System.out.write(bytes, 0, bytes.length);
+        } else {
+            room(bytes.length + NEWLINE.length);
+            System.arraycopy(bytes, 0, buffer, count, bytes.length);
+            count += bytes.length;
+        }
+        endLine();
+    }
+
+    /** Lists and anything else print their {@code toString()}. */
+    public static void println(Object value) {
+        println(String.valueOf(value));
+    }
+
+    /** Hands everything printed so far to {@link System#out} and flushes it. */
+    public static void flush() {
+        drain();
+    }
+
+    private static void room(int bytes) {
+        if (count + bytes > BUFFER_SIZE) drain();
+    }
+
+    private static void endLine() {
+        System.arraycopy(NEWLINE, 0, buffer, count, NEWLINE.length);
+        count += NEWLINE.length;
+        if (lineFlush) drain();
+    }
+
+    private static void digits(long value) {
+        long rest = value;
+        if (rest < 0) {
+            buffer[count++] = '-';
+            rest = -rest;
+        }
+        int start = count;
+        do {
+            buffer[count++] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        for (int i = start, j = count - 1; i < j; i++, j--) {
+            byte b = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = b;
+        }
+    }
+
+    /** Goes to whatever {@link System#out} is now, so redirecting it keeps working. */
+    private static void drain() {
+        if (count > 0) System.out.write(buffer, 0, count);
+        count = 0;
+        System.out.flush();
+    }
+
+    private static Charset stdoutCharset() {
+        for (String property : new String[]{"stdout.encoding", "sun.stdout.encoding"}) {
+            String name = System.getProperty(property);
+            if (name != null && Charset.isSupported(name)) return Charset.forName(name);
+        }
+        return Charset.defaultCharset();
+    }
+}
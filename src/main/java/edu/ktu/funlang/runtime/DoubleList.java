@@ -0,0 +1,74 @@
+package edu.ktu.funlang.runtime;
+
+import java.util.*;
+
+/** Growable list of unboxed {@code double} values; the runtime form of FunLang {@code list(decimal)}. */
+public final class DoubleList {
+    private double[] data;
+    private int size;
+
+    public DoubleList() { this(ListSupport.DEFAULT_CAPACITY); }
+
+    public DoubleList(int capacity) { data = new double[capacity]; }
+
+    public static DoubleList of(double... values) {
+        DoubleList list = new DoubleList(values.length);
+        System.arraycopy(values, 0, list.data, 0, values.length);
+        list.size = values.length;
+        return list;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    public double get(int index) { return data[Objects.checkIndex(index, size)]; }
+
+    public void set(int index, double value) { data[Objects.checkIndex(index, size)] = value; }
+
+    public void add(double value) {
+        if (size == data.length) data = Arrays.copyOf(data, ListSupport.grow(data.length, size + 1));
+        data[size++] = value;
+    }
+
+    public void addAll(DoubleList other) { addAll(other.data, 0, other.size); }
+
+    public void addAll(double[] values, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, values.length);
+        ensureCapacity(size + length);
+        System.arraycopy(values, offset, data, size, length);
+        size += length;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length) data = Arrays.copyOf(data, ListSupport.grow(data.length, capacity));
+    }
+
+    public void clear() { size = 0; }
+
+    public double[] toArray() { return Arrays.copyOf(data, size); }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DoubleList other) || other.size != size) return false;
+        for (int i = 0; i < size; i++) if (Double.doubleToLongBits(data[i]) != Double.doubleToLongBits(other.data[i])) return false;
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 1;
+        for (int i = 0; i < size; i++) h = 31 * h + Double.hashCode(data[i]);
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(data[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
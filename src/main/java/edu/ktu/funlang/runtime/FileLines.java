@@ -0,0 +1,101 @@
+package edu.ktu.funlang.runtime;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The lines of a UTF-8 file for {@code FOR line IN FILE path}, read through a window of the file
+ * mapped into memory that slides forward as lines are consumed. Only one window and one line are
+ * held at a time, so a multi-gigabyte file streams in constant heap; scanning the mapped bytes
+ * for line ends needs no read calls and no copying beyond the line itself. Lines end at
+ * {@code \n}, with a preceding {@code \r} dropped.
+ */
+public final class FileLines implements AutoCloseable {
+    static final int WINDOW = 64 << 20;
+
+    private final FileChannel channel;
+    private final long size;
+    /** The file as {@link FileOutput} knows it, until this stops reading it. */
+    private Path reading;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int pos;
+    private byte[] line = new byte[256];
+
+    private FileLines(FileChannel channel, Path reading) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.reading = reading;
+    }
+
+    /**
+     * Opens {@code path}; anything this run wrote to it so far is flushed first, and writing it
+     * fails until the lines are closed.
+     */
+    public static FileLines open(String path) {
+        Path key = FileOutput.startReading(path);
+        try {
+            return new FileLines(FileChannel.open(Path.of(path), StandardOpenOption.READ), key);
+        } catch (IOException e) {
+            FileOutput.stopReading(key);
+            throw new UncheckedIOException("Cannot read FILE " + path, e);
+        }
+    }
+
+    /** The next line, or null at the end of the file (which also closes it). */
+    public String next() {
+        try {
+            while (true) {
+                long start = windowStart + pos;
+                if (start >= size) {
+                    close();
+                    return null;
+                }
+                if (window != null) {
+                    int limit = window.limit();
+                    for (int i = pos; i < limit; i++) {
+                        if (window.get(i) == '\n') return take(i, i + 1);
+                    }
+                    if (windowStart + limit == size) return take(limit, limit);
+                }
+                // the line runs past the window: map the next one from the line's start, large enough to hold it
+                int length = (int) Math.min(size - start, Math.max(WINDOW, window == null ? 0 : 2L * (window.limit() - pos)));
+                window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                windowStart = start;
+                pos = 0;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String take(int end, int next) {
+        int length = end - pos;
+        if (length > 0 && window.get(end - 1) == '\r') length--;
+        if (length > line.length) line = new byte[Math.max(length, line.length * 2)];
+        window.get(pos, line, 0, length);
+        pos = next;
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        window = null;
+        windowStart = size;
+        pos = 0;
+        if (reading != null) {
+            FileOutput.stopReading(reading);
+            reading = null;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package edu.ktu.funlang.runtime;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Files written with {@code FILE path -> value}. Every path gets one channel for the whole run
+ * (the first write replaces the file) and a large buffer, so a line costs a copy into memory
+ * and the disk sees a few big writes. Generated programs call {@link #closeAll()} when they
+ * finish; a shutdown hook covers programs that exit any other way.
+ * <p>
+ * A file that a {@code FOR line IN FILE} loop is reading is mapped into memory, so writing it
+ * (and above all truncating it) while the loop runs is an error rather than a crash.
+ */
+public final class FileOutput {
+    static final int BUFFER_SIZE = 1 << 20;
+
+    private static final Map<Path, FileOutput> OPEN = new HashMap<>();
+    /** The same files by the name the program used, so a write doesn't resolve its path every time. */
+    private static final Map<String, FileOutput> BY_NAME = new ConcurrentHashMap<>();
+    /** Files that FOR loops are reading, with how many loops read each. */
+    private static final Map<Path, Integer> READING = new HashMap<>();
+    private static boolean hooked;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private FileOutput(FileChannel channel) { this.channel = channel; }
+
+    /** Appends {@code text} and a line break to the file at {@code path}. */
+    public static void write(String path, String text) {
+        FileOutput out = BY_NAME.get(path);
+        if (out == null) {
+            synchronized (OPEN) {
+                if (READING.containsKey(key(path))) {
+                    throw new IllegalStateException("Cannot write FILE " + path + " while a FOR loop is reading it");
+                }
+                out = OPEN.get(key(path));
+                if (out == null) out = open(path);
+                BY_NAME.put(path, out);
+            }
+        }
+        out.line(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Marks {@code path} as read by a FOR loop until {@link #stopReading}: anything written to it so
+     * far is flushed, and writes to it fail until then. Returns the file's key for stopReading.
+     */
+    static Path startReading(String path) {
+        Path key = key(path);
+        FileOutput out;
+        synchronized (OPEN) {
+            READING.merge(key, 1, Integer::sum);
+            out = OPEN.get(key);
+            // writes by name have to go past the READING check again
+            if (out != null) BY_NAME.values().removeIf(o -> o == out);
+        }
+        if (out != null) out.drain();
+        return key;
+    }
+
+    static void stopReading(Path key) {
+        synchronized (OPEN) {
+            READING.computeIfPresent(key, (k, n) -> n == 1 ? null : n - 1);
+        }
+    }
+
+    /** Flushes and closes every file; the next write to one of them starts it over. */
+    public static void closeAll() {
+        List<FileOutput> all;
+        synchronized (OPEN) {
+            all = new ArrayList<>(OPEN.values());
+            OPEN.clear();
+            BY_NAME.clear();
+        }
+        for (FileOutput out : all) out.close();
+    }
+
+    private static FileOutput open(String path) {
+        if (!hooked) {
+            Runtime.getRuntime().addShutdownHook(new Thread(FileOutput::closeAll, "funlang-file-flush"));
+            hooked = true;
+        }
+        try {
+            FileOutput out = new FileOutput(FileChannel.open(key(path), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+            OPEN.put(key(path), out);
+            return out;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write FILE " + path, e);
+        }
+    }
+
+    private static Path key(String path) { return Path.of(path).toAbsolutePath().normalize(); }
+
+    private synchronized void line(byte[] bytes) {
+        if (bytes.length + 1 > buffer.remaining()) drain();
+        if (bytes.length + 1 > buffer.capacity()) {
+            write(ByteBuffer.wrap(bytes));
+        } else {
+            buffer.put(bytes);
+        }
+        buffer.put((byte) '\n');
+    }
+
+    private synchronized void drain() {
+        buffer.flip();
+        write(buffer);
+        buffer.clear();
+    }
+
+    private void write(ByteBuffer bytes) {
+        try {
+            while (bytes.hasRemaining()) channel.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private synchronized void close() {
+        drain();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package edu.ktu.funlang.runtime;
+
+/** Helpers for a {@code FOR} whose STEP or end is only known when the program runs. */
+public final class ForLoop {
+    private ForLoop() {}
+
+    /** The STEP itself; a zero STEP would never reach the end and is an error instead. */
+    public static int checkStep(int step) {
+        if (step == 0) throw new IllegalArgumentException("FOR needs a non-zero STEP, got 0");
+        return step;
+    }
+
+    /**
+     * The last value the integer loop variable takes on its way to a decimal end: the end
+     * rounded down when counting up and rounded up when counting down, so the loop stops where
+     * comparing the variable with the end itself would. A NaN end is never reached.
+     */
+    public static int last(double end, int step) {
+        if (Double.isNaN(end)) return step < 0 ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+        return (int) (step < 0 ? Math.ceil(end) : Math.floor(end));
+    }
+}
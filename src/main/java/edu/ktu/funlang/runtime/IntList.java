@@ -0,0 +1,74 @@
+package edu.ktu.funlang.runtime;
+
+import java.util.*;
+
+/** Growable list of unboxed {@code int} values; the runtime form of FunLang {@code list(integer)}. */
+public final class IntList {
+    private int[] data;
+    private int size;
+
+    public IntList() { this(ListSupport.DEFAULT_CAPACITY); }
+
+    public IntList(int capacity) { data = new int[capacity]; }
+
+    public static IntList of(int... values) {
+        IntList list = new IntList(values.length);
+        System.arraycopy(values, 0, list.data, 0, values.length);
+        list.size = values.length;
+        return list;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    public int get(int index) { return data[Objects.checkIndex(index, size)]; }
+
+    public void set(int index, int value) { data[Objects.checkIndex(index, size)] = value; }
+
+    public void add(int value) {
+        if (size == data.length) data = Arrays.copyOf(data, ListSupport.grow(data.length, size + 1));
+        data[size++] = value;
+    }
+
+    public void addAll(IntList other) { addAll(other.data, 0, other.size); }
+
+    public void addAll(int[] values, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, values.length);
+        ensureCapacity(size + length);
+        System.arraycopy(values, offset, data, size, length);
+        size += length;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length) data = Arrays.copyOf(data, ListSupport.grow(data.length, capacity));
+    }
+
+    public void clear() { size = 0; }
+
+    public int[] toArray() { return Arrays.copyOf(data, size); }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IntList other) || other.size != size) return false;
+        for (int i = 0; i < size; i++) if (data[i] != other.data[i]) return false;
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 1;
+        for (int i = 0; i < size; i++) h = 31 * h + Integer.hashCode(data[i]);
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(data[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,17 @@
+package edu.ktu.funlang.runtime;
+
+/** Capacity arithmetic shared by the list classes. */
+final class ListSupport {
+    static final int DEFAULT_CAPACITY = 10;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private ListSupport() {}
+
+    /** Grows by half again (amortized O(1) appends), but at least to {@code minCapacity}. */
+    static int grow(int oldCapacity, int minCapacity) {
+        if (minCapacity < 0 || minCapacity > MAX_CAPACITY) throw new OutOfMemoryError("list too large: " + minCapacity);
+        int grown = oldCapacity + Math.max(oldCapacity >> 1, DEFAULT_CAPACITY);
+        if (grown < 0 || grown > MAX_CAPACITY) grown = MAX_CAPACITY;
+        return Math.max(grown, minCapacity);
+    }
+}
@@ -0,0 +1,64 @@
+package edu.ktu.funlang.runtime;
+
+/**
+ * Bounded memo cache of a pure FUNCTION, keyed by its arguments packed into one {@code long}.
+ * Direct-mapped: each key has exactly one slot and a colliding key replaces the old entry, so
+ * the table never grows and a lookup is a single probe. Entries are immutable and published with
+ * one reference write, so callers on several threads can share a table without locking and never
+ * see a key paired with another call's result.
+ */
+public final class MemoTable {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /** One cached call: primitive results are stored as raw bits in {@code value}, text in {@code ref}. */
+    public static final class Entry {
+        final long key;
+        final long value;
+        final Object ref;
+
+        Entry(long key, long value, Object ref) {
+            this.key = key;
+            this.value = value;
+            this.ref = ref;
+        }
+
+        public int asInt() { return (int) value; }
+        public double asDouble() { return Double.longBitsToDouble(value); }
+        public boolean asBoolean() { return value != 0; }
+        public Object asRef() { return ref; }
+    }
+
+    private final Entry[] entries;
+    private final int shift;
+
+    public MemoTable() { this(DEFAULT_CAPACITY); }
+
+    /** {@code capacity} is rounded up to a power of two. */
+    public MemoTable(int capacity) {
+        int bits = 64 - Long.numberOfLeadingZeros(Math.max(1, capacity - 1));
+        entries = new Entry[1 << bits];
+        shift = 64 - bits;
+    }
+
+    /** The entry for {@code key}, or null on a miss. */
+    public Entry get(long key) {
+        Entry e = entries[index(key)];
+        return e != null && e.key == key ? e : null;
+    }
+
+    public void putInt(long key, int value) { put(key, value, null); }
+    public void putDouble(long key, double value) { put(key, Double.doubleToRawLongBits(value), null); }
+    public void putBoolean(long key, boolean value) { put(key, value ? 1 : 0, null); }
+    public void putRef(long key, Object value) { put(key, 0, value); }
+
+    public int capacity() { return entries.length; }
+
+    private void put(long key, long value, Object ref) {
+        entries[index(key)] = new Entry(key, value, ref);
+    }
+
+    /** Fibonacci hashing: consecutive integer arguments spread over the whole table. */
+    private int index(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+}
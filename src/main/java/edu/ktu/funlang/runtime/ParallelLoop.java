@@ -0,0 +1,87 @@
+package edu.ktu.funlang.runtime;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs the iterations of a {@code PARALLEL FOR} in chunks on the common fork/join pool. Each
+ * chunk folds into its own accumulators, starting from the identity of its reduction, and the
+ * partial results are combined in chunk order once all chunks are done, so the outcome doesn't
+ * depend on which worker finished first. Reductions are named by one character each:
+ * {@code '+'} for a sum, {@code '<'} for MIN and {@code '>'} for MAX.
+ */
+public final class ParallelLoop {
+    /** Chunks per worker, so that a worker finishing early can steal the rest of a slow one. */
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    /** The iterations from {@code first} to {@code last} inclusive, in steps of {@code step}. */
+    @FunctionalInterface
+    public interface Chunk {
+        void run(int first, int last, int step, int[] ints, double[] doubles);
+    }
+
+    private ParallelLoop() {}
+
+    /**
+     * {@code FOR i IN start:end STEP step}, with the bounds already evaluated. {@code ints} and
+     * {@code doubles} hold the reduced variables' values before the loop and receive their values
+     * after it; {@code intOps} and {@code doubleOps} name their reductions.
+     */
+    public static void run(int start, int end, int step, String intOps, int[] ints, String doubleOps, double[] doubles,
+                           Chunk body) {
+        if (step <= 0) throw new IllegalArgumentException("PARALLEL FOR needs a positive STEP, got " + step);
+        if (start > end) return;
+        long count = ((long) end - start) / step + 1;
+        int chunks = (int) Math.min(count, (long) ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_WORKER);
+        int[][] intParts = new int[chunks][];
+        double[][] doubleParts = new double[chunks][];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            int chunk = c;
+            int first = (int) (start + count * c / chunks * step);
+            int last = (int) (start + (count * (c + 1) / chunks - 1) * step);
+            intParts[c] = intIdentities(intOps);
+            doubleParts[c] = doubleIdentities(doubleOps);
+            tasks.add(ForkJoinTask.adapt(() -> body.run(first, last, step, intParts[chunk], doubleParts[chunk])));
+        }
+        if (chunks == 1) tasks.get(0).invoke();
+        else ForkJoinTask.invokeAll(tasks);
+        for (int c = 0; c < chunks; c++) {
+            for (int k = 0; k < ints.length; k++) ints[k] = combine(intOps.charAt(k), ints[k], intParts[c][k]);
+            for (int k = 0; k < doubles.length; k++) doubles[k] = combine(doubleOps.charAt(k), doubles[k], doubleParts[c][k]);
+        }
+    }
+
+    /** As above, for a decimal end: the iterations stop at the last integer not past it. */
+    public static void run(int start, double end, int step, String intOps, int[] ints, String doubleOps, double[] doubles,
+                           Chunk body) {
+        run(start, ForLoop.last(end, step), step, intOps, ints, doubleOps, doubles, body);
+    }
+
+    private static int[] intIdentities(String ops) {
+        int[] values = new int[ops.length()];
+        for (int k = 0; k < values.length; k++) {
+            char op = ops.charAt(k);
+            values[k] = op == '<' ? Integer.MAX_VALUE : op == '>' ? Integer.MIN_VALUE : 0;
+        }
+        return values;
+    }
+
+    private static double[] doubleIdentities(String ops) {
+        double[] values = new double[ops.length()];
+        for (int k = 0; k < values.length; k++) {
+            char op = ops.charAt(k);
+            values[k] = op == '<' ? Double.POSITIVE_INFINITY : op == '>' ? Double.NEGATIVE_INFINITY : 0;
+        }
+        return values;
+    }
+
+    private static int combine(char op, int a, int b) {
+        return op == '<' ? Math.min(a, b) : op == '>' ? Math.max(a, b) : a + b;
+    }
+
+    private static double combine(char op, double a, double b) {
+        return op == '<' ? Math.min(a, b) : op == '>' ? Math.max(a, b) : a + b;
+    }
+}
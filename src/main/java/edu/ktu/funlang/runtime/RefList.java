@@ -0,0 +1,75 @@
+package edu.ktu.funlang.runtime;
+
+import java.util.*;
+
+/** Growable list of references; the runtime form of {@code list(text)} and of nested lists. */
+public final class RefList<T> {
+    private Object[] data;
+    private int size;
+
+    public RefList() { this(ListSupport.DEFAULT_CAPACITY); }
+
+    public RefList(int capacity) { data = new Object[capacity]; }
+
+    @SafeVarargs
+    public static <T> RefList<T> of(T... values) {
+        RefList<T> list = new RefList<>(values.length);
+        for (T value : values) list.data[list.size++] = value;
+        return list;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    @SuppressWarnings("unchecked")
+    public T get(int index) { return (T) data[Objects.checkIndex(index, size)]; }
+
+    public void set(int index, T value) { data[Objects.checkIndex(index, size)] = value; }
+
+    public void add(T value) {
+        if (size == data.length) data = Arrays.copyOf(data, ListSupport.grow(data.length, size + 1));
+        data[size++] = value;
+    }
+
+    public void addAll(RefList<? extends T> other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.data, 0, data, size, other.size);
+        size += other.size;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length) data = Arrays.copyOf(data, ListSupport.grow(data.length, capacity));
+    }
+
+    /** Drops the references too, so cleared elements can be collected. */
+    public void clear() {
+        Arrays.fill(data, 0, size, null);
+        size = 0;
+    }
+
+    public Object[] toArray() { return Arrays.copyOf(data, size); }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RefList<?> other) || other.size != size) return false;
+        return Arrays.equals(data, 0, size, other.data, 0, size);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 1;
+        for (int i = 0; i < size; i++) h = 31 * h + Objects.hashCode(data[i]);
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(data[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -1,5 +1,27 @@
 package edu.ktu.funlang.semantics.rules;
 
+import java.util.*;
+
 public class FunctionSymbol extends Symbol {
-    public FunctionSymbol(String name) { super(name); }
+    private final List<String> paramTypes;
+    private final boolean builtin;
+    private String returnType;
+
+    /** A built-in function; its typing rules live in the analyzer. */
+    public FunctionSymbol(String name) { this(name, List.of(), true); }
+
+    public FunctionSymbol(String name, List<String> paramTypes) { this(name, paramTypes, false); }
+
+    private FunctionSymbol(String name, List<String> paramTypes, boolean builtin) {
+        super(name);
+        this.paramTypes = List.copyOf(paramTypes);
+        this.builtin = builtin;
+    }
+
+    public List<String> getParamTypes() { return paramTypes; }
+    public boolean isBuiltin() { return builtin; }
+
+    /** Inferred FunLang type of the RETURN values, "void" without RETURN, null while unknown. */
+    public String getReturnType() { return returnType; }
+    public void setReturnType(String returnType) { this.returnType = returnType; }
 }
@@ -0,0 +1,12 @@
+package edu.ktu.funlang.semantics.rules;
+
+/**
+ * A mutable {@code int} cell for by-reference arguments ({@code x <=> F()}), the unboxed
+ * counterpart of {@link Value}. The field is public so generated code reads and writes it directly.
+ */
+public final class IntRef {
+    public int value;
+    public IntRef() {}
+    public IntRef(int value) { this.value = value; }
+    @Override public String toString() { return String.valueOf(value); }
+}
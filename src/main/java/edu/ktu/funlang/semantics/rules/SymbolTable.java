@@ -2,24 +2,116 @@ package edu.ktu.funlang.semantics.rules;
 
 import java.util.*;
 
+/**
+ * The names in scope while the analyzer walks the tree. One map holds the innermost binding of
+ * every visible name, each remembering the binding it shadows, so a lookup is one hash probe
+ * however deeply the scopes nest, and leaving a scope unwinds only the names it defined.
+ * <p>
+ * A variable gets its slot and scope depth when it is defined. Slots count up from 0 within a
+ * frame (a function body, or the main program), and a block's slots are reused once it ends.
+ * Functions are visible everywhere, but a variable only inside the frame that defines it.
+ */
 public class SymbolTable {
-    private Deque<Map<String, Symbol>> scopes = new ArrayDeque<>();
+    private static final class Binding {
+        final Symbol symbol;
+        final int depth;
+        /** How many frames were open when it was defined; the main program is frame 0. */
+        final int frame;
+        final Binding shadowed;
 
-    public void enterScope() { scopes.push(new HashMap<>()); }
-    public void exitScope() { scopes.pop(); }
+        Binding(Symbol symbol, int depth, int frame, Binding shadowed) {
+            this.symbol = symbol;
+            this.depth = depth;
+            this.frame = frame;
+            this.shadowed = shadowed;
+        }
+    }
+
+    private final Map<String, Binding> visible = new HashMap<>();
+    /** Names in definition order; each open scope starts at one of the marks. */
+    private final List<String> defined = new ArrayList<>();
+    private int[] marks = new int[16];
+    private int[] slotMarks = new int[16];
+    private int depth = 0;
+    private int nextSlot = 0;
+    /** The slot count of the frame being defined, and those of the frames it is nested in. */
+    private int frameSlots = 0;
+    private final Deque<int[]> frames = new ArrayDeque<>();
+    private int definedTotal = 0;
+
+    public void enterScope() {
+        if (depth == marks.length) {
+            marks = Arrays.copyOf(marks, depth * 2);
+            slotMarks = Arrays.copyOf(slotMarks, depth * 2);
+        }
+        marks[depth] = defined.size();
+        slotMarks[depth] = nextSlot;
+        depth++;
+    }
 
-    public void define(Symbol s) { if (!scopes.isEmpty()) scopes.peek().put(s.getName(), s); }
-    public Optional<Symbol> resolve(String name) {
-        for (Map<String, Symbol> m : scopes) {
-            if (m.containsKey(name)) return Optional.of(m.get(name));
+    public void exitScope() {
+        depth--;
+        for (int i = defined.size() - 1; i >= marks[depth]; i--) {
+            String name = defined.remove(i);
+            Binding b = visible.get(name);
+            if (b.shadowed == null) visible.remove(name);
+            else visible.put(name, b.shadowed);
         }
-        return Optional.empty();
+        nextSlot = slotMarks[depth];
     }
-    public Optional<Symbol> resolveInCurrentScope(String name) {
-        if (scopes.isEmpty()) return Optional.empty();
-        Map<String, Symbol> top = scopes.peek();
-        return Optional.ofNullable(top.get(name));
+
+    /** A scope whose variables are numbered from slot 0, such as a function body. */
+    public void enterFrame() {
+        frames.push(new int[]{nextSlot, frameSlots});
+        nextSlot = 0;
+        frameSlots = 0;
+        enterScope();
+    }
+
+    /** Leaves a frame's scope and returns how many slots its variables need. */
+    public int exitFrame() {
+        exitScope();
+        int slots = frameSlots;
+        int[] outer = frames.pop();
+        nextSlot = outer[0];
+        frameSlots = outer[1];
+        return slots;
     }
-}
 
+    /** Slots the variables of the current frame need so far. */
+    public int frameSlots() { return frameSlots; }
 
+    public void define(Symbol s) {
+        if (depth == 0) return;
+        if (s instanceof VarSymbol v) {
+            v.bind(nextSlot++, depth);
+            frameSlots = Math.max(frameSlots, nextSlot);
+        }
+        visible.put(s.getName(), new Binding(s, depth, frames.size(), visible.get(s.getName())));
+        defined.add(s.getName());
+        definedTotal++;
+    }
+
+    public int definedCount() { return definedTotal; }
+
+    /** The innermost visible symbol with this name, or null. */
+    public Symbol resolve(String name) {
+        Binding b = visible.get(name);
+        return b == null ? null : b.symbol;
+    }
+
+    /**
+     * Whether the innermost visible symbol with this name is a variable of a frame around the
+     * current one, such as a top-level variable seen from a function body, which can't use it.
+     */
+    public boolean isOuterFrameVariable(String name) {
+        Binding b = visible.get(name);
+        return b != null && b.symbol instanceof VarSymbol && b.frame != frames.size();
+    }
+
+    /** The symbol with this name defined in the innermost scope itself, or null. */
+    public Symbol resolveInCurrentScope(String name) {
+        Binding b = visible.get(name);
+        return b != null && b.depth == depth ? b.symbol : null;
+    }
+}
@@ -2,7 +2,18 @@ package edu.ktu.funlang.semantics.rules;
 
 public class VarSymbol extends Symbol {
     private final String type;
+    private int slot = -1;
+    private int depth;
     public VarSymbol(String name, String type) { super(name); this.type = type; }
     public String getType() { return type; }
-}
 
+    /** Index of the variable in its frame (function or main program), or -1 if never defined. */
+    public int getSlot() { return slot; }
+    /** Nesting depth of the scope that declares it; the program scope is 1. */
+    public int getDepth() { return depth; }
+
+    void bind(int slot, int depth) {
+        this.slot = slot;
+        this.depth = depth;
+    }
+}
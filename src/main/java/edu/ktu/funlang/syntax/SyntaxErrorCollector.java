@@ -9,13 +9,20 @@ import java.util.List;
 
 public final class SyntaxErrorCollector extends BaseErrorListener {
     private final List<String> errors = new ArrayList<>();
+    private final DiagnosticReporter reporter;
+
+    public SyntaxErrorCollector() { this(new DiagnosticReporter()); }
+
+    /** Also reports every error to {@code reporter}, at its line and column. */
+    public SyntaxErrorCollector(DiagnosticReporter reporter) { this.reporter = reporter; }
 
     @Override
     public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
                             int line, int charPositionInLine,
                             String msg, RecognitionException e) {
         errors.add("line " + line + ":" + charPositionInLine + " " + msg);
+        reporter.error(msg, line, charPositionInLine);
     }
 
     public List<String> getErrors() { return errors;}
-}
\ No newline at end of file
+}
@@ -1,21 +1,97 @@
 package edu.ktu.funlang.visitors;
 
-import java.util.*;
+import java.io.*;
 
+/**
+ * Where generated Java goes. Text is copied piece by piece into one reusable buffer that is
+ * handed to the writer each time it fills, so neither an expression, a statement nor the whole
+ * program is ever held as a String of its own. A line is {@link #begin()}, any number of
+ * {@link #append} calls and {@link #end()}; {@link #wl} does all three.
+ */
 public class CodeBuilder {
-    private StringBuilder sb = new StringBuilder();
+    private static final String NEWLINE = System.lineSeparator();
+    private static final String IND = "    ";
+
+    private final Writer out;
+    private final char[] buffer = new char[1 << 14];
+    private int count;
+    private long drained;
     private int indent = 0;
-    private String ind = "    ";
+
+    public CodeBuilder(Writer out) { this.out = out; }
 
     public void indent() { indent++; }
     public void outdent() { if (indent>0) indent--; }
 
     public void wl(String line) {
-        for (int i=0;i<indent;i++) sb.append(ind);
-        sb.append(line).append(System.lineSeparator());
+        begin();
+        append(line);
+        end();
     }
 
-    @Override
-    public String toString() { return sb.toString(); }
-}
+    /** Starts a line at the current indentation. */
+    public void begin() {
+        for (int i=0;i<indent;i++) append(IND);
+    }
+
+    public void end() { append(NEWLINE); }
+
+    public void append(String text) {
+        int length = text.length();
+        for (int from = 0; from < length; ) {
+            if (count == buffer.length) drain();
+            int n = Math.min(length - from, buffer.length - count);
+            text.getChars(from, from + n, buffer, count);
+            count += n;
+            from += n;
+        }
+    }
+
+    public void append(char c) {
+        if (count == buffer.length) drain();
+        buffer[count++] = c;
+    }
 
+    /** A non-negative number in decimal, without making a String of it. */
+    public void append(int number) {
+        if (count + 10 > buffer.length) drain();
+        int end = count + digits(number);
+        for (int i = end - 1; i >= count; i--) {
+            buffer[i] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+        count = end;
+    }
+
+    private static int digits(int number) {
+        int n = 1;
+        while (number >= 10) {
+            number /= 10;
+            n++;
+        }
+        return n;
+    }
+
+    /** Pushes everything appended so far through the writer and flushes it; the writer stays open. */
+    public void flush() {
+        drain();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Characters generated so far. */
+    public long length() { return drained + count; }
+
+    private void drain() {
+        try {
+            out.write(buffer, 0, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        drained += count;
+        count = 0;
+    }
+}
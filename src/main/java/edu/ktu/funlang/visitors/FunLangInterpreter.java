@@ -0,0 +1,1047 @@
+package edu.ktu.funlang.visitors;
+
+import edu.ktu.funlang.runtime.*;
+import edu.ktu.funlang.syntax.FunLangBaseVisitor;
+import edu.ktu.funlang.syntax.FunLangParser;
+import edu.ktu.funlang.semantics.rules.*;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import java.util.*;
+
+/**
+ * Runs a program without generating any code. The analyzed parse tree is compiled once into a
+ * tree of closures, which then executes directly; for a short script this finishes long before
+ * javac would have loaded. Semantics match the two code generators, and it reads the same side
+ * tables (inferred types, bindings, optimizer constants).
+ * <p>
+ * Variables are resolved to frame slots at compile time: every variable of a function gets a
+ * fixed index into one of three arrays by its type (integer and boolean, decimal, everything
+ * else), and expressions compile to typed nodes so numbers are never boxed. {@code <=>} copies the
+ * variable in and the callee's final parameter value back out. That is equivalent to the
+ * reference cells of the generators, because a FUNCTION cannot see its caller's variables.
+ * <p>
+ * The nodes are anonymous classes rather than lambdas on purpose: each lambda is spun up through
+ * invokedynamic on first use, which in a fresh JVM costs more than running a whole script.
+ */
+public class FunLangInterpreter extends FunLangBaseVisitor<FunLangInterpreter.Stmt> {
+
+    /** A compiled statement; returns true once a RETURN ran, so enclosing statements stop. */
+    interface Stmt { boolean exec(Frame f); }
+    interface IntNode { int eval(Frame f); }
+    interface DoubleNode { double eval(Frame f); }
+    interface BoolNode { boolean eval(Frame f); }
+    interface RefNode { Object eval(Frame f); }
+    /** Moves one value between the frames of a call: an argument in, or a by-reference result out. */
+    interface Transfer { void apply(Frame caller, Frame callee); }
+
+    private static final Stmt NOTHING = new Stmt() {
+        public boolean exec(Frame f) { return false; }
+    };
+
+    /** A compiled expression; {@code node} is the node interface matching {@code type}. */
+    private record Expr(String type, Object node) {}
+
+    /** Locals of one activation, plus the value of the RETURN that ended it. */
+    static final class Frame {
+        final int[] ints;
+        final double[] doubles;
+        final Object[] refs;
+        int intResult;
+        double doubleResult;
+        Object refResult;
+        /** Set by a self tail call that has reassigned the parameters: run the body again. */
+        boolean tailCall;
+        /** A {@code <=>} activation, whose tail calls must stay real calls. */
+        boolean byRef;
+
+        Frame(Layout layout) {
+            ints = new int[layout.ints];
+            doubles = new double[layout.doubles];
+            refs = new Object[layout.refs];
+        }
+
+        private Frame(Frame other) {
+            ints = other.ints.clone();
+            doubles = other.doubles.clone();
+            refs = other.refs.clone();
+        }
+
+        /** The same variables in new storage, for a PARALLEL FOR chunk to write into. */
+        Frame copy() { return new Frame(this); }
+    }
+
+    /** Slot assignment of one function or of the main program. */
+    private static final class Layout {
+        final Map<VarSymbol, Integer> slots = new IdentityHashMap<>();
+        int ints, doubles, refs;
+
+        int define(VarSymbol sym) {
+            Integer slot = slots.get(sym);
+            if (slot != null) return slot;
+            switch (kind(sym.getType())) {
+                case 'I': slot = ints++; break;
+                case 'D': slot = doubles++; break;
+                default: slot = refs++;
+            }
+            slots.put(sym, slot);
+            return slot;
+        }
+
+        /** A scratch slot that belongs to no variable. */
+        int temp(char kind) {
+            switch (kind) {
+                case 'I': return ints++;
+                case 'D': return doubles++;
+                default: return refs++;
+            }
+        }
+    }
+
+    /** A FUNCTION; calls are compiled against it before its body is, so recursion just works. */
+    private static final class Function {
+        final String name;
+        final String returnType;
+        final Layout layout = new Layout();
+        final List<VarSymbol> params = new ArrayList<>();
+        Stmt body;
+        /** Set for memoized functions, whose arguments are packed into a key like the generators do. */
+        MemoTable memo;
+        int[] keySlots;
+        int[] keyBits;
+
+        Function(String name, String returnType) {
+            this.name = name;
+            this.returnType = returnType;
+        }
+
+        long key(Frame f) {
+            long key = 0;
+            int offset = 0;
+            for (int i = 0; i < keySlots.length; i++) {
+                long bits = switch (keyBits[i]) {
+                    case 64 -> Double.doubleToLongBits(f.doubles[keySlots[i]]);
+                    case 32 -> f.ints[keySlots[i]] & 0xFFFFFFFFL;
+                    default -> f.ints[keySlots[i]];
+                };
+                key |= bits << offset;
+                offset += keyBits[i];
+            }
+            return key;
+        }
+    }
+
+    private final FunLangSemanticAnalyzer analyzer;
+    private final FunLangOptimizer optimizer;
+    private final Map<String, Function> functions = new HashMap<>();
+    private Layout layout;
+    private String returnType;
+
+    /** {@code optimizer} may be null to run the program exactly as written. */
+    public FunLangInterpreter(FunLangSemanticAnalyzer analyzer, FunLangOptimizer optimizer) {
+        this.analyzer = analyzer;
+        this.optimizer = optimizer;
+    }
+
+    /** Compiles the whole program; throws IllegalStateException for programs it cannot type. */
+    public Runnable compile(FunLangParser.ProgramContext program) {
+        List<FunLangParser.FuncDefContext> funcs = new ArrayList<>();
+        for (var s : program.statement()) {
+            if (s.funcDef() == null) continue;
+            var def = s.funcDef();
+            String name = def.ID().getText();
+            String ret = symbolOf(def).getReturnType();
+            Function fn = new Function(name, ret == null ? "decimal" : ret);
+            if (def.paramList() != null) {
+                for (var p : def.paramList().param()) {
+                    VarSymbol sym = analyzer.bindingOf(p);
+                    fn.layout.define(sym);
+                    fn.params.add(sym);
+                }
+            }
+            if (analyzer.isMemoized(name)) {
+                fn.memo = new MemoTable();
+                fn.keySlots = new int[fn.params.size()];
+                fn.keyBits = new int[fn.params.size()];
+                for (int i = 0; i < fn.keySlots.length; i++) {
+                    VarSymbol p = fn.params.get(i);
+                    fn.keySlots[i] = fn.layout.slots.get(p);
+                    fn.keyBits[i] = FunLangSemanticAnalyzer.memoKeyBits(p.getType());
+                }
+            }
+            functions.put(name, fn);
+            funcs.add(def);
+        }
+
+        Layout main = new Layout();
+        layout = main;
+        returnType = "void";
+        Stmt body = sequence(program.statement());
+        boolean writesFiles = analyzer.writesFiles();
+        for (var f : funcs) function(f);
+        return new Runnable() {
+            public void run() {
+                body.exec(new Frame(main));
+                if (writesFiles) FileOutput.closeAll();
+                ConsoleOutput.flush();
+            }
+        };
+    }
+
+    private void function(FunLangParser.FuncDefContext ctx) {
+        Function fn = functions.get(ctx.ID().getText());
+        layout = fn.layout;
+        returnType = fn.returnType;
+        Stmt statements = sequence(ctx.block().statement());
+        Stmt body = analyzer.hasTailCalls(fn.name) ? new Stmt() {
+            public boolean exec(Frame f) {
+                while (statements.exec(f)) {
+                    if (!f.tailCall) return true;
+                    f.tailCall = false;
+                }
+                return false;
+            }
+        } : statements;
+        if (returnType.equals("void")) {
+            fn.body = body;
+            return;
+        }
+        fn.body = new Stmt() {
+            public boolean exec(Frame f) {
+                if (body.exec(f)) return true;
+                throw new IllegalStateException("FUNCTION " + fn.name + " ended without RETURN");
+            }
+        };
+    }
+
+    // ---------------------- Statements ----------------------
+
+    private Stmt sequence(List<FunLangParser.StatementContext> statements) {
+        List<Stmt> compiled = new ArrayList<>();
+        for (var s : statements) {
+            Stmt st = visit(s);
+            if (st != null) compiled.add(st);
+        }
+        if (compiled.isEmpty()) return NOTHING;
+        if (compiled.size() == 1) return compiled.get(0);
+        Stmt[] all = compiled.toArray(new Stmt[0]);
+        return new Stmt() {
+            public boolean exec(Frame f) {
+                for (Stmt s : all) if (s.exec(f)) return true;
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public Stmt visitStatement(FunLangParser.StatementContext ctx) {
+        if (ctx.funcDef() != null) return null; // compiled separately; nested ones are not supported
+        return visit(ctx.getChild(0));
+    }
+
+    @Override
+    public Stmt visitBlock(FunLangParser.BlockContext ctx) { return sequence(ctx.statement()); }
+
+    @Override
+    public Stmt visitVarDecl(FunLangParser.VarDeclContext ctx) {
+        if (isRemoved(ctx)) return null;
+        VarSymbol sym = analyzer.bindingOf(ctx);
+        layout.define(sym);
+        // uninitialized declarations reset to the default each time, as the generators do
+        return store(sym, ctx.expr() != null ? expr(ctx.expr()) : defaultValue(sym.getType()));
+    }
+
+    @Override
+    public Stmt visitAssignment(FunLangParser.AssignmentContext ctx) {
+        if (isRemoved(ctx)) return null;
+        return store(analyzer.bindingOf(ctx), expr(ctx.expr()));
+    }
+
+    @Override
+    public Stmt visitExprStmt(FunLangParser.ExprStmtContext ctx) {
+        RefNode n = asRef(expr(ctx.expr()));
+        return new Stmt() {
+            public boolean exec(Frame f) { n.eval(f); return false; }
+        };
+    }
+
+    /** Uses the same println overloads as the generated code, so numbers print identically. */
+    @Override
+    public Stmt visitSystemCall(FunLangParser.SystemCallContext ctx) {
+        if (ctx.expr() == null) {
+            return new Stmt() {
+                public boolean exec(Frame f) { ConsoleOutput.flush(); return false; }
+            };
+        }
+        Expr e = expr(ctx.expr());
+        switch (e.type()) {
+            case "integer": {
+                IntNode n = asInt(e);
+                return new Stmt() {
+                    public boolean exec(Frame f) { ConsoleOutput.println(n.eval(f)); return false; }
+                };
+            }
+            case "decimal": {
+                DoubleNode n = asDouble(e);
+                return new Stmt() {
+                    public boolean exec(Frame f) { ConsoleOutput.println(n.eval(f)); return false; }
+                };
+            }
+            case "boolean": {
+                BoolNode n = asBool(e);
+                return new Stmt() {
+                    public boolean exec(Frame f) { ConsoleOutput.println(n.eval(f)); return false; }
+                };
+            }
+            default: {
+                RefNode n = asRef(e);
+                return new Stmt() {
+                    public boolean exec(Frame f) { ConsoleOutput.println(n.eval(f)); return false; }
+                };
+            }
+        }
+    }
+
+    @Override
+    public Stmt visitIfStmt(FunLangParser.IfStmtContext ctx) {
+        List<BoolNode> conds = new ArrayList<>();
+        List<Stmt> blocks = new ArrayList<>();
+        Stmt otherwise = null;
+        for (int i = 0; i < ctx.expr().size() && otherwise == null; i++) {
+            Boolean cond = constantCondition(ctx.expr(i));
+            if (Boolean.FALSE.equals(cond)) continue;
+            if (Boolean.TRUE.equals(cond)) otherwise = visit(ctx.block(i));
+            else {
+                conds.add(asBool(expr(ctx.expr(i))));
+                blocks.add(visit(ctx.block(i)));
+            }
+        }
+        if (otherwise == null && ctx.block().size() > ctx.expr().size()) otherwise = visit(ctx.block(ctx.block().size() - 1));
+        Stmt orElse = otherwise == null ? NOTHING : otherwise;
+        if (conds.isEmpty()) return orElse;
+        if (conds.size() == 1) {
+            BoolNode c = conds.get(0);
+            Stmt then = blocks.get(0);
+            return new Stmt() {
+                public boolean exec(Frame f) { return c.eval(f) ? then.exec(f) : orElse.exec(f); }
+            };
+        }
+        BoolNode[] cs = conds.toArray(new BoolNode[0]);
+        Stmt[] bs = blocks.toArray(new Stmt[0]);
+        return new Stmt() {
+            public boolean exec(Frame f) {
+                for (int i = 0; i < cs.length; i++) if (cs[i].eval(f)) return bs[i].exec(f);
+                return orElse.exec(f);
+            }
+        };
+    }
+
+    @Override
+    public Stmt visitWhileStmt(FunLangParser.WhileStmtContext ctx) {
+        Boolean cond = constantCondition(ctx.expr());
+        if (Boolean.FALSE.equals(cond)) return null;
+        Stmt[] before = hoist(ctx);
+        Stmt body = visit(ctx.block());
+        BoolNode c = Boolean.TRUE.equals(cond) ? asBool(constant(true)) : asBool(expr(ctx.expr()));
+        return after(before, new Stmt() {
+            public boolean exec(Frame f) {
+                while (c.eval(f)) if (body.exec(f)) return true;
+                return false;
+            }
+        });
+    }
+
+    /**
+     * {@code for (i = start; i <= end; i += step)}, with end and step evaluated once; a negative
+     * step counts down to the end, and a zero one is an error. A decimal end becomes the last
+     * integer before it. Running products are set up next to the variable.
+     */
+    @Override
+    public Stmt visitForStmt(FunLangParser.ForStmtContext ctx) {
+        if (ctx.PARALLEL() != null) return parallelFor(ctx);
+        Stmt[] before = hoist(ctx);
+        int slot = layout.define(analyzer.bindingOf(ctx));
+        IntNode start = asInt(expr(ctx.expr(0)));
+        Expr to = expr(ctx.expr(1));
+        IntNode end = to.node() instanceof DoubleNode ? null : asInt(to);
+        DoubleNode limit = end == null ? asDouble(to) : null;
+        IntNode step = asInt(ctx.expr().size() > 2 ? expr(ctx.expr(2)) : constant(1));
+        List<FunLangOptimizer.Product> products = optimizer == null ? List.of() : optimizer.productsOf(ctx);
+        int n = products.size();
+        int[] running = new int[n], deltas = new int[n];
+        IntNode[] firsts = new IntNode[n], factors = new IntNode[n];
+        for (int k = 0; k < n; k++) {
+            var p = products.get(k);
+            running[k] = layout.define(p.temp());
+            deltas[k] = layout.define(p.delta());
+            firsts[k] = asInt(compute(p.multiplication()));
+            factors[k] = asInt(expr(p.factor()));
+        }
+        Stmt body = visit(ctx.block());
+        return after(before, new Stmt() {
+            public boolean exec(Frame f) {
+                int[] ints = f.ints;
+                ints[slot] = start.eval(f);
+                int last, by;
+                if (limit == null) {
+                    last = end.eval(f);
+                    by = ForLoop.checkStep(step.eval(f));
+                } else {
+                    double bound = limit.eval(f);
+                    by = ForLoop.checkStep(step.eval(f));
+                    last = ForLoop.last(bound, by);
+                }
+                for (int k = 0; k < n; k++) {
+                    ints[running[k]] = firsts[k].eval(f);
+                    ints[deltas[k]] = by * factors[k].eval(f);
+                }
+                boolean down = by < 0;
+                while (down ? ints[slot] >= last : ints[slot] <= last) {
+                    if (body.exec(f)) return true;
+                    ints[slot] += by;
+                    for (int k = 0; k < n; k++) ints[running[k]] += ints[deltas[k]];
+                }
+                return false;
+            }
+        });
+    }
+
+    /** Computes the invariants taken out of a loop into their temporaries. */
+    private Stmt[] hoist(ParserRuleContext loop) {
+        if (optimizer == null) return new Stmt[0];
+        List<Stmt> before = new ArrayList<>();
+        for (var h : optimizer.hoistedBefore(loop)) {
+            layout.define(h.temp());
+            before.add(store(h.temp(), compute(h.value())));
+        }
+        return before.toArray(new Stmt[0]);
+    }
+
+    private static Stmt after(Stmt[] before, Stmt loop) {
+        if (before.length == 0) return loop;
+        return new Stmt() {
+            public boolean exec(Frame f) {
+                for (Stmt s : before) s.exec(f);
+                return loop.exec(f);
+            }
+        };
+    }
+
+    @Override
+    public Stmt visitFileWrite(FunLangParser.FileWriteContext ctx) {
+        RefNode path = asText(expr(ctx.expr(0))), value = asText(expr(ctx.expr(1)));
+        return new Stmt() {
+            public boolean exec(Frame f) {
+                FileOutput.write((String) path.eval(f), (String) value.eval(f));
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public Stmt visitFileLoop(FunLangParser.FileLoopContext ctx) {
+        RefNode path = asText(expr(ctx.expr()));
+        int slot = layout.define(analyzer.bindingOf(ctx));
+        Stmt body = visit(ctx.block());
+        return new Stmt() {
+            public boolean exec(Frame f) {
+                try (FileLines lines = FileLines.open((String) path.eval(f))) {
+                    for (String line; (line = lines.next()) != null; ) {
+                        f.refs[slot] = line;
+                        if (body.exec(f)) return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Each chunk of a PARALLEL FOR runs on a copy of the frame, so the loop variable and the
+     * body's locals are its own; reduced variables start from the chunk's accumulators there and
+     * are handed back once the chunk is done.
+     */
+    private Stmt parallelFor(FunLangParser.ForStmtContext ctx) {
+        int slot = layout.define(analyzer.bindingOf(ctx));
+        IntNode start = asInt(expr(ctx.expr(0)));
+        IntNode end = lastOf(expr(ctx.expr(1)));
+        IntNode step = asInt(ctx.expr().size() > 2 ? expr(ctx.expr(2)) : constant(1));
+        List<Integer> ints = new ArrayList<>(), doubles = new ArrayList<>();
+        StringBuilder iops = new StringBuilder(), dops = new StringBuilder();
+        for (var e : analyzer.reductionsOf(ctx).entrySet()) {
+            boolean integer = e.getKey().getType().equals("integer");
+            (integer ? ints : doubles).add(slot(e.getKey()));
+            (integer ? iops : dops).append(e.getValue());
+        }
+        int[] intSlots = ints.stream().mapToInt(Integer::intValue).toArray();
+        int[] doubleSlots = doubles.stream().mapToInt(Integer::intValue).toArray();
+        String intOps = iops.toString(), doubleOps = dops.toString();
+        Stmt body = visit(ctx.block());
+        return new Stmt() {
+            public boolean exec(Frame f) {
+                int[] intValues = new int[intSlots.length];
+                double[] doubleValues = new double[doubleSlots.length];
+                for (int k = 0; k < intSlots.length; k++) intValues[k] = f.ints[intSlots[k]];
+                for (int k = 0; k < doubleSlots.length; k++) doubleValues[k] = f.doubles[doubleSlots[k]];
+                ParallelLoop.run(start.eval(f), end.eval(f), step.eval(f), intOps, intValues, doubleOps, doubleValues,
+                        new ParallelLoop.Chunk() {
+                            public void run(int first, int last, int stride, int[] intAcc, double[] doubleAcc) {
+                                Frame c = f.copy();
+                                int[] locals = c.ints;
+                                for (int k = 0; k < intSlots.length; k++) locals[intSlots[k]] = intAcc[k];
+                                for (int k = 0; k < doubleSlots.length; k++) c.doubles[doubleSlots[k]] = doubleAcc[k];
+                                for (locals[slot] = first; locals[slot] <= last; locals[slot] += stride) body.exec(c);
+                                for (int k = 0; k < intSlots.length; k++) intAcc[k] = locals[intSlots[k]];
+                                for (int k = 0; k < doubleSlots.length; k++) doubleAcc[k] = c.doubles[doubleSlots[k]];
+                            }
+                        });
+                for (int k = 0; k < intSlots.length; k++) f.ints[intSlots[k]] = intValues[k];
+                for (int k = 0; k < doubleSlots.length; k++) f.doubles[doubleSlots[k]] = doubleValues[k];
+                return false;
+            }
+        };
+    }
+
+    /**
+     * {@code RETURN F(a, b)} inside F evaluates the arguments into scratch slots, moves them into
+     * the parameters and signals the function's loop; the frame is reused, so depth is unbounded.
+     */
+    @Override
+    public Stmt visitReturnStmt(FunLangParser.ReturnStmtContext ctx) {
+        Stmt regular = returnValue(ctx);
+        if (!analyzer.isTailCall(ctx)) return regular;
+        var call = FunLangSemanticAnalyzer.bareCall(ctx.expr());
+        List<VarSymbol> params = functions.get(call.ID().getText()).params;
+        List<Stmt> stage = new ArrayList<>(), move = new ArrayList<>();
+        for (int i = 0; i < params.size(); i++) {
+            char kind = kind(params.get(i).getType());
+            int param = layout.slots.get(params.get(i));
+            Expr arg = expr(call.argList().expr(i));
+            if (params.size() == 1) {
+                stage.add(assign(kind, param, arg));
+            } else {
+                int temp = layout.temp(kind);
+                stage.add(assign(kind, temp, arg));
+                move.add(move(kind, temp, param));
+            }
+        }
+        stage.addAll(move);
+        Stmt[] steps = stage.toArray(new Stmt[0]);
+        return new Stmt() {
+            public boolean exec(Frame f) {
+                if (f.byRef) return regular.exec(f);
+                for (Stmt s : steps) s.exec(f);
+                f.tailCall = true;
+                return true;
+            }
+        };
+    }
+
+    private Stmt returnValue(FunLangParser.ReturnStmtContext ctx) {
+        Expr e = expr(ctx.expr());
+        switch (kind(returnType)) {
+            case 'I': {
+                IntNode n = asInt(e);
+                return new Stmt() {
+                    public boolean exec(Frame f) { f.intResult = n.eval(f); return true; }
+                };
+            }
+            case 'D': {
+                DoubleNode n = asDouble(e);
+                return new Stmt() {
+                    public boolean exec(Frame f) { f.doubleResult = n.eval(f); return true; }
+                };
+            }
+            default: {
+                RefNode n = asRef(e);
+                return new Stmt() {
+                    public boolean exec(Frame f) { f.refResult = n.eval(f); return true; }
+                };
+            }
+        }
+    }
+
+    // ---------------------- Expressions ----------------------
+
+    private Expr expr(ParseTree node) {
+        Object constant = optimizer == null ? null : optimizer.constantValue(node);
+        if (constant != null) return constant(constant);
+        VarSymbol temp = optimizer == null ? null : optimizer.loopTemp(node);
+        if (temp != null) return load(temp);
+        return compute(node);
+    }
+
+    /** An expression evaluated where it stands, even if it is a loop invariant. */
+    private Expr compute(ParseTree node) {
+        if (node instanceof FunLangParser.ExprContext e) return expr(e.chainExpr());
+        if (node instanceof FunLangParser.ChainExprContext c) return chain(c);
+        if (node instanceof FunLangParser.ComparisonExprContext c) return comparison(c.additiveExpr(), c.op);
+        if (node instanceof FunLangParser.AdditiveExprContext a) return arithmetic(a.multiplicativeExpr(), a.op);
+        if (node instanceof FunLangParser.MultiplicativeExprContext m) return arithmetic(m.basicExpr(), m.op);
+        if (node instanceof FunLangParser.BasicExprContext b) {
+            if (b.literal() != null) return literal(b.literal());
+            if (b.functionCall() != null) return call(b.functionCall(), null, null);
+            if (b.expr() != null) return expr(b.expr());
+            return load(analyzer.bindingOf(b));
+        }
+        throw new IllegalStateException("Unhandled expression: " + node.getText());
+    }
+
+    private Expr chain(FunLangParser.ChainExprContext ctx) {
+        var operands = ctx.comparisonExpr();
+        if (operands.size() == 1) return expr(operands.get(0));
+        Expr acc;
+        int next = 1;
+        String first = ctx.chainOp(0).getText();
+        if (analyzer.isPipeline(ctx.chainOp(0)) && first.equals("<=")) {
+            acc = call(FunLangSemanticAnalyzer.bareCall(operands.get(0)), expr(operands.get(1)), null);
+            next = 2;
+        } else if (analyzer.isPipeline(ctx.chainOp(0)) && first.equals("<=>")) {
+            VarSymbol sym = analyzer.bindingOf(FunLangSemanticAnalyzer.bareVariable(operands.get(0)));
+            var target = FunLangSemanticAnalyzer.bareCall(operands.get(1));
+            acc = call(target, load(sym), analyzer.writesFirstParam(target.ID().getText()) ? sym : null);
+            next = 2;
+        } else {
+            acc = expr(operands.get(0));
+        }
+        for (int i = next; i < operands.size(); i++) {
+            var operand = operands.get(i);
+            if (analyzer.isPipeline(ctx.chainOp(i - 1))) acc = call(FunLangSemanticAnalyzer.bareCall(operand), acc, null);
+            else acc = compare("<=", acc, expr(operand));
+        }
+        return acc;
+    }
+
+    private Expr comparison(List<FunLangParser.AdditiveExprContext> operands, List<Token> ops) {
+        Expr acc = expr(operands.get(0));
+        for (int i = 1; i < operands.size(); i++) acc = compare(ops.get(i - 1).getText(), acc, expr(operands.get(i)));
+        return acc;
+    }
+
+    private Expr compare(String op, Expr left, Expr right) {
+        String type = widen(left.type(), right.type());
+        if (type.equals("decimal")) {
+            DoubleNode a = asDouble(left), b = asDouble(right);
+            switch (op) {
+                case "<": return bool(new BoolNode() { public boolean eval(Frame f) { return a.eval(f) < b.eval(f); } });
+                case ">": return bool(new BoolNode() { public boolean eval(Frame f) { return a.eval(f) > b.eval(f); } });
+                case "<=": return bool(new BoolNode() { public boolean eval(Frame f) { return a.eval(f) <= b.eval(f); } });
+                case "==": return bool(new BoolNode() { public boolean eval(Frame f) { return a.eval(f) == b.eval(f); } });
+                default: return bool(new BoolNode() { public boolean eval(Frame f) { return a.eval(f) != b.eval(f); } });
+            }
+        }
+        if (type.equals("integer") || type.equals("boolean")) {
+            IntNode a = asInt(left), b = asInt(right);
+            switch (op) {
+                case "<": return bool(new BoolNode() { public boolean eval(Frame f) { return a.eval(f) < b.eval(f); } });
+                case ">": return bool(new BoolNode() { public boolean eval(Frame f) { return a.eval(f) > b.eval(f); } });
+                case "<=": return bool(new BoolNode() { public boolean eval(Frame f) { return a.eval(f) <= b.eval(f); } });
+                case "==": return bool(new BoolNode() { public boolean eval(Frame f) { return a.eval(f) == b.eval(f); } });
+                default: return bool(new BoolNode() { public boolean eval(Frame f) { return a.eval(f) != b.eval(f); } });
+            }
+        }
+        // references compare by identity, like the generated code
+        RefNode a = asRef(left), b = asRef(right);
+        if (op.equals("==")) return bool(new BoolNode() { public boolean eval(Frame f) { return a.eval(f) == b.eval(f); } });
+        return bool(new BoolNode() { public boolean eval(Frame f) { return a.eval(f) != b.eval(f); } });
+    }
+
+    /** Left to right like Java: numbers widen to double, and {@code +} with text concatenates. */
+    private Expr arithmetic(List<? extends ParseTree> operands, List<Token> ops) {
+        Expr acc = expr(operands.get(0));
+        for (int i = 1; i < operands.size(); i++) {
+            String op = ops.get(i - 1).getText();
+            Expr right = expr(operands.get(i));
+            if (op.equals("+") && (acc.type().equals("text") || right.type().equals("text"))) {
+                RefNode a = asText(acc), b = asText(right);
+                acc = new Expr("text", new RefNode() {
+                    public Object eval(Frame f) { return ((String) a.eval(f)).concat((String) b.eval(f)); }
+                });
+            } else if (widen(acc.type(), right.type()).equals("decimal")) {
+                acc = new Expr("decimal", decimalOp(op, asDouble(acc), asDouble(right)));
+            } else {
+                acc = new Expr("integer", integerOp(op, asInt(acc), asInt(right)));
+            }
+        }
+        return acc;
+    }
+
+    private static DoubleNode decimalOp(String op, DoubleNode a, DoubleNode b) {
+        switch (op) {
+            case "+": return new DoubleNode() { public double eval(Frame f) { return a.eval(f) + b.eval(f); } };
+            case "-": return new DoubleNode() { public double eval(Frame f) { return a.eval(f) - b.eval(f); } };
+            case "*": return new DoubleNode() { public double eval(Frame f) { return a.eval(f) * b.eval(f); } };
+            default: return new DoubleNode() { public double eval(Frame f) { return a.eval(f) / b.eval(f); } };
+        }
+    }
+
+    private static IntNode integerOp(String op, IntNode a, IntNode b) {
+        switch (op) {
+            case "+": return new IntNode() { public int eval(Frame f) { return a.eval(f) + b.eval(f); } };
+            case "-": return new IntNode() { public int eval(Frame f) { return a.eval(f) - b.eval(f); } };
+            case "*": return new IntNode() { public int eval(Frame f) { return a.eval(f) * b.eval(f); } };
+            default: return new IntNode() { public int eval(Frame f) { return a.eval(f) / b.eval(f); } };
+        }
+    }
+
+    /**
+     * A call; {@code first}, if given, is the piped first argument. With {@code byRef} the
+     * callee's final first parameter is copied back into that variable afterwards.
+     */
+    private Expr call(FunLangParser.FunctionCallContext ctx, Expr first, VarSymbol byRef) {
+        String name = ctx.ID().getText();
+        List<Expr> args = new ArrayList<>();
+        if (first != null) args.add(first);
+        if (ctx.argList() != null) for (var a : ctx.argList().expr()) args.add(expr(a));
+        if (symbolOf(ctx).isBuiltin()) return builtin(name, analyzer.typeOf(ctx), args);
+
+        Function fn = functions.get(name);
+        Transfer[] in = new Transfer[args.size()];
+        for (int i = 0; i < in.length; i++) in[i] = argument(fn.params.get(i), fn.layout, args.get(i));
+        Transfer out = byRef == null ? null : copyBack(byRef, fn.params.get(0), fn.layout);
+        switch (fn.returnType) {
+            case "integer":
+                return new Expr("integer", new IntNode() {
+                    public int eval(Frame f) { return invoke(fn, in, out, f).intResult; }
+                });
+            case "boolean":
+                return bool(new BoolNode() {
+                    public boolean eval(Frame f) { return invoke(fn, in, out, f).intResult != 0; }
+                });
+            case "decimal":
+                return new Expr("decimal", new DoubleNode() {
+                    public double eval(Frame f) { return invoke(fn, in, out, f).doubleResult; }
+                });
+            default:
+                return new Expr(fn.returnType, new RefNode() {
+                    public Object eval(Frame f) { return invoke(fn, in, out, f).refResult; }
+                });
+        }
+    }
+
+    private static Frame invoke(Function fn, Transfer[] in, Transfer out, Frame caller) {
+        Frame callee = new Frame(fn.layout);
+        callee.byRef = out != null;
+        for (Transfer t : in) t.apply(caller, callee);
+        // a by-reference call needs the parameter's final value, which a cache hit doesn't have
+        if (fn.memo != null && out == null) execMemoized(fn, callee);
+        else fn.body.exec(callee);
+        if (out != null) out.apply(caller, callee);
+        return callee;
+    }
+
+    private static void execMemoized(Function fn, Frame callee) {
+        long key = fn.key(callee);
+        MemoTable.Entry hit = fn.memo.get(key);
+        char kind = kind(fn.returnType);
+        if (hit != null) {
+            if (kind == 'I') callee.intResult = hit.asInt();
+            else if (kind == 'D') callee.doubleResult = hit.asDouble();
+            else callee.refResult = hit.asRef();
+            return;
+        }
+        fn.body.exec(callee);
+        if (kind == 'I') fn.memo.putInt(key, callee.intResult);
+        else if (kind == 'D') fn.memo.putDouble(key, callee.doubleResult);
+        else fn.memo.putRef(key, callee.refResult);
+    }
+
+    private Transfer argument(VarSymbol param, Layout callee, Expr value) {
+        int slot = callee.slots.get(param);
+        switch (kind(param.getType())) {
+            case 'I': {
+                IntNode n = asInt(value);
+                return new Transfer() {
+                    public void apply(Frame caller, Frame f) { f.ints[slot] = n.eval(caller); }
+                };
+            }
+            case 'D': {
+                DoubleNode n = asDouble(value);
+                return new Transfer() {
+                    public void apply(Frame caller, Frame f) { f.doubles[slot] = n.eval(caller); }
+                };
+            }
+            default: {
+                RefNode n = asRef(value);
+                return new Transfer() {
+                    public void apply(Frame caller, Frame f) { f.refs[slot] = n.eval(caller); }
+                };
+            }
+        }
+    }
+
+    private Transfer copyBack(VarSymbol variable, VarSymbol param, Layout callee) {
+        if (kind(variable.getType()) != kind(param.getType())) {
+            throw new IllegalStateException("Cannot pass " + variable.getType() + " " + variable.getName()
+                    + " by reference as " + param.getType());
+        }
+        int to = slot(variable), from = callee.slots.get(param);
+        switch (kind(param.getType())) {
+            case 'I': return new Transfer() {
+                public void apply(Frame caller, Frame f) { caller.ints[to] = f.ints[from]; }
+            };
+            case 'D': return new Transfer() {
+                public void apply(Frame caller, Frame f) { caller.doubles[to] = f.doubles[from]; }
+            };
+            default: return new Transfer() {
+                public void apply(Frame caller, Frame f) { caller.refs[to] = f.refs[from]; }
+            };
+        }
+    }
+
+    private Expr builtin(String name, String type, List<Expr> args) {
+        if (name.equals("SQRT")) {
+            DoubleNode a = asDouble(args.get(0));
+            return new Expr("decimal", new DoubleNode() {
+                public double eval(Frame f) { return Math.sqrt(a.eval(f)); }
+            });
+        }
+        boolean min = name.equals("MIN");
+        if ("integer".equals(type)) {
+            IntNode a = asInt(args.get(0)), b = asInt(args.get(1));
+            return new Expr("integer", min ? new IntNode() {
+                public int eval(Frame f) { return Math.min(a.eval(f), b.eval(f)); }
+            } : new IntNode() {
+                public int eval(Frame f) { return Math.max(a.eval(f), b.eval(f)); }
+            });
+        }
+        DoubleNode a = asDouble(args.get(0)), b = asDouble(args.get(1));
+        return new Expr("decimal", min ? new DoubleNode() {
+            public double eval(Frame f) { return Math.min(a.eval(f), b.eval(f)); }
+        } : new DoubleNode() {
+            public double eval(Frame f) { return Math.max(a.eval(f), b.eval(f)); }
+        });
+    }
+
+    private Expr literal(FunLangParser.LiteralContext ctx) {
+        if (ctx.INT() != null) {
+            try {
+                return constant(Integer.parseInt(ctx.INT().getText()));
+            } catch (NumberFormatException e) {
+                throw new IllegalStateException("Integer literal out of range: " + ctx.INT().getText());
+            }
+        }
+        if (ctx.DECIMAL() != null) return constant(Double.parseDouble(ctx.DECIMAL().getText()));
+        if (ctx.TRUE() != null) return constant(true);
+        if (ctx.FALSE() != null) return constant(false);
+        if (ctx.STRING() != null) {
+            String text = ctx.STRING().getText();
+            // interned like a class-file constant, so == on literals behaves as in generated code
+            return constant(FunLangToBytecodeVisitor.unescape(text.substring(1, text.length() - 1)).intern());
+        }
+        String type = analyzer.typeOf(ctx) == null ? "list(decimal)" : analyzer.typeOf(ctx);
+        String element = type.substring(5, type.length() - 1);
+        var elems = ctx.listLiteral().expr();
+        int n = elems.size();
+        switch (element) {
+            case "integer": {
+                IntNode[] ns = new IntNode[n];
+                for (int i = 0; i < n; i++) ns[i] = asInt(expr(elems.get(i)));
+                return new Expr(type, new RefNode() {
+                    public Object eval(Frame f) {
+                        int[] values = new int[n];
+                        for (int i = 0; i < n; i++) values[i] = ns[i].eval(f);
+                        return IntList.of(values);
+                    }
+                });
+            }
+            case "decimal": {
+                DoubleNode[] ns = new DoubleNode[n];
+                for (int i = 0; i < n; i++) ns[i] = asDouble(expr(elems.get(i)));
+                return new Expr(type, new RefNode() {
+                    public Object eval(Frame f) {
+                        double[] values = new double[n];
+                        for (int i = 0; i < n; i++) values[i] = ns[i].eval(f);
+                        return DoubleList.of(values);
+                    }
+                });
+            }
+            case "boolean": {
+                BoolNode[] ns = new BoolNode[n];
+                for (int i = 0; i < n; i++) ns[i] = asBool(expr(elems.get(i)));
+                return new Expr(type, new RefNode() {
+                    public Object eval(Frame f) {
+                        boolean[] values = new boolean[n];
+                        for (int i = 0; i < n; i++) values[i] = ns[i].eval(f);
+                        return BooleanList.of(values);
+                    }
+                });
+            }
+            default: {
+                RefNode[] ns = new RefNode[n];
+                for (int i = 0; i < n; i++) ns[i] = asRef(expr(elems.get(i)));
+                return new Expr(type, new RefNode() {
+                    public Object eval(Frame f) {
+                        Object[] values = new Object[n];
+                        for (int i = 0; i < n; i++) values[i] = ns[i].eval(f);
+                        return RefList.of(values);
+                    }
+                });
+            }
+        }
+    }
+
+    // ---------------------- Variables ----------------------
+
+    private Expr load(VarSymbol sym) {
+        int slot = slot(sym);
+        String type = sym.getType();
+        switch (type) {
+            case "integer": return new Expr(type, new IntNode() {
+                public int eval(Frame f) { return f.ints[slot]; }
+            });
+            case "boolean": return bool(new BoolNode() {
+                public boolean eval(Frame f) { return f.ints[slot] != 0; }
+            });
+            case "decimal": return new Expr(type, new DoubleNode() {
+                public double eval(Frame f) { return f.doubles[slot]; }
+            });
+            default: return new Expr(type, new RefNode() {
+                public Object eval(Frame f) { return f.refs[slot]; }
+            });
+        }
+    }
+
+    private Stmt store(VarSymbol sym, Expr value) { return assign(kind(sym.getType()), slot(sym), value); }
+
+    private static Stmt assign(char kind, int slot, Expr value) {
+        switch (kind) {
+            case 'I': {
+                IntNode n = asInt(value);
+                return new Stmt() {
+                    public boolean exec(Frame f) { f.ints[slot] = n.eval(f); return false; }
+                };
+            }
+            case 'D': {
+                DoubleNode n = asDouble(value);
+                return new Stmt() {
+                    public boolean exec(Frame f) { f.doubles[slot] = n.eval(f); return false; }
+                };
+            }
+            default: {
+                RefNode n = asRef(value);
+                return new Stmt() {
+                    public boolean exec(Frame f) { f.refs[slot] = n.eval(f); return false; }
+                };
+            }
+        }
+    }
+
+    private static Stmt move(char kind, int from, int to) {
+        switch (kind) {
+            case 'I': return new Stmt() {
+                public boolean exec(Frame f) { f.ints[to] = f.ints[from]; return false; }
+            };
+            case 'D': return new Stmt() {
+                public boolean exec(Frame f) { f.doubles[to] = f.doubles[from]; return false; }
+            };
+            default: return new Stmt() {
+                public boolean exec(Frame f) { f.refs[to] = f.refs[from]; return false; }
+            };
+        }
+    }
+
+    private int slot(VarSymbol sym) {
+        Integer slot = layout.slots.get(sym);
+        if (slot == null) throw new IllegalStateException("Variable " + sym.getName() + " is not visible here");
+        return slot;
+    }
+
+    // ---------------------- Helpers ----------------------
+
+    private static Expr constant(Object v) {
+        if (v instanceof Boolean b) {
+            boolean value = b;
+            return bool(new BoolNode() { public boolean eval(Frame f) { return value; } });
+        }
+        if (v instanceof Integer i) {
+            int value = i;
+            return new Expr("integer", new IntNode() { public int eval(Frame f) { return value; } });
+        }
+        if (v instanceof Double d) {
+            double value = d;
+            return new Expr("decimal", new DoubleNode() { public double eval(Frame f) { return value; } });
+        }
+        return new Expr("text", new RefNode() { public Object eval(Frame f) { return v; } });
+    }
+
+    private static Expr defaultValue(String type) {
+        switch (type) {
+            case "integer": return constant(0);
+            case "decimal": return constant(0.0);
+            case "boolean": return constant(false);
+            default: return new Expr(type, new RefNode() { public Object eval(Frame f) { return null; } });
+        }
+    }
+
+    private static Expr bool(BoolNode node) { return new Expr("boolean", node); }
+
+    /** Booleans become 0 or 1, which is how frames store them and how integer comparisons see them. */
+    private static IntNode asInt(Expr e) {
+        if (e.node() instanceof IntNode n) return n;
+        if (e.node() instanceof BoolNode n) return new IntNode() { public int eval(Frame f) { return n.eval(f) ? 1 : 0; } };
+        throw new IllegalStateException("Expected an integer, found " + e.type());
+    }
+
+    /** The end of a PARALLEL FOR, which only counts up: a decimal one rounded down. */
+    private static IntNode lastOf(Expr end) {
+        if (!(end.node() instanceof DoubleNode d)) return asInt(end);
+        return new IntNode() { public int eval(Frame f) { return ForLoop.last(d.eval(f), 1); } };
+    }
+
+    /** The only implicit conversion FunLang has is integer to decimal. */
+    private static DoubleNode asDouble(Expr e) {
+        if (e.node() instanceof DoubleNode n) return n;
+        if (e.node() instanceof IntNode n) return new DoubleNode() { public double eval(Frame f) { return n.eval(f); } };
+        throw new IllegalStateException("Expected a decimal, found " + e.type());
+    }
+
+    private static BoolNode asBool(Expr e) {
+        if (e.node() instanceof BoolNode n) return n;
+        throw new IllegalStateException("Expected a boolean, found " + e.type());
+    }
+
+    /** Boxes primitives; only where the value leaves the typed nodes (lists, printing, discarded results). */
+    private static RefNode asRef(Expr e) {
+        if (e.node() instanceof RefNode n) return n;
+        if (e.node() instanceof IntNode n) return new RefNode() { public Object eval(Frame f) { return n.eval(f); } };
+        if (e.node() instanceof DoubleNode n) return new RefNode() { public Object eval(Frame f) { return n.eval(f); } };
+        BoolNode n = (BoolNode) e.node();
+        return new RefNode() { public Object eval(Frame f) { return n.eval(f); } };
+    }
+
+    /** {@code String.valueOf} of the value, matching Java's string concatenation. */
+    private static RefNode asText(Expr e) {
+        if (e.node() instanceof IntNode n) return new RefNode() { public Object eval(Frame f) { return String.valueOf(n.eval(f)); } };
+        if (e.node() instanceof DoubleNode n) return new RefNode() { public Object eval(Frame f) { return String.valueOf(n.eval(f)); } };
+        if (e.node() instanceof BoolNode n) return new RefNode() { public Object eval(Frame f) { return String.valueOf(n.eval(f)); } };
+        RefNode n = (RefNode) e.node();
+        return new RefNode() { public Object eval(Frame f) { return String.valueOf(n.eval(f)); } };
+    }
+
+    private static char kind(String type) {
+        switch (type) {
+            case "integer": case "boolean": return 'I';
+            case "decimal": return 'D';
+            default: return 'O';
+        }
+    }
+
+    private static String widen(String a, String b) {
+        if (a.equals("decimal") && b.equals("integer") || a.equals("integer") && b.equals("decimal")) return "decimal";
+        return a;
+    }
+
+    /** The analyzer's binding of a call or definition. */
+    private FunctionSymbol symbolOf(ParseTree callOrDefinition) {
+        FunctionSymbol fs = analyzer.functionOf(callOrDefinition);
+        if (fs == null) throw new IllegalStateException("Unknown function: " + callOrDefinition.getText());
+        return fs;
+    }
+
+    private Boolean constantCondition(FunLangParser.ExprContext cond) {
+        return optimizer == null ? null : optimizer.constantCondition(cond);
+    }
+
+    private boolean isRemoved(ParseTree stmt) { return optimizer != null && optimizer.isRemoved(stmt); }
+}
@@ -0,0 +1,596 @@
+package edu.ktu.funlang.visitors;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeProperty;
+import edu.ktu.funlang.syntax.FunLangBaseVisitor;
+import edu.ktu.funlang.syntax.FunLangParser;
+import edu.ktu.funlang.semantics.rules.*;
+import java.util.*;
+
+/**
+ * Optimization pass that runs between semantic analysis and emission.
+ * <p>
+ * Instead of copying the program into a separate tree, the results are kept as side tables keyed
+ * by parse-tree node, which the code generators consult while emitting:
+ * <ul>
+ *   <li>constant folding of arithmetic, comparisons and the pure built-ins (MIN, MAX, SQRT), following
+ *       Java's int/double semantics exactly;</li>
+ *   <li>constant propagation of variables that are initialized with a constant and never written;</li>
+ *   <li>dead-branch removal for IF/ELSE IF/WHILE conditions that fold to a constant;</li>
+ *   <li>elimination of variables that are never read, together with their side-effect free writes;
+ *       variables a PARALLEL FOR body uses are kept, since the backends copy them into its chunks;</li>
+ *   <li>loop-invariant numeric expressions, pure built-in calls among them, computed once before
+ *       the loop, and multiplications by a FOR variable kept as a running product that grows by
+ *       STEP times the factor each round.</li>
+ * </ul>
+ */
+public class FunLangOptimizer extends FunLangBaseVisitor<Void> {
+    private static final Object NOT_CONSTANT = new Object();
+
+    private final FunLangSemanticAnalyzer analyzer;
+    private final Map<VarSymbol, FunLangParser.VarDeclContext> declarations = new IdentityHashMap<>();
+    private final Map<VarSymbol, List<FunLangParser.AssignmentContext>> writes = new IdentityHashMap<>();
+    private final ParseTreeProperty<VarSymbol> writeTargets = new ParseTreeProperty<>();
+    private final Set<VarSymbol> opaque = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final ParseTreeProperty<Object> constants = new ParseTreeProperty<>();
+    private final Set<ParseTree> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<VarSymbol> pinned = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean inParallel;
+    private final ParseTreeProperty<VarSymbol> loopTemps = new ParseTreeProperty<>();
+    private final Map<ParseTree, List<Hoisted>> hoisted = new IdentityHashMap<>();
+    private final Map<ParseTree, List<Product>> products = new IdentityHashMap<>();
+    private int temps;
+
+    /** An expression computed into {@code temp} before a loop instead of on every round. */
+    public record Hoisted(VarSymbol temp, ParseTree value) {}
+
+    /**
+     * {@code variable * factor} inside a FOR over that variable, read from {@code temp}: it starts
+     * as the product and grows by {@code delta}, STEP times the factor, whenever the variable does.
+     */
+    public record Product(VarSymbol temp, VarSymbol delta, FunLangParser.MultiplicativeExprContext multiplication,
+                          ParseTree factor) {}
+
+    /** Variables are the analyzer's: its bindings say which declaration every use refers to. */
+    public FunLangOptimizer(FunLangSemanticAnalyzer analyzer) {
+        this.analyzer = analyzer;
+    }
+
+    /** Runs all passes over a program that has already passed semantic analysis. */
+    public void optimize(FunLangParser.ProgramContext program) {
+        visit(program);
+        keepNonConstantLoops(program);
+        eliminateUnused(program);
+        new LoopPass().visit(program);
+    }
+
+    private void eliminateUnused(FunLangParser.ProgramContext program) {
+        // removing a write can make the variables it read unused too, so iterate to a fixed point
+        while (true) {
+            Map<VarSymbol, Integer> reads = new IdentityHashMap<>();
+            new ReadCounter(reads).visit(program);
+            boolean changed = false;
+            for (var e : declarations.entrySet()) {
+                VarSymbol sym = e.getKey();
+                if (removed.contains(e.getValue()) || reads.getOrDefault(sym, 0) > 0) continue;
+                if (!removable(sym)) continue;
+                removed.add(e.getValue());
+                removed.addAll(writes.getOrDefault(sym, List.of()));
+                changed = true;
+            }
+            if (!changed) return;
+        }
+    }
+
+    /** The Java literal for a folded expression, or null if it has to be emitted as written. */
+    public String constantText(ParseTree node) {
+        Object v = constantOf(node);
+        return v == null ? null : javaLiteral(v);
+    }
+
+    /** The folded value (Integer, Double or Boolean) of an expression, or null if it isn't constant. */
+    public Object constantValue(ParseTree node) { return constantOf(node); }
+
+    /** TRUE/FALSE if the condition always has that value, null if it depends on run time. */
+    public Boolean constantCondition(FunLangParser.ExprContext cond) {
+        return constantOf(cond) instanceof Boolean b ? b : null;
+    }
+
+    /** Declarations and assignments of eliminated variables. */
+    public boolean isRemoved(ParseTree stmt) { return removed.contains(stmt); }
+
+    /** The temporary an expression inside a loop is read from instead of being evaluated, or null. */
+    public VarSymbol loopTemp(ParseTree node) { return loopTemps.get(node); }
+
+    /** What to compute before a FOR or WHILE, in order. */
+    public List<Hoisted> hoistedBefore(ParserRuleContext loop) { return hoisted.getOrDefault(loop, List.of()); }
+
+    /** The running products of a FOR, set up once its variable has its first value. */
+    public List<Product> productsOf(FunLangParser.ForStmtContext loop) { return products.getOrDefault(loop, List.of()); }
+
+    // ---------------------- Binding pass ----------------------
+
+    @Override
+    public Void visitVarDecl(FunLangParser.VarDeclContext ctx) {
+        if (ctx.expr() != null) visit(ctx.expr());
+        declarations.put(analyzer.bindingOf(ctx), ctx);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignment(FunLangParser.AssignmentContext ctx) {
+        VarSymbol sym = analyzer.bindingOf(ctx);
+        if (sym != null) {
+            writes.computeIfAbsent(sym, k -> new ArrayList<>()).add(ctx);
+            writeTargets.put(ctx, sym);
+            if (inParallel) pinned.add(sym);
+        }
+        visit(ctx.expr());
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(FunLangParser.ForStmtContext ctx) {
+        opaque.add(analyzer.bindingOf(ctx));
+        for (var e : ctx.expr()) visit(e);
+        boolean outer = inParallel;
+        inParallel |= ctx.PARALLEL() != null;
+        visit(ctx.block());
+        inParallel = outer;
+        return null;
+    }
+
+    @Override
+    public Void visitFileLoop(FunLangParser.FileLoopContext ctx) {
+        visit(ctx.expr());
+        opaque.add(analyzer.bindingOf(ctx));
+        visit(ctx.block());
+        return null;
+    }
+
+    @Override
+    public Void visitFuncDef(FunLangParser.FuncDefContext ctx) {
+        if (ctx.paramList() != null) {
+            for (var p : ctx.paramList().param()) opaque.add(analyzer.bindingOf(p));
+        }
+        visit(ctx.block());
+        return null;
+    }
+
+    @Override
+    public Void visitBasicExpr(FunLangParser.BasicExprContext ctx) {
+        if (ctx.ID() != null && inParallel) {
+            VarSymbol sym = analyzer.bindingOf(ctx);
+            if (sym != null) pinned.add(sym);
+        }
+        return visitChildren(ctx);
+    }
+
+    /** {@code x <=> F()} may write x through its reference cell, so x is never a constant. */
+    @Override
+    public Void visitChainExpr(FunLangParser.ChainExprContext ctx) {
+        visitChildren(ctx);
+        if (!ctx.chainOp().isEmpty() && ctx.chainOp(0).getText().equals("<=>")) {
+            var source = FunLangSemanticAnalyzer.bareVariable(ctx.comparisonExpr(0));
+            if (source != null && analyzer.bindingOf(source) != null) opaque.add(analyzer.bindingOf(source));
+        }
+        return null;
+    }
+
+    // ---------------------- Constant folding / propagation ----------------------
+
+    private Object constantOf(ParseTree node) {
+        Object cached = constants.get(node);
+        if (cached == null) {
+            constants.put(node, NOT_CONSTANT); // also guards against cycles
+            Object v = evaluate(node);
+            cached = v == null ? NOT_CONSTANT : v;
+            constants.put(node, cached);
+        }
+        return cached == NOT_CONSTANT ? null : cached;
+    }
+
+    private Object evaluate(ParseTree node) {
+        if (node instanceof FunLangParser.ExprContext e) return constantOf(e.chainExpr());
+        if (node instanceof FunLangParser.ChainExprContext c) {
+            return c.comparisonExpr().size() == 1 ? constantOf(c.comparisonExpr(0)) : null;
+        }
+        if (node instanceof FunLangParser.ComparisonExprContext c) return fold(c.additiveExpr(), c.op);
+        if (node instanceof FunLangParser.AdditiveExprContext a) return fold(a.multiplicativeExpr(), a.op);
+        if (node instanceof FunLangParser.MultiplicativeExprContext m) return fold(m.basicExpr(), m.op);
+        if (node instanceof FunLangParser.BasicExprContext b) {
+            if (b.literal() != null) return constantOf(b.literal());
+            if (b.functionCall() != null) return constantOf(b.functionCall());
+            if (b.expr() != null) return constantOf(b.expr());
+            VarSymbol sym = analyzer.bindingOf(b);
+            return sym == null ? null : constantOfVariable(sym);
+        }
+        if (node instanceof FunLangParser.LiteralContext l) return literalValue(l);
+        if (node instanceof FunLangParser.FunctionCallContext f) return builtinCall(f);
+        return null;
+    }
+
+    private Object constantOfVariable(VarSymbol sym) {
+        FunLangParser.VarDeclContext decl = declarations.get(sym);
+        if (decl == null || decl.expr() == null || opaque.contains(sym) || writes.containsKey(sym)) return null;
+        Object v = constantOf(decl.expr());
+        // apply the conversion the Java declaration would; anything javac rejects stays unfolded
+        switch (sym.getType()) {
+            case "integer": return v instanceof Integer ? v : null;
+            case "decimal": return v instanceof Number n ? (Object) n.doubleValue() : null;
+            case "boolean": return v instanceof Boolean ? v : null;
+            default: return null;
+        }
+    }
+
+    private Object fold(List<? extends ParseTree> operands, List<Token> ops) {
+        Object acc = constantOf(operands.get(0));
+        for (int i = 1; i < operands.size() && acc != null; i++) {
+            Object right = constantOf(operands.get(i));
+            acc = right == null ? null : applyBinary(ops.get(i - 1).getText(), acc, right);
+        }
+        // evaluate the rest anyway so every operand has its own entry
+        for (ParseTree t : operands) constantOf(t);
+        return acc;
+    }
+
+    private static Object applyBinary(String op, Object l, Object r) {
+        if (l instanceof Boolean a && r instanceof Boolean b) {
+            switch (op) {
+                case "==": return a.equals(b);
+                case "!=": return !a.equals(b);
+                default: return null;
+            }
+        }
+        if (!(l instanceof Number) || !(r instanceof Number)) return null;
+        if (l instanceof Integer a && r instanceof Integer b) {
+            int x = a, y = b;
+            switch (op) {
+                case "+": return x + y;
+                case "-": return x - y;
+                case "*": return x * y;
+                case "/": return y == 0 ? null : x / y;
+                case "<": return x < y;
+                case ">": return x > y;
+                case "==": return x == y;
+                case "!=": return x != y;
+                default: return null;
+            }
+        }
+        double x = ((Number) l).doubleValue(), y = ((Number) r).doubleValue();
+        switch (op) {
+            case "+": return finite(x + y);
+            case "-": return finite(x - y);
+            case "*": return finite(x * y);
+            case "/": return finite(x / y);
+            case "<": return x < y;
+            case ">": return x > y;
+            case "==": return x == y;
+            case "!=": return x != y;
+            default: return null;
+        }
+    }
+
+    private Object builtinCall(FunLangParser.FunctionCallContext ctx) {
+        List<Object> args = new ArrayList<>();
+        if (ctx.argList() != null) {
+            for (var a : ctx.argList().expr()) args.add(constantOf(a));
+        }
+        if (args.contains(null)) return null;
+        switch (ctx.ID().getText()) {
+            case "MIN":
+            case "MAX":
+                if (args.size() != 2 || !(args.get(0) instanceof Number) || !(args.get(1) instanceof Number)) return null;
+                boolean min = ctx.ID().getText().equals("MIN");
+                if (args.get(0) instanceof Integer a && args.get(1) instanceof Integer b) return min ? Math.min(a, b) : Math.max(a, b);
+                double x = ((Number) args.get(0)).doubleValue(), y = ((Number) args.get(1)).doubleValue();
+                return min ? Math.min(x, y) : Math.max(x, y);
+            case "SQRT":
+                if (args.size() != 1 || !(args.get(0) instanceof Number n)) return null;
+                return finite(Math.sqrt(n.doubleValue()));
+            default:
+                return null;
+        }
+    }
+
+    private static Object literalValue(FunLangParser.LiteralContext ctx) {
+        try {
+            if (ctx.INT() != null) return Integer.parseInt(ctx.INT().getText());
+            if (ctx.DECIMAL() != null) return finite(Double.parseDouble(ctx.DECIMAL().getText()));
+        } catch (NumberFormatException e) {
+            return null; // out of range: leave it to javac to complain
+        }
+        if (ctx.TRUE() != null) return Boolean.TRUE;
+        if (ctx.FALSE() != null) return Boolean.FALSE;
+        return null;
+    }
+
+    private static Object finite(double d) { return Double.isFinite(d) ? d : null; }
+
+    private static String javaLiteral(Object v) {
+        if (v instanceof Boolean b) return b.toString();
+        String s = v.toString();
+        boolean negative = v instanceof Integer i ? i < 0 : (Double) v < 0 || 1 / (Double) v < 0;
+        return negative ? "(" + s + ")" : s;
+    }
+
+    /**
+     * A WHILE whose condition folds to {@code true} loops forever; emitting a literal {@code true}
+     * would make javac reject whatever follows as unreachable, so such conditions stay unfolded.
+     */
+    private void keepNonConstantLoops(ParseTree root) {
+        new FunLangBaseVisitor<Void>() {
+            @Override
+            public Void visitWhileStmt(FunLangParser.WhileStmtContext ctx) {
+                if (Boolean.TRUE.equals(constantCondition(ctx.expr())) && !ctx.expr().getText().equals("TRUE")) {
+                    unfold(ctx.expr());
+                }
+                return visitChildren(ctx);
+            }
+        }.visit(root);
+    }
+
+    private void unfold(ParseTree node) {
+        constants.put(node, NOT_CONSTANT);
+        for (int i = 0; i < node.getChildCount(); i++) unfold(node.getChild(i));
+    }
+
+    // ---------------------- Unused variables ----------------------
+
+    private boolean removable(VarSymbol sym) {
+        FunLangParser.VarDeclContext decl = declarations.get(sym);
+        if (pinned.contains(sym)) return false;
+        if (decl.expr() != null && !pure(decl.expr())) return false;
+        for (var w : writes.getOrDefault(sym, List.of())) {
+            if (!pure(w.expr())) return false;
+        }
+        return true;
+    }
+
+    /** No calls to user functions, no chains, and no integer division that might trap. */
+    private boolean pure(ParseTree node) {
+        if (constantOf(node) != null) return true;
+        if (node instanceof FunLangParser.FunctionCallContext f) {
+            String name = f.ID().getText();
+            if (!name.equals("MIN") && !name.equals("MAX") && !name.equals("SQRT")) return false;
+        }
+        if (node instanceof FunLangParser.ChainExprContext c && c.comparisonExpr().size() > 1) return false;
+        if (node instanceof FunLangParser.MultiplicativeExprContext m) {
+            for (int i = 0; i < m.op.size(); i++) {
+                Object divisor = constantOf(m.basicExpr(i + 1));
+                if (m.op.get(i).getText().equals("/") && !(divisor instanceof Number n && n.doubleValue() != 0)) {
+                    return false;
+                }
+            }
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            if (!pure(node.getChild(i))) return false;
+        }
+        return true;
+    }
+
+    // ---------------------- Loops ----------------------
+
+    /**
+     * Visits loops outermost first, so an expression goes as far out as it is invariant. Nothing
+     * is taken out of a PARALLEL FOR body, whose chunks run apart from the code around the loop.
+     */
+    private class LoopPass extends FunLangBaseVisitor<Void> {
+        @Override
+        public Void visitForStmt(FunLangParser.ForStmtContext ctx) {
+            if (ctx.PARALLEL() != null) return null;
+            new Loop(ctx).scan(ctx.block());
+            return visit(ctx.block());
+        }
+
+        @Override
+        public Void visitWhileStmt(FunLangParser.WhileStmtContext ctx) {
+            if (Boolean.FALSE.equals(constantCondition(ctx.expr()))) return null;
+            Loop loop = new Loop(ctx);
+            loop.scan(ctx.expr());
+            loop.scan(ctx.block());
+            return visit(ctx.block());
+        }
+
+        @Override
+        public Void visitStatement(FunLangParser.StatementContext ctx) {
+            return removed.contains(ctx.getChild(0)) ? null : visitChildren(ctx);
+        }
+    }
+
+    /**
+     * What one loop may take out of its condition and body. A FUNCTION it calls can't see the
+     * loop's variables, so only the loop itself (directly or through {@code <=>}) writes them.
+     */
+    private class Loop {
+        final ParserRuleContext loop;
+        final Set<VarSymbol> written;
+        /** The FOR variable, if the body never assigns it. */
+        final VarSymbol induction;
+
+        Loop(ParserRuleContext loop) {
+            this.loop = loop;
+            written = written(loop);
+            VarSymbol v = loop instanceof FunLangParser.ForStmtContext ? analyzer.bindingOf(loop) : null;
+            for (var a : descendants(loop, FunLangParser.AssignmentContext.class)) {
+                if (v != null && analyzer.bindingOf(a) == v) v = null;
+            }
+            induction = v;
+        }
+
+        /** Takes out the largest invariant expressions it finds, skipping code no backend emits. */
+        void scan(ParseTree node) {
+            if (node instanceof FunLangParser.FuncDefContext || loopTemps.get(node) != null) return;
+            if (node instanceof FunLangParser.ForStmtContext f && f.PARALLEL() != null) return;
+            if (node instanceof FunLangParser.StatementContext s && removed.contains(s.getChild(0))) return;
+            if (node instanceof FunLangParser.WhileStmtContext w && Boolean.FALSE.equals(constantCondition(w.expr()))) return;
+            if (node instanceof FunLangParser.IfStmtContext ctx) {
+                for (int i = 0; i < ctx.expr().size(); i++) {
+                    Boolean cond = constantCondition(ctx.expr(i));
+                    if (Boolean.FALSE.equals(cond)) continue;
+                    scan(ctx.expr(i));
+                    scan(ctx.block(i));
+                    if (Boolean.TRUE.equals(cond)) return;
+                }
+                if (ctx.block().size() > ctx.expr().size()) scan(ctx.block(ctx.block().size() - 1));
+                return;
+            }
+            if (isExpression(node)) {
+                if (constantOf(node) != null) return;
+                if (invariant(node)) {
+                    ParseTree value = innermost(node);
+                    // a literal or a variable is as cheap as its temporary
+                    if (value instanceof FunLangParser.BasicExprContext b && b.functionCall() == null) return;
+                    String type = analyzer.typeOf(value);
+                    if ("integer".equals(type) || "decimal".equals(type)) {
+                        VarSymbol temp = new VarSymbol("__inv" + temps++, type);
+                        loopTemps.put(value, temp);
+                        hoisted.computeIfAbsent(loop, k -> new ArrayList<>()).add(new Hoisted(temp, value));
+                        return;
+                    }
+                    node = value; // a comparison or text; its numeric operands may still go
+                } else if (node instanceof FunLangParser.MultiplicativeExprContext m && reduce(m)) {
+                    return;
+                }
+            }
+            for (int i = 0; i < node.getChildCount(); i++) scan(node.getChild(i));
+        }
+
+        /** {@code i * factor} or {@code factor * i}, integers, with the factor invariant. */
+        private boolean reduce(FunLangParser.MultiplicativeExprContext m) {
+            if (induction == null || m.op.size() != 1 || !m.op.get(0).getText().equals("*")) return false;
+            if (!"integer".equals(analyzer.typeOf(m))) return false;
+            for (int side = 0; side < 2; side++) {
+                var variable = FunLangSemanticAnalyzer.bareVariable(m.basicExpr(side));
+                ParseTree factor = m.basicExpr(1 - side);
+                if (variable == null || analyzer.bindingOf(variable) != induction) continue;
+                if (!"integer".equals(analyzer.typeOf(factor)) || !invariant(factor)) continue;
+                Product p = new Product(new VarSymbol("__sr" + temps, "integer"), new VarSymbol("__srd" + temps, "integer"), m, factor);
+                temps++;
+                loopTemps.put(m, p.temp());
+                products.computeIfAbsent(loop, k -> new ArrayList<>()).add(p);
+                return true;
+            }
+            return false;
+        }
+
+        /** Pure, and reads only variables the loop doesn't write. */
+        private boolean invariant(ParseTree node) {
+            if (!pure(node)) return false;
+            for (var b : descendants(node, FunLangParser.BasicExprContext.class)) {
+                if (b.ID() == null || constantOf(b) != null) continue;
+                VarSymbol sym = analyzer.bindingOf(b);
+                if (sym == null || written.contains(sym)) return false;
+            }
+            return true;
+        }
+    }
+
+    private static boolean isExpression(ParseTree node) {
+        return node instanceof FunLangParser.ExprContext || node instanceof FunLangParser.ChainExprContext
+                || node instanceof FunLangParser.ComparisonExprContext || node instanceof FunLangParser.AdditiveExprContext
+                || node instanceof FunLangParser.MultiplicativeExprContext || node instanceof FunLangParser.BasicExprContext;
+    }
+
+    /** The node that does the work: below one-operand levels and parentheses. */
+    private static ParseTree innermost(ParseTree node) {
+        while (true) {
+            if (node instanceof FunLangParser.BasicExprContext b) {
+                if (b.expr() == null) return b;
+                node = b.expr();
+            } else if (node.getChildCount() == 1 && node.getChild(0) instanceof ParserRuleContext) {
+                node = node.getChild(0);
+            } else {
+                return node;
+            }
+        }
+    }
+
+    /** Variables a subtree declares, assigns, loops over or passes with {@code <=>}. */
+    private Set<VarSymbol> written(ParseTree root) {
+        Set<VarSymbol> out = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (var n : descendants(root, ParserRuleContext.class)) {
+            if (n instanceof FunLangParser.VarDeclContext || n instanceof FunLangParser.AssignmentContext
+                    || n instanceof FunLangParser.ForStmtContext || n instanceof FunLangParser.FileLoopContext) {
+                VarSymbol sym = analyzer.bindingOf(n);
+                if (sym != null) out.add(sym);
+            } else if (n instanceof FunLangParser.ChainExprContext c) {
+                for (int i = 0; i < c.chainOp().size(); i++) {
+                    if (!c.chainOp(i).getText().equals("<=>")) continue;
+                    var source = FunLangSemanticAnalyzer.bareVariable(c.comparisonExpr(i));
+                    if (source != null && analyzer.bindingOf(source) != null) out.add(analyzer.bindingOf(source));
+                }
+            }
+        }
+        return out;
+    }
+
+    private static <T extends ParseTree> List<T> descendants(ParseTree root, Class<T> type) {
+        List<T> out = new ArrayList<>();
+        Deque<ParseTree> stack = new ArrayDeque<>(List.of(root));
+        while (!stack.isEmpty()) {
+            ParseTree n = stack.pop();
+            if (type.isInstance(n)) out.add(type.cast(n));
+            for (int i = 0; i < n.getChildCount(); i++) stack.push(n.getChild(i));
+        }
+        return out;
+    }
+
+    /** Counts variable reads that survive folding, dead-branch removal and earlier eliminations. */
+    private class ReadCounter extends FunLangBaseVisitor<Void> {
+        private final Map<VarSymbol, Integer> reads;
+        private VarSymbol assigning;
+
+        ReadCounter(Map<VarSymbol, Integer> reads) { this.reads = reads; }
+
+        /** {@code x = x + 1} alone doesn't keep {@code x} alive. */
+        @Override
+        public Void visitAssignment(FunLangParser.AssignmentContext ctx) {
+            assigning = writeTargets.get(ctx);
+            visit(ctx.expr());
+            assigning = null;
+            return null;
+        }
+
+        @Override
+        public Void visitStatement(FunLangParser.StatementContext ctx) {
+            ParseTree inner = ctx.getChild(0);
+            return removed.contains(inner) ? null : visitChildren(ctx);
+        }
+
+        @Override
+        public Void visitIfStmt(FunLangParser.IfStmtContext ctx) {
+            int exprCount = ctx.expr().size();
+            for (int i = 0; i < exprCount; i++) {
+                Boolean cond = constantCondition(ctx.expr(i));
+                if (Boolean.FALSE.equals(cond)) continue;
+                visit(ctx.expr(i));
+                visit(ctx.block(i));
+                if (Boolean.TRUE.equals(cond)) return null;
+            }
+            if (ctx.block().size() > exprCount) visit(ctx.block(ctx.block().size() - 1));
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(FunLangParser.WhileStmtContext ctx) {
+            if (Boolean.FALSE.equals(constantCondition(ctx.expr()))) return null;
+            return visitChildren(ctx);
+        }
+
+        @Override
+        public Void visitExpr(FunLangParser.ExprContext ctx) { return countReads(ctx); }
+
+        private Void countReads(ParseTree node) {
+            if (constantOf(node) != null) return null;
+            if (node instanceof FunLangParser.BasicExprContext b && analyzer.bindingOf(b) != null
+                    && analyzer.bindingOf(b) != assigning) {
+                reads.merge(analyzer.bindingOf(b), 1, Integer::sum);
+            }
+            for (int i = 0; i < node.getChildCount(); i++) countReads(node.getChild(i));
+            return null;
+        }
+    }
+}
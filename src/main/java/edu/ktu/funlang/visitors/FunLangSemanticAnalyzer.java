@@ -1,57 +1,446 @@
 package edu.ktu.funlang.visitors;
 
+import edu.ktu.funlang.syntax.Diagnostic;
+import edu.ktu.funlang.syntax.DiagnosticReporter;
 import edu.ktu.funlang.syntax.FunLangBaseVisitor;
 import edu.ktu.funlang.syntax.FunLangParser;
 import edu.ktu.funlang.semantics.rules.*;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeProperty;
+import org.antlr.v4.runtime.tree.TerminalNode;
 import java.util.*;
 
 /**
- * A light-weight semantic pass that:
- * - collects function signatures (names + arity)
- * - collects top-level variable declarations
- * - checks for obvious errors like duplicate function names and undefined variables in simple cases
- * This is intentionally conservative (no full type inference yet).
+ * The semantic pass:
+ * - collects function signatures (names + parameter types)
+ * - infers the FunLang type of every expression and the return type of every function
+ * - checks for duplicate names, undefined variables and functions, call arity and type mismatches
+ * - keeps each FUNCTION body to its own parameters and variables
+ * - resolves the chain operators and decides which variables passed with {@code <=>} need a
+ *   reference cell: only those whose callee actually writes its first parameter
+ * - finds the pure functions and picks the ones whose calls go through a memo cache
+ * - marks self tail calls, which the backends turn into loops, and warns about other self calls
+ * - checks that PARALLEL FOR bodies only write their own variables and finds their reductions
+ * Types are FunLang type names ("integer", "decimal", "text", "boolean", "list(...)");
+ * null means the type could not be determined and is left for javac to check.
  */
 public class FunLangSemanticAnalyzer extends FunLangBaseVisitor<Void> {
+    /** Rounds of return type inference before unresolved (purely recursive) functions give up. */
+    private static final int MAX_INFERENCE_ROUNDS = 8;
 
     private SymbolTable symbols = new SymbolTable();
     private List<String> errors = new ArrayList<>();
+    private final List<String> warnings = new ArrayList<>();
+    private final DiagnosticReporter diagnostics = new DiagnosticReporter();
+    /** The statement being checked; errors are reported at its position. */
+    private ParserRuleContext at;
+    private final ParseTreeProperty<String> types = new ParseTreeProperty<>();
+    private final ParseTreeProperty<VarSymbol> bindings = new ParseTreeProperty<>();
+    private final ParseTreeProperty<FunctionSymbol> functions = new ParseTreeProperty<>();
+    private final ParseTreeProperty<Integer> frameSlots = new ParseTreeProperty<>();
+    private final Set<FunLangParser.ChainOpContext> pipelines = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<String> writesFirstParam = new HashSet<>();
+    private final Set<String> refVariants = new HashSet<>();
+    private final ParseTreeProperty<List<VarSymbol>> cells = new ParseTreeProperty<>();
+    private final Set<VarSymbol> loopVars = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<String> pure = new HashSet<>();
+    private final Set<String> memoized = new HashSet<>();
+    private final Set<FunLangParser.ReturnStmtContext> tailCalls = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<String> tailRecursive = new HashSet<>();
+    /** Self calls that are not tail calls, in source order within each function. */
+    private final List<FunLangParser.FunctionCallContext> selfCalls = new ArrayList<>();
+    private final ParseTreeProperty<Map<VarSymbol, Character>> reductions = new ParseTreeProperty<>();
+    private final ParseTreeProperty<List<VarSymbol>> captures = new ParseTreeProperty<>();
+    private boolean inParallel;
+    private boolean writesFiles;
+    private List<String> returnTypes;
+    private List<VarSymbol> currentCells;
+    private boolean reporting = true;
+    /** Set by {@link #beginProgram}: the main program, its top-level FUNCTIONs and their bodies. */
+    private ParserRuleContext program;
+    private List<FunLangParser.FuncDefContext> funcs;
+    private Map<FunLangParser.FuncDefContext, Nodes> bodies;
+    private Set<String> presetCells = Set.of();
 
     public FunLangSemanticAnalyzer() {
         symbols.enterScope();
         symbols.define(new FunctionSymbol("MIN"));
+        symbols.define(new FunctionSymbol("MAX"));
         symbols.define(new FunctionSymbol("SQRT"));
     }
 
     public SymbolTable getSymbolTable() { return symbols; }
     public boolean hasErrors() { return !errors.isEmpty(); }
     public List<String> getErrors() { return errors; }
+    /** Problems that don't stop compilation, such as recursion that can't become a loop. */
+    public List<String> getWarnings() { return warnings; }
+    /** The same errors and warnings with the line and column they were found at. */
+    public List<Diagnostic> getDiagnostics() { return diagnostics.all(); }
+
+    /** The inferred FunLang type of an expression node, or null when unknown. */
+    public String typeOf(ParseTree expr) { return types.get(expr); }
+
+    /**
+     * The variable a declaration, parameter, assignment or variable use refers to; its slot and
+     * depth were fixed when it was declared, so backends never need to look a name up.
+     */
+    public VarSymbol bindingOf(ParseTree node) { return bindings.get(node); }
+
+    /** The function a call or a FUNCTION definition refers to. */
+    public FunctionSymbol functionOf(ParseTree callOrDefinition) { return functions.get(callOrDefinition); }
+
+    /** How many variable slots a function (or the main program) needs; see {@link VarSymbol#getSlot()}. */
+    public int slotsOf(ParserRuleContext functionOrProgram) {
+        Integer n = frameSlots.get(functionOrProgram);
+        return n == null ? 0 : n;
+    }
+
+    /** Whether a chain operator passes a value into a call rather than comparing. */
+    public boolean isPipeline(FunLangParser.ChainOpContext op) { return pipelines.contains(op); }
+
+    /** Whether {@code x <=> name(...)} can change x, i.e. the function writes its first parameter. */
+    public boolean writesFirstParam(String function) { return writesFirstParam.contains(function); }
+
+    /** Functions that also need a variant taking their first parameter as a reference cell. */
+    public boolean needsRefVariant(String function) { return refVariants.contains(function); }
+
+    /** Whether the program has a {@code FILE path -> value} write, so its files need closing at the end. */
+    public boolean writesFiles() { return writesFiles; }
+
+    /** Whether a function has no effects: no CONSOLE output, no FILE access, no {@code <=>}, and only pure callees. */
+    public boolean isPure(String function) {
+        FunctionSymbol fs = function(function);
+        return fs != null && (fs.isBuiltin() || pure.contains(function));
+    }
+
+    /**
+     * Whether calls to a function go through a memo cache keyed by its arguments. Pure recursive
+     * functions are memoized unless marked NOMEMO or recursive only through self tail calls,
+     * other pure functions only when marked MEMO.
+     */
+    public boolean isMemoized(String function) { return memoized.contains(function); }
+
+    /** Bits a parameter of this type takes in a memo key, or -1 if it can't be part of one. */
+    public static int memoKeyBits(String type) {
+        switch (type) {
+            case "integer": return 32;
+            case "decimal": return 64;
+            case "boolean": return 1;
+            default: return -1;
+        }
+    }
+
+    /** Whether a RETURN is {@code RETURN F(...)} inside F itself, which can reassign the parameters and loop. */
+    public boolean isTailCall(FunLangParser.ReturnStmtContext ret) { return tailCalls.contains(ret); }
+
+    /** Whether a function has any self tail call, so its body needs to be emitted as a loop. */
+    public boolean hasTailCalls(String function) { return tailRecursive.contains(function); }
+
+    /**
+     * The outer variables a PARALLEL FOR reduces, in order of first assignment, each with its
+     * reduction: {@code '+'} for {@code x = x + e}, {@code '<'} for MIN and {@code '>'} for MAX.
+     */
+    public Map<VarSymbol, Character> reductionsOf(FunLangParser.ForStmtContext loop) {
+        Map<VarSymbol, Character> r = reductions.get(loop);
+        return r == null ? Map.of() : r;
+    }
+
+    /** The outer variables a PARALLEL FOR body only reads, in order of first use. */
+    public List<VarSymbol> capturesOf(FunLangParser.ForStmtContext loop) {
+        List<VarSymbol> c = captures.get(loop);
+        return c == null ? List.of() : c;
+    }
+
+    /** Variables of a function (or of the main program) that live in a reference cell. */
+    public List<VarSymbol> cellsOf(ParserRuleContext functionOrProgram) {
+        List<VarSymbol> c = cells.get(functionOrProgram);
+        return c == null ? List.of() : c;
+    }
 
     @Override
     public Void visitProgram(FunLangParser.ProgramContext ctx) {
-        // first pass: collect function names
-        for (var s : ctx.statement()) {
-            if (s.funcDef() != null) {
-                String name = s.funcDef().ID().getText();
-                if (symbols.resolve(name).isPresent()) {
-                    errors.add("Duplicate function name: " + name);
-                } else {
-                    symbols.define(new FunctionSymbol(name));
+        List<FunLangParser.StatementContext> definitions = new ArrayList<>();
+        for (var s : ctx.statement()) if (s.funcDef() != null) definitions.add(s);
+        beginProgram(ctx, definitions);
+        for (var s : ctx.statement()) visit(s);
+        endProgram();
+        return null;
+    }
+
+    /**
+     * The first pass over a program whose top-level statements are then visited one at a time,
+     * in order, followed by {@link #endProgram()}: it collects the signatures of the top-level
+     * FUNCTIONs among {@code definitions} and infers what callers need to know of them. {@code
+     * program} stands for the main program in {@link #cellsOf} and {@link #slotsOf}.
+     */
+    public void beginProgram(ParserRuleContext program, List<FunLangParser.StatementContext> definitions) {
+        this.program = program;
+        funcs = new ArrayList<>();
+        for (var s : definitions) {
+            String name = s.funcDef().ID().getText();
+            if (symbols.resolve(name) != null) {
+                at = s;
+                error("Duplicate function name: " + name);
+            } else {
+                List<String> params = new ArrayList<>();
+                if (s.funcDef().paramList() != null) {
+                    for (var p : s.funcDef().paramList().param()) params.add(p.type().getText());
                 }
+                symbols.define(new FunctionSymbol(name, params));
+                funcs.add(s.funcDef());
             }
         }
+        bodies = new IdentityHashMap<>();
+        for (var f : funcs) bodies.put(f, new Nodes(f.block()));
+        findFirstParamWrites(funcs, bodies);
+        inferReturnTypes(funcs);
+        Map<String, Set<String>> calls = findPureFunctions(funcs, bodies);
+        findTailCalls(funcs, bodies);
+        chooseMemoized(funcs, calls);
         // second pass: deeper checks
-        for (var s : ctx.statement()) visit(s);
+        currentCells = new ArrayList<>();
+        cells.put(program, currentCells);
+    }
+
+    /**
+     * Top-level variables with these names get their cell from the declaration on, before the
+     * {@code <=>} that needs it is seen: a program emitted one statement at a time has already
+     * written a declaration out by the time a later statement turns the variable into a cell.
+     */
+    public void presetCells(Set<String> names) { presetCells = names; }
+
+    /** Checks after every top-level statement has been visited. */
+    public void endProgram() {
+        frameSlots.put(program, symbols.frameSlots());
+        for (var c : selfCalls) {
+            String name = c.ID().getText();
+            warning(c, c.getText() + " in FUNCTION " + name
+                    + " is not a tail call; each level of this recursion takes a stack frame");
+        }
+    }
+
+    /**
+     * Drops what was learned about the nodes of a top-level statement that has been emitted, so
+     * a program visited one statement at a time doesn't keep every statement reachable. Not for
+     * FUNCTIONs, which {@link #endProgram()} still needs.
+     */
+    public void forget(ParseTree statement) {
+        Deque<ParseTree> stack = new ArrayDeque<>();
+        stack.push(statement);
+        while (!stack.isEmpty()) {
+            ParseTree n = stack.pop();
+            if (n instanceof FunLangParser.ForStmtContext || n instanceof FunLangParser.FileLoopContext) loopVars.remove(bindings.get(n));
+            types.removeFrom(n);
+            bindings.removeFrom(n);
+            functions.removeFrom(n);
+            reductions.removeFrom(n);
+            captures.removeFrom(n);
+            cells.removeFrom(n);
+            frameSlots.removeFrom(n);
+            if (n instanceof FunLangParser.ChainOpContext op) pipelines.remove(op);
+            for (int i = 0; i < n.getChildCount(); i++) stack.push(n.getChild(i));
+        }
+    }
+
+    @Override
+    public Void visitStatement(FunLangParser.StatementContext ctx) {
+        ParserRuleContext outer = at;
+        at = ctx;
+        visitChildren(ctx);
+        at = outer;
+        return null;
+    }
+
+    /**
+     * A self call is a tail call when it is the whole RETURN expression, with exactly the
+     * function's arguments. Every other call of a function to itself stays real recursion and
+     * gets a warning at the end of the program, since each level costs a JVM stack frame.
+     */
+    private void findTailCalls(List<FunLangParser.FuncDefContext> funcs, Map<FunLangParser.FuncDefContext, Nodes> bodies) {
+        for (var f : funcs) {
+            Nodes body = bodies.get(f);
+            String name = f.ID().getText();
+            int arity = f.paramList() == null ? 0 : f.paramList().param().size();
+            Set<FunLangParser.FunctionCallContext> tail = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (var r : body.of(FunLangParser.ReturnStmtContext.class)) {
+                var call = bareCall(r.expr());
+                int args = call == null || call.argList() == null ? 0 : call.argList().expr().size();
+                if (call != null && call.ID().getText().equals(name) && args == arity) {
+                    tailCalls.add(r);
+                    tail.add(call);
+                    tailRecursive.add(name);
+                }
+            }
+            for (var c : sorted(body.of(FunLangParser.FunctionCallContext.class))) {
+                if (c.ID().getText().equals(name) && !tail.contains(c)) selfCalls.add(c);
+            }
+        }
+    }
+
+    /**
+     * Escape analysis for {@code <=>}: a function writes its first parameter if it assigns it,
+     * or passes it on with {@code <=>} to a function that does. Solved as a fixed point.
+     */
+    private void findFirstParamWrites(List<FunLangParser.FuncDefContext> funcs, Map<FunLangParser.FuncDefContext, Nodes> bodies) {
+        Map<String, List<String>> forwards = new HashMap<>();
+        for (var f : funcs) {
+            if (f.paramList() == null) continue;
+            String name = f.ID().getText(), first = f.paramList().param(0).ID().getText();
+            for (var a : bodies.get(f).of(FunLangParser.AssignmentContext.class)) {
+                if (a.ID().getText().equals(first)) writesFirstParam.add(name);
+            }
+            for (var c : bodies.get(f).of(FunLangParser.ChainExprContext.class)) {
+                if (c.chainOp().isEmpty() || !c.chainOp(0).getText().equals("<=>")) continue;
+                var source = bareVariable(c.comparisonExpr(0));
+                var callee = bareCall(c.comparisonExpr(1));
+                if (source != null && callee != null && source.ID().getText().equals(first)) {
+                    forwards.computeIfAbsent(name, k -> new ArrayList<>()).add(callee.ID().getText());
+                }
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (var e : forwards.entrySet()) {
+                if (!writesFirstParam.contains(e.getKey()) && e.getValue().stream().anyMatch(writesFirstParam::contains)) {
+                    changed |= writesFirstParam.add(e.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * A function is impure if it prints, reads or writes a FILE, or uses {@code <=>} itself, or calls an impure function;
+     * solved as a fixed point, starting from every effect-free body as pure. Returns the call graph.
+     */
+    private Map<String, Set<String>> findPureFunctions(List<FunLangParser.FuncDefContext> funcs, Map<FunLangParser.FuncDefContext, Nodes> bodies) {
+        Map<String, Set<String>> calls = new HashMap<>();
+        for (var f : funcs) {
+            String name = f.ID().getText();
+            Nodes body = bodies.get(f);
+            Set<String> callees = new HashSet<>();
+            for (var c : body.of(FunLangParser.FunctionCallContext.class)) callees.add(c.ID().getText());
+            calls.put(name, callees);
+            boolean effects = !body.of(FunLangParser.SystemCallContext.class).isEmpty()
+                    || !body.of(FunLangParser.FileWriteContext.class).isEmpty()
+                    || !body.of(FunLangParser.FileLoopContext.class).isEmpty()
+                    || body.of(FunLangParser.ChainOpContext.class).stream().anyMatch(op -> op.getText().equals("<=>"));
+            if (!effects) pure.add(name);
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (var e : calls.entrySet()) {
+                if (pure.contains(e.getKey()) && !e.getValue().stream().allMatch(this::isPure)) {
+                    pure.remove(e.getKey());
+                    changed = true;
+                }
+            }
+        }
+        return calls;
+    }
+
+    private void chooseMemoized(List<FunLangParser.FuncDefContext> funcs, Map<String, Set<String>> calls) {
+        for (var f : funcs) {
+            String name = f.ID().getText();
+            String modifier = f.memo == null ? "" : f.memo.getText();
+            if (modifier.equals("NOMEMO")) continue;
+            String blocker = memoBlocker(f);
+            if (modifier.equals("MEMO")) {
+                at = f;
+                if (blocker != null) error("MEMO FUNCTION " + name + " cannot be memoized: " + blocker);
+                else memoized.add(name);
+            } else if (blocker == null && recursive(name, calls)) {
+                memoized.add(name);
+            }
+        }
+    }
+
+    /**
+     * Whether a function calls itself other than through its tail calls, which become a loop and
+     * never find an argument tuple twice (an accumulator changes every round), so a cache would
+     * only cost a lookup and an insert per call.
+     */
+    private boolean recursive(String name, Map<String, Set<String>> calls) {
+        for (var c : selfCalls) if (c.ID().getText().equals(name)) return true;
+        Deque<String> todo = new ArrayDeque<>(calls.getOrDefault(name, Set.of()));
+        todo.remove(name);
+        Set<String> seen = new HashSet<>();
+        while (!todo.isEmpty()) {
+            String callee = todo.pop();
+            if (callee.equals(name)) return true;
+            if (seen.add(callee)) todo.addAll(calls.getOrDefault(callee, Set.of()));
+        }
+        return false;
+    }
+
+    /** Why a function can't have a memo cache, or null if it can. */
+    private String memoBlocker(FunLangParser.FuncDefContext f) {
+        String name = f.ID().getText();
+        if (!isPure(name)) return "it prints, uses FILE or <=>, or calls a function that does";
+        String ret = function(name).getReturnType();
+        if (ret.equals("void") || ret.startsWith("list(")) return "it returns " + (ret.equals("void") ? "no value" : "a list");
+        int bits = 0;
+        for (String type : function(name).getParamTypes()) {
+            int b = memoKeyBits(type);
+            if (b < 0) return "parameters of type " + type + " can't be part of a memo key";
+            bits += b;
+        }
+        if (bits > 64) return "its parameters need " + bits + " bits, more than a 64-bit memo key";
+        return null;
+    }
+
+    /**
+     * Re-types the function bodies silently until no return type changes, so that calls between
+     * functions (and recursion) see the callee's type. Functions that only ever return their own
+     * recursive result stay unknown and fall back to decimal.
+     */
+    private void inferReturnTypes(List<FunLangParser.FuncDefContext> funcs) {
+        reporting = false;
+        boolean changed = true;
+        for (int round = 0; changed && round < MAX_INFERENCE_ROUNDS; round++) {
+            changed = false;
+            for (var f : funcs) {
+                FunctionSymbol fs = function(f.ID().getText());
+                String before = fs.getReturnType();
+                visit(f);
+                changed |= !Objects.equals(before, fs.getReturnType());
+            }
+        }
+        reporting = true;
+        for (var f : funcs) {
+            FunctionSymbol fs = function(f.ID().getText());
+            if (fs.getReturnType() == null) fs.setReturnType("decimal");
+        }
+    }
+
+    @Override
+    public Void visitBlock(FunLangParser.BlockContext ctx) {
+        symbols.enterScope();
+        visitChildren(ctx);
+        symbols.exitScope();
         return null;
     }
 
     @Override
     public Void visitVarDecl(FunLangParser.VarDeclContext ctx) {
         String name = ctx.ID().getText();
-        if (symbols.resolveInCurrentScope(name).isPresent()) {
-            errors.add("Variable already declared in this scope: " + name);
+        String type = ctx.type().getText();
+        if (ctx.expr() != null) {
+            visit(ctx.expr());
+            if (!accepts(type, ctx.expr())) {
+                error("Cannot initialize " + type + " variable " + name + " with " + typeOf(ctx.expr()));
+            }
+        }
+        if (symbols.resolveInCurrentScope(name) != null) {
+            error("Variable already declared in this scope: " + name);
         } else {
-            symbols.define(new VarSymbol(name, ctx.type().getText()));
+            VarSymbol sym = new VarSymbol(name, type);
+            symbols.define(sym);
+            bindings.put(ctx, sym);
+            if (presetCells.contains(name) && currentCells == cells.get(program) && !currentCells.contains(sym)) currentCells.add(sym);
         }
         return null;
     }
@@ -59,73 +448,677 @@ public class FunLangSemanticAnalyzer extends FunLangBaseVisitor<Void> {
     @Override
     public Void visitAssignment(FunLangParser.AssignmentContext ctx) {
         String name = ctx.ID().getText();
-        if (!symbols.resolve(name).isPresent()) {
-            errors.add("Assignment to undeclared variable: " + name);
+        Symbol target = symbols.resolve(name);
+        visit(ctx.expr());
+        if (target == null) {
+            error("Assignment to undeclared variable: " + name);
+        } else if (symbols.isOuterFrameVariable(name)) {
+            outerFrameError(name);
+        } else if (target instanceof VarSymbol v) {
+            bindings.put(ctx, v);
+            if (!accepts(v.getType(), ctx.expr())) {
+                error("Cannot assign " + typeOf(ctx.expr()) + " to " + v.getType() + " variable " + name);
+            }
         }
+        return null;
+    }
+
+    @Override
+    public Void visitSystemCall(FunLangParser.SystemCallContext ctx) {
+        if (ctx.expr() == null) return null;
         visit(ctx.expr());
+        if ("void".equals(typeOf(ctx.expr()))) error("Cannot print a call that returns no value: " + ctx.expr().getText());
+        return null;
+    }
+
+    @Override
+    public Void visitFileWrite(FunLangParser.FileWriteContext ctx) {
+        writesFiles = true;
+        fileName(ctx.expr(0));
+        visit(ctx.expr(1));
+        if ("void".equals(typeOf(ctx.expr(1)))) error("Cannot write a call that returns no value: " + ctx.expr(1).getText());
+        return null;
+    }
+
+    @Override
+    public Void visitFileLoop(FunLangParser.FileLoopContext ctx) {
+        fileName(ctx.expr());
+        symbols.enterScope();
+        VarSymbol line = new VarSymbol(ctx.ID().getText(), "text");
+        symbols.define(line);
+        bindings.put(ctx, line);
+        loopVars.add(line);
+        visit(ctx.block());
+        symbols.exitScope();
+        return null;
+    }
+
+    private void fileName(FunLangParser.ExprContext path) {
+        visit(path);
+        if (!assignable("text", typeOf(path))) error("FILE name must be text, got " + typeOf(path) + ": " + path.getText());
+    }
+
+    @Override
+    public Void visitIfStmt(FunLangParser.IfStmtContext ctx) {
+        for (var cond : ctx.expr()) condition(cond, "IF");
+        for (var b : ctx.block()) visit(b);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(FunLangParser.WhileStmtContext ctx) {
+        condition(ctx.expr(), "WHILE");
+        visit(ctx.block());
         return null;
     }
 
     @Override
     public Void visitForStmt(FunLangParser.ForStmtContext ctx) {
+        // the loop variable is an integer, so it starts from and moves by one; the end may be a
+        // decimal, which the variable runs up to without passing
+        for (int i = 0; i < ctx.expr().size(); i++) {
+            var bound = ctx.expr(i);
+            visit(bound);
+            boolean end = i == 1;
+            if (!assignable(end ? "decimal" : "integer", typeOf(bound))) {
+                String part = i == 0 ? "start" : end ? "end" : "STEP";
+                error("FOR " + part + " must be " + (end ? "a number" : "integer") + ", got " + typeOf(bound) + ": " + bound.getText());
+            }
+        }
+        if (ctx.expr().size() > 2 && Integer.valueOf(0).equals(constantInt(ctx.expr(2)))) {
+            error("FOR STEP cannot be 0, the loop would never end: " + ctx.expr(2).getText());
+        }
+
         symbols.enterScope();
 
         String name = ctx.ID().getText();
-        if (symbols.resolveInCurrentScope(name).isPresent()) {
-            errors.add("Loop variable already declared: " + name);
+        if (symbols.resolveInCurrentScope(name) != null) {
+            error("Loop variable already declared: " + name);
         } else {
-            symbols.define(new VarSymbol(name, "integer"));
+            VarSymbol loopVar = new VarSymbol(name, "integer");
+            symbols.define(loopVar);
+            bindings.put(ctx, loopVar);
+            loopVars.add(loopVar);
         }
 
-        visit(ctx.expr(0));
-        visit(ctx.expr(1));
-        if (ctx.expr().size() > 2) visit(ctx.expr(2));
-
+        boolean parallel = ctx.PARALLEL() != null, outer = inParallel;
+        if (parallel && outer) error("PARALLEL FOR " + name + " cannot be nested in another PARALLEL FOR");
+        inParallel |= parallel;
         visit(ctx.block());
+        inParallel = outer;
+        if (parallel) parallel(ctx);
 
         symbols.exitScope();
         return null;
     }
 
+    /**
+     * Iterations of a PARALLEL FOR run concurrently, so its body may declare and write its own
+     * variables and read anything else, but the only writes to outer variables it may make are
+     * reductions of numbers: {@code x = x + e}, {@code x = MIN(x, e)} or {@code x = MAX(x, e)},
+     * with x read nowhere else in the body. It also may not print, RETURN, use {@code <=>} or
+     * call a function that isn't pure.
+     */
+    private void parallel(FunLangParser.ForStmtContext ctx) {
+        Nodes body = new Nodes(ctx.block());
+        String loop = "PARALLEL FOR " + ctx.ID().getText();
+        Set<VarSymbol> own = Collections.newSetFromMap(new IdentityHashMap<>());
+        own.add(bindingOf(ctx));
+        for (var d : body.of(FunLangParser.VarDeclContext.class)) own.add(bindingOf(d));
+        for (var f : body.of(FunLangParser.ForStmtContext.class)) own.add(bindingOf(f));
+        for (var f : body.of(FunLangParser.FileLoopContext.class)) own.add(bindingOf(f));
+        if (!body.of(FunLangParser.SystemCallContext.class).isEmpty()) {
+            error(loop + " cannot print with CONSOLE, the output of its iterations would interleave");
+        }
+        if (!body.of(FunLangParser.FileWriteContext.class).isEmpty()) {
+            error(loop + " cannot write a FILE, the lines of its iterations would interleave");
+        }
+        if (!body.of(FunLangParser.ReturnStmtContext.class).isEmpty()) {
+            error(loop + " cannot RETURN from inside the loop");
+        }
+        if (body.of(FunLangParser.ChainOpContext.class).stream().anyMatch(op -> op.getText().equals("<=>"))) {
+            error(loop + " cannot pass variables with <=>");
+        }
+        for (var c : sorted(body.of(FunLangParser.FunctionCallContext.class))) {
+            String name = c.ID().getText();
+            if (function(name) != null && !isPure(name)) {
+                error(loop + " cannot call " + name + ", which prints or uses FILE or <=>: " + c.getText());
+            }
+        }
+
+        Map<VarSymbol, Character> reduced = new LinkedHashMap<>();
+        Map<VarSymbol, Integer> writes = new IdentityHashMap<>();
+        for (var a : sorted(body.of(FunLangParser.AssignmentContext.class))) {
+            VarSymbol x = bindingOf(a);
+            if (x == bindingOf(ctx)) {
+                error(loop + " cannot assign its loop variable: " + a.getText());
+                continue;
+            }
+            if (x == null || own.contains(x)) continue;
+            Character op = reduction(a, x);
+            if (op == null || !isNumeric(x.getType())) {
+                error(loop + " can only change outer variable " + x.getName() + " as a number reduction ("
+                        + x.getName() + " = " + x.getName() + " + ..., MIN(" + x.getName() + ", ...) or MAX("
+                        + x.getName() + ", ...)): " + a.getText());
+            } else {
+                if (!op.equals(reduced.getOrDefault(x, op))) error(loop + " reduces " + x.getName() + " in more than one way: " + a.getText());
+                reduced.putIfAbsent(x, op);
+                writes.merge(x, 1, Integer::sum);
+            }
+        }
+        List<VarSymbol> read = new ArrayList<>();
+        Map<VarSymbol, Integer> reads = new IdentityHashMap<>();
+        for (var b : sorted(body.of(FunLangParser.BasicExprContext.class))) {
+            VarSymbol v = b.ID() == null ? null : bindingOf(b);
+            if (v == null || own.contains(v)) continue;
+            if (reduced.containsKey(v)) reads.merge(v, 1, Integer::sum);
+            else if (!read.contains(v)) read.add(v);
+        }
+        for (var e : reduced.keySet()) {
+            if (!reads.get(e).equals(writes.get(e))) {
+                error(loop + " cannot read " + e.getName() + " outside of its reduction");
+            }
+        }
+        reductions.put(ctx, reduced);
+        captures.put(ctx, read);
+    }
+
+    /**
+     * The value of an integer expression made only of literals, parentheses and + - * /, as Java
+     * computes it, or null. Enough to catch a constant STEP before the optimizer has run.
+     */
+    private static Integer constantInt(ParseTree node) {
+        ParseTree n = node;
+        while (n.getChildCount() == 1 && !(n instanceof FunLangParser.LiteralContext)) n = n.getChild(0);
+        if (n instanceof TerminalNode t && t.getSymbol().getType() == FunLangParser.INT) {
+            try {
+                return Integer.parseInt(t.getText());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        if (n instanceof FunLangParser.LiteralContext lit) return lit.INT() == null ? null : constantInt(lit.INT());
+        if (n instanceof FunLangParser.BasicExprContext b && b.expr() != null) return constantInt(b.expr());
+        List<? extends ParseTree> operands;
+        List<Token> ops;
+        if (n instanceof FunLangParser.AdditiveExprContext a) {
+            operands = a.multiplicativeExpr();
+            ops = a.op;
+        } else if (n instanceof FunLangParser.MultiplicativeExprContext m) {
+            operands = m.basicExpr();
+            ops = m.op;
+        } else {
+            return null;
+        }
+        Integer result = constantInt(operands.get(0));
+        for (int i = 1; result != null && i < operands.size(); i++) {
+            Integer right = constantInt(operands.get(i));
+            if (right == null) return null;
+            switch (ops.get(i - 1).getText()) {
+                case "+": result = result + right; break;
+                case "-": result = result - right; break;
+                case "*": result = result * right; break;
+                default: result = right == 0 ? null : result / right;
+            }
+        }
+        return result;
+    }
+
+    /** The reduction {@code x = ...} performs on x, or null if it is not one. */
+    private Character reduction(FunLangParser.AssignmentContext a, VarSymbol x) {
+        ParseTree n = single(a.expr());
+        List<? extends ParseTree> operands;
+        char op;
+        if (n instanceof FunLangParser.AdditiveExprContext sum && sum.op.stream().allMatch(t -> t.getText().equals("+"))) {
+            operands = sum.multiplicativeExpr();
+            op = '+';
+        } else if (n instanceof FunLangParser.BasicExprContext b && b.functionCall() != null
+                && b.functionCall().argList() != null && b.functionCall().argList().expr().size() == 2
+                && List.of("MIN", "MAX").contains(b.functionCall().ID().getText())) {
+            operands = b.functionCall().argList().expr();
+            op = b.functionCall().ID().getText().equals("MIN") ? '<' : '>';
+        } else {
+            return null;
+        }
+        int self = 0;
+        for (var o : operands) {
+            var v = bareVariable(o);
+            if (v != null && bindingOf(v) == x) self++;
+            else if (descendants(o, FunLangParser.BasicExprContext.class).stream().anyMatch(b -> bindingOf(b) == x)) return null;
+        }
+        return self == 1 ? op : null;
+    }
+
     @Override
     public Void visitFuncDef(FunLangParser.FuncDefContext ctx) {
-        symbols.enterScope();
+        FunctionSymbol fs = function(ctx.ID().getText());
+        List<String> outer = returnTypes;
+        List<VarSymbol> outerCells = currentCells;
+        returnTypes = new ArrayList<>();
+        currentCells = new ArrayList<>();
+        cells.put(ctx, currentCells);
+        if (fs != null) functions.put(ctx, fs);
+        symbols.enterFrame();
         if (ctx.paramList() != null) {
             for (var p : ctx.paramList().param()) {
-                String pname = p.ID().getText();
-                symbols.define(new VarSymbol(pname, p.type().getText()));
+                VarSymbol param = new VarSymbol(p.ID().getText(), p.type().getText());
+                symbols.define(param);
+                bindings.put(p, param);
             }
         }
         visit(ctx.block());
-        symbols.exitScope();
+        frameSlots.put(ctx, symbols.exitFrame());
+        if (fs != null && !fs.isBuiltin()) fs.setReturnType(returnType(ctx.ID().getText(), returnTypes));
+        returnTypes = outer;
+        currentCells = outerCells;
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(FunLangParser.ReturnStmtContext ctx) {
+        visit(ctx.expr());
+        if (returnTypes == null) {
+            error("RETURN outside of a FUNCTION: " + ctx.expr().getText());
+        } else {
+            returnTypes.add(typeOf(ctx.expr()));
+        }
         return null;
     }
 
+    /** Known return types must agree up to integer widening to decimal; unknown ones are skipped. */
+    private String returnType(String function, List<String> returned) {
+        if (returned.isEmpty()) return "void";
+        String result = null;
+        for (String t : returned) {
+            if (t == null) continue;
+            if (result == null || assignable(t, result)) result = t;
+            else if (!assignable(result, t)) {
+                error("Function " + function + " returns both " + result + " and " + t);
+                return result;
+            }
+        }
+        return result;
+    }
+
     @Override
     public Void visitFunctionCall(FunLangParser.FunctionCallContext ctx) {
+        return call(ctx, false, null);
+    }
+
+    /** Types a call; a piped call gets {@code pipedType} as an extra first argument. */
+    private Void call(FunLangParser.FunctionCallContext ctx, boolean piped, String pipedType) {
         String name = ctx.ID().getText();
+        List<FunLangParser.ExprContext> args = ctx.argList() == null ? List.of() : ctx.argList().expr();
+        for (var a : args) visit(a);
+        int offset = piped ? 1 : 0;
 
-        if (!symbols.resolve(name).isPresent()) {
-            errors.add("Call to undefined function: " + name);
+        Symbol sym = symbols.resolve(name);
+        if (sym == null) {
+            error("Call to undefined function: " + name);
+            return null;
+        }
+        if (!(sym instanceof FunctionSymbol fs)) {
+            error("Not a function: " + name);
+            return null;
+        }
+        functions.put(ctx, fs);
+        if (fs.isBuiltin()) {
+            List<String> argTypes = new ArrayList<>();
+            if (piped) argTypes.add(pipedType);
+            for (var a : args) argTypes.add(typeOf(a));
+            types.put(ctx, builtinCall(name, argTypes));
+            return null;
+        }
+        if (args.size() + offset != fs.getParamTypes().size()) {
+            error("Function " + name + " expects " + fs.getParamTypes().size() + " arguments, got " + (args.size() + offset));
+        } else {
+            if (piped && !assignable(fs.getParamTypes().get(0), pipedType)) {
+                error("Argument 1 of " + name + " must be " + fs.getParamTypes().get(0) + ", got " + pipedType);
+            }
+            for (int i = 0; i < args.size(); i++) {
+                String expected = fs.getParamTypes().get(i + offset);
+                if (!accepts(expected, args.get(i))) {
+                    error("Argument " + (i + offset + 1) + " of " + name + " must be " + expected + ", got " + typeOf(args.get(i)));
+                }
+            }
         }
+        types.put(ctx, fs.getReturnType());
+        return null;
+    }
+
+    private static int builtinArity(String name) { return name.equals("SQRT") ? 1 : 2; }
 
-        if (ctx.argList() != null) {
-            for (var a : ctx.argList().expr()) visit(a);
+    private String builtinCall(String name, List<String> argTypes) {
+        int arity = builtinArity(name);
+        if (argTypes.size() != arity) {
+            error("Function " + name + " expects " + arity + " arguments, got " + argTypes.size());
+            return null;
         }
+        String result = "integer";
+        for (String t : argTypes) {
+            if (t != null && !isNumeric(t)) {
+                error("Argument of " + name + " must be a number, got " + t);
+                return null;
+            }
+            result = widen(result, t);
+        }
+        return name.equals("SQRT") ? "decimal" : result;
+    }
+
+    @Override
+    public Void visitExpr(FunLangParser.ExprContext ctx) {
+        visitChildren(ctx);
+        types.put(ctx, typeOf(ctx.chainExpr()));
+        return null;
+    }
 
+    /**
+     * {@code a => F(b)} is {@code F(a, b)} and chains left to right; {@code F(b) <= a} is the
+     * same call written backwards, recognized only when F takes one more argument than given
+     * (otherwise {@code <=} is a comparison); {@code a <=> F(b)} passes the variable a itself.
+     */
+    @Override
+    public Void visitChainExpr(FunLangParser.ChainExprContext ctx) {
+        var operands = ctx.comparisonExpr();
+        if (operands.size() == 1) {
+            visit(operands.get(0));
+            types.put(ctx, typeOf(operands.get(0)));
+            return null;
+        }
+        String acc;
+        int next = 1;
+        String firstOp = ctx.chainOp(0).getText();
+        FunLangParser.FunctionCallContext head = bareCall(operands.get(0));
+        if (firstOp.equals("<=") && head != null && missesOneArgument(head)) {
+            visit(operands.get(1));
+            pipelines.add(ctx.chainOp(0));
+            call(head, true, typeOf(operands.get(1)));
+            acc = typeOf(head);
+            next = 2;
+        } else if (firstOp.equals("<=>")) {
+            acc = byReference(ctx, operands.get(0), operands.get(1));
+            next = 2;
+        } else {
+            visit(operands.get(0));
+            acc = typeOf(operands.get(0));
+        }
+        for (int i = next; i < operands.size(); i++) {
+            var op = ctx.chainOp(i - 1);
+            var operand = operands.get(i);
+            FunLangParser.FunctionCallContext target = bareCall(operand);
+            switch (op.getText()) {
+                case "=>":
+                    if (target == null) {
+                        error("=> needs a function call on its right: " + ctx.getText());
+                        visit(operand);
+                        acc = null;
+                    } else {
+                        pipelines.add(op);
+                        call(target, true, acc);
+                        acc = typeOf(target);
+                    }
+                    break;
+                case "<=>":
+                    error("<=> can only start a chain: " + ctx.getText());
+                    visit(operand);
+                    acc = null;
+                    break;
+                default:
+                    visit(operand);
+                    if (!numericOrUnknown(acc) || !numericOrUnknown(typeOf(operand))) {
+                        error("Operator <= cannot compare " + acc + " and " + typeOf(operand) + ": " + ctx.getText());
+                    }
+                    acc = "boolean";
+            }
+        }
+        types.put(ctx, acc);
         return null;
     }
 
+    /** {@code source <=> F(...)}: only a callee that writes its first parameter gets a cell. */
+    private String byReference(FunLangParser.ChainExprContext ctx, FunLangParser.ComparisonExprContext source,
+                               FunLangParser.ComparisonExprContext callee) {
+        visit(source);
+        FunLangParser.BasicExprContext variable = bareVariable(source);
+        FunLangParser.FunctionCallContext target = bareCall(callee);
+        if (variable == null || target == null) {
+            error("<=> needs a variable on its left and a function call on its right: " + ctx.getText());
+            if (target == null) visit(callee);
+            return null;
+        }
+        pipelines.add(ctx.chainOp(0));
+        call(target, true, typeOf(variable));
+        String name = target.ID().getText();
+        if (function(name) != null && function(name).isBuiltin()) {
+            error("Built-in " + name + " cannot take a variable by reference: " + ctx.getText());
+        } else if (writesFirstParam(name) && bindingOf(variable) != null) {
+            VarSymbol sym = bindingOf(variable);
+            if (loopVars.contains(sym)) error("The FOR variable cannot be passed by reference: " + ctx.getText());
+            if (!currentCells.contains(sym)) currentCells.add(sym);
+            refVariants.add(name);
+        }
+        return typeOf(target);
+    }
+
+    private boolean missesOneArgument(FunLangParser.FunctionCallContext call) {
+        FunctionSymbol fs = function(call.ID().getText());
+        if (fs == null) return false;
+        int given = call.argList() == null ? 0 : call.argList().expr().size();
+        return given + 1 == (fs.isBuiltin() ? builtinArity(fs.getName()) : fs.getParamTypes().size());
+    }
+
+    @Override
+    public Void visitComparisonExpr(FunLangParser.ComparisonExprContext ctx) {
+        visitChildren(ctx);
+        var operands = ctx.additiveExpr();
+        if (operands.size() == 1) {
+            types.put(ctx, typeOf(operands.get(0)));
+            return null;
+        }
+        for (int i = 0; i < ctx.op.size(); i++) {
+            String op = ctx.op.get(i).getText();
+            String l = i == 0 ? typeOf(operands.get(0)) : "boolean", r = typeOf(operands.get(i + 1));
+            boolean ordering = op.equals("<") || op.equals(">");
+            if (ordering ? !numericOrUnknown(l) || !numericOrUnknown(r) : !assignable(l, r) && !assignable(r, l)) {
+                error("Operator " + op + " cannot compare " + l + " and " + r + ": " + ctx.getText());
+            }
+        }
+        types.put(ctx, "boolean");
+        return null;
+    }
+
+    @Override
+    public Void visitAdditiveExpr(FunLangParser.AdditiveExprContext ctx) {
+        visitChildren(ctx);
+        types.put(ctx, arithmetic(ctx.multiplicativeExpr(), ctx.op, ctx));
+        return null;
+    }
+
+    @Override
+    public Void visitMultiplicativeExpr(FunLangParser.MultiplicativeExprContext ctx) {
+        visitChildren(ctx);
+        types.put(ctx, arithmetic(ctx.basicExpr(), ctx.op, ctx));
+        return null;
+    }
+
+    /** integer op integer stays integer, any decimal makes decimal, text + anything is text. */
+    private String arithmetic(List<? extends ParseTree> operands, List<Token> ops, ParseTree ctx) {
+        String result = typeOf(operands.get(0));
+        for (int i = 1; i < operands.size(); i++) {
+            String op = ops.get(i - 1).getText();
+            String right = typeOf(operands.get(i));
+            if (op.equals("+") && ("text".equals(result) || "text".equals(right))) {
+                result = "text";
+            } else if (numericOrUnknown(result) && numericOrUnknown(right)) {
+                result = widen(result, right);
+            } else {
+                error("Operator " + op + " needs numbers, got " + result + " and " + right + ": " + ctx.getText());
+                result = null;
+            }
+        }
+        return result;
+    }
 
     @Override
     public Void visitBasicExpr(FunLangParser.BasicExprContext ctx) {
+        visitChildren(ctx);
         if (ctx.ID() != null) {
             String id = ctx.ID().getText();
-            if (!symbols.resolve(id).isPresent()) {
-                errors.add("Use of undeclared variable: " + id);
+            Symbol sym = symbols.resolve(id);
+            if (sym == null) {
+                error("Use of undeclared variable: " + id);
+            } else if (symbols.isOuterFrameVariable(id)) {
+                outerFrameError(id);
+            } else if (sym instanceof VarSymbol v) {
+                types.put(ctx, v.getType());
+                bindings.put(ctx, v);
             }
+        } else if (ctx.literal() != null) {
+            types.put(ctx, typeOf(ctx.literal()));
+        } else if (ctx.functionCall() != null) {
+            types.put(ctx, typeOf(ctx.functionCall()));
+        } else if (ctx.expr() != null) {
+            types.put(ctx, typeOf(ctx.expr()));
         }
-        return visitChildren(ctx);
+        return null;
+    }
+
+    /** A FUNCTION body sees its parameters and its own variables, not those of the code around it. */
+    private void outerFrameError(String name) {
+        error("Variable " + name + " is declared outside this FUNCTION; pass it as a parameter instead");
+    }
+
+    @Override
+    public Void visitLiteral(FunLangParser.LiteralContext ctx) {
+        visitChildren(ctx);
+        if (ctx.INT() != null) types.put(ctx, "integer");
+        else if (ctx.DECIMAL() != null) types.put(ctx, "decimal");
+        else if (ctx.STRING() != null) types.put(ctx, "text");
+        else if (ctx.TRUE() != null || ctx.FALSE() != null) types.put(ctx, "boolean");
+        else if (ctx.listLiteral() != null) {
+            // the element type is the widest element; an empty literal takes its type from the target
+            String element = null;
+            for (var e : ctx.listLiteral().expr()) {
+                String t = typeOf(e);
+                if (t == null) return null;
+                if (element == null || assignable(t, element)) element = t;
+                else if (!assignable(element, t)) {
+                    error("List elements mix " + element + " and " + t + ": " + ctx.getText());
+                    return null;
+                }
+            }
+            if (element != null) types.put(ctx, "list(" + element + ")");
+        }
+        return null;
     }
-}
 
+    // Helpers
+    private void condition(FunLangParser.ExprContext cond, String keyword) {
+        visit(cond);
+        if (!assignable("boolean", typeOf(cond))) {
+            error(keyword + " condition must be boolean, got " + typeOf(cond) + ": " + cond.getText());
+        }
+    }
+
+    /**
+     * Like {@link #assignable} but a list literal takes the element type of its target, so
+     * {@code list(decimal) xs = [1, 2];} builds a decimal list rather than an integer one.
+     */
+    private boolean accepts(String target, FunLangParser.ExprContext value) {
+        ParseTree n = value;
+        while (n.getChildCount() == 1 && !(n instanceof FunLangParser.LiteralContext)) n = n.getChild(0);
+        if (target != null && target.startsWith("list(") && n instanceof FunLangParser.LiteralContext lit
+                && lit.listLiteral() != null) {
+            String element = target.substring(5, target.length() - 1);
+            for (var e : lit.listLiteral().expr()) if (!assignable(element, typeOf(e))) return false;
+            types.put(lit, target);
+            return true;
+        }
+        return assignable(target, typeOf(value));
+    }
+
+    /** The call an operand consists of, if it is nothing but a call. */
+    public static FunLangParser.FunctionCallContext bareCall(ParseTree operand) {
+        ParseTree n = single(operand);
+        return n instanceof FunLangParser.BasicExprContext b ? b.functionCall() : null;
+    }
+
+    /** The variable an operand consists of, if it is nothing but a variable. */
+    public static FunLangParser.BasicExprContext bareVariable(ParseTree operand) {
+        ParseTree n = single(operand);
+        return n instanceof FunLangParser.BasicExprContext b && b.ID() != null ? b : null;
+    }
+
+    private static ParseTree single(ParseTree n) {
+        while (!(n instanceof FunLangParser.BasicExprContext) && n.getChildCount() == 1) n = n.getChild(0);
+        return n;
+    }
+
+    /**
+     * Every rule node under a root, grouped by kind and in {@link #descendants} order, so that a
+     * pass asking a function body for several kinds of node walks the body only once.
+     */
+    private static final class Nodes {
+        private final Map<Class<?>, List<ParseTree>> byKind = new HashMap<>();
+
+        Nodes(ParseTree root) {
+            for (ParseTree n : descendants(root, ParserRuleContext.class)) {
+                byKind.computeIfAbsent(n.getClass(), k -> new ArrayList<>()).add(n);
+            }
+        }
+
+        /** A fresh list, so callers may sort it. */
+        @SuppressWarnings("unchecked")
+        <T extends ParseTree> List<T> of(Class<T> kind) {
+            return new ArrayList<>((List<T>) byKind.getOrDefault(kind, List.of()));
+        }
+    }
+
+    private static <T extends ParseTree> List<T> descendants(ParseTree root, Class<T> type) {
+        List<T> out = new ArrayList<>();
+        Deque<ParseTree> stack = new ArrayDeque<>(List.of(root));
+        while (!stack.isEmpty()) {
+            ParseTree n = stack.pop();
+            if (type.isInstance(n)) out.add(type.cast(n));
+            for (int i = 0; i < n.getChildCount(); i++) stack.push(n.getChild(i));
+        }
+        return out;
+    }
+
+    /** Nodes in source order; {@link #descendants} returns them in traversal order. */
+    private static <T extends ParserRuleContext> List<T> sorted(List<T> nodes) {
+        nodes.sort(Comparator.comparingInt(n -> n.getStart().getTokenIndex()));
+        return nodes;
+    }
+
+    private FunctionSymbol function(String name) {
+        return symbols.resolve(name) instanceof FunctionSymbol fs ? fs : null;
+    }
+
+    private void error(String message) {
+        if (!reporting) return;
+        errors.add(message);
+        if (at == null) diagnostics.error(message, 0, 0);
+        else diagnostics.error(message, at.getStart().getLine(), at.getStart().getCharPositionInLine());
+    }
+
+    private void warning(ParserRuleContext node, String message) {
+        warnings.add("line " + node.getStart().getLine() + ": " + message);
+        diagnostics.warn(message, node.getStart().getLine(), node.getStart().getCharPositionInLine());
+    }
+
+    private static boolean isNumeric(String type) { return "integer".equals(type) || "decimal".equals(type); }
+    private static boolean numericOrUnknown(String type) { return type == null || isNumeric(type); }
+
+    private static String widen(String a, String b) {
+        if (a == null || b == null) return null;
+        return a.equals("decimal") || b.equals("decimal") ? "decimal" : "integer";
+    }
+
+    /** Whether a value of type {@code value} may be stored in {@code target}; unknown types always pass. */
+    public static boolean assignable(String target, String value) {
+        if (target == null || value == null) return !"void".equals(value);
+        if (target.equals(value)) return !value.equals("void");
+        return target.equals("decimal") && value.equals("integer");
+    }
+}
@@ -0,0 +1,1210 @@
+package edu.ktu.funlang.visitors;
+
+import edu.ktu.funlang.syntax.FunLangBaseVisitor;
+import edu.ktu.funlang.syntax.FunLangParser;
+import edu.ktu.funlang.semantics.rules.*;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.objectweb.asm.*;
+import java.util.*;
+import java.util.function.Supplier;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Writes a JVM class file straight from the analyzed parse tree, with the same semantics as
+ * {@link FunLangToJavaVisitor} but without a javac pass. It consumes the same side tables
+ * (inferred types, bindings, reference cells, optimizer constants) and leaves stack-map
+ * frames to ASM. Expression helpers emit a value and return the FunLang type they pushed.
+ */
+public class FunLangToBytecodeVisitor extends FunLangBaseVisitor<Void> {
+    private static final String RUNTIME = "edu/ktu/funlang/runtime/";
+    private static final String RULES = "edu/ktu/funlang/semantics/rules/";
+
+    private final FunLangSemanticAnalyzer analyzer;
+    private final FunLangOptimizer optimizer;
+    private final String className;
+    private ClassWriter cw;
+    private MethodVisitor mv;
+    private Map<VarSymbol, Integer> slots;
+    private Map<VarSymbol, Integer> cellSlots;
+    private int nextSlot;
+    private String returnType;
+    /** Start of the body and the parameter slots when self tail calls loop, else null. */
+    private Label tailTop;
+    private Map<VarSymbol, Integer> tailParams;
+    private int parallelLoops;
+    /** Slots of the FileLines being read around the current statement, innermost first. */
+    private Deque<Integer> openFiles = new ArrayDeque<>();
+
+    /** {@code optimizer} may be null to translate the program exactly as written. */
+    public FunLangToBytecodeVisitor(FunLangSemanticAnalyzer analyzer, String className, FunLangOptimizer optimizer) {
+        this.analyzer = analyzer;
+        this.className = className;
+        this.optimizer = optimizer;
+    }
+
+    /** The class file for {@code className}; throws IllegalStateException for programs it cannot type. */
+    public byte[] generate(FunLangParser.ProgramContext program) {
+        cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(String a, String b) {
+                // the class being written can't be loaded yet; nothing else merges with it anyway
+                if (a.equals(className) || b.equals(className)) return "java/lang/Object";
+                return super.getCommonSuperClass(a, b);
+            }
+        };
+        cw.visit(V17, ACC_PUBLIC | ACC_SUPER, className, null, "java/lang/Object", null);
+
+        mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        beginMethod(ACC_PUBLIC | ACC_STATIC, "main", "([Ljava/lang/String;)V", 1, "void");
+        allocateCells(analyzer.cellsOf(program), null);
+        List<FunLangParser.FuncDefContext> funcs = new ArrayList<>();
+        for (var s : program.statement()) {
+            if (s.funcDef() != null) funcs.add(s.funcDef());
+            else visit(s);
+        }
+        if (analyzer.writesFiles()) mv.visitMethodInsn(INVOKESTATIC, RUNTIME + "FileOutput", "closeAll", "()V", false);
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME + "ConsoleOutput", "flush", "()V", false);
+        mv.visitInsn(RETURN);
+        endMethod();
+
+        List<String> memoTables = new ArrayList<>();
+        for (var f : funcs) {
+            String name = f.ID().getText();
+            boolean memo = analyzer.isMemoized(name);
+            if (memo) {
+                memoWrapper(f);
+                memoTables.add(name + "__memo");
+            }
+            function(f, false, memo);
+            if (analyzer.needsRefVariant(name)) function(f, true, false);
+        }
+        if (!memoTables.isEmpty()) {
+            mv = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+            mv.visitCode();
+            for (String table : memoTables) {
+                mv.visitTypeInsn(NEW, RUNTIME + "MemoTable");
+                mv.visitInsn(DUP);
+                mv.visitMethodInsn(INVOKESPECIAL, RUNTIME + "MemoTable", "<init>", "()V", false);
+                mv.visitFieldInsn(PUTSTATIC, className, table, "L" + RUNTIME + "MemoTable;");
+            }
+            mv.visitInsn(RETURN);
+            endMethod();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    // ---------------------- Methods ----------------------
+
+    /** The body of a memoized function is the private {@code F__impl}; see {@link #memoWrapper}. */
+    private void function(FunLangParser.FuncDefContext ctx, boolean byRef, boolean memoized) {
+        String name = ctx.ID().getText();
+        String ret = returnTypeOf(ctx);
+        Map<VarSymbol, Integer> params = new LinkedHashMap<>();
+        StringBuilder desc = new StringBuilder("(");
+        VarSymbol refParam = null;
+        int slot = 0;
+        if (ctx.paramList() != null) {
+            for (var p : ctx.paramList().param()) {
+                VarSymbol sym = analyzer.bindingOf(p);
+                String type = p.type().getText();
+                if (byRef && refParam == null) {
+                    refParam = sym;
+                    desc.append('L').append(cellClass(type)).append(';');
+                    params.put(sym, slot++);
+                    continue;
+                }
+                desc.append(descriptor(type));
+                params.put(sym, slot);
+                slot += size(type);
+            }
+        }
+        desc.append(')').append(descriptor(ret));
+
+        beginMethod((memoized ? ACC_PRIVATE : ACC_PUBLIC) | ACC_STATIC,
+                name + (byRef ? "__ref" : memoized ? "__impl" : ""), desc.toString(), slot, ret);
+        for (var e : params.entrySet()) {
+            if (e.getKey() == refParam) cellSlots.put(e.getKey(), e.getValue());
+            else slots.put(e.getKey(), e.getValue());
+        }
+        // as in the Java backend, the by-reference variant keeps real calls
+        tailTop = null;
+        tailParams = null;
+        if (!byRef && analyzer.hasTailCalls(name)) {
+            tailTop = new Label();
+            tailParams = params;
+            mv.visitLabel(tailTop);
+        }
+        List<VarSymbol> cells = new ArrayList<>(analyzer.cellsOf(ctx));
+        cells.remove(refParam);
+        allocateCells(cells, ctx.paramList());
+        for (var s : ctx.block().statement()) visit(s);
+        if (ret.equals("void")) {
+            mv.visitInsn(RETURN);
+        } else {
+            // only reachable when some path misses its RETURN, which javac would have rejected
+            mv.visitTypeInsn(NEW, "java/lang/IllegalStateException");
+            mv.visitInsn(DUP);
+            mv.visitLdcInsn("FUNCTION " + name + " ended without RETURN");
+            mv.visitMethodInsn(INVOKESPECIAL, "java/lang/IllegalStateException", "<init>", "(Ljava/lang/String;)V", false);
+            mv.visitInsn(ATHROW);
+        }
+        endMethod();
+    }
+
+    /**
+     * Same shape as the Java backend: pack the arguments into a {@code long} key, return the
+     * cached entry on a hit, otherwise call {@code F__impl} and remember its result.
+     */
+    private void memoWrapper(FunLangParser.FuncDefContext ctx) {
+        String name = ctx.ID().getText(), ret = returnTypeOf(ctx);
+        String table = name + "__memo", memo = RUNTIME + "MemoTable", entry = memo + "$Entry";
+        cw.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, table, "L" + memo + ";", null, null).visitEnd();
+        List<String> params = new ArrayList<>();
+        if (ctx.paramList() != null) for (var p : ctx.paramList().param()) params.add(p.type().getText());
+        StringBuilder desc = new StringBuilder("(");
+        for (String p : params) desc.append(descriptor(p));
+        desc.append(')').append(descriptor(ret));
+        int slot = 0;
+        for (String p : params) slot += size(p);
+        beginMethod(ACC_PUBLIC | ACC_STATIC, name, desc.toString(), slot, ret);
+
+        // key: every argument's bits at its offset, or'ed together
+        mv.visitInsn(LCONST_0);
+        int arg = 0, offset = 0;
+        for (String p : params) {
+            switch (p) {
+                case "decimal":
+                    mv.visitVarInsn(DLOAD, arg);
+                    mv.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "doubleToLongBits", "(D)J", false);
+                    break;
+                case "boolean":
+                    mv.visitVarInsn(ILOAD, arg);
+                    mv.visitInsn(I2L);
+                    break;
+                default:
+                    mv.visitVarInsn(ILOAD, arg);
+                    mv.visitInsn(I2L);
+                    mv.visitLdcInsn(0xFFFFFFFFL);
+                    mv.visitInsn(LAND);
+            }
+            if (offset > 0) {
+                pushConstant(offset);
+                mv.visitInsn(LSHL);
+            }
+            mv.visitInsn(LOR);
+            arg += size(p);
+            offset += FunLangSemanticAnalyzer.memoKeyBits(p);
+        }
+        int key = nextSlot;
+        int hit = key + 2, result = key + 3;
+        mv.visitVarInsn(LSTORE, key);
+
+        mv.visitFieldInsn(GETSTATIC, className, table, "L" + memo + ";");
+        mv.visitVarInsn(LLOAD, key);
+        mv.visitMethodInsn(INVOKEVIRTUAL, memo, "get", "(J)L" + entry + ";", false);
+        mv.visitVarInsn(ASTORE, hit);
+        mv.visitVarInsn(ALOAD, hit);
+        Label miss = new Label();
+        mv.visitJumpInsn(IFNULL, miss);
+        mv.visitVarInsn(ALOAD, hit);
+        String kind = switch (ret) {
+            case "integer" -> "Int";
+            case "decimal" -> "Double";
+            case "boolean" -> "Boolean";
+            default -> "Ref";
+        };
+        if (kind.equals("Ref")) {
+            mv.visitMethodInsn(INVOKEVIRTUAL, entry, "asRef", "()Ljava/lang/Object;", false);
+            mv.visitTypeInsn(CHECKCAST, internalName(ret));
+        } else {
+            mv.visitMethodInsn(INVOKEVIRTUAL, entry, "as" + kind, "()" + descriptor(ret), false);
+        }
+        mv.visitInsn(opcode(ret, IRETURN, DRETURN, ARETURN));
+        mv.visitLabel(miss);
+
+        arg = 0;
+        for (String p : params) {
+            mv.visitVarInsn(opcode(p, ILOAD, DLOAD, ALOAD), arg);
+            arg += size(p);
+        }
+        mv.visitMethodInsn(INVOKESTATIC, className, name + "__impl", desc.toString(), false);
+        mv.visitVarInsn(opcode(ret, ISTORE, DSTORE, ASTORE), result);
+        mv.visitFieldInsn(GETSTATIC, className, table, "L" + memo + ";");
+        mv.visitVarInsn(LLOAD, key);
+        mv.visitVarInsn(opcode(ret, ILOAD, DLOAD, ALOAD), result);
+        mv.visitMethodInsn(INVOKEVIRTUAL, memo, "put" + kind, "(J" + (kind.equals("Ref") ? "Ljava/lang/Object;" : descriptor(ret)) + ")V", false);
+        mv.visitVarInsn(opcode(ret, ILOAD, DLOAD, ALOAD), result);
+        mv.visitInsn(opcode(ret, IRETURN, DRETURN, ARETURN));
+        endMethod();
+    }
+
+    private void beginMethod(int access, String name, String desc, int firstFreeSlot, String ret) {
+        mv = cw.visitMethod(access, name, desc, null, null);
+        mv.visitCode();
+        slots = new IdentityHashMap<>();
+        cellSlots = new IdentityHashMap<>();
+        nextSlot = firstFreeSlot;
+        returnType = ret;
+    }
+
+    private void endMethod() {
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /** Same policy as the Java backend: one cell per variable, allocated once on method entry. */
+    private void allocateCells(List<VarSymbol> cells, FunLangParser.ParamListContext params) {
+        for (VarSymbol sym : cells) {
+            String type = sym.getType(), cell = cellClass(type);
+            boolean isParam = params != null && params.param().stream().anyMatch(p -> analyzer.bindingOf(p) == sym);
+            mv.visitTypeInsn(NEW, cell);
+            mv.visitInsn(DUP);
+            if (cell.equals(RULES + "Value")) {
+                if (isParam) load(sym);
+                else if (type.equals("boolean")) mv.visitInsn(ICONST_0);
+                else mv.visitInsn(ACONST_NULL);
+                box(type);
+                mv.visitMethodInsn(INVOKESPECIAL, cell, "<init>", "(Ljava/lang/Object;)V", false);
+            } else if (isParam) {
+                load(sym);
+                mv.visitMethodInsn(INVOKESPECIAL, cell, "<init>", "(" + descriptor(type) + ")V", false);
+            } else {
+                mv.visitMethodInsn(INVOKESPECIAL, cell, "<init>", "()V", false);
+            }
+            int slot = nextSlot++;
+            mv.visitVarInsn(ASTORE, slot);
+            cellSlots.put(sym, slot);
+        }
+    }
+
+    // ---------------------- Statements ----------------------
+
+    /**
+     * No line number table: every label starts a basic block, and ASM's frame computation is
+     * proportional to blocks times locals (the in-memory javac path uses -g:none as well).
+     */
+    @Override
+    public Void visitStatement(FunLangParser.StatementContext ctx) {
+        if (ctx.funcDef() != null) return null; // nested functions are not supported by either backend
+        return visitChildren(ctx);
+    }
+
+    /** Locals declared in a block are dead after it, so their slots are reused. */
+    @Override
+    public Void visitBlock(FunLangParser.BlockContext ctx) {
+        int mark = nextSlot;
+        visitChildren(ctx);
+        nextSlot = mark;
+        return null;
+    }
+
+    @Override
+    public Void visitVarDecl(FunLangParser.VarDeclContext ctx) {
+        if (isRemoved(ctx)) return null;
+        VarSymbol sym = analyzer.bindingOf(ctx);
+        String type = ctx.type().getText();
+        if (cellSlots.containsKey(sym)) {
+            if (ctx.expr() != null) store(sym, () -> expr(ctx.expr()));
+            return null;
+        }
+        slots.put(sym, nextSlot);
+        nextSlot += size(type);
+        // uninitialized declarations still get a default so every path leaves the slot typed
+        store(sym, ctx.expr() != null ? () -> expr(ctx.expr()) : () -> pushDefault(type));
+        return null;
+    }
+
+    @Override
+    public Void visitAssignment(FunLangParser.AssignmentContext ctx) {
+        if (isRemoved(ctx)) return null;
+        store(analyzer.bindingOf(ctx), () -> expr(ctx.expr()));
+        return null;
+    }
+
+    @Override
+    public Void visitExprStmt(FunLangParser.ExprStmtContext ctx) {
+        String type = expr(ctx.expr());
+        if (type.equals("decimal")) mv.visitInsn(POP2);
+        else if (!type.equals("void")) mv.visitInsn(POP);
+        return null;
+    }
+
+    @Override
+    public Void visitSystemCall(FunLangParser.SystemCallContext ctx) {
+        if (ctx.expr() == null) {
+            mv.visitMethodInsn(INVOKESTATIC, RUNTIME + "ConsoleOutput", "flush", "()V", false);
+            return null;
+        }
+        String type = expr(ctx.expr());
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME + "ConsoleOutput", "println", "(" + printDescriptor(type) + ")V", false);
+        return null;
+    }
+
+    @Override
+    public Void visitFileWrite(FunLangParser.FileWriteContext ctx) {
+        convert(expr(ctx.expr(0)), "text");
+        stringify(expr(ctx.expr(1)));
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME + "FileOutput", "write", "(Ljava/lang/String;Ljava/lang/String;)V", false);
+        return null;
+    }
+
+    /**
+     * try/finally by hand: an exception closes the file and is rethrown, the end of the file has
+     * closed it already, and a RETURN or tail call inside closes it before leaving (see {@link #closeFiles}).
+     */
+    @Override
+    public Void visitFileLoop(FunLangParser.FileLoopContext ctx) {
+        String lines = RUNTIME + "FileLines";
+        int mark = nextSlot, file = nextSlot++, slot = nextSlot++;
+        slots.put(analyzer.bindingOf(ctx), slot);
+        convert(expr(ctx.expr()), "text");
+        mv.visitMethodInsn(INVOKESTATIC, lines, "open", "(Ljava/lang/String;)L" + lines + ";", false);
+        mv.visitVarInsn(ASTORE, file);
+        Label start = new Label(), top = new Label(), end = new Label(), handler = new Label(), after = new Label();
+        mv.visitLabel(start);
+        mv.visitLabel(top);
+        mv.visitVarInsn(ALOAD, file);
+        mv.visitMethodInsn(INVOKEVIRTUAL, lines, "next", "()Ljava/lang/String;", false);
+        mv.visitInsn(DUP);
+        mv.visitVarInsn(ASTORE, slot);
+        mv.visitJumpInsn(IFNULL, end);
+        openFiles.push(file);
+        visit(ctx.block());
+        openFiles.pop();
+        mv.visitJumpInsn(GOTO, top);
+        mv.visitLabel(end);
+        mv.visitJumpInsn(GOTO, after);
+        // registered after the body, so the handlers of nested loops come first in the exception table
+        mv.visitTryCatchBlock(start, end, handler, null);
+        mv.visitLabel(handler);
+        mv.visitVarInsn(ALOAD, file);
+        mv.visitMethodInsn(INVOKEVIRTUAL, lines, "close", "()V", false);
+        mv.visitInsn(ATHROW);
+        mv.visitLabel(after);
+        nextSlot = mark;
+        return null;
+    }
+
+    /** Before a RETURN or tail call jumps out of FILE loops, closes what they have open. */
+    private void closeFiles() {
+        for (int file : openFiles) {
+            mv.visitVarInsn(ALOAD, file);
+            mv.visitMethodInsn(INVOKEVIRTUAL, RUNTIME + "FileLines", "close", "()V", false);
+        }
+    }
+
+    @Override
+    public Void visitIfStmt(FunLangParser.IfStmtContext ctx) {
+        Label end = new Label();
+        for (int i = 0; i < ctx.expr().size(); i++) {
+            Boolean cond = constantCondition(ctx.expr(i));
+            if (Boolean.FALSE.equals(cond)) continue;
+            if (Boolean.TRUE.equals(cond)) {
+                visit(ctx.block(i));
+                mv.visitLabel(end);
+                return null;
+            }
+            Label next = new Label();
+            condition(ctx.expr(i), next);
+            visit(ctx.block(i));
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(next);
+        }
+        if (ctx.block().size() > ctx.expr().size()) visit(ctx.block(ctx.block().size() - 1));
+        mv.visitLabel(end);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(FunLangParser.WhileStmtContext ctx) {
+        Boolean cond = constantCondition(ctx.expr());
+        if (Boolean.FALSE.equals(cond)) return null;
+        int mark = nextSlot;
+        hoist(ctx);
+        Label top = new Label(), end = new Label();
+        mv.visitLabel(top);
+        if (cond == null) condition(ctx.expr(), end);
+        visit(ctx.block());
+        mv.visitJumpInsn(GOTO, top);
+        mv.visitLabel(end);
+        nextSlot = mark;
+        return null;
+    }
+
+    /**
+     * {@code for (int i = start; i <= end; i += step)}, with end and step evaluated once into
+     * locals unless they are constants; a negative step counts down to the end, and a step that
+     * is not a constant is checked not to be 0. A decimal end becomes the last integer before
+     * it.
+     */
+    @Override
+    public Void visitForStmt(FunLangParser.ForStmtContext ctx) {
+        if (ctx.PARALLEL() != null) {
+            parallelFor(ctx);
+            return null;
+        }
+        int mark = nextSlot;
+        hoist(ctx);
+        VarSymbol loopVar = analyzer.bindingOf(ctx);
+        int slot = nextSlot++;
+        slots.put(loopVar, slot);
+        convert(expr(ctx.expr(0)), "integer");
+        mv.visitVarInsn(ISTORE, slot);
+        Integer step = constantStep(ctx);
+        boolean decimal = "decimal".equals(analyzer.typeOf(ctx.expr(1)));
+        int last = -1, stride = -1, limit = -1;
+        if (decimal) {
+            convert(expr(ctx.expr(1)), "decimal");
+            mv.visitVarInsn(DSTORE, limit = nextSlot);
+            nextSlot += 2;
+        } else if (optimizer == null || optimizer.constantValue(ctx.expr(1)) == null) {
+            convert(expr(ctx.expr(1)), "integer");
+            mv.visitVarInsn(ISTORE, last = nextSlot++);
+        }
+        if (step == null) {
+            convert(expr(ctx.expr(2)), "integer");
+            mv.visitMethodInsn(INVOKESTATIC, RUNTIME + "ForLoop", "checkStep", "(I)I", false);
+            mv.visitVarInsn(ISTORE, stride = nextSlot++);
+        }
+        if (decimal) {
+            // the last integer before the end, which depends on the direction
+            mv.visitVarInsn(DLOAD, limit);
+            pushStep(ctx, stride);
+            mv.visitMethodInsn(INVOKESTATIC, RUNTIME + "ForLoop", "last", "(DI)I", false);
+            mv.visitVarInsn(ISTORE, last = nextSlot++);
+        }
+        List<FunLangOptimizer.Product> products = optimizer == null ? List.of() : optimizer.productsOf(ctx);
+        for (var p : products) {
+            int running = nextSlot++, delta = nextSlot++;
+            slots.put(p.temp(), running);
+            slots.put(p.delta(), delta);
+            convert(compute(p.multiplication()), "integer");
+            mv.visitVarInsn(ISTORE, running);
+            pushStep(ctx, stride);
+            convert(expr(p.factor()), "integer");
+            mv.visitInsn(IMUL);
+            mv.visitVarInsn(ISTORE, delta);
+        }
+        Label top = new Label(), end = new Label();
+        mv.visitLabel(top);
+        if (step == null) {
+            Label down = new Label(), body = new Label();
+            mv.visitVarInsn(ILOAD, stride);
+            mv.visitJumpInsn(IFLT, down);
+            pushBounds(ctx, slot, last);
+            mv.visitJumpInsn(IF_ICMPGT, end);
+            mv.visitJumpInsn(GOTO, body);
+            mv.visitLabel(down);
+            pushBounds(ctx, slot, last);
+            mv.visitJumpInsn(IF_ICMPLT, end);
+            mv.visitLabel(body);
+        } else {
+            pushBounds(ctx, slot, last);
+            mv.visitJumpInsn(step < 0 ? IF_ICMPLT : IF_ICMPGT, end);
+        }
+        visit(ctx.block());
+        mv.visitVarInsn(ILOAD, slot);
+        pushStep(ctx, stride);
+        mv.visitInsn(IADD);
+        mv.visitVarInsn(ISTORE, slot);
+        for (var p : products) {
+            mv.visitVarInsn(ILOAD, slots.get(p.temp()));
+            mv.visitVarInsn(ILOAD, slots.get(p.delta()));
+            mv.visitInsn(IADD);
+            mv.visitVarInsn(ISTORE, slots.get(p.temp()));
+        }
+        mv.visitJumpInsn(GOTO, top);
+        mv.visitLabel(end);
+        nextSlot = mark;
+        return null;
+    }
+
+    /** The loop variable and the end, ready to compare. */
+    private void pushBounds(FunLangParser.ForStmtContext ctx, int slot, int last) {
+        mv.visitVarInsn(ILOAD, slot);
+        if (last >= 0) mv.visitVarInsn(ILOAD, last);
+        else convert(expr(ctx.expr(1)), "integer");
+    }
+
+    private void pushStep(FunLangParser.ForStmtContext ctx, int stride) {
+        if (stride >= 0) mv.visitVarInsn(ILOAD, stride);
+        else if (ctx.expr().size() > 2) convert(expr(ctx.expr(2)), "integer");
+        else mv.visitInsn(ICONST_1);
+    }
+
+    /**
+     * The STEP if it is known before the program runs: 1 when there is none. A STEP that only
+     * folds to 0 through propagated variables is left to the run-time check.
+     */
+    private Integer constantStep(FunLangParser.ForStmtContext ctx) {
+        if (ctx.expr().size() < 3) return 1;
+        return optimizer != null && optimizer.constantValue(ctx.expr(2)) instanceof Integer i && i != 0 ? i : null;
+    }
+
+    /** Computes the invariants taken out of a loop into locals of their own. */
+    private void hoist(ParserRuleContext loop) {
+        if (optimizer == null) return;
+        for (var h : optimizer.hoistedBefore(loop)) {
+            String type = h.temp().getType();
+            convert(compute(h.value()), type);
+            slots.put(h.temp(), nextSlot);
+            mv.visitVarInsn(opcode(type, ISTORE, DSTORE, ASTORE), nextSlot);
+            nextSlot += size(type);
+        }
+    }
+
+    /**
+     * As in the Java backend, the body of a PARALLEL FOR runs one chunk of iterations; here it is
+     * a private static method taking the captured variables (or their cells) first, turned into a
+     * {@code ParallelLoop.Chunk} by LambdaMetafactory the way javac compiles a lambda.
+     */
+    private void parallelFor(FunLangParser.ForStmtContext ctx) {
+        List<VarSymbol> ints = new ArrayList<>(), doubles = new ArrayList<>();
+        StringBuilder intOps = new StringBuilder(), doubleOps = new StringBuilder();
+        for (var e : analyzer.reductionsOf(ctx).entrySet()) {
+            boolean integer = e.getKey().getType().equals("integer");
+            (integer ? ints : doubles).add(e.getKey());
+            (integer ? intOps : doubleOps).append(e.getValue());
+        }
+        List<VarSymbol> captured = analyzer.capturesOf(ctx);
+        StringBuilder captures = new StringBuilder();
+        for (VarSymbol v : captured) {
+            captures.append(cellSlots.containsKey(v) ? "L" + cellClass(v.getType()) + ";" : descriptor(v.getType()));
+        }
+        String chunk = "(III[I[D)V", method = "__parallel" + parallelLoops++;
+        String desc = "(" + captures + chunk.substring(1);
+        chunkMethod(ctx, method, desc, captured, ints, doubles);
+
+        int mark = nextSlot, intValues = nextSlot++, doubleValues = nextSlot++;
+        newArray(ints, T_INT, IASTORE, intValues);
+        newArray(doubles, T_DOUBLE, DASTORE, doubleValues);
+        String end = "decimal".equals(analyzer.typeOf(ctx.expr(1))) ? "decimal" : "integer";
+        convert(expr(ctx.expr(0)), "integer");
+        convert(expr(ctx.expr(1)), end);
+        if (ctx.expr().size() > 2) convert(expr(ctx.expr(2)), "integer");
+        else mv.visitInsn(ICONST_1);
+        mv.visitLdcInsn(intOps.toString());
+        mv.visitVarInsn(ALOAD, intValues);
+        mv.visitLdcInsn(doubleOps.toString());
+        mv.visitVarInsn(ALOAD, doubleValues);
+        for (VarSymbol v : captured) {
+            if (cellSlots.containsKey(v)) mv.visitVarInsn(ALOAD, cellSlots.get(v));
+            else load(v);
+        }
+        Handle metafactory = new Handle(H_INVOKESTATIC, "java/lang/invoke/LambdaMetafactory", "metafactory",
+                "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;"
+                        + "Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)"
+                        + "Ljava/lang/invoke/CallSite;", false);
+        mv.visitInvokeDynamicInsn("run", "(" + captures + ")L" + RUNTIME + "ParallelLoop$Chunk;", metafactory,
+                Type.getType(chunk), new Handle(H_INVOKESTATIC, className, method, desc, false), Type.getType(chunk));
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME + "ParallelLoop", "run",
+                "(I" + descriptor(end) + "ILjava/lang/String;[ILjava/lang/String;[DL" + RUNTIME + "ParallelLoop$Chunk;)V", false);
+        for (int k = 0; k < ints.size(); k++) store(ints.get(k), element(intValues, k, IALOAD, "integer"));
+        for (int k = 0; k < doubles.size(); k++) store(doubles.get(k), element(doubleValues, k, DALOAD, "decimal"));
+        nextSlot = mark;
+    }
+
+    /** {@code void __parallelN(captured..., int first, int last, int step, int[] ints, double[] doubles)} */
+    private void chunkMethod(FunLangParser.ForStmtContext ctx, String method, String desc, List<VarSymbol> captured,
+                             List<VarSymbol> ints, List<VarSymbol> doubles) {
+        MethodVisitor outerMv = mv;
+        Map<VarSymbol, Integer> outerSlots = slots, outerCells = cellSlots, outerTailParams = tailParams;
+        int outerNext = nextSlot;
+        String outerReturn = returnType;
+        Label outerTail = tailTop;
+        Deque<Integer> outerFiles = openFiles;
+        openFiles = new ArrayDeque<>();
+        Map<VarSymbol, Integer> params = new IdentityHashMap<>(), cells = new IdentityHashMap<>();
+        int slot = 0;
+        for (VarSymbol v : captured) {
+            if (cellSlots.containsKey(v)) cells.put(v, slot++);
+            else {
+                params.put(v, slot);
+                slot += size(v.getType());
+            }
+        }
+        int first = slot, last = slot + 1, step = slot + 2, intAcc = slot + 3, doubleAcc = slot + 4;
+        beginMethod(ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC, method, desc, slot + 5, "void");
+        slots.putAll(params);
+        cellSlots.putAll(cells);
+        tailTop = null;
+        tailParams = null;
+        // every chunk folds into locals of its own, starting from what ParallelLoop handed it
+        for (int k = 0; k < ints.size(); k++) {
+            slots.put(ints.get(k), nextSlot);
+            store(ints.get(k), element(intAcc, k, IALOAD, "integer"));
+            nextSlot++;
+        }
+        for (int k = 0; k < doubles.size(); k++) {
+            slots.put(doubles.get(k), nextSlot);
+            store(doubles.get(k), element(doubleAcc, k, DALOAD, "decimal"));
+            nextSlot += 2;
+        }
+        int i = nextSlot++;
+        slots.put(analyzer.bindingOf(ctx), i);
+        mv.visitVarInsn(ILOAD, first);
+        mv.visitVarInsn(ISTORE, i);
+        Label top = new Label(), end = new Label();
+        mv.visitLabel(top);
+        mv.visitVarInsn(ILOAD, i);
+        mv.visitVarInsn(ILOAD, last);
+        mv.visitJumpInsn(IF_ICMPGT, end);
+        visit(ctx.block());
+        mv.visitVarInsn(ILOAD, i);
+        mv.visitVarInsn(ILOAD, step);
+        mv.visitInsn(IADD);
+        mv.visitVarInsn(ISTORE, i);
+        mv.visitJumpInsn(GOTO, top);
+        mv.visitLabel(end);
+        for (int k = 0; k < ints.size(); k++) {
+            mv.visitVarInsn(ALOAD, intAcc);
+            pushConstant(k);
+            load(ints.get(k));
+            mv.visitInsn(IASTORE);
+        }
+        for (int k = 0; k < doubles.size(); k++) {
+            mv.visitVarInsn(ALOAD, doubleAcc);
+            pushConstant(k);
+            load(doubles.get(k));
+            mv.visitInsn(DASTORE);
+        }
+        mv.visitInsn(RETURN);
+        endMethod();
+
+        mv = outerMv;
+        slots = outerSlots;
+        cellSlots = outerCells;
+        nextSlot = outerNext;
+        returnType = outerReturn;
+        tailTop = outerTail;
+        tailParams = outerTailParams;
+        openFiles = outerFiles;
+    }
+
+    /** An array of the variables' current values, stored in {@code slot}. */
+    private void newArray(List<VarSymbol> values, int elementType, int storeOp, int slot) {
+        pushConstant(values.size());
+        mv.visitIntInsn(NEWARRAY, elementType);
+        for (int k = 0; k < values.size(); k++) {
+            mv.visitInsn(DUP);
+            pushConstant(k);
+            load(values.get(k));
+            mv.visitInsn(storeOp);
+        }
+        mv.visitVarInsn(ASTORE, slot);
+    }
+
+    private Supplier<String> element(int array, int index, int loadOp, String type) {
+        return () -> {
+            mv.visitVarInsn(ALOAD, array);
+            pushConstant(index);
+            mv.visitInsn(loadOp);
+            return type;
+        };
+    }
+
+    @Override
+    public Void visitReturnStmt(FunLangParser.ReturnStmtContext ctx) {
+        if (tailTop != null && analyzer.isTailCall(ctx)) {
+            tailCall(FunLangSemanticAnalyzer.bareCall(ctx.expr()));
+            return null;
+        }
+        convert(expr(ctx.expr()), returnType);
+        closeFiles();
+        switch (returnType) {
+            case "integer": case "boolean": mv.visitInsn(IRETURN); break;
+            case "decimal": mv.visitInsn(DRETURN); break;
+            default: mv.visitInsn(ARETURN);
+        }
+        return null;
+    }
+
+    /** Every argument goes on the stack first, then into the parameter slots, then back to the top. */
+    private void tailCall(FunLangParser.FunctionCallContext call) {
+        List<FunLangParser.ExprContext> args = call.argList() == null ? List.of() : call.argList().expr();
+        List<VarSymbol> params = new ArrayList<>(tailParams.keySet());
+        for (int i = 0; i < args.size(); i++) convert(expr(args.get(i)), params.get(i).getType());
+        for (int i = args.size() - 1; i >= 0; i--) {
+            VarSymbol p = params.get(i);
+            mv.visitVarInsn(opcode(p.getType(), ISTORE, DSTORE, ASTORE), tailParams.get(p));
+        }
+        closeFiles();
+        mv.visitJumpInsn(GOTO, tailTop);
+    }
+
+    @Override
+    public Void visitFuncDef(FunLangParser.FuncDefContext ctx) { return null; }
+
+    /** A single comparison jumps on its operands directly instead of materializing a boolean first. */
+    private void condition(FunLangParser.ExprContext cond, Label ifFalse) {
+        ParseTree n = cond;
+        while (n.getChildCount() == 1 && !(n instanceof FunLangParser.ComparisonExprContext)) n = n.getChild(0);
+        if (n instanceof FunLangParser.ComparisonExprContext c && c.op.size() == 1
+                && (optimizer == null || optimizer.constantValue(c) == null)) {
+            String type = widen(type(c.additiveExpr(0)), type(c.additiveExpr(1)));
+            convert(expr(c.additiveExpr(0)), type);
+            convert(expr(c.additiveExpr(1)), type);
+            jump(c.op.get(0).getText(), type, ifFalse, true);
+            return;
+        }
+        convert(expr(cond), "boolean");
+        mv.visitJumpInsn(IFEQ, ifFalse);
+    }
+
+    private static String negate(String op) {
+        switch (op) {
+            case "<": return ">=";
+            case ">": return "<=";
+            case "<=": return ">";
+            case "==": return "!=";
+            default: return "==";
+        }
+    }
+
+    // ---------------------- Expressions ----------------------
+
+    private String expr(ParseTree node) {
+        Object constant = optimizer == null ? null : optimizer.constantValue(node);
+        if (constant != null) return pushConstant(constant);
+        VarSymbol temp = optimizer == null ? null : optimizer.loopTemp(node);
+        if (temp != null) return load(temp);
+        return compute(node);
+    }
+
+    /** An expression evaluated where it stands, even if it is a loop invariant. */
+    private String compute(ParseTree node) {
+        if (node instanceof FunLangParser.ExprContext e) return expr(e.chainExpr());
+        if (node instanceof FunLangParser.ChainExprContext c) return chain(c);
+        if (node instanceof FunLangParser.ComparisonExprContext c) return comparison(c);
+        if (node instanceof FunLangParser.AdditiveExprContext a) return arithmetic(a.multiplicativeExpr(), a.op);
+        if (node instanceof FunLangParser.MultiplicativeExprContext m) return arithmetic(m.basicExpr(), m.op);
+        if (node instanceof FunLangParser.BasicExprContext b) {
+            if (b.literal() != null) return literal(b.literal());
+            if (b.functionCall() != null) return call(b.functionCall(), null);
+            if (b.expr() != null) return expr(b.expr());
+            return load(analyzer.bindingOf(b));
+        }
+        throw new IllegalStateException("Unhandled expression: " + node.getText());
+    }
+
+    private String chain(FunLangParser.ChainExprContext ctx) {
+        var operands = ctx.comparisonExpr();
+        if (operands.size() == 1) return expr(operands.get(0));
+        String acc;
+        int next = 1;
+        String first = ctx.chainOp(0).getText();
+        if (analyzer.isPipeline(ctx.chainOp(0)) && first.equals("<=")) {
+            acc = call(FunLangSemanticAnalyzer.bareCall(operands.get(0)), () -> expr(operands.get(1)));
+            next = 2;
+        } else if (analyzer.isPipeline(ctx.chainOp(0)) && first.equals("<=>")) {
+            acc = byReference(operands.get(0), FunLangSemanticAnalyzer.bareCall(operands.get(1)));
+            next = 2;
+        } else {
+            acc = expr(operands.get(0));
+        }
+        for (int i = next; i < operands.size(); i++) {
+            var operand = operands.get(i);
+            if (analyzer.isPipeline(ctx.chainOp(i - 1))) {
+                String piped = acc; // already on the stack
+                acc = call(FunLangSemanticAnalyzer.bareCall(operand), () -> piped);
+            } else {
+                String type = widen(acc, type(operand));
+                convert(acc, type);
+                convert(expr(operand), type);
+                compare("<=", type);
+                acc = "boolean";
+            }
+        }
+        return acc;
+    }
+
+    private String byReference(FunLangParser.ComparisonExprContext source, FunLangParser.FunctionCallContext target) {
+        VarSymbol sym = analyzer.bindingOf(FunLangSemanticAnalyzer.bareVariable(source));
+        String name = target.ID().getText();
+        if (!cellSlots.containsKey(sym) || !analyzer.writesFirstParam(name)) return call(target, () -> load(sym));
+        FunctionSymbol fs = function(target);
+        mv.visitVarInsn(ALOAD, cellSlots.get(sym));
+        StringBuilder desc = new StringBuilder("(L").append(cellClass(fs.getParamTypes().get(0))).append(';');
+        List<FunLangParser.ExprContext> args = target.argList() == null ? List.of() : target.argList().expr();
+        for (int i = 0; i < args.size(); i++) {
+            String param = fs.getParamTypes().get(i + 1);
+            convert(expr(args.get(i)), param);
+            desc.append(descriptor(param));
+        }
+        desc.append(')').append(descriptor(fs.getReturnType()));
+        mv.visitMethodInsn(INVOKESTATIC, className, name + "__ref", desc.toString(), false);
+        return fs.getReturnType();
+    }
+
+    /**
+     * Jumps to {@code target} if {@code a op b} holds (or, with {@code whenFalse}, doesn't) for the
+     * two operands on the stack. Decimal comparisons pick dcmpg/dcmpl by the original operator so
+     * that NaN makes every test but != false, as in Java.
+     */
+    private void jump(String op, String type, Label target, boolean whenFalse) {
+        String test = whenFalse ? negate(op) : op;
+        if (type.equals("decimal")) {
+            mv.visitInsn(op.equals("<") || op.equals("<=") ? DCMPG : DCMPL);
+            mv.visitJumpInsn(switch (test) {
+                case "<" -> IFLT;
+                case "<=" -> IFLE;
+                case ">" -> IFGT;
+                case ">=" -> IFGE;
+                case "==" -> IFEQ;
+                default -> IFNE;
+            }, target);
+        } else if (type.equals("integer") || type.equals("boolean")) {
+            mv.visitJumpInsn(switch (test) {
+                case "<" -> IF_ICMPLT;
+                case "<=" -> IF_ICMPLE;
+                case ">" -> IF_ICMPGT;
+                case ">=" -> IF_ICMPGE;
+                case "==" -> IF_ICMPEQ;
+                default -> IF_ICMPNE;
+            }, target);
+        } else {
+            mv.visitJumpInsn(test.equals("==") ? IF_ACMPEQ : IF_ACMPNE, target);
+        }
+    }
+
+    private String comparison(FunLangParser.ComparisonExprContext ctx) {
+        var operands = ctx.additiveExpr();
+        String acc = expr(operands.get(0));
+        for (int i = 1; i < operands.size(); i++) {
+            String type = widen(acc, type(operands.get(i)));
+            convert(acc, type);
+            convert(expr(operands.get(i)), type);
+            compare(ctx.op.get(i - 1).getText(), type);
+            acc = "boolean";
+        }
+        return acc;
+    }
+
+    /** Pushes 1 or 0 for {@code a op b} where both operands are already on the stack as {@code type}. */
+    private void compare(String op, String type) {
+        Label yes = new Label(), done = new Label();
+        jump(op, type, yes, false);
+        mv.visitInsn(ICONST_0);
+        mv.visitJumpInsn(GOTO, done);
+        mv.visitLabel(yes);
+        mv.visitInsn(ICONST_1);
+        mv.visitLabel(done);
+    }
+
+    /** Left to right like Java: numbers widen to double, and {@code +} with text concatenates. */
+    private String arithmetic(List<? extends ParseTree> operands, List<Token> ops) {
+        String acc = expr(operands.get(0));
+        for (int i = 1; i < operands.size(); i++) {
+            String op = ops.get(i - 1).getText();
+            ParseTree operand = operands.get(i);
+            String right = type(operand);
+            if (op.equals("+") && (acc.equals("text") || right.equals("text"))) {
+                stringify(acc);
+                stringify(expr(operand));
+                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;", false);
+                acc = "text";
+                continue;
+            }
+            String type = widen(acc, right);
+            convert(acc, type);
+            convert(expr(operand), type);
+            boolean d = type.equals("decimal");
+            mv.visitInsn(switch (op) {
+                case "+" -> d ? DADD : IADD;
+                case "-" -> d ? DSUB : ISUB;
+                case "*" -> d ? DMUL : IMUL;
+                default -> d ? DDIV : IDIV;
+            });
+            acc = type;
+        }
+        return acc;
+    }
+
+    /** Emits a call; {@code first}, if given, pushes the piped first argument and returns its type. */
+    private String call(FunLangParser.FunctionCallContext ctx, Supplier<String> first) {
+        String name = ctx.ID().getText();
+        List<FunLangParser.ExprContext> args = ctx.argList() == null ? List.of() : ctx.argList().expr();
+        FunctionSymbol fs = function(ctx);
+        if (fs.isBuiltin()) {
+            String type = type(ctx);
+            String operand = name.equals("SQRT") ? "decimal" : type;
+            if (first != null) convert(first.get(), operand);
+            for (var a : args) convert(expr(a), operand);
+            String d = descriptor(operand);
+            mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", name.toLowerCase(Locale.ROOT),
+                    "(" + d + (name.equals("SQRT") ? "" : d) + ")" + d, false);
+            return type;
+        }
+        StringBuilder desc = new StringBuilder("(");
+        int offset = 0;
+        if (first != null) {
+            convert(first.get(), fs.getParamTypes().get(0));
+            offset = 1;
+        }
+        for (int i = 0; i < args.size(); i++) convert(expr(args.get(i)), fs.getParamTypes().get(i + offset));
+        for (String p : fs.getParamTypes()) desc.append(descriptor(p));
+        desc.append(')').append(descriptor(fs.getReturnType()));
+        mv.visitMethodInsn(INVOKESTATIC, className, name, desc.toString(), false);
+        return fs.getReturnType();
+    }
+
+    private String literal(FunLangParser.LiteralContext ctx) {
+        if (ctx.INT() != null) {
+            try {
+                return pushConstant(Integer.parseInt(ctx.INT().getText()));
+            } catch (NumberFormatException e) {
+                throw new IllegalStateException("Integer literal out of range: " + ctx.INT().getText());
+            }
+        }
+        if (ctx.DECIMAL() != null) return pushConstant(Double.parseDouble(ctx.DECIMAL().getText()));
+        if (ctx.TRUE() != null) return pushConstant(true);
+        if (ctx.FALSE() != null) return pushConstant(false);
+        if (ctx.STRING() != null) {
+            String text = ctx.STRING().getText();
+            mv.visitLdcInsn(unescape(text.substring(1, text.length() - 1)));
+            return "text";
+        }
+        // list literal: fill a primitive (or Object) array and hand it to <List>.of
+        String type = analyzer.typeOf(ctx) == null ? "list(decimal)" : analyzer.typeOf(ctx);
+        String element = type.substring(5, type.length() - 1);
+        var elems = ctx.listLiteral().expr();
+        pushConstant(elems.size());
+        String array;
+        switch (element) {
+            case "integer": mv.visitIntInsn(NEWARRAY, T_INT); array = "[I"; break;
+            case "decimal": mv.visitIntInsn(NEWARRAY, T_DOUBLE); array = "[D"; break;
+            case "boolean": mv.visitIntInsn(NEWARRAY, T_BOOLEAN); array = "[Z"; break;
+            default: mv.visitTypeInsn(ANEWARRAY, "java/lang/Object"); array = "[Ljava/lang/Object;";
+        }
+        for (int i = 0; i < elems.size(); i++) {
+            mv.visitInsn(DUP);
+            pushConstant(i);
+            convert(expr(elems.get(i)), element);
+            mv.visitInsn(switch (element) {
+                case "integer" -> IASTORE;
+                case "decimal" -> DASTORE;
+                case "boolean" -> BASTORE;
+                default -> AASTORE;
+            });
+        }
+        String list = listClass(element);
+        mv.visitMethodInsn(INVOKESTATIC, list, "of", "(" + array + ")L" + list + ";", false);
+        return type;
+    }
+
+    // ---------------------- Variables ----------------------
+
+    private String load(VarSymbol sym) {
+        String type = sym.getType();
+        Integer cell = cellSlots.get(sym);
+        if (cell != null) {
+            mv.visitVarInsn(ALOAD, cell);
+            String cls = cellClass(type);
+            if (cls.equals(RULES + "Value")) {
+                mv.visitMethodInsn(INVOKEVIRTUAL, cls, "get", "()Ljava/lang/Object;", false);
+                unbox(type);
+            } else {
+                mv.visitFieldInsn(GETFIELD, cls, "value", descriptor(type));
+            }
+            return type;
+        }
+        Integer slot = slots.get(sym);
+        if (slot == null) throw new IllegalStateException("Variable " + sym.getName() + " is not visible here");
+        mv.visitVarInsn(opcode(type, ILOAD, DLOAD, ALOAD), slot);
+        return type;
+    }
+
+    private void store(VarSymbol sym, Supplier<String> value) {
+        String type = sym.getType();
+        Integer cell = cellSlots.get(sym);
+        if (cell != null) {
+            mv.visitVarInsn(ALOAD, cell);
+            convert(value.get(), type);
+            String cls = cellClass(type);
+            if (cls.equals(RULES + "Value")) {
+                box(type);
+                mv.visitMethodInsn(INVOKEVIRTUAL, cls, "set", "(Ljava/lang/Object;)V", false);
+            } else {
+                mv.visitFieldInsn(PUTFIELD, cls, "value", descriptor(type));
+            }
+            return;
+        }
+        convert(value.get(), type);
+        mv.visitVarInsn(opcode(type, ISTORE, DSTORE, ASTORE), slots.get(sym));
+    }
+
+    // ---------------------- Helpers ----------------------
+
+    private String pushConstant(Object v) {
+        if (v instanceof Boolean b) {
+            mv.visitInsn(b ? ICONST_1 : ICONST_0);
+            return "boolean";
+        }
+        if (v instanceof Integer i) {
+            if (i >= -1 && i <= 5) mv.visitInsn(ICONST_0 + i);
+            else if (i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE) mv.visitIntInsn(BIPUSH, i);
+            else if (i >= Short.MIN_VALUE && i <= Short.MAX_VALUE) mv.visitIntInsn(SIPUSH, i);
+            else mv.visitLdcInsn(i);
+            return "integer";
+        }
+        double d = (Double) v;
+        if (Double.doubleToRawLongBits(d) == 0L) mv.visitInsn(DCONST_0);
+        else if (d == 1.0) mv.visitInsn(DCONST_1);
+        else mv.visitLdcInsn(d);
+        return "decimal";
+    }
+
+    private String pushDefault(String type) {
+        switch (type) {
+            case "integer": case "boolean": mv.visitInsn(ICONST_0); break;
+            case "decimal": mv.visitInsn(DCONST_0); break;
+            default: mv.visitInsn(ACONST_NULL);
+        }
+        return type;
+    }
+
+    /** The only implicit conversion FunLang has is integer to decimal. */
+    private void convert(String from, String to) {
+        if ("integer".equals(from) && "decimal".equals(to)) mv.visitInsn(I2D);
+    }
+
+    private void stringify(String type) {
+        String arg = switch (type) {
+            case "integer" -> "I";
+            case "decimal" -> "D";
+            case "boolean" -> "Z";
+            default -> "Ljava/lang/Object;";
+        };
+        mv.visitMethodInsn(INVOKESTATIC, "java/lang/String", "valueOf", "(" + arg + ")Ljava/lang/String;", false);
+    }
+
+    private void box(String type) {
+        if (type.equals("boolean")) {
+            mv.visitMethodInsn(INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;", false);
+        }
+    }
+
+    private void unbox(String type) {
+        if (type.equals("boolean")) {
+            mv.visitTypeInsn(CHECKCAST, "java/lang/Boolean");
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Boolean", "booleanValue", "()Z", false);
+        } else {
+            mv.visitTypeInsn(CHECKCAST, internalName(type));
+        }
+    }
+
+    private String type(ParseTree node) {
+        String type = analyzer.typeOf(node);
+        if (type == null) throw new IllegalStateException("Cannot determine the type of " + node.getText());
+        return type;
+    }
+
+    private static String widen(String a, String b) {
+        if (a.equals("decimal") && b.equals("integer") || a.equals("integer") && b.equals("decimal")) return "decimal";
+        return a;
+    }
+
+    /** The analyzer's binding of a call or definition. */
+    private FunctionSymbol function(ParseTree callOrDefinition) {
+        FunctionSymbol fs = analyzer.functionOf(callOrDefinition);
+        if (fs == null) throw new IllegalStateException("Unknown function: " + callOrDefinition.getText());
+        return fs;
+    }
+
+    private String returnTypeOf(FunLangParser.FuncDefContext def) {
+        String type = function(def).getReturnType();
+        return type == null ? "decimal" : type;
+    }
+
+    private Boolean constantCondition(FunLangParser.ExprContext cond) {
+        return optimizer == null ? null : optimizer.constantCondition(cond);
+    }
+
+    private boolean isRemoved(ParseTree stmt) { return optimizer != null && optimizer.isRemoved(stmt); }
+
+    private static int opcode(String type, int intOp, int doubleOp, int refOp) {
+        switch (type) {
+            case "integer": case "boolean": return intOp;
+            case "decimal": return doubleOp;
+            default: return refOp;
+        }
+    }
+
+    private static int size(String type) { return type.equals("decimal") ? 2 : 1; }
+
+    private static String descriptor(String type) {
+        switch (type) {
+            case "integer": return "I";
+            case "decimal": return "D";
+            case "boolean": return "Z";
+            case "void": return "V";
+            default: return "L" + internalName(type) + ";";
+        }
+    }
+
+    private static String printDescriptor(String type) {
+        switch (type) {
+            case "integer": case "decimal": case "boolean": return descriptor(type);
+            case "text": return "Ljava/lang/String;";
+            default: return "Ljava/lang/Object;";
+        }
+    }
+
+    private static String internalName(String type) {
+        if (type.equals("text")) return "java/lang/String";
+        if (type.startsWith("list(")) return listClass(type.substring(5, type.length() - 1));
+        throw new IllegalStateException("No class for type " + type);
+    }
+
+    private static String listClass(String element) {
+        switch (element) {
+            case "integer": return RUNTIME + "IntList";
+            case "decimal": return RUNTIME + "DoubleList";
+            case "boolean": return RUNTIME + "BooleanList";
+            default: return RUNTIME + "RefList";
+        }
+    }
+
+    private static String cellClass(String type) {
+        switch (type) {
+            case "integer": return RULES + "IntRef";
+            case "decimal": return RULES + "DoubleRef";
+            default: return RULES + "Value";
+        }
+    }
+
+    /** String literals are pasted into Java source by the other backend, so honor Java's escapes. */
+    static String unescape(String s) {
+        if (s.indexOf('\\') < 0) return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != '\\' || i + 1 == s.length()) {
+                sb.append(c);
+                continue;
+            }
+            char n = s.charAt(++i);
+            switch (n) {
+                case 'n': sb.append('\n'); break;
+                case 't': sb.append('\t'); break;
+                case 'r': sb.append('\r'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case '0': sb.append('\0'); break;
+                default: sb.append(n);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -1,66 +1,166 @@
 package edu.ktu.funlang.visitors;
 
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.TokenStream;
 import org.antlr.v4.runtime.tree.TerminalNode;
 import org.antlr.v4.runtime.tree.ParseTree;
 import edu.ktu.funlang.syntax.FunLangBaseVisitor;
 import edu.ktu.funlang.syntax.FunLangParser;
 import edu.ktu.funlang.semantics.rules.*;
+import java.io.Writer;
 import java.util.*;
 
 /**
  * A visitor that generates Java source code from the FunLang parse tree.
  * Strategy (two-pass): semantic analyzer run separately; this visitor focuses on emission.
+ * Expressions are written straight into the {@link CodeBuilder} in the order they appear in the
+ * output, never built up as Strings, and the program streams out to the writer as it is generated.
  */
-public class FunLangToJavaVisitor extends FunLangBaseVisitor<String> {
-    private CodeBuilder cb = new CodeBuilder();
+public class FunLangToJavaVisitor extends FunLangBaseVisitor<Void> {
+    /** Generated code names runtime classes fully qualified so it needs no imports. */
+    private static final String RUNTIME = "edu.ktu.funlang.runtime.";
+    private static final String RULES = "edu.ktu.funlang.semantics.rules.";
+
+    private final CodeBuilder cb;
     private SymbolTable symbols;
+    private final FunLangSemanticAnalyzer analyzer;
     private TokenStream tokens;
+    private final String className;
+    private final FunLangOptimizer optimizer;
     private int tmpCounter = 0;
+    /** Variables of the function being emitted that live in a reference cell, by cell expression. */
+    private Map<VarSymbol, String> cellNames = new IdentityHashMap<>();
+    private int cellCounter = 0;
+    /** Parameters of the function being emitted when its self tail calls become a loop, else null. */
+    private List<FunLangParser.ParamContext> tailParams;
+    /** Inside a PARALLEL FOR lambda: the local standing in for each outer variable it uses. */
+    private Map<VarSymbol, String> aliases = new IdentityHashMap<>();
+    private String[] operators = new String[0];
+    /** The program being emitted, how many of its cells are allocated, and its FUNCTIONs, kept for after main. */
+    private ParserRuleContext program;
+    private int programCells;
+    private final List<FunLangParser.StatementContext> funcs = new ArrayList<>();
+
+    public FunLangToJavaVisitor(TokenStream tokens, SymbolTable symbols, Writer out) {
+        this(tokens, symbols, null, "FunProgram", null, out);
+    }
 
-    public FunLangToJavaVisitor(TokenStream tokens, SymbolTable symbols) {
+    /** {@code optimizer} may be null to emit the program exactly as written. */
+    public FunLangToJavaVisitor(TokenStream tokens, FunLangSemanticAnalyzer analyzer, String className,
+                                FunLangOptimizer optimizer, Writer out) {
+        this(tokens, analyzer.getSymbolTable(), analyzer, className, optimizer, out);
+    }
+
+    private FunLangToJavaVisitor(TokenStream tokens, SymbolTable symbols, FunLangSemanticAnalyzer analyzer,
+                                 String className, FunLangOptimizer optimizer, Writer out) {
+        this.cb = new CodeBuilder(out);
         this.tokens = tokens;
         this.symbols = symbols;
+        this.analyzer = analyzer;
+        this.className = className;
+        this.optimizer = optimizer;
     }
 
+    /**
+     * Folded expressions are replaced by their constant before any emission happens, and loop
+     * invariants by the temporary computed before their loop.
+     */
     @Override
-    public String visitProgram(FunLangParser.ProgramContext ctx) {
-        cb.wl("public class FunProgram {");
+    public Void visit(ParseTree tree) {
+        if (optimizer != null) {
+            Object folded = optimizer.constantValue(tree);
+            if (folded instanceof Integer i && i >= 0) {
+                cb.append(i);
+                return null;
+            }
+            if (folded != null) {
+                cb.append(optimizer.constantText(tree));
+                return null;
+            }
+            VarSymbol temp = optimizer.loopTemp(tree);
+            if (temp != null) {
+                cb.append(temp.getName());
+                return null;
+            }
+        }
+        return super.visit(tree);
+    }
+
+    /** Characters of Java generated so far. */
+    public long generatedChars() { return cb.length(); }
+
+    /** Emits the whole class; the writer is flushed at the end but not closed. */
+    @Override
+    public Void visitProgram(FunLangParser.ProgramContext ctx) {
+        beginProgram(ctx);
+        for (var s : ctx.statement()) statement(s);
+        endProgram();
+        return null;
+    }
+
+    /**
+     * The class header and the start of main. A program can then be emitted one top-level
+     * statement at a time through {@link #statement}, each analyzed before it is emitted, and
+     * closed with {@link #endProgram()}.
+     */
+    public void beginProgram(ParserRuleContext program) {
+        this.program = program;
+        cb.wl("public class " + className + " {");
         cb.indent();
         cb.wl("public static void main(String[] args) {");
         cb.indent();
+        allocateProgramCells();
+    }
 
-        symbols.enterScope();
-        // emit top level statements (functions will be emitted after main)
-        List<FunLangParser.StatementContext> funcs = new ArrayList<>();
-        for (var s : ctx.statement()) {
-            if (s.funcDef() != null) funcs.add(s);
-            else visit(s);
+    /** Emits a top-level statement into main; FUNCTIONs are kept to be emitted after it. */
+    public void statement(FunLangParser.StatementContext s) {
+        if (s.funcDef() != null) {
+            funcs.add(s);
+            return;
         }
+        // cells the analyzer has found since the last statement
+        allocateProgramCells();
+        visit(s);
+    }
 
+    /** The end of main, the FUNCTIONs and the end of the class; flushes the writer. */
+    public void endProgram() {
+        if (analyzer != null && analyzer.writesFiles()) cb.wl(RUNTIME + "FileOutput.closeAll();");
+        cb.wl(RUNTIME + "ConsoleOutput.flush();");
         cb.wl("// end of main");
         cb.outdent();
         cb.wl("}");
 
         // emit functions
-        for (var f : funcs) cb.wl(visit(f));
+        for (var f : funcs) {
+            visit(f);
+            cb.wl("");
+        }
 
-        symbols.exitScope();
         cb.outdent();
         cb.wl("}");
-        return cb.toString();
+        cb.flush();
+    }
+
+    private void allocateProgramCells() {
+        List<VarSymbol> cells = analyzer == null ? List.of() : analyzer.cellsOf(program);
+        allocateCells(cells.subList(programCells, cells.size()), null);
+        programCells = cells.size();
     }
 
     // Statement dispatch
     @Override
-    public String visitStatement(FunLangParser.StatementContext ctx) {
+    public Void visitStatement(FunLangParser.StatementContext ctx) {
         if (ctx.varDecl() != null) return visit(ctx.varDecl());
         if (ctx.assignment() != null) return visit(ctx.assignment());
         if (ctx.exprStmt() != null) return visit(ctx.exprStmt());
         if (ctx.systemCall() != null) return visit(ctx.systemCall());
+        if (ctx.fileWrite() != null) return visit(ctx.fileWrite());
         if (ctx.ifStmt() != null) return visit(ctx.ifStmt());
         if (ctx.whileStmt() != null) return visit(ctx.whileStmt());
         if (ctx.forStmt() != null) return visit(ctx.forStmt());
+        if (ctx.fileLoop() != null) return visit(ctx.fileLoop());
         if (ctx.funcDef() != null) return visit(ctx.funcDef());
         if (ctx.returnStmt() != null) return visit(ctx.returnStmt());
         if (ctx.block() != null) return visit(ctx.block());
@@ -68,73 +168,107 @@ public class FunLangToJavaVisitor extends FunLangBaseVisitor<String> {
     }
 
     @Override
-    public String visitBlock(FunLangParser.BlockContext ctx) {
+    public Void visitBlock(FunLangParser.BlockContext ctx) {
         cb.wl("{");
         cb.indent();
-        symbols.enterScope();
         for (var s : ctx.statement()) visit(s);
-        symbols.exitScope();
         cb.outdent();
         cb.wl("}");
-        return "";
+        return null;
     }
 
     @Override
-    public String visitVarDecl(FunLangParser.VarDeclContext ctx) {
+    public Void visitVarDecl(FunLangParser.VarDeclContext ctx) {
+        if (isRemoved(ctx)) return null;
         String jType = mapType(ctx.type().getText());
         String name = ctx.ID().getText();
-        String init = "";
-        if (ctx.expr() != null) init = " = " + visit(ctx.expr());
-        cb.wl(jType + " " + name + init + ";");
-        return "";
+        String cell = cellOf(ctx);
+        if (cell != null) {
+            // the cell was allocated at function entry, so a declaration in a loop allocates nothing
+            if (ctx.expr() != null) store(null, cell, name, ctx.type().getText(), () -> visit(ctx.expr()));
+            return null;
+        }
+        if (ctx.expr() == null) cb.wl(jType + " " + name + ";");
+        else line(jType + " " + name + " = ", ctx.expr(), ";");
+        return null;
     }
 
     @Override
-    public String visitAssignment(FunLangParser.AssignmentContext ctx) {
-        String name = ctx.ID().getText();
-        String val = visit(ctx.expr());
-        cb.wl(name + " = " + val + ";");
-        return "";
+    public Void visitAssignment(FunLangParser.AssignmentContext ctx) {
+        if (isRemoved(ctx)) return null;
+        VarSymbol sym = analyzer == null ? null : analyzer.bindingOf(ctx);
+        if (sym == null) store(null, null, ctx.ID().getText(), null, () -> visit(ctx.expr()));
+        else store(aliases.get(sym), cellNames.get(sym), sym.getName(), sym.getType(), () -> visit(ctx.expr()));
+        return null;
     }
 
     @Override
-    public String visitExprStmt(FunLangParser.ExprStmtContext ctx) {
-        String e = visit(ctx.expr());
-        cb.wl(e + ";");
-        return "";
+    public Void visitExprStmt(FunLangParser.ExprStmtContext ctx) {
+        line("", ctx.expr(), ";");
+        return null;
     }
 
     @Override
-    public String visitSystemCall(FunLangParser.SystemCallContext ctx) {
-        String value = visit(ctx.expr());
-        cb.wl("System.out.println(" + value + ");");
-        return "";
+    public Void visitSystemCall(FunLangParser.SystemCallContext ctx) {
+        if (ctx.expr() == null) cb.wl(RUNTIME + "ConsoleOutput.flush();");
+        else line(RUNTIME + "ConsoleOutput.println(", ctx.expr(), ");");
+        return null;
     }
 
-
     @Override
-    public String visitIfStmt(FunLangParser.IfStmtContext ctx) {
+    public Void visitFileWrite(FunLangParser.FileWriteContext ctx) {
+        cb.begin();
+        cb.append(RUNTIME + "FileOutput.write(");
+        visit(ctx.expr(0));
+        cb.append(", String.valueOf(");
+        visit(ctx.expr(1));
+        cb.append("));");
+        cb.end();
+        return null;
+    }
 
-        // IF
-        cb.wl("if (" + visit(ctx.expr(0)) + ") ");
-        visit(ctx.block(0));
+    /** The file is closed however the loop ends, including a RETURN from inside it. */
+    @Override
+    public Void visitFileLoop(FunLangParser.FileLoopContext ctx) {
+        String id = ctx.ID().getText(), lines = makeTmp();
+        line("try (" + RUNTIME + "FileLines " + lines + " = " + RUNTIME + "FileLines.open(", ctx.expr(), ")) {");
+        cb.indent();
+        cb.wl("for (String " + id + "; (" + id + " = " + lines + ".next()) != null; ) ");
+        visit(ctx.block());
+        cb.outdent();
+        cb.wl("}");
+        return null;
+    }
 
+    @Override
+    public Void visitIfStmt(FunLangParser.IfStmtContext ctx) {
         int exprCount = ctx.expr().size();
         int blockCount = ctx.block().size();
-
-        // ELSE IFs
-        for (int i = 1; i < exprCount; i++) {
-            cb.wl("else if (" + visit(ctx.expr(i)) + ") ");
+        boolean first = true;
+
+        // IF + ELSE IFs; branches with a constant condition are either dropped or end the chain.
+        // A branch that is always taken keeps an if (true) around it: javac would reject whatever
+        // follows a bare block ending in return as unreachable.
+        for (int i = 0; i < exprCount; i++) {
+            Boolean cond = constantCondition(ctx.expr(i));
+            if (Boolean.FALSE.equals(cond)) continue;
+            if (Boolean.TRUE.equals(cond)) {
+                cb.wl(first ? "if (true) " : "else ");
+                visit(ctx.block(i));
+                return null;
+            }
+            line(first ? "if (" : "else if (", ctx.expr(i), ") ");
             visit(ctx.block(i));
+            first = false;
         }
 
         // ELSE
         if (blockCount > exprCount) {
-            cb.wl("else ");
+            cb.wl(first ? "if (true) " : "else ");
             visit(ctx.block(blockCount - 1));
         }
 
-        return "";
+        return null;
     }
 
 
@@ -144,184 +278,634 @@ public class FunLangToJavaVisitor extends FunLangBaseVisitor<String> {
     }
 
     @Override
-    public String visitWhileStmt(FunLangParser.WhileStmtContext ctx) {
-        cb.wl("while (" + visit(ctx.expr()) + ") ");
+    public Void visitWhileStmt(FunLangParser.WhileStmtContext ctx) {
+        if (Boolean.FALSE.equals(constantCondition(ctx.expr()))) return null;
+        hoist(ctx);
+        line("while (", ctx.expr(), ") ");
         visit(ctx.block());
-        return "";
+        return null;
     }
 
+    /**
+     * The end and STEP are evaluated once, before the first round, and a negative STEP counts
+     * down to the end; a STEP that is only known at run time is checked not to be 0. A decimal
+     * end is turned into the last integer the variable reaches. Running products start next to
+     * the variable and grow along with it.
+     */
     @Override
-    public String visitForStmt(FunLangParser.ForStmtContext ctx) {
+    public Void visitForStmt(FunLangParser.ForStmtContext ctx) {
+        if (ctx.PARALLEL() != null && analyzer != null) return parallelFor(ctx);
+        hoist(ctx);
         String id = ctx.ID().getText();
-        String start = visit(ctx.expr(0));
-        String end = visit(ctx.expr(1));
-        String step = ctx.expr().size() > 2 ? visit(ctx.expr(2)) : "1";
+        Integer step = constantStep(ctx);
+        boolean decimal = decimalEnd(ctx);
+        String end = !decimal && constant(ctx.expr(1)) ? null : makeTmp(), stride = step != null ? null : makeTmp();
+        // the last integer before a decimal end depends on the direction, so with a STEP only
+        // known at run time the start and end are computed first, in their order, outside the loop
+        String first = null, limit = null;
+        if (decimal && stride != null) {
+            first = makeTmp();
+            limit = makeTmp();
+            cb.wl("{");
+            cb.indent();
+            cb.begin();
+            cb.append("int " + first + " = ");
+            visit(ctx.expr(0));
+            cb.append(";");
+            cb.end();
+            cb.begin();
+            cb.append("double " + limit + " = ");
+            visit(ctx.expr(1));
+            cb.append(";");
+            cb.end();
+        }
+        cb.begin();
+        cb.append("for (int " + id + " = ");
+        if (first != null) cb.append(first);
+        else visit(ctx.expr(0));
+        if (end != null && limit == null) {
+            cb.append(", " + end + " = ");
+            if (decimal) cb.append(RUNTIME + "ForLoop.last(");
+            visit(ctx.expr(1));
+            if (decimal) cb.append(", " + step + ")");
+        }
+        if (stride != null) {
+            cb.append(", " + stride + " = " + RUNTIME + "ForLoop.checkStep(");
+            visit(ctx.expr(2));
+            cb.append(")");
+        }
+        if (limit != null) cb.append(", " + end + " = " + RUNTIME + "ForLoop.last(" + limit + ", " + stride + ")");
+        List<FunLangOptimizer.Product> products = optimizer == null ? List.of() : optimizer.productsOf(ctx);
+        for (var p : products) {
+            cb.append(", " + p.temp().getName() + " = ");
+            p.multiplication().accept(this);
+            cb.append(", " + p.delta().getName() + " = ");
+            step(ctx, stride);
+            cb.append(" * ");
+            visit(p.factor());
+        }
+        cb.append("; ");
+        if (stride != null) cb.append(stride + " < 0 ? ");
+        if (stride != null || step < 0) {
+            cb.append(id + " >= ");
+            bound(ctx, end);
+        }
+        if (stride != null) cb.append(" : ");
+        if (stride != null || step >= 0) {
+            cb.append(id + " <= ");
+            bound(ctx, end);
+        }
+        cb.append("; " + id + " += ");
+        step(ctx, stride);
+        for (var p : products) cb.append(", " + p.temp().getName() + " += " + p.delta().getName());
+        cb.append(") ");
+        cb.end();
+
+        visit(ctx.block());
+        if (limit != null) {
+            cb.outdent();
+            cb.wl("}");
+        }
+        return null;
+    }
 
-        cb.wl("for (int " + id + " = " + start +
-                "; " + id + " <= " + end +
-                "; " + id + " += " + step + ") ");
+    /** Declares and computes the temporaries of the invariants taken out of a loop. */
+    private void hoist(ParserRuleContext loop) {
+        if (optimizer == null) return;
+        for (var h : optimizer.hoistedBefore(loop)) {
+            cb.begin();
+            cb.append(mapType(h.temp().getType()) + " " + h.temp().getName() + " = ");
+            h.value().accept(this); // not visit(), which would read the temporary
+            cb.append(";");
+            cb.end();
+        }
+    }
 
+    private void bound(FunLangParser.ForStmtContext ctx, String end) {
+        if (end != null) cb.append(end);
+        else visit(ctx.expr(1));
+    }
+
+    private void step(FunLangParser.ForStmtContext ctx, String stride) {
+        if (stride != null) cb.append(stride);
+        else if (ctx.expr().size() > 2) visit(ctx.expr(2));
+        else cb.append("1");
+    }
+
+    private void step(FunLangParser.ForStmtContext ctx) { step(ctx, null); }
+
+    /**
+     * The STEP if it is known before the program runs: 1 when there is none. A STEP that only
+     * folds to 0 through propagated variables is left to the run-time check.
+     */
+    private Integer constantStep(FunLangParser.ForStmtContext ctx) {
+        if (ctx.expr().size() < 3) return 1;
+        return optimizer != null && optimizer.constantValue(ctx.expr(2)) instanceof Integer i && i != 0 ? i : null;
+    }
+
+    private boolean decimalEnd(FunLangParser.ForStmtContext ctx) {
+        return analyzer != null && "decimal".equals(analyzer.typeOf(ctx.expr(1)));
+    }
+
+    private boolean constant(ParseTree expr) { return optimizer != null && optimizer.constantValue(expr) != null; }
+
+    /**
+     * The body of a PARALLEL FOR becomes a lambda that runs one chunk of iterations. Outer
+     * variables it reads are copied into effectively final locals first; reduced ones go in and
+     * out through an array, and each chunk accumulates into a local of its own.
+     */
+    private Void parallelFor(FunLangParser.ForStmtContext ctx) {
+        String id = ctx.ID().getText();
+        List<VarSymbol> ints = new ArrayList<>(), doubles = new ArrayList<>();
+        StringBuilder intOps = new StringBuilder(), doubleOps = new StringBuilder();
+        for (var e : analyzer.reductionsOf(ctx).entrySet()) {
+            boolean integer = e.getKey().getType().equals("integer");
+            (integer ? ints : doubles).add(e.getKey());
+            (integer ? intOps : doubleOps).append(e.getValue());
+        }
+        String intValues = makeTmp(), doubleValues = makeTmp();
+        cb.wl("{");
+        cb.indent();
+        cb.wl("int[] " + intValues + " = {" + String.join(", ", ints.stream().map(this::read).toList()) + "};");
+        cb.wl("double[] " + doubleValues + " = {" + String.join(", ", doubles.stream().map(this::read).toList()) + "};");
+        Map<VarSymbol, String> outer = aliases;
+        aliases = new IdentityHashMap<>(outer);
+        for (VarSymbol v : analyzer.capturesOf(ctx)) {
+            if (cellNames.containsKey(v)) continue; // the cell itself is never reassigned
+            String copy = makeTmp();
+            cb.wl(mapType(v.getType()) + " " + copy + " = " + read(v) + ";");
+            aliases.put(v, copy);
+        }
+        String first = makeTmp(), last = makeTmp(), stride = makeTmp(), intAcc = makeTmp(), doubleAcc = makeTmp();
+        cb.begin();
+        cb.append(RUNTIME + "ParallelLoop.run(");
+        visit(ctx.expr(0));
+        cb.append(", ");
+        visit(ctx.expr(1));
+        cb.append(", ");
+        step(ctx);
+        cb.append(", \"" + intOps + "\", " + intValues + ", \"" + doubleOps + "\", " + doubleValues + ",");
+        cb.end();
+        cb.indent();
+        cb.wl("(" + first + ", " + last + ", " + stride + ", " + intAcc + ", " + doubleAcc + ") -> {");
+        cb.indent();
+        List<String> writeBack = new ArrayList<>();
+        for (int k = 0; k < ints.size(); k++) {
+            String acc = makeTmp();
+            cb.wl("int " + acc + " = " + intAcc + "[" + k + "];");
+            aliases.put(ints.get(k), acc);
+            writeBack.add(intAcc + "[" + k + "] = " + acc + ";");
+        }
+        for (int k = 0; k < doubles.size(); k++) {
+            String acc = makeTmp();
+            cb.wl("double " + acc + " = " + doubleAcc + "[" + k + "];");
+            aliases.put(doubles.get(k), acc);
+            writeBack.add(doubleAcc + "[" + k + "] = " + acc + ";");
+        }
+        cb.wl("for (int " + id + " = " + first + "; " + id + " <= " + last + "; " + id + " += " + stride + ") ");
         visit(ctx.block());
-        return "";
+        for (String w : writeBack) cb.wl(w);
+        cb.outdent();
+        cb.wl("});");
+        cb.outdent();
+        aliases = outer;
+        for (int k = 0; k < ints.size(); k++) write(ints.get(k), intValues + "[" + k + "]");
+        for (int k = 0; k < doubles.size(); k++) write(doubles.get(k), doubleValues + "[" + k + "]");
+        cb.outdent();
+        cb.wl("}");
+        return null;
     }
 
+    private String read(VarSymbol v) {
+        String alias = aliases.get(v), cell = cellNames.get(v);
+        return alias != null ? alias : cell != null ? cellRead(cell, v.getType()) : v.getName();
+    }
 
+    private void write(VarSymbol v, String value) {
+        store(aliases.get(v), cellNames.get(v), v.getName(), v.getType(), () -> cb.append(value));
+    }
+
+    /**
+     * One assignment statement: to {@code alias} if there is one, else through {@code cell} if
+     * there is one, else to the local {@code name}. {@code value} emits the right-hand side.
+     */
+    private void store(String alias, String cell, String name, String funType, Runnable value) {
+        boolean setter = alias == null && cell != null && !funType.equals("integer") && !funType.equals("decimal");
+        cb.begin();
+        cb.append(alias != null ? alias : cell != null ? cell : name);
+        cb.append(alias != null || cell == null ? " = " : setter ? ".set(" : ".value = ");
+        value.run();
+        cb.append(setter ? ");" : ";");
+        cb.end();
+    }
+
+    /** One line: {@code prefix}, the expression, {@code suffix}. */
+    private void line(String prefix, ParseTree expr, String suffix) {
+        cb.begin();
+        cb.append(prefix);
+        visit(expr);
+        cb.append(suffix);
+        cb.end();
+    }
 
     @Override
-    public String visitFuncDef(FunLangParser.FuncDefContext ctx) {
+    public Void visitFuncDef(FunLangParser.FuncDefContext ctx) {
+        boolean memo = analyzer != null && analyzer.isMemoized(ctx.ID().getText());
+        if (memo) memoWrapper(ctx);
+        function(ctx, false, memo);
+        if (analyzer != null && analyzer.needsRefVariant(ctx.ID().getText())) function(ctx, true, false);
+        return null;
+    }
+
+    /**
+     * Emits one function. The {@code byRef} variant, {@code F__ref}, takes its first parameter as
+     * a reference cell and is what {@code x <=> F()} calls when F writes that parameter. A memoized
+     * function's body becomes {@code F__impl}, called by the caching {@code F}.
+     */
+    private void function(FunLangParser.FuncDefContext ctx, boolean byRef, boolean memoized) {
         String fname = ctx.ID().getText();
         StringBuilder sig = new StringBuilder();
-        // return type omitted in grammar — default to double for now
-        sig.append("public static double "+ fname +"(");
+        // return type omitted in grammar - the analyzer infers it from the RETURN statements
+        sig.append((memoized ? "private" : "public") + " static " + mapType(returnType(ctx)) + " " + fname
+                + (byRef ? "__ref" : memoized ? "__impl" : "") + "(");
         List<String> params = new ArrayList<>();
+        Map<VarSymbol, String> outer = cellNames;
+        cellNames = new IdentityHashMap<>();
+        VarSymbol refParam = null;
         if (ctx.paramList() != null) {
             for (var p : ctx.paramList().param()) {
                 String t = mapType(p.type().getText());
                 String n = p.ID().getText();
+                if (byRef && params.isEmpty()) {
+                    t = cellType(p.type().getText());
+                    refParam = analyzer.bindingOf(p);
+                    cellNames.put(refParam, n);
+                }
                 params.add(t + " " + n);
             }
         }
         sig.append(String.join(", ", params));
         sig.append(") ");
         cb.wl(sig.toString());
-        visit(ctx.block());
-        return "";
+
+        cb.wl("{");
+        cb.indent();
+        // the by-reference variant keeps real calls: a tail call's writes must not reach the caller
+        boolean loop = !byRef && analyzer != null && analyzer.hasTailCalls(fname);
+        tailParams = loop ? ctx.paramList() == null ? List.of() : ctx.paramList().param() : null;
+        if (loop) {
+            cb.wl("boolean __again;");
+            cb.wl("__tail: do {");
+            cb.indent();
+            cb.wl("__again = false;");
+        }
+        List<VarSymbol> cells = analyzer == null ? List.of() : new ArrayList<>(analyzer.cellsOf(ctx));
+        cells.remove(refParam);
+        allocateCells(cells, ctx.paramList());
+        for (var s : ctx.block().statement()) visit(s);
+        if (loop) {
+            cb.outdent();
+            cb.wl("} while (__again);");
+            cb.wl("throw new IllegalStateException(\"FUNCTION " + fname + " ended without RETURN\");");
+        }
+        tailParams = null;
+        cb.outdent();
+        cb.wl("}");
+        cellNames = outer;
     }
 
-    @Override
-    public String visitReturnStmt(FunLangParser.ReturnStmtContext ctx) {
-        cb.wl("return " + visit(ctx.expr()) + ";");
-        return "";
+    /**
+     * {@code F} of a memoized function: the arguments packed into one {@code long} key, a lookup
+     * in a bounded table owned by F, and the real body {@code F__impl} only on a miss.
+     */
+    private void memoWrapper(FunLangParser.FuncDefContext ctx) {
+        String fname = ctx.ID().getText();
+        String ret = returnType(ctx), type = mapType(ret);
+        String table = fname + "__memo";
+        List<String> params = new ArrayList<>(), args = new ArrayList<>(), key = new ArrayList<>();
+        var list = ctx.paramList() == null ? List.<FunLangParser.ParamContext>of() : ctx.paramList().param();
+        int offset = 0;
+        for (int i = 0; i < list.size(); i++) {
+            String t = list.get(i).type().getText(), n = list.get(i).ID().getText();
+            params.add(mapType(t) + " " + n);
+            args.add(n);
+            String bits = switch (t) {
+                case "decimal" -> "Double.doubleToLongBits(" + n + ")";
+                case "boolean" -> "(" + n + " ? 1L : 0L)";
+                default -> i == list.size() - 1 ? "(long) " + n : "((long) " + n + " & 0xFFFFFFFFL)";
+            };
+            key.add(offset == 0 ? bits : bits + " << " + offset);
+            offset += FunLangSemanticAnalyzer.memoKeyBits(t);
+        }
+        String kind = switch (ret) {
+            case "integer" -> "Int";
+            case "decimal" -> "Double";
+            case "boolean" -> "Boolean";
+            default -> "Ref";
+        };
+        String hit = kind.equals("Ref") ? "(" + type + ") __hit.asRef()" : "__hit.as" + kind + "()";
+
+        cb.wl("private static final " + RUNTIME + "MemoTable " + table + " = new " + RUNTIME + "MemoTable();");
+        cb.wl("public static " + type + " " + fname + "(" + String.join(", ", params) + ") {");
+        cb.indent();
+        cb.wl("long __key = " + (key.isEmpty() ? "0L" : String.join(" | ", key)) + ";");
+        cb.wl(RUNTIME + "MemoTable.Entry __hit = " + table + ".get(__key);");
+        cb.wl("if (__hit != null) return " + hit + ";");
+        cb.wl(type + " __result = " + fname + "__impl(" + String.join(", ", args) + ");");
+        cb.wl(table + ".put" + kind + "(__key, __result);");
+        cb.wl("return __result;");
+        cb.outdent();
+        cb.wl("}");
     }
 
-    // Expressions: improved handling
-    @Override
-    public String visitExpr(FunLangParser.ExprContext ctx) {
-        if (ctx.chainExpr() != null) {
-            return visit(ctx.chainExpr());
+    /** One cell per variable, allocated once on entry; parameters start with their argument. */
+    private void allocateCells(List<VarSymbol> cells, FunLangParser.ParamListContext params) {
+        for (VarSymbol sym : cells) {
+            String name = "__cell" + (cellCounter++) + "_" + sym.getName();
+            boolean isParam = params != null && params.param().stream().anyMatch(p -> analyzer.bindingOf(p) == sym);
+            String type = cellType(sym.getType());
+            cb.wl(type + " " + name + " = new " + type + "(" + (isParam ? sym.getName() : cellDefault(sym.getType())) + ");");
+            cellNames.put(sym, name);
         }
-        return "";
     }
 
+    @Override
+    public Void visitReturnStmt(FunLangParser.ReturnStmtContext ctx) {
+        if (tailParams != null && analyzer.isTailCall(ctx)) {
+            tailCall(FunLangSemanticAnalyzer.bareCall(ctx.expr()));
+            return null;
+        }
+        line("return ", ctx.expr(), ";");
+        return null;
+    }
 
-    /*@Override
-    public String visitChainExpr(FunLangParser.ChainExprContext ctx) {
-        String left = visit(ctx.binaryExpr(0));
-        for (int i = 1; i < ctx.binaryExpr().size(); i++) {
-            String op = ctx.chainOp(i-1).getText();
-            String rightExpr = visit(ctx.binaryExpr(i));
-            if (op.equals("<=>")) {
-                // wrap left in Value to simulate ref
+    /** {@code RETURN F(a, b)} inside F: evaluate every argument, then reassign the parameters and loop. */
+    private void tailCall(FunLangParser.FunctionCallContext call) {
+        List<FunLangParser.ExprContext> args = call.argList() == null ? List.of() : call.argList().expr();
+        if (args.size() == 1) {
+            line(tailParams.get(0).ID().getText() + " = ", args.get(0), ";");
+        } else {
+            List<String> values = new ArrayList<>();
+            for (int i = 0; i < args.size(); i++) {
                 String tmp = makeTmp();
-                cb.wl("Value<Double> " + tmp + " = new Value<>((double)" + left + ");");
-                left = rightExpr.replaceFirst("\\)", tmp + ")"); // inject Value as param
-            } else if (rightExpr.matches("^[a-zA-Z_][a-zA-Z0-9_]*\\(.*\\)$")) {
-                int idx = rightExpr.indexOf('(');
-                String name = rightExpr.substring(0, idx);
-                String inside = rightExpr.substring(idx+1, rightExpr.length()-1).trim();
-                String newArgs = left + (inside.isEmpty() ? "" : ", " + inside);
-                left = name + "(" + newArgs + ")";
-            } else {
-                String tmp = makeTmp();
-                cb.wl("double " + tmp + " = " + left + ";");
-                left = rightExpr;
+                line(mapType(tailParams.get(i).type().getText()) + " " + tmp + " = ", args.get(i), ";");
+                values.add(tmp);
             }
+            for (int i = 0; i < args.size(); i++) cb.wl(tailParams.get(i).ID().getText() + " = " + values.get(i) + ";");
         }
-        return left;
-    }*/
+        cb.wl("__again = true;");
+        cb.wl("continue __tail;");
+    }
 
+    // Expressions: written into cb left to right, exactly as they appear in the output
     @Override
-    public String visitChainExpr(FunLangParser.ChainExprContext ctx) {
-        if (ctx.binaryExpr().size() == 1) {
-            return visit(ctx.binaryExpr(0));
+    public Void visitExpr(FunLangParser.ExprContext ctx) {
+        if (ctx.chainExpr() != null) visit(ctx.chainExpr());
+        return null;
+    }
+
+
+    @Override
+    public Void visitChainExpr(FunLangParser.ChainExprContext ctx) {
+        chain(ctx, ctx.comparisonExpr().size() - 1);
+        return null;
+    }
+
+    /**
+     * Operands {@code 0..last} of a chain. Each operator wraps everything to its left, so the
+     * output starts with the rightmost one: {@code a => F(b) => G()} is {@code G(F(a, b))}.
+     */
+    private void chain(FunLangParser.ChainExprContext ctx, int last) {
+        var operands = ctx.comparisonExpr();
+        if (last == 0) {
+            visit(operands.get(0));
+            return;
         }
-        // handle chaining properly later
-        String result = visit(ctx.binaryExpr(0));
-        for (int i = 1; i < ctx.binaryExpr().size(); i++) {
-            String op = ctx.chainOp(i-1).getText();
-            String right = visit(ctx.binaryExpr(i));
-            result = "(" + result + " " + mapOp(op) + " " + right + ")";
+        var op = ctx.chainOp(last - 1);
+        if (last == 1 && isPipeline(op) && op.getText().equals("<=")) {
+            // F(b) <= a  ->  F(a, b)
+            call(FunLangSemanticAnalyzer.bareCall(operands.get(0)), () -> visit(operands.get(1)));
+        } else if (last == 1 && isPipeline(op) && op.getText().equals("<=>")) {
+            byReference(operands.get(0), FunLangSemanticAnalyzer.bareCall(operands.get(1)));
+        } else if (isPipeline(op)) {
+            // a => F(b)  ->  F(a, b); no temporaries, the value flows straight into the call
+            call(FunLangSemanticAnalyzer.bareCall(operands.get(last)), () -> chain(ctx, last - 1));
+        } else {
+            cb.append('(');
+            chain(ctx, last - 1);
+            cb.append(" " + mapOp(op.getText()) + " ");
+            visit(operands.get(last));
+            cb.append(')');
         }
-        return result;
     }
 
-    @Override
-    public String visitBinaryExpr(FunLangParser.BinaryExprContext ctx) {
-        if (ctx.basicExpr() != null) return visit(ctx.basicExpr());
-        if (ctx.binaryExpr().size() == 2) {
-            String left = visit(ctx.binaryExpr(0));
-            String right = visit(ctx.binaryExpr(1));
-            String op = ctx.getChild(1).getText();
-            return "(" + left + " " + mapOp(op) + " " + right + ")";
+    /** The callee gets the variable's cell only if it writes through it, otherwise the plain value. */
+    private void byReference(FunLangParser.ComparisonExprContext source, FunLangParser.FunctionCallContext target) {
+        String cell = cellOf(FunLangSemanticAnalyzer.bareVariable(source));
+        String name = target.ID().getText();
+        if (cell == null || !analyzer.writesFirstParam(name)) {
+            call(target, () -> visit(source));
+            return;
         }
-        return "";
+        cb.append(name + "__ref(" + cell);
+        if (target.argList() != null) {
+            for (var a : target.argList().expr()) {
+                cb.append(", ");
+                visit(a);
+            }
+        }
+        cb.append(')');
     }
 
+    @Override
+    public Void visitComparisonExpr(FunLangParser.ComparisonExprContext ctx) {
+        binary(ctx);
+        return null;
+    }
 
     @Override
-    public String visitBasicExpr(FunLangParser.BasicExprContext ctx) {
-        if (ctx.literal() != null) return visit(ctx.literal());
-        if (ctx.ID() != null) return ctx.ID().getText();
-        if (ctx.functionCall() != null) return visit(ctx.functionCall());
-        if (ctx.expr() != null) return "(" + visit(ctx.expr()) + ")";
-        return "";
+    public Void visitAdditiveExpr(FunLangParser.AdditiveExprContext ctx) {
+        binary(ctx);
+        return null;
     }
 
     @Override
-    public String visitFunctionCall(FunLangParser.FunctionCallContext ctx) {
-        String name = ctx.ID().getText();
-        List<String> args = new ArrayList<>();
+    public Void visitMultiplicativeExpr(FunLangParser.MultiplicativeExprContext ctx) {
+        binary(ctx);
+        return null;
+    }
 
-        if (ctx.argList() != null) {
-            for (var a : ctx.argList().expr()) {
-                args.add(visit(a));
-            }
+    @Override
+    public Void visitBasicExpr(FunLangParser.BasicExprContext ctx) {
+        if (ctx.literal() != null) {
+            visit(ctx.literal());
+        } else if (ctx.ID() != null) {
+            VarSymbol sym = analyzer == null ? null : analyzer.bindingOf(ctx);
+            String alias = sym == null ? null : aliases.get(sym), cell = sym == null ? null : cellNames.get(sym);
+            if (alias != null) cb.append(alias);
+            else if (cell != null) cb.append(cellRead(cell, sym.getType()));
+            else cb.append(sym != null ? sym.getName() : ctx.ID().getText());
+        } else if (ctx.functionCall() != null) {
+            visit(ctx.functionCall());
+        } else if (ctx.expr() != null) {
+            cb.append('(');
+            visit(ctx.expr());
+            cb.append(')');
         }
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionCall(FunLangParser.FunctionCallContext ctx) {
+        call(ctx, null);
+        return null;
+    }
 
+    /** Emits a call; {@code piped}, if any, emits the piped value as the first argument. */
+    private void call(FunLangParser.FunctionCallContext ctx, Runnable piped) {
+        String name = ctx.ID().getText();
         switch (name) {
             case "MIN":
-                return "Math.min(" + args.get(0) + ", " + args.get(1) + ")";
+                cb.append("Math.min(");
+                break;
+            case "MAX":
+                cb.append("Math.max(");
+                break;
             case "SQRT":
-                return "Math.sqrt(" + args.get(0) + ")";
+                cb.append("Math.sqrt(");
+                break;
             default:
-                return name + "(" + String.join(", ", args) + ")";
+                cb.append(name + "(");
+        }
+        boolean first = true;
+        if (piped != null) {
+            piped.run();
+            first = false;
+        }
+        if (ctx.argList() != null) {
+            for (var a : ctx.argList().expr()) {
+                if (!first) cb.append(", ");
+                visit(a);
+                first = false;
+            }
         }
+        cb.append(')');
     }
 
 
     @Override
-    public String visitLiteral(FunLangParser.LiteralContext ctx) {
-        if (ctx.INT() != null) return ctx.INT().getText();
-        if (ctx.DECIMAL() != null) return ctx.DECIMAL().getText();
-        if (ctx.STRING() != null) return ctx.STRING().getText();
-        if (ctx.TRUE() != null) return "true";
-        if (ctx.FALSE() != null) return "false";
-        if (ctx.listLiteral() != null) {
-            List<String> elems = new ArrayList<>();
+    public Void visitLiteral(FunLangParser.LiteralContext ctx) {
+        if (ctx.INT() != null) cb.append(ctx.INT().getText());
+        else if (ctx.DECIMAL() != null) cb.append(ctx.DECIMAL().getText());
+        else if (ctx.STRING() != null) cb.append(ctx.STRING().getText());
+        else if (ctx.TRUE() != null) cb.append("true");
+        else if (ctx.FALSE() != null) cb.append("false");
+        else if (ctx.listLiteral() != null) {
+            // an untyped (empty) literal keeps the historical decimal default
+            String type = analyzer == null ? null : analyzer.typeOf(ctx);
+            String listType = mapType(type == null ? "list(decimal)" : type);
+            if (listType.startsWith(RUNTIME + "RefList")) listType = RUNTIME + "RefList";
+            cb.append(listType + ".of(");
             var el = ctx.listLiteral().expr();
-            for (var e : el) elems.add(visit(e));
-            return "new double[] {" + String.join(", ", elems) + "}";
+            for (int i = 0; i < el.size(); i++) {
+                if (i > 0) cb.append(", ");
+                visit(el.get(i));
+            }
+            cb.append(')');
+        } else {
+            cb.append('0');
         }
-        return "0";
+        return null;
     }
 
     // Helpers
-    private String visitChildrenAsString(ParseTree t) {
-        StringBuilder tmp = new StringBuilder();
-        for (int i = 0; i < t.getChildCount(); i++) tmp.append(visit(t.getChild(i)));
-        return tmp.toString();
+    /**
+     * Folds one precedence level left-associatively: {@code a op b op c -> ((a op b) op c)}. The
+     * children alternate operand and operator, so they are walked directly.
+     */
+    private void binary(ParserRuleContext ctx) {
+        List<ParseTree> children = ctx.children;
+        for (int i = 1; i < children.size(); i += 2) cb.append('(');
+        visit(children.get(0));
+        for (int i = 1; i < children.size(); i += 2) {
+            cb.append(operator(((TerminalNode) children.get(i)).getSymbol()));
+            visit(children.get(i + 1));
+            cb.append(')');
+        }
+    }
+
+    /** The Java operator with a space on each side, worked out once per token type. */
+    private String operator(Token op) {
+        int type = op.getType();
+        if (type >= operators.length) operators = Arrays.copyOf(operators, type + 1);
+        if (operators[type] == null) operators[type] = " " + mapOp(op.getText()) + " ";
+        return operators[type];
+    }
+    private boolean isPipeline(FunLangParser.ChainOpContext op) { return analyzer != null && analyzer.isPipeline(op); }
+
+    private String cellOf(ParseTree node) {
+        if (analyzer == null || node == null) return null;
+        VarSymbol sym = analyzer.bindingOf(node);
+        return sym == null ? null : cellNames.get(sym);
+    }
+
+    /** IntRef/DoubleRef keep numbers unboxed; other types fall back to the generic Value. */
+    private String cellType(String funType) {
+        switch (funType) {
+            case "integer": return RULES + "IntRef";
+            case "decimal": return RULES + "DoubleRef";
+            case "boolean": return RULES + "Value<Boolean>";
+            default: return RULES + "Value<" + mapType(funType) + ">";
+        }
+    }
+
+    private String cellDefault(String funType) {
+        switch (funType) {
+            case "integer": case "decimal": return "";
+            case "boolean": return "false";
+            default: return "null";
+        }
+    }
+
+    private String cellRead(String cell, String funType) {
+        return funType.equals("integer") || funType.equals("decimal") ? cell + ".value" : cell + ".get()";
     }
+
+    private boolean isRemoved(ParseTree stmt) { return optimizer != null && optimizer.isRemoved(stmt); }
+
+    private Boolean constantCondition(FunLangParser.ExprContext cond) {
+        return optimizer == null ? null : optimizer.constantCondition(cond);
+    }
+
+    /** From the analyzer's binding of the definition; without an analyzer, from the symbol table it left. */
+    private String returnType(FunLangParser.FuncDefContext def) {
+        Symbol s = analyzer != null ? analyzer.functionOf(def) : symbols.resolve(def.ID().getText());
+        return s instanceof FunctionSymbol fs && fs.getReturnType() != null
+                ? fs.getReturnType() : "decimal";
+    }
+
     private String mapType(String funType) {
         switch (funType) {
             case "integer": return "int";
             case "decimal": return "double";
             case "text": return "String";
             case "boolean": return "boolean";
+            case "void": return "void";
             default:
-                if (funType.startsWith("list")) return "double[]";
+                if (funType.startsWith("list(")) return listType(funType.substring(5, funType.length() - 1));
                 return "double";
         }
     }
+
+    /** Primitive element types get their specialized runtime list, everything else a RefList. */
+    private String listType(String element) {
+        switch (element) {
+            case "integer": return RUNTIME + "IntList";
+            case "decimal": return RUNTIME + "DoubleList";
+            case "boolean": return RUNTIME + "BooleanList";
+            default: return RUNTIME + "RefList<" + mapType(element) + ">";
+        }
+    }
     private String mapOp(String op) {
         switch (op) {
             case "AND": return "&&";
@@ -0,0 +1,149 @@
+package edu.ktu.funlang.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** The Java backend, the bytecode backend and the interpreter must print the same for every program. */
+class BackendEquivalenceTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void arithmeticTextAndLists() throws Throwable {
+        String out = ProgramRunner.runEverywhere("""
+                integer a = 7;
+                decimal b = 2.5;
+                text t = "n=";
+                CONSOLE -> a / 2;
+                CONSOLE -> a * b;
+                CONSOLE -> t + a;
+                CONSOLE -> MIN(a, 3) + MAX(1.5, a);
+                CONSOLE -> SQRT(16);
+                CONSOLE -> a < 10;
+                CONSOLE -> (a + 1) * (a - 1) == 48;
+                list(decimal) xs = [1, 2];
+                CONSOLE -> xs;
+                """);
+        assertEquals("3\n17.5\nn=7\n10.0\n4.0\ntrue\ntrue\n[1.0, 2.0]\n", out);
+    }
+
+    @Test
+    void branchesAndLoops() throws Throwable {
+        String out = ProgramRunner.runEverywhere("""
+                integer n = 0;
+                WHILE n < 5 DO { n = n + 2; }
+                CONSOLE -> n;
+                IF n > 5 THEN { CONSOLE -> "big"; } ELSE IF n > 3 THEN { CONSOLE -> "mid"; } ELSE { CONSOLE -> "small"; }
+                FOR i IN 10:1 STEP 0 - 3 DO { CONSOLE -> i; }
+                integer s = 2;
+                FOR i IN 1:7 STEP s DO { CONSOLE -> i * 3; }
+                integer total = 0;
+                FOR i IN 1:100 DO { total = total + i * n + n * 2; }
+                CONSOLE -> total;
+                """);
+        assertEquals("6\nbig\n10\n7\n4\n1\n3\n9\n15\n21\n31500\n", out);
+    }
+
+    @Test
+    void functionsRecursionAndChains() throws Throwable {
+        String out = ProgramRunner.runEverywhere("""
+                FUNCTION Fib(integer n) {
+                  IF n < 2 THEN { RETURN n; }
+                  RETURN Fib(n - 1) + Fib(n - 2);
+                }
+                FUNCTION Sum(integer n, integer acc) {
+                  IF n == 0 THEN { RETURN acc; }
+                  RETURN Sum(n - 1, acc + n);
+                }
+                FUNCTION Twice(integer x) { RETURN x * 2; }
+                FUNCTION Add(integer x, integer y) { RETURN x + y; }
+                FUNCTION Bump(integer x) { x = x + 1; RETURN x; }
+                CONSOLE -> Fib(30);
+                CONSOLE -> Sum(100000, 0);
+                CONSOLE -> 3 => Twice() => Add(1);
+                CONSOLE -> Add(10) <= 5;
+                integer c = 41;
+                c <=> Bump();
+                CONSOLE -> c;
+                """);
+        assertEquals("832040\n705082704\n7\n15\n42\n", out);
+    }
+
+    @Test
+    void aBranchThatIsAlwaysTakenCanEndInReturn() throws Throwable {
+        String out = ProgramRunner.runEverywhere("""
+                FUNCTION F(integer a) { IF 1 < 2 THEN { RETURN a; } RETURN 0; }
+                FUNCTION G(integer a) { IF 2 < 1 THEN { RETURN 0; } ELSE { RETURN a + 1; } RETURN 0 - 1; }
+                CONSOLE -> F(5);
+                CONSOLE -> G(5);
+                """);
+        assertEquals("5\n6\n", out);
+    }
+
+    @Test
+    void decimalEndsStopAtTheLastIntegerBeforeThem() throws Throwable {
+        String out = ProgramRunner.runEverywhere("""
+                integer n = 20;
+                FOR i IN 1:SQRT(n) DO { CONSOLE -> i; }
+                FOR i IN 1:2.5 DO { CONSOLE -> i; }
+                decimal low = 2.5;
+                FOR i IN 5:low STEP 0 - 1 DO { CONSOLE -> i; }
+                FOR i IN 0 - 4:0 - low DO { CONSOLE -> i; }
+                integer s = 0;
+                IF n > 0 THEN { s = 0 - 2; }
+                FOR i IN 4:0 - 1.5 STEP s DO { CONSOLE -> i; }
+                integer sum = 0;
+                PARALLEL FOR i IN 1:SQRT(n) DO { sum = sum + i; }
+                CONSOLE -> sum;
+                """);
+        assertEquals("1\n2\n3\n4\n1\n2\n5\n4\n3\n-4\n-3\n4\n2\n0\n10\n", out);
+    }
+
+    @Test
+    void parallelReductions() throws Throwable {
+        String out = ProgramRunner.runEverywhere("""
+                integer sum = 0;
+                integer lo = 1000000;
+                decimal hi = 0.0;
+                PARALLEL FOR i IN 1:10000 DO {
+                  sum = sum + i;
+                  lo = MIN(lo, i * 7 - 3);
+                  hi = MAX(hi, i / 2.0);
+                }
+                CONSOLE -> sum;
+                CONSOLE -> lo;
+                CONSOLE -> hi;
+                """);
+        assertEquals("50005000\n4\n5000.0\n", out);
+    }
+
+    @Test
+    void fileWritesAndLineLoops() throws Throwable {
+        String file = dir.resolve("lines.txt").toString().replace("\\", "/");
+        String out = ProgramRunner.runEverywhere("""
+                FOR i IN 1:3 DO { FILE "%s" -> "line " + i; }
+                integer n = 0;
+                FOR line IN FILE "%s" DO {
+                  n = n + 1;
+                  CONSOLE -> line;
+                }
+                CONSOLE -> n;
+                """.formatted(file, file));
+        assertEquals("line 1\nline 2\nline 3\n3\n", out);
+        assertEquals("line 1\nline 2\nline 3\n", Files.readString(Path.of(file)));
+    }
+
+    @Test
+    void aZeroStepKnownOnlyAtRunTimeFailsEverywhere() {
+        String source = """
+                integer z = 0;
+                FOR i IN 1:10 STEP z DO { CONSOLE -> i; }
+                """;
+        for (ProgramRunner.Path p : ProgramRunner.Path.values()) {
+            assertThrows(IllegalArgumentException.class, () -> ProgramRunner.run(p, source), p.name());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package edu.ktu.funlang.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchCompilerTest {
+    @TempDir
+    Path dir;
+
+    private Path source(String name, String text) throws IOException {
+        Path p = dir.resolve("src").resolve(name);
+        Files.createDirectories(p.getParent());
+        return Files.writeString(p, text);
+    }
+
+    private static BatchCompiler.FileResult result(BatchCompiler.Report report, Path input) {
+        return report.files().stream().filter(f -> f.input().equals(input)).findFirst().orElseThrow();
+    }
+
+    @Test
+    void reportsEachFilesProblemsWithThatFile() throws Exception {
+        Path ok = source("ok.funlang", "integer a = 1;\nCONSOLE -> a;\n");
+        Path syntax = source("syntax.funlang", "integer a = 1\nCONSOLE -> a;\n");
+        Path semantic = source("semantic.funlang", "CONSOLE -> missing;\n");
+        Path warned = source("warned.funlang", """
+                FUNCTION Fib(integer n) {
+                  IF n < 2 THEN { RETURN n; }
+                  RETURN Fib(n - 1) + Fib(n - 2);
+                }
+                CONSOLE -> Fib(10);
+                """);
+
+        BatchCompiler.Report report = new BatchCompiler(dir.resolve("out"), 4)
+                .compileAll(BatchCompiler.collectInputs(List.of(dir.resolve("src").toString())));
+
+        assertEquals(4, report.files().size());
+        assertTrue(report.hasErrors());
+        assertTrue(result(report, ok).ok());
+        assertTrue(Files.isRegularFile(result(report, ok).output()));
+
+        BatchCompiler.FileResult bad = result(report, syntax);
+        assertFalse(bad.ok(), "a file with syntax errors must fail");
+        assertNull(bad.output());
+        assertEquals("Syntax errors found:", bad.errors().get(0));
+        assertTrue(bad.errors().get(1).startsWith("line 2:0"), bad.errors().toString());
+
+        assertFalse(result(report, semantic).ok());
+        assertTrue(result(report, semantic).errors().contains("Use of undeclared variable: missing"));
+
+        BatchCompiler.FileResult w = result(report, warned);
+        assertTrue(w.ok());
+        assertEquals(2, w.warnings().size());
+        assertTrue(w.warnings().get(0).startsWith("warning: line 3:"));
+        assertTrue(result(report, ok).warnings().isEmpty());
+    }
+
+    @Test
+    void printsProblemsUnderTheirFile() throws Exception {
+        Path syntax = source("syntax.funlang", "integer a = 1\nCONSOLE -> a;\n");
+        source("ok.funlang", "CONSOLE -> 1;\n");
+        BatchCompiler.Report report = new BatchCompiler(dir.resolve("out"), 2)
+                .compileAll(BatchCompiler.collectInputs(List.of(dir.resolve("src").toString())));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BatchCompiler.printReport(report, new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        List<String> lines = bytes.toString(StandardCharsets.UTF_8).lines().toList();
+        int failed = 0;
+        while (!lines.get(failed).contains(syntax + " FAILED")) failed++;
+        assertTrue(lines.get(failed + 1).contains("Syntax errors found:"));
+        assertTrue(lines.get(failed + 2).contains("line 2:0"));
+        assertTrue(lines.get(lines.size() - 1).startsWith("2 files (1 failed)"));
+    }
+
+    @Test
+    void collectsDirectoriesGlobsAndFiles() throws Exception {
+        Path a = source("a.funlang", "CONSOLE -> 1;\n");
+        Path b = source("nested/b.funlang", "CONSOLE -> 2;\n");
+        source("notes.txt", "not a program");
+        assertEquals(List.of(a, b), BatchCompiler.collectInputs(List.of(dir.resolve("src").toString())));
+        assertEquals(List.of(b), BatchCompiler.collectInputs(List.of(dir.resolve("src") + "/nested/*.funlang")));
+    }
+}
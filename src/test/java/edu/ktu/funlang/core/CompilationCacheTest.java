@@ -0,0 +1,99 @@
+package edu.ktu.funlang.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompilationCacheTest {
+    private static final String SOURCE = "integer a = 1;\nCONSOLE -> a;\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void servesWhatWasStoredUnderTheSameKey() throws Exception {
+        CompilationCache cache = new CompilationCache(dir, CompilationCache.DEFAULT_MAX_BYTES);
+        String key = cache.key(SOURCE, "Main");
+        assertTrue(cache.getJava(key).isEmpty());
+        cache.putJava(key, "class Main {}");
+        assertEquals(Optional.of("class Main {}"), cache.getJava(key));
+        assertEquals(Optional.of("class Main {}"), new CompilationCache(dir, CompilationCache.DEFAULT_MAX_BYTES).getJava(key));
+    }
+
+    @Test
+    void keysChangeWithTheSourceAndTheClassName() throws Exception {
+        CompilationCache cache = new CompilationCache(dir, CompilationCache.DEFAULT_MAX_BYTES);
+        String key = cache.key(SOURCE, "Main");
+        assertEquals(key, cache.key(SOURCE, "Main"));
+        assertNotEquals(key, cache.key(SOURCE + " ", "Main"));
+        assertNotEquals(key, cache.key(SOURCE, "Other"));
+    }
+
+    @Test
+    void fingerprintCoversTheCompilerBuildNotJustItsVersion() {
+        String fingerprint = CompilationCache.compilerFingerprint();
+        assertTrue(fingerprint.startsWith(Compiler.VERSION + "/"));
+        assertTrue(fingerprint.matches(".*/[0-9a-f]{64}"), fingerprint);
+        assertEquals(fingerprint, CompilationCache.compilerFingerprint());
+    }
+
+    @Test
+    void keepsTheClassesOfEachBackendApart() throws Exception {
+        CompilationCache cache = new CompilationCache(dir, CompilationCache.DEFAULT_MAX_BYTES);
+        String key = cache.key(SOURCE, "Main");
+        cache.putClasses(key, Compiler.Backend.JAVA, Map.of("Main", new byte[]{1, 2}));
+        assertTrue(cache.getClasses(key, Compiler.Backend.BYTECODE).isEmpty());
+        cache.putClasses(key, Compiler.Backend.BYTECODE, Map.of("Main", new byte[]{3}));
+        assertArrayEquals(new byte[]{1, 2}, cache.getClasses(key, Compiler.Backend.JAVA).orElseThrow().get("Main"));
+        assertArrayEquals(new byte[]{3}, cache.getClasses(key, Compiler.Backend.BYTECODE).orElseThrow().get("Main"));
+    }
+
+    @Test
+    void treatsACorruptEntryAsAMiss() throws Exception {
+        CompilationCache cache = new CompilationCache(dir, CompilationCache.DEFAULT_MAX_BYTES);
+        String key = cache.key(SOURCE, "Main");
+        cache.putClasses(key, Compiler.Backend.JAVA, Map.of("Main", new byte[100]));
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path f : files.filter(Files::isRegularFile).toList()) Files.write(f, new byte[]{0, 0, 0, 1});
+        }
+        assertTrue(cache.getClasses(key, Compiler.Backend.JAVA).isEmpty());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntriesPastItsBound() throws Exception {
+        CompilationCache cache = new CompilationCache(dir, 10_000);
+        String first = cache.key("first", "Main");
+        cache.putJava(first, "x".repeat(4_000));
+        Thread.sleep(20);
+        String second = cache.key("second", "Main");
+        cache.putJava(second, "y".repeat(4_000));
+        Thread.sleep(20);
+        cache.getJava(first);
+        cache.putJava(cache.key("third", "Main"), "z".repeat(4_000));
+        assertTrue(cache.getJava(first).isPresent());
+        assertTrue(cache.getJava(second).isEmpty());
+    }
+
+    @Test
+    void compilerReusesAndInvalidatesEntries() throws Exception {
+        CompilationCache cache = new CompilationCache(dir.resolve("cache"), CompilationCache.DEFAULT_MAX_BYTES);
+        Path input = dir.resolve("prog.funlang"), out = dir.resolve("out");
+        Files.writeString(input, SOURCE);
+        Path java = Compiler.compile(input, out, "Prog", cache, null);
+        String first = Files.readString(java);
+        assertEquals(Optional.of(first), cache.getJava(cache.key(SOURCE, "Prog")));
+
+        // a hit is written out as it was stored, without running the compiler
+        cache.putJava(cache.key(SOURCE, "Prog"), "// from the cache\n");
+        assertEquals("// from the cache\n", Files.readString(Compiler.compile(input, out, "Prog", cache, null)));
+
+        Files.writeString(input, SOURCE.replace("1", "2"));
+        String changed = Files.readString(Compiler.compile(input, out, "Prog", cache, null));
+        assertNotEquals(first, changed);
+        assertTrue(changed.contains("2"));
+    }
+}
@@ -0,0 +1,47 @@
+package edu.ktu.funlang.core;
+
+import edu.ktu.funlang.runtime.ConsoleOutput;
+import edu.ktu.funlang.runtime.FileOutput;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/** Runs a FunLang program inside the test JVM on one of the three execution paths and returns what it printed. */
+final class ProgramRunner {
+    enum Path { JAVA, BYTECODE, INTERPRETER }
+
+    private ProgramRunner() {}
+
+    static String run(Path path, String source) throws Throwable {
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true, StandardCharsets.UTF_8));
+        try {
+            switch (path) {
+                case JAVA -> InMemoryJavaCompiler.run(Compiler.MAIN_CLASS,
+                        InMemoryJavaCompiler.compile(Compiler.MAIN_CLASS, Compiler.translate(source)), new String[0]);
+                case BYTECODE -> InMemoryJavaCompiler.run(Compiler.MAIN_CLASS,
+                        Compiler.assemble(source, Compiler.MAIN_CLASS, null), new String[0]);
+                case INTERPRETER -> Compiler.prepare(source, null).run();
+            }
+        } finally {
+            ConsoleOutput.flush();
+            FileOutput.closeAll();
+            System.setOut(stdout);
+        }
+        return printed.toString(StandardCharsets.UTF_8).replace(System.lineSeparator(), "\n");
+    }
+
+    /** What the program printed on every path, failing if the paths disagree. */
+    static String runEverywhere(String source) throws Throwable {
+        Map<Path, String> outputs = new EnumMap<>(Path.class);
+        for (Path p : Path.values()) outputs.put(p, run(p, source));
+        String java = outputs.get(Path.JAVA);
+        for (var e : outputs.entrySet()) {
+            if (!e.getValue().equals(java)) {
+                throw new AssertionError(e.getKey() + " printed\n" + e.getValue() + "\nbut JAVA printed\n" + java);
+            }
+        }
+        return java;
+    }
+}
@@ -0,0 +1,65 @@
+package edu.ktu.funlang.core;
+
+import edu.ktu.funlang.runtime.ConsoleOutput;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingCompilerTest {
+    @TempDir
+    Path dir;
+
+    private String streamAndRun(String source) throws Throwable {
+        Path input = Files.writeString(dir.resolve("big.funlang"), source);
+        Path java = StreamingCompiler.compile(input, dir.resolve("out"), "Big",
+                new PrintStream(OutputStream.nullOutputStream()));
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true, StandardCharsets.UTF_8));
+        try {
+            InMemoryJavaCompiler.run("Big", InMemoryJavaCompiler.compile("Big", Files.readString(java)), new String[0]);
+        } finally {
+            ConsoleOutput.flush();
+            System.setOut(stdout);
+        }
+        return printed.toString(StandardCharsets.UTF_8).replace(System.lineSeparator(), "\n");
+    }
+
+    @Test
+    void printsWhatTheWholeProgramCompilerPrints() throws Throwable {
+        String source = """
+                CONSOLE -> Twice(Seed());
+                FUNCTION Seed() { RETURN 20; }
+                FUNCTION Twice(integer n) { RETURN n * 2; }
+                FUNCTION Bump(integer x) { x = x + 1; RETURN x; }
+                integer c = 1;
+                c <=> Bump();
+                FOR i IN 9:1 STEP 0 - 4 DO { CONSOLE -> i + c; }
+                """;
+        assertEquals(ProgramRunner.run(ProgramRunner.Path.JAVA, source), streamAndRun(source));
+        assertEquals("40\n11\n7\n3\n", streamAndRun(source));
+    }
+
+    @Test
+    void rejectsErrorsWithoutWritingAProgram() throws Exception {
+        Path input = Files.writeString(dir.resolve("bad.funlang"), "FOR i IN 1:3 STEP 0 DO { CONSOLE -> i; }\n");
+        CompilationException e = assertThrows(CompilationException.class,
+                () -> StreamingCompiler.compile(input, dir.resolve("out"), "Bad", new PrintStream(OutputStream.nullOutputStream())));
+        assertEquals("FOR STEP cannot be 0, the loop would never end: 0", e.getErrors().get(0));
+
+        Files.writeString(input, "integer a = 1\n");
+        e = assertThrows(CompilationException.class,
+                () -> StreamingCompiler.compile(input, dir.resolve("out"), "Bad", new PrintStream(OutputStream.nullOutputStream())));
+        assertEquals("Syntax errors found:", e.getMessage());
+    }
+
+    @Test
+    void guardsAStepOnlyKnownAtRunTime() {
+        assertThrows(IllegalArgumentException.class,
+                () -> streamAndRun("integer z = 0;\nFOR i IN 1:3 STEP z DO { CONSOLE -> i; }\n"));
+    }
+}
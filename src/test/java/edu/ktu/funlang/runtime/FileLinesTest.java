@@ -0,0 +1,64 @@
+package edu.ktu.funlang.runtime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileLinesTest {
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void closeFiles() { FileOutput.closeAll(); }
+
+    @Test
+    void readsLinesWithoutTerminators() throws Exception {
+        Path file = dir.resolve("in.txt");
+        Files.writeString(file, "a\r\nb\n\nc");
+        List<String> lines = new ArrayList<>();
+        try (FileLines in = FileLines.open(file.toString())) {
+            for (String line = in.next(); line != null; line = in.next()) lines.add(line);
+        }
+        assertEquals(List.of("a", "b", "", "c"), lines);
+    }
+
+    @Test
+    void writingAFileThatIsBeingReadFailsAndLeavesItIntact() throws Exception {
+        Path file = dir.resolve("in.txt");
+        Files.writeString(file, "a\nb\n");
+        try (FileLines in = FileLines.open(file.toString())) {
+            assertEquals("a", in.next());
+            assertThrows(IllegalStateException.class, () -> FileOutput.write(file.toString(), "x"));
+            assertEquals("b", in.next());
+        }
+        assertEquals("a\nb\n", Files.readString(file));
+    }
+
+    @Test
+    void aFileWrittenBeforeTheLoopCannotBeAppendedToDuringIt() throws Exception {
+        Path file = dir.resolve("out.txt");
+        FileOutput.write(file.toString(), "x");
+        try (FileLines in = FileLines.open(file.toString())) {
+            assertEquals("x", in.next());
+            assertThrows(IllegalStateException.class, () -> FileOutput.write(file.toString(), "y"));
+        }
+        FileOutput.write(file.toString(), "z");
+        FileOutput.closeAll();
+        assertEquals("x\nz\n", Files.readString(file));
+    }
+
+    @Test
+    void otherFilesCanBeWrittenWhileOneIsRead() throws Exception {
+        Path in = dir.resolve("in.txt"), out = dir.resolve("out.txt");
+        Files.writeString(in, "a\nb\n");
+        try (FileLines lines = FileLines.open(in.toString())) {
+            for (String line = lines.next(); line != null; line = lines.next()) FileOutput.write(out.toString(), line + "!");
+        }
+        FileOutput.closeAll();
+        assertEquals("a!\nb!\n", Files.readString(out));
+    }
+}
@@ -0,0 +1,160 @@
+package edu.ktu.funlang.visitors;
+
+import edu.ktu.funlang.core.Compiler;
+import edu.ktu.funlang.syntax.FunLangParser;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FunLangOptimizerTest {
+    private FunLangParser.ProgramContext program;
+    private FunLangOptimizer optimizer;
+
+    private void optimize(String source) throws Exception {
+        program = Compiler.parse(Compiler.lex(source));
+        optimizer = Compiler.optimize(program, Compiler.analyze(program));
+    }
+
+    private FunLangParser.StatementContext statement(int i) { return program.statement(i); }
+
+    /** The value {@code CONSOLE -> e;} at statement i prints, if it was folded. */
+    private Object printed(int i) { return optimizer.constantValue(statement(i).systemCall().expr()); }
+
+    @Test
+    void foldsArithmeticWithJavaSemantics() throws Exception {
+        optimize("""
+                CONSOLE -> 2 * 3 + 4;
+                CONSOLE -> 7 / 2;
+                CONSOLE -> 1.5 * 2;
+                CONSOLE -> 2147483647 + 1;
+                CONSOLE -> MIN(3, 2.5) + SQRT(9);
+                CONSOLE -> 1 + 2 < 4;
+                """);
+        assertEquals(10, printed(0));
+        assertEquals(3, printed(1));
+        assertEquals(3.0, printed(2));
+        assertEquals(Integer.MIN_VALUE, printed(3));
+        assertEquals(5.5, printed(4));
+        assertEquals(true, printed(5));
+    }
+
+    @Test
+    void leavesIntegerDivisionByZeroToRunTime() throws Exception {
+        optimize("CONSOLE -> 1 / 0;");
+        assertNull(printed(0));
+    }
+
+    @Test
+    void propagatesVariablesThatAreNeverWritten() throws Exception {
+        optimize("""
+                integer k = 5;
+                integer m = 1;
+                m = m + 1;
+                CONSOLE -> k * 2;
+                CONSOLE -> m * 2;
+                """);
+        assertEquals(10, printed(3));
+        assertNull(printed(4));
+    }
+
+    @Test
+    void removesDeadBranchesAndUnusedVariables() throws Exception {
+        optimize("""
+                integer unused = 3;
+                unused = unused + 1;
+                integer constant = 4;
+                integer kept = 4;
+                kept = kept + 1;
+                IF 1 > 2 THEN { CONSOLE -> "never"; }
+                CONSOLE -> kept + constant;
+                """);
+        assertTrue(optimizer.isRemoved(statement(0).varDecl()));
+        assertTrue(optimizer.isRemoved(statement(1).assignment()));
+        // every read of it was replaced by its value
+        assertTrue(optimizer.isRemoved(statement(2).varDecl()));
+        assertFalse(optimizer.isRemoved(statement(3).varDecl()));
+        assertEquals(Boolean.FALSE, optimizer.constantCondition(statement(5).ifStmt().expr(0)));
+    }
+
+    @Test
+    void hoistsLoopInvariantExpressions() throws Exception {
+        optimize("""
+                integer a = 3;
+                a = a + 1;
+                integer b = 4;
+                b = b + 1;
+                integer s = 0;
+                FOR i IN 1:10 DO { s = s + a * b + i; }
+                CONSOLE -> s;
+                """);
+        var loop = statement(5).forStmt();
+        var hoisted = optimizer.hoistedBefore(loop);
+        assertEquals(1, hoisted.size());
+        assertEquals("a*b", hoisted.get(0).value().getText());
+        assertNotNull(optimizer.loopTemp(hoisted.get(0).value()));
+    }
+
+    @Test
+    void keepsExpressionsOverVariablesTheLoopWrites() throws Exception {
+        optimize("""
+                FUNCTION Bump(integer x) { x = x + 1; RETURN x; }
+                integer a = 3;
+                a = a + 1;
+                integer s = 0;
+                FOR i IN 1:10 DO {
+                  s = s + a * 2;
+                  a <=> Bump();
+                }
+                WHILE s < 100 DO { s = s + a * 3; a = a + 1; }
+                CONSOLE -> s;
+                """);
+        assertTrue(optimizer.hoistedBefore(statement(4).forStmt()).isEmpty());
+        assertTrue(optimizer.hoistedBefore(statement(5).whileStmt()).isEmpty());
+    }
+
+    @Test
+    void hoistsPastCallsToUserFunctions() throws Exception {
+        optimize("""
+                FUNCTION Inc(integer n) { RETURN n + 1; }
+                integer a = 3;
+                a = a + 1;
+                integer s = 0;
+                FOR i IN 1:10 DO { s = s + Inc(i) + a * a; }
+                CONSOLE -> s;
+                """);
+        var hoisted = optimizer.hoistedBefore(statement(4).forStmt());
+        assertEquals(1, hoisted.size());
+        assertEquals("a*a", hoisted.get(0).value().getText());
+    }
+
+    @Test
+    void strengthReducesProductsOfTheForVariable() throws Exception {
+        optimize("""
+                integer k = 3;
+                k = k + 1;
+                integer s = 0;
+                FOR i IN 1:10 STEP 2 DO { s = s + i * k; }
+                FOR j IN 1:10 DO { j = j + 1; s = s + j * k; }
+                CONSOLE -> s;
+                """);
+        var products = optimizer.productsOf(statement(3).forStmt());
+        assertEquals(1, products.size());
+        assertEquals("i*k", products.get(0).multiplication().getText());
+        assertEquals("k", products.get(0).factor().getText());
+        // a FOR variable the body assigns is not an induction variable
+        assertTrue(optimizer.productsOf(statement(4).forStmt()).isEmpty());
+    }
+
+    @Test
+    void leavesParallelLoopsAlone() throws Exception {
+        optimize("""
+                integer a = 3;
+                a = a + 1;
+                integer s = 0;
+                PARALLEL FOR i IN 1:10 DO { s = s + a * a + i * a; }
+                CONSOLE -> s;
+                """);
+        assertTrue(optimizer.hoistedBefore(statement(3).forStmt()).isEmpty());
+        assertTrue(optimizer.productsOf(statement(3).forStmt()).isEmpty());
+    }
+}
@@ -0,0 +1,120 @@
+package edu.ktu.funlang.visitors;
+
+import edu.ktu.funlang.core.Compiler;
+import org.junit.jupiter.api.Test;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FunLangSemanticAnalyzerTest {
+    private static FunLangSemanticAnalyzer analyze(String source) {
+        FunLangSemanticAnalyzer analyzer = new FunLangSemanticAnalyzer();
+        analyzer.visit(Compiler.parse(Compiler.lex(source)));
+        return analyzer;
+    }
+
+    @Test
+    void functionsCannotUseVariablesOfTheMainProgram() {
+        List<String> errors = analyze("""
+                integer g = 0;
+                FUNCTION Read(integer n) { RETURN g + n; }
+                FUNCTION Write(integer n) { g = n; RETURN n; }
+                CONSOLE -> Read(1) + Write(2);
+                """).getErrors();
+        assertEquals(List.of(
+                "Variable g is declared outside this FUNCTION; pass it as a parameter instead",
+                "Variable g is declared outside this FUNCTION; pass it as a parameter instead"), errors);
+    }
+
+    @Test
+    void functionsSeeTheirOwnVariablesAndOtherFunctions() {
+        FunLangSemanticAnalyzer analyzer = analyze("""
+                FUNCTION Twice(integer n) { RETURN n * 2; }
+                FUNCTION F(integer n) {
+                  integer local = Twice(n);
+                  FOR i IN 1:n DO { local = local + i; }
+                  RETURN local;
+                }
+                integer n = 3;
+                CONSOLE -> F(n);
+                """);
+        assertEquals(List.of(), analyzer.getErrors());
+    }
+
+    @Test
+    void rejectsAConstantZeroStep() {
+        assertEquals(List.of("FOR STEP cannot be 0, the loop would never end: 0"),
+                analyze("FOR i IN 1:3 STEP 0 DO { CONSOLE -> i; }").getErrors());
+        assertEquals(List.of("FOR STEP cannot be 0, the loop would never end: (2-2)*5"),
+                analyze("FOR i IN 1:3 STEP (2 - 2) * 5 DO { CONSOLE -> i; }").getErrors());
+        assertEquals(List.of(), analyze("FOR i IN 3:1 STEP 0 - 1 DO { CONSOLE -> i; }").getErrors());
+    }
+
+    @Test
+    void onlyTheEndOfAForMayBeDecimal() {
+        assertEquals(List.of(), analyze("integer n = 20; FOR i IN 1:SQRT(n) DO { CONSOLE -> i; }").getErrors());
+        assertEquals(List.of(
+                "FOR start must be integer, got decimal: 1.5",
+                "FOR STEP must be integer, got decimal: 0.5",
+                "FOR end must be a number, got text: \"x\""),
+                analyze("""
+                        FOR i IN 1.5:3 DO { CONSOLE -> i; }
+                        FOR i IN 1:3 STEP 0.5 DO { CONSOLE -> i; }
+                        FOR i IN 1:"x" DO { CONSOLE -> i; }
+                        """).getErrors());
+    }
+
+    @Test
+    void memoizesRealRecursionButNotTailRecursion() {
+        FunLangSemanticAnalyzer analyzer = analyze("""
+                FUNCTION Fib(integer n) {
+                  IF n < 2 THEN { RETURN n; }
+                  RETURN Fib(n - 1) + Fib(n - 2);
+                }
+                FUNCTION Sum(integer n, integer acc) {
+                  IF n == 0 THEN { RETURN acc; }
+                  RETURN Sum(n - 1, acc + n);
+                }
+                FUNCTION Even(integer n) {
+                  IF n == 0 THEN { RETURN TRUE; }
+                  RETURN Odd(n - 1);
+                }
+                FUNCTION Odd(integer n) {
+                  IF n == 0 THEN { RETURN FALSE; }
+                  RETURN Even(n - 1);
+                }
+                MEMO FUNCTION Gcd(integer a, integer b) {
+                  IF b == 0 THEN { RETURN a; }
+                  RETURN Gcd(b, a - a / b * b);
+                }
+                NOMEMO FUNCTION Slow(integer n) {
+                  IF n < 2 THEN { RETURN n; }
+                  RETURN Slow(n - 1) + Slow(n - 2);
+                }
+                CONSOLE -> Fib(10) + Sum(10, 0) + Gcd(12, 8) + Slow(5);
+                CONSOLE -> Even(4);
+                """);
+        assertEquals(List.of(), analyzer.getErrors());
+        assertTrue(analyzer.isMemoized("Fib"));
+        assertFalse(analyzer.isMemoized("Sum"));
+        assertTrue(analyzer.hasTailCalls("Sum"));
+        assertTrue(analyzer.isMemoized("Even"), "recursion through another function is not a loop");
+        assertTrue(analyzer.isMemoized("Gcd"), "MEMO still forces a cache");
+        assertFalse(analyzer.isMemoized("Slow"));
+    }
+
+    @Test
+    void parallelLoopsOnlyReduceOuterVariables() {
+        List<String> errors = analyze("""
+                integer sum = 0;
+                integer last = 0;
+                PARALLEL FOR i IN 1:10 DO {
+                  sum = sum + i;
+                  last = i;
+                }
+                CONSOLE -> sum + last;
+                """).getErrors();
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).startsWith("PARALLEL FOR i can only change outer variable last"), errors.get(0));
+    }
+}